@@ -4,7 +4,7 @@ import java.util.List;
 /**
  * Class representing an Admin type of User.  Extends User class.
  * 
- * Most methods for the Admin are contained in Main due to their relation to the USERS list and global catalog.
+ * Most methods for the Admin are contained in Main due to their relation to the USERS registry and global catalog.
  */
 public class Admin extends User {
     /**
@@ -0,0 +1,941 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * An embedded HTTP server offering the application as a JSON API, so many users can be served at once
+ * rather than one at a time through the text menus in Main. Start it with Main's --serve option.
+ *
+ * Clients log in with POST /api/login and send the token they are given with every later request,
+ * as the header "Authorization: Bearer TOKEN". Sessions are kept in a {@link SessionStore}, so a token stops
+ * working after 30 minutes without a request or 12 hours after logging in, whichever comes first. Request and response bodies are JSON objects; errors
+ * are answered with a 4xx status and a body of the form {"error": "..."}.
+ *
+ * ROUTES:
+ * POST   /api/login                         {username, password} - logs in; returns a token and the user
+ * POST   /api/logout                        ends the session
+ * POST   /api/accounts                      {email, username, password, role: listener|artist} - creates an account and logs in
+ * GET    /api/songs?q=&offset=&limit=       ranked title search, with close matches if nothing matches; or ?artist= for an artist's songs
+ * GET    /api/songs/{id}                    one catalog song
+ * POST   /api/songs                         {title, duration} - an Artist uploads a song; an Admin also gives {artist}
+ * DELETE /api/songs/{id}                    an Artist removes one of their songs, or an Admin any song, from the catalog and every playlist
+ * GET    /api/playlists                     the Listener's library
+ * POST   /api/playlists                     {name} - creates a playlist
+ * DELETE /api/playlists                     deletes every playlist
+ * GET    /api/playlists/{index}             a playlist and its songs
+ * DELETE /api/playlists/{index}             deletes a playlist
+ * POST   /api/playlists/{index}/songs       {songId} - adds a catalog song
+ * DELETE /api/playlists/{index}/songs/{id}  removes a song
+ * GET    /api/admin/users                   every account
+ * POST   /api/admin/users                   {email, username, password, role: listener|artist|admin} - creates an account
+ * GET    /api/admin/users/{id}              an account, with its playlists or songs
+ * DELETE /api/admin/users/{id}              deletes an account
+ *
+ * Each request runs on its own virtual thread (JDK 21 or later), so a request waiting for the journal to reach the disk
+ * holds no platform thread, and thousands can wait at once. The state the requests share is safe for
+ * concurrent use: the registry, catalog and libraries each have their own lock, and readers of a library
+ * use its snapshots. The server adds one lock of its own: every request that changes anything holds
+ * its read side, and a checkpoint of the StorageEngine holds its write side, so a checkpoint never saves
+ * a change whose record is still on its way to the journal, and never waits on a lock such a change holds.
+ * Removing a Song from the catalog holds the write side too, so no request can add the Song to a playlist
+ * between its leaving the catalog and its removal from every playlist.
+ */
+public class ApiServer implements AutoCloseable {
+    // Most bytes read from a request body
+    private static final int MAX_BODY_BYTES = 64 * 1024;
+
+    // Songs on a page of search results, unless the client asks for another number
+    private static final int DEFAULT_PAGE_SIZE = 10;
+
+    // Most songs a client may ask for on one page
+    private static final int MAX_PAGE_SIZE = 100;
+
+    // The HTTP server
+    private final HttpServer server;
+
+    // Runs each request on a new virtual thread
+    private final ExecutorService executor;
+
+    // Stores the accounts users log in to
+    private final UserRegistry users;
+
+    // The global song catalog
+    private final SearchService catalog;
+
+    // Authenticates logins, locking accounts after repeated failures
+    private final LoginService loginService;
+
+    // Saves every change; null if changes are not saved
+    private final StorageEngine storage;
+
+    // Maps each session token to the User who logged in with it, ending sessions as they expire
+    private final SessionStore sessions;
+
+    // Held for reading by requests that change anything, and for writing by checkpoints and catalog removals
+    private final ReentrantReadWriteLock changes;
+
+    /**
+     * Constructor for an ApiServer, which listens once start() is called.
+     *
+     * @param address      the address and port to listen on; port 0 picks a free port
+     * @param users        the registry of all accounts
+     * @param catalog      the global song catalog
+     * @param loginService authenticates logins
+     * @param storage      saves every change, or null if changes are not saved
+     * @throws IOException if the address cannot be listened on
+     */
+    public ApiServer(InetSocketAddress address, UserRegistry users, SearchService catalog, LoginService loginService,
+                     StorageEngine storage) throws IOException {
+        this(address, users, catalog, loginService, storage, new SessionStore());
+    }
+
+    /**
+     * Constructor for an ApiServer that keeps its sessions in a given store, e.g. one with other limits.
+     *
+     * @param address      the address and port to listen on; port 0 picks a free port
+     * @param users        the registry of all accounts
+     * @param catalog      the global song catalog
+     * @param loginService authenticates logins
+     * @param storage      saves every change, or null if changes are not saved
+     * @param sessions     keeps the sessions of logged in users
+     * @throws IOException if the address cannot be listened on
+     */
+    public ApiServer(InetSocketAddress address, UserRegistry users, SearchService catalog, LoginService loginService,
+                     StorageEngine storage, SessionStore sessions) throws IOException {
+        this.users = users;
+        this.catalog = catalog;
+        this.loginService = loginService;
+        this.storage = storage;
+        this.sessions = sessions;
+        this.changes = new ReentrantReadWriteLock();
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        this.server = HttpServer.create(address, 0);
+        this.server.setExecutor(executor);
+        this.server.createContext("/api/", this::handle);
+    }
+
+    /**
+     * Starts accepting requests.
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Getter for the port the server listens on.
+     *
+     * @return int the port, e.g. the one picked when the server was given port 0
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stops accepting requests, and waits for those in progress to finish.
+     */
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.close();
+    }
+
+    /**
+     * Answers one request, on its own virtual thread.
+     *
+     * @param exchange the request and its response
+     * @throws IOException if the response cannot be sent
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            Response response;
+            try {
+                response = route(exchange);
+            } catch (ApiException e) {
+                response = new Response(e.status, "{\"error\":" + Json.quote(e.getMessage()) + "}");
+            } catch (RuntimeException e) {
+                // The details stay in the server's log; the client only learns that the request failed
+                logError("Internal error answering " + exchange.getRequestMethod() + " " + exchange.getRequestURI().getPath(), e);
+                response = new Response(500, "{\"error\":\"Internal error\"}");
+            }
+            send(exchange, response);
+        } finally {
+            exchange.close();
+        }
+        if (!exchange.getRequestMethod().equals("GET")) {
+            checkpointIfDue();
+        }
+    }
+
+    /**
+     * Finds the handler for a request's method and path, and runs it.
+     *
+     * @param exchange the request
+     * @return Response the handler's response
+     */
+    private Response route(HttpExchange exchange) {
+        String method = exchange.getRequestMethod();
+        String[] path = exchange.getRequestURI().getPath().substring("/api/".length()).split("/");
+        switch (path[0]) {
+            case "login":
+                if (path.length == 1 && method.equals("POST")) return login(readBody(exchange));
+                break;
+
+            case "logout":
+                if (path.length == 1 && method.equals("POST")) return logout(exchange);
+                break;
+
+            case "accounts":
+                if (path.length == 1 && method.equals("POST")) return createAccount(readBody(exchange));
+                break;
+
+            case "songs":
+                if (path.length == 1 && method.equals("GET")) return searchSongs(exchange);
+                if (path.length == 1 && method.equals("POST")) return uploadSong(loggedIn(exchange), readBody(exchange));
+                if (path.length == 2 && method.equals("GET")) return getSong(parseId(path[1]));
+                if (path.length == 2 && method.equals("DELETE")) return removeSong(loggedIn(exchange), parseId(path[1]));
+                break;
+
+            case "playlists":
+                if (path.length == 1 && method.equals("GET")) return listPlaylists(listener(exchange));
+                if (path.length == 1 && method.equals("POST")) return createPlaylist(listener(exchange), readBody(exchange));
+                if (path.length == 1 && method.equals("DELETE")) return clearLibrary(listener(exchange));
+                if (path.length == 2 && method.equals("GET")) return getPlaylist(listener(exchange), parseId(path[1]));
+                if (path.length == 2 && method.equals("DELETE")) return deletePlaylist(listener(exchange), parseId(path[1]));
+                if (path.length == 3 && path[2].equals("songs") && method.equals("POST")) {
+                    return addToPlaylist(listener(exchange), parseId(path[1]), readBody(exchange));
+                }
+                if (path.length == 4 && path[2].equals("songs") && method.equals("DELETE")) {
+                    return removeFromPlaylist(listener(exchange), parseId(path[1]), parseId(path[3]));
+                }
+                break;
+
+            case "admin":
+                if (path.length >= 2 && path[1].equals("users")) {
+                    if (path.length == 2 && method.equals("GET")) return listUsers(admin(exchange));
+                    if (path.length == 2 && method.equals("POST")) return createUser(admin(exchange), readBody(exchange));
+                    if (path.length == 3 && method.equals("GET")) return queryUser(admin(exchange), parseId(path[2]));
+                    if (path.length == 3 && method.equals("DELETE")) return deleteUser(admin(exchange), parseId(path[2]));
+                }
+                break;
+
+            default:
+                break;
+        }
+        throw new ApiException(404, "No such resource: " + method + " " + exchange.getRequestURI().getPath());
+    }
+
+    /**
+     * POST /api/login: authenticates a user and starts a session.
+     *
+     * @param body {username, password}
+     * @return Response the session's token and the user
+     */
+    private Response login(Map<String, Object> body) {
+        User user = loginService.authenticate(stringField(body, "username"), stringField(body, "password"), users);
+        if (user == null) throw new ApiException(401, "Invalid username or password, or the account is locked");
+        return new Response(200, session(user));
+    }
+
+    /**
+     * POST /api/logout: ends the session whose token the request carries.
+     *
+     * @param exchange the request
+     * @return Response no content
+     */
+    private Response logout(HttpExchange exchange) {
+        loggedIn(exchange);
+        sessions.end(token(exchange));
+        return new Response(204, null);
+    }
+
+    /**
+     * POST /api/accounts: creates a Listener or Artist account, as the main menu's Create Account does, and logs in.
+     *
+     * @param body {email, username, password, role}
+     * @return Response the session's token and the new user
+     */
+    private Response createAccount(Map<String, Object> body) {
+        String role = stringField(body, "role");
+        if (!role.equals("listener") && !role.equals("artist")) {
+            throw new ApiException(400, "The role must be listener or artist");
+        }
+        return new Response(201, session(register(body)));
+    }
+
+    /**
+     * GET /api/songs: searches the catalog by title, ranked, or lists an artist's Songs.
+     *
+     * @param exchange the request, with q or artist, and optionally offset and limit, as query parameters
+     * @return Response the page of Songs, the total number of matches, and close matches if there were none
+     */
+    private Response searchSongs(HttpExchange exchange) {
+        Map<String, String> query = queryParameters(exchange);
+        int offset = intParameter(query, "offset", 0);
+        int limit = intParameter(query, "limit", DEFAULT_PAGE_SIZE);
+        if (offset < 0 || limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new ApiException(400, "The offset must not be negative, and the limit must be from 1 to " + MAX_PAGE_SIZE);
+        }
+        StringBuilder json = new StringBuilder("{");
+        if (query.containsKey("q")) {
+            SearchPage page = catalog.searchRanked(query.get("q"), offset, limit);
+            json.append("\"total\":").append(page.getTotalMatches())
+                .append(",\"offset\":").append(offset)
+                .append(",\"songs\":").append(songsJson(page.getSongs()));
+            if (page.getTotalMatches() == 0) {
+                // Offer close matches rather than leaving the client to guess the spelling
+                List<Song> close = catalog.searchFuzzy(query.get("q"));
+                json.append(",\"suggestions\":").append(songsJson(close.subList(0, Math.min(limit, close.size()))));
+            }
+        } else if (query.containsKey("artist")) {
+            List<Song> songs = catalog.searchSongByArtist(query.get("artist"));
+            List<Song> page = songs.subList(Math.min(offset, songs.size()), (int) Math.min((long) offset + limit, songs.size()));
+            json.append("\"total\":").append(songs.size())
+                .append(",\"offset\":").append(offset)
+                .append(",\"songs\":").append(songsJson(page));
+        } else {
+            throw new ApiException(400, "Give a title to search for as q, or an artist's name as artist");
+        }
+        return new Response(200, json.append('}').toString());
+    }
+
+    /**
+     * GET /api/songs/{id}: looks up a catalog Song.
+     *
+     * @param id the Song's id
+     * @return Response the Song
+     */
+    private Response getSong(int id) {
+        return new Response(200, songJson(catalogSong(id)));
+    }
+
+    /**
+     * POST /api/songs: uploads a Song to the catalog. An Artist uploads their own Songs; an Admin names the artist.
+     *
+     * @param user the logged in User
+     * @param body {title, duration}, and artist for an Admin
+     * @return Response the new Song
+     */
+    private Response uploadSong(User user, Map<String, Object> body) {
+        String creator;
+        if (user instanceof Artist) {
+            creator = user.getUsername();
+        } else if (user instanceof Admin) {
+            creator = stringField(body, "artist");
+        } else {
+            throw new ApiException(403, "Only artists and admins may upload songs");
+        }
+        Song song = new Song(stringField(body, "title").trim(), creator.trim(), intField(body, "duration"));
+        String invalid = Artist.validateSong(song);
+        if (invalid != null) throw new ApiException(400, "Invalid song: " + invalid);
+        return change(() -> {
+            if (!catalog.addSongToCatalog(song)) throw new ApiException(409, "The song is already in the catalog");
+            return new Response(201, songJson(song));
+        });
+    }
+
+    /**
+     * DELETE /api/songs/{id}: removes a Song from the catalog and from every playlist.
+     * An Artist may only remove their own Songs; an Admin may remove any.
+     *
+     * @param user the logged in User
+     * @param id   the Song's id
+     * @return Response no content
+     */
+    private Response removeSong(User user, int id) {
+        if (!(user instanceof Artist) && !(user instanceof Admin)) {
+            throw new ApiException(403, "Only artists and admins may remove songs");
+        }
+        Song song = catalogSong(id);
+        if (user instanceof Artist && !user.getUsername().equals(song.getCreator())) {
+            throw new ApiException(403, "Artists may only remove their own songs");
+        }
+        return exclusiveChange(() -> {
+            if (!catalog.removeSongFromCatalog(song)) throw new ApiException(404, "No song has the id " + id);
+            users.getPlaylistIndex().removeFromAllPlaylists(song);
+            return new Response(204, null);
+        });
+    }
+
+    /**
+     * GET /api/playlists: lists the Listener's library, all as of one moment.
+     *
+     * @param listener the logged in Listener
+     * @return Response the library's version and a summary of each playlist
+     */
+    private Response listPlaylists(Listener listener) {
+        return new Response(200, libraryJson(listener.snapshot()));
+    }
+
+    /**
+     * POST /api/playlists: creates a playlist in the Listener's library.
+     *
+     * @param listener the logged in Listener
+     * @param body     {name}
+     * @return Response a summary of the new playlist
+     */
+    private Response createPlaylist(Listener listener, Map<String, Object> body) {
+        String name = stringField(body, "name");
+        return change(() -> {
+            Playlist playlist = listener.createNewPlaylist(name);
+            return new Response(201, playlistJson(listener.getLibrary().indexOf(playlist), playlist.snapshot(), false));
+        });
+    }
+
+    /**
+     * DELETE /api/playlists: deletes every playlist in the Listener's library.
+     *
+     * @param listener the logged in Listener
+     * @return Response no content
+     */
+    private Response clearLibrary(Listener listener) {
+        return change(() -> {
+            listener.clearLibrary();
+            return new Response(204, null);
+        });
+    }
+
+    /**
+     * GET /api/playlists/{index}: lists a playlist's Songs.
+     *
+     * @param listener the logged in Listener
+     * @param index    the playlist's position in the library
+     * @return Response the playlist and its Songs
+     */
+    private Response getPlaylist(Listener listener, int index) {
+        LibrarySnapshot library = listener.snapshot();
+        if (index >= library.size()) throw new ApiException(404, "No playlist has the index " + index);
+        return new Response(200, playlistJson(index, library.get(index), true));
+    }
+
+    /**
+     * DELETE /api/playlists/{index}: deletes a playlist from the Listener's library.
+     *
+     * @param listener the logged in Listener
+     * @param index    the playlist's position in the library
+     * @return Response no content
+     */
+    private Response deletePlaylist(Listener listener, int index) {
+        return change(() -> {
+            if (!listener.deletePlaylistAtIndex(index)) throw new ApiException(404, "No playlist has the index " + index);
+            return new Response(204, null);
+        });
+    }
+
+    /**
+     * POST /api/playlists/{index}/songs: adds a catalog Song to a playlist.
+     *
+     * @param listener the logged in Listener
+     * @param index    the playlist's position in the library
+     * @param body     {songId}
+     * @return Response a summary of the playlist
+     */
+    private Response addToPlaylist(Listener listener, int index, Map<String, Object> body) {
+        int songId = intField(body, "songId");
+        // The Song is looked up while no catalog removal can run, and the playlist while the library is locked,
+        // so the Song cannot leave the catalog, nor the playlist its library, before the Song is added
+        return change(() -> listener.withPlaylistAtIndex(index, playlist -> {
+            if (playlist == null) throw new ApiException(404, "No playlist has the index " + index);
+            if (!playlist.addSong(catalogSong(songId))) throw new ApiException(409, "The playlist already holds the song");
+            return new Response(201, playlistJson(index, playlist.snapshot(), false));
+        }));
+    }
+
+    /**
+     * DELETE /api/playlists/{index}/songs/{id}: removes a Song from a playlist.
+     *
+     * @param listener the logged in Listener
+     * @param index    the playlist's position in the library
+     * @param songId   the Song's id
+     * @return Response no content
+     */
+    private Response removeFromPlaylist(Listener listener, int index, int songId) {
+        return change(() -> listener.withPlaylistAtIndex(index, playlist -> {
+            if (playlist == null) throw new ApiException(404, "No playlist has the index " + index);
+            if (!playlist.removeSongById(songId)) throw new ApiException(404, "The playlist does not hold a song with the id " + songId);
+            return new Response(204, null);
+        }));
+    }
+
+    /**
+     * GET /api/admin/users: lists every account.
+     *
+     * @param admin the logged in Admin
+     * @return Response every User, in creation order
+     */
+    private Response listUsers(Admin admin) {
+        StringBuilder json = new StringBuilder("{\"users\":[");
+        String separator = "";
+        for (User user : users) {
+            json.append(separator).append(userJson(user));
+            separator = ",";
+        }
+        return new Response(200, json.append("]}").toString());
+    }
+
+    /**
+     * POST /api/admin/users: creates an account of any kind.
+     *
+     * @param admin the logged in Admin
+     * @param body  {email, username, password, role}
+     * @return Response the new User
+     */
+    private Response createUser(Admin admin, Map<String, Object> body) {
+        return new Response(201, userJson(register(body)));
+    }
+
+    /**
+     * GET /api/admin/users/{id}: shows an account, with a Listener's playlists or an Artist's Songs.
+     *
+     * @param admin the logged in Admin
+     * @param id    the User's id
+     * @return Response the User and what they have made
+     */
+    private Response queryUser(Admin admin, int id) {
+        User user = users.findById(id);
+        if (user == null) throw new ApiException(404, "No user has the id " + id);
+        String json = userJson(user);
+        if (user instanceof Listener) {
+            json = json.substring(0, json.length() - 1) + ",\"library\":" + libraryJson(((Listener) user).snapshot()) + "}";
+        } else if (user instanceof Artist) {
+            json = json.substring(0, json.length() - 1) + ",\"songs\":" + songsJson(catalog.searchSongByArtist(user.getUsername())) + "}";
+        }
+        return new Response(200, json);
+    }
+
+    /**
+     * DELETE /api/admin/users/{id}: deletes an account, a Listener's playlists, and the User's sessions.
+     *
+     * @param admin the logged in Admin
+     * @param id    the User's id
+     * @return Response no content
+     */
+    private Response deleteUser(Admin admin, int id) {
+        return change(() -> {
+            User user = users.findById(id);
+            if (user == null || !users.remove(user)) throw new ApiException(404, "No user has the id " + id);
+            if (user instanceof Listener) {
+                ((Listener) user).clearLibrary(); // A deleted Listener's playlists must not be edited by later catalog removals
+            }
+            sessions.endAll(user);
+            return new Response(204, null);
+        });
+    }
+
+    /**
+     * Registers a new account, checked as the text menus check them.
+     *
+     * @param body {email, username, password, role}, where role is listener, artist or admin
+     * @return User the new User
+     */
+    private User register(Map<String, Object> body) {
+        String email = stringField(body, "email").trim();
+        String username = stringField(body, "username").trim();
+        String password = stringField(body, "password").trim();
+        String role = stringField(body, "role");
+        if (!LoginService.isValidEmail(email)) throw new ApiException(400, "Invalid email address");
+        if (!LoginService.isValidUsername(username)) {
+            throw new ApiException(400, "Invalid username: it must start with a letter, be 6 to 31 characters long, "
+                                        + "and have no special characters except underscore");
+        }
+        if (!LoginService.isValidPassword(password)) {
+            throw new ApiException(400, "Invalid password: it must be at least 8 characters long, with an uppercase letter, "
+                                        + "a lowercase letter, a number and a special character");
+        }
+        return change(() -> users.addWithNextId(id -> {
+            // Checked while the registry is locked, so no other account can take the email or username before this one is added
+            if (users.isEmailTaken(email)) throw new ApiException(409, "An account with this email already exists");
+            if (users.isUsernameTaken(username)) throw new ApiException(409, "Username already taken");
+            switch (role) {
+                case "listener":
+                    return new Listener(email, username, password, id, new ArrayList<Playlist>());
+                case "artist":
+                    return new Artist(email, username, password, id);
+                case "admin":
+                    return new Admin(email, username, password, id);
+                default:
+                    throw new ApiException(400, "The role must be listener, artist or admin");
+            }
+        }));
+    }
+
+    /**
+     * Starts a session for a User.
+     *
+     * @param user the User who logged in
+     * @return String the JSON object of the session's token and the User
+     */
+    private String session(User user) {
+        String token = sessions.start(user);
+        return "{\"token\":" + Json.quote(token) + ",\"user\":" + userJson(user) + "}";
+    }
+
+    /**
+     * Runs a change to the shared state while holding the read side of the changes lock, so checkpoints wait for it.
+     *
+     * @param change makes the change
+     * @return T what change returns
+     */
+    private <T> T change(Supplier<T> change) {
+        changes.readLock().lock();
+        try {
+            return change.get();
+        } finally {
+            changes.readLock().unlock();
+        }
+    }
+
+    /**
+     * Runs a change to the shared state while holding the write side of the changes lock, so no other change runs meanwhile.
+     *
+     * @param change makes the change
+     * @return T what change returns
+     */
+    private <T> T exclusiveChange(Supplier<T> change) {
+        changes.writeLock().lock();
+        try {
+            return change.get();
+        } finally {
+            changes.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Writes a checkpoint once enough changes have been saved since the last one, as Main does between commands.
+     * Changes wait meanwhile; requests that only read do not.
+     */
+    private void checkpointIfDue() {
+        if (storage == null || storage.getRecordsSinceCheckpoint() < storage.getCheckpointInterval()) return;
+        changes.writeLock().lock();
+        try {
+            storage.checkpointIfDue();
+        } catch (IOException e) {
+            logError("Could not write a snapshot of the saved data", e);
+        } finally {
+            changes.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Writes a failure to the server's log, System.err, with the exception's stack trace.
+     *
+     * @param message what the server was doing when it failed
+     * @param e       the exception it failed with
+     */
+    private static void logError(String message, Exception e) {
+        System.err.println(message);
+        e.printStackTrace();
+    }
+
+    /**
+     * Finds the User whose session token a request carries. A token whose session has expired is refused.
+     *
+     * @param exchange the request
+     * @return User the logged in User
+     */
+    private User loggedIn(HttpExchange exchange) {
+        String token = token(exchange);
+        User user = sessions.get(token);
+        if (user == null) throw new ApiException(401, "Log in first, and send the token as: Authorization: Bearer TOKEN");
+        if (users.findById(user.getId()) != user) {
+            sessions.end(token); // The account was deleted since this session began
+            throw new ApiException(401, "The account no longer exists");
+        }
+        return user;
+    }
+
+    /**
+     * Finds the Listener whose session token a request carries.
+     *
+     * @param exchange the request
+     * @return Listener the logged in Listener
+     */
+    private Listener listener(HttpExchange exchange) {
+        User user = loggedIn(exchange);
+        if (!(user instanceof Listener)) throw new ApiException(403, "Only listeners have playlists");
+        return (Listener) user;
+    }
+
+    /**
+     * Finds the Admin whose session token a request carries.
+     *
+     * @param exchange the request
+     * @return Admin the logged in Admin
+     */
+    private Admin admin(HttpExchange exchange) {
+        User user = loggedIn(exchange);
+        if (!(user instanceof Admin)) throw new ApiException(403, "Only admins may manage accounts");
+        return (Admin) user;
+    }
+
+    /**
+     * Getter for the session token a request carries.
+     *
+     * @param exchange the request
+     * @return String the token, or null if there is none
+     */
+    private static String token(HttpExchange exchange) {
+        String header = exchange.getRequestHeaders().getFirst("Authorization");
+        if (header == null || !header.startsWith("Bearer ")) return null;
+        return header.substring("Bearer ".length()).trim();
+    }
+
+    /**
+     * Finds a catalog Song by id.
+     *
+     * @param id the Song's id
+     * @return Song the Song
+     */
+    private Song catalogSong(int id) {
+        Song song = catalog.getSongById(id);
+        if (song == null) throw new ApiException(404, "No song has the id " + id);
+        return song;
+    }
+
+    /**
+     * Reads a request body holding a JSON object.
+     *
+     * @param exchange the request
+     * @return Map<String, Object> the object's members
+     */
+    private static Map<String, Object> readBody(HttpExchange exchange) {
+        byte[] bytes;
+        try (InputStream in = exchange.getRequestBody()) {
+            bytes = in.readNBytes(MAX_BODY_BYTES + 1);
+        } catch (IOException e) {
+            throw new ApiException(400, "Could not read the request body");
+        }
+        if (bytes.length > MAX_BODY_BYTES) throw new ApiException(413, "The request body is too large");
+        try {
+            return Json.parseObject(new String(bytes, StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) {
+            throw new ApiException(400, "The body must be a JSON object: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Getter for a string member of a request body.
+     *
+     * @param body the body
+     * @param name the member's name
+     * @return String its value
+     */
+    private static String stringField(Map<String, Object> body, String name) {
+        Object value = body.get(name);
+        if (!(value instanceof String)) throw new ApiException(400, "Expected a string " + name);
+        return (String) value;
+    }
+
+    /**
+     * Getter for a whole number member of a request body.
+     *
+     * @param body the body
+     * @param name the member's name
+     * @return int its value
+     */
+    private static int intField(Map<String, Object> body, String name) {
+        Object value = body.get(name);
+        if (!(value instanceof Long) || (Long) value != ((Long) value).intValue()) {
+            throw new ApiException(400, "Expected a whole number " + name);
+        }
+        return ((Long) value).intValue();
+    }
+
+    /**
+     * Decodes a request's query parameters.
+     *
+     * @param exchange the request
+     * @return Map<String, String> each parameter's first value
+     */
+    private static Map<String, String> queryParameters(HttpExchange exchange) {
+        HashMap<String, String> parameters = new HashMap<String, String>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) return parameters;
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = URLDecoder.decode(equals < 0 ? pair : pair.substring(0, equals), StandardCharsets.UTF_8);
+            String value = equals < 0 ? "" : URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8);
+            parameters.putIfAbsent(name, value);
+        }
+        return parameters;
+    }
+
+    /**
+     * Getter for a whole number query parameter.
+     *
+     * @param query        the query parameters
+     * @param name         the parameter's name
+     * @param defaultValue the value if the parameter is not given
+     * @return int its value
+     */
+    private static int intParameter(Map<String, String> query, String name, int defaultValue) {
+        String value = query.get(name);
+        if (value == null) return defaultValue;
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new ApiException(400, "Expected a whole number " + name);
+        }
+    }
+
+    /**
+     * Parses an id or index from a path segment.
+     *
+     * @param segment the segment
+     * @return int the id or index (Positive integer >=0)
+     */
+    private static int parseId(String segment) {
+        try {
+            int id = Integer.parseInt(segment);
+            if (id >= 0) return id;
+        } catch (NumberFormatException e) {
+            // Answered below, like a negative number
+        }
+        throw new ApiException(404, "No such resource: " + segment);
+    }
+
+    /**
+     * Sends a response.
+     *
+     * @param exchange the request
+     * @param response the status and body to send
+     * @throws IOException if the response cannot be sent
+     */
+    private static void send(HttpExchange exchange, Response response) throws IOException {
+        if (response.body == null) {
+            exchange.sendResponseHeaders(response.status, -1);
+            return;
+        }
+        byte[] bytes = response.body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(response.status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Writes a Song as JSON.
+     *
+     * @param song the Song
+     * @return String {id, title, artist, duration}
+     */
+    private static String songJson(Song song) {
+        return "{\"id\":" + song.getId() + ",\"title\":" + Json.quote(song.getTitle())
+               + ",\"artist\":" + Json.quote(song.getCreator()) + ",\"duration\":" + song.getDuration() + "}";
+    }
+
+    /**
+     * Writes Songs as a JSON array.
+     *
+     * @param songs the Songs, in order
+     * @return String the array
+     */
+    private static String songsJson(Iterable<Song> songs) {
+        StringBuilder json = new StringBuilder("[");
+        String separator = "";
+        for (Song song : songs) {
+            json.append(separator).append(songJson(song));
+            separator = ",";
+        }
+        return json.append(']').toString();
+    }
+
+    /**
+     * Writes a User as JSON, without their password.
+     *
+     * @param user the User
+     * @return String {id, username, email, role}
+     */
+    private static String userJson(User user) {
+        String role = user instanceof Listener ? "listener" : user instanceof Artist ? "artist" : "admin";
+        return "{\"id\":" + user.getId() + ",\"username\":" + Json.quote(user.getUsername())
+               + ",\"email\":" + Json.quote(user.getEmail()) + ",\"role\":" + Json.quote(role) + "}";
+    }
+
+    /**
+     * Writes a version of a library as JSON.
+     *
+     * @param library the library's snapshot
+     * @return String {version, playlists} with a summary of each playlist
+     */
+    private static String libraryJson(LibrarySnapshot library) {
+        StringBuilder json = new StringBuilder("{\"version\":").append(library.getVersion()).append(",\"playlists\":[");
+        for (int i = 0; i < library.size(); i++) {
+            json.append(i == 0 ? "" : ",").append(playlistJson(i, library.get(i), false));
+        }
+        return json.append("]}").toString();
+    }
+
+    /**
+     * Writes a version of a playlist as JSON.
+     *
+     * @param index     the playlist's position in its library
+     * @param playlist  the playlist's snapshot
+     * @param withSongs whether to list the Songs, or only count them
+     * @return String {index, name, version, songCount, totalDuration}, and songs if asked for
+     */
+    private static String playlistJson(int index, PlaylistSnapshot playlist, boolean withSongs) {
+        StringBuilder json = new StringBuilder("{\"index\":").append(index)
+            .append(",\"name\":").append(Json.quote(playlist.getName()))
+            .append(",\"version\":").append(playlist.getVersion())
+            .append(",\"songCount\":").append(playlist.size())
+            .append(",\"totalDuration\":").append(playlist.getTotalDuration());
+        if (withSongs) {
+            json.append(",\"songs\":").append(songsJson(playlist));
+        }
+        return json.append('}').toString();
+    }
+
+    /**
+     * A response's status and JSON body.
+     */
+    private static final class Response {
+        // The HTTP status code
+        final int status;
+
+        // The JSON body, or null for none
+        final String body;
+
+        /**
+         * Constructor for a Response
+         *
+         * @param status the HTTP status code
+         * @param body   the JSON body, or null for none
+         */
+        Response(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+
+    /**
+     * Thrown by a handler to answer with an error status, e.g. 404 for a missing Song.
+     */
+    private static final class ApiException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        // The HTTP status code
+        final int status;
+
+        /**
+         * Constructor for an ApiException
+         *
+         * @param status  the HTTP status code
+         * @param message what went wrong, sent to the client
+         */
+        ApiException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+}
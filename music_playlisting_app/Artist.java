@@ -28,52 +28,48 @@ public class Artist extends User {
      * @return true if song was successfully added; false otherwise.
      */
     public boolean addSongToCatalog(SearchService catalog, Song song) {
-        if (song == null) return false;
+        if (validateSong(song) != null) return false;
     
-        // Validation: title and artist name cannot be empty, duration must be positive
-        if (song.getTitle() == null || song.getTitle().trim().isEmpty()) return false;
-        if (song.getCreator() == null || song.getCreator().trim().isEmpty()) return false;
-        if (song.getDuration() <= 0) return false;
-    
-        // Prevent adding duplicate songs
-        if (catalog.globalCatContains(song)) return false;
-        
-        catalog.addSongToCatalog(song);
-        return true;
+        // Prevent adding duplicate songs; the catalog rejects a Song it already holds.
+        return catalog.addSongToCatalog(song);
+    }
+
+    /**
+     * Checks that a Song may be uploaded: its title and artist name cannot be empty, and its duration must be positive.
+     * Shared by uploads from the Artist menu and bulk imports, so both accept the same Songs.
+     *
+     * @param song The song being checked
+     * @return String describing why the Song is rejected, or null if it is valid
+     */
+    public static String validateSong(Song song) {
+        if (song == null) return "no song";
+        if (song.getTitle() == null || song.getTitle().trim().isEmpty()) return "title is empty";
+        if (song.getCreator() == null || song.getCreator().trim().isEmpty()) return "artist name is empty";
+        if (song.getDuration() <= 0) return "duration must be positive";
+        return null;
     }
 
     /**
-     * Prints the indexed list of all Songs uploaded by this Artist.
+     * Prints the list of all Songs uploaded by this Artist.
      *
      * @param catalog An instance of the SearchService that manages the global catalog.
-     * @return ArrayList<Song> An ArrayList of all Songs uploaded by this Artist.
+     * @return long the number of Songs this Artist has in the catalog.
      */
-    public ArrayList<Song> getCatalog(SearchService catalog) {
-        ArrayList<Song> localCatalog = new ArrayList<>();
-        ArrayList<Song> globalCatalog = catalog.getGlobalCatalog();
-        boolean artistHasSongs = false;
-        // Runs to first check that the artist has any songs at all on the catalog.
-        // If the artist has NO songs, the boolean remains false and nothing happens.
-        for (Song s : globalCatalog) {
-            if (s.getCreator().equals(this.getUsername())) {
-                artistHasSongs = true;
-                break;
-            }
-        }
-        // We only try printing data on an Artist's songs if they have any.
-        if (artistHasSongs) {
-            System.out.println("=== " + this.getUsername() + "'s CATALOG ===");
-            for (Song s : globalCatalog) {
-                if (s.getCreator().equals(this.getUsername())) {
-                    localCatalog.add(s);
-                    System.out.println(s);
-                }
+    public long getCatalog(SearchService catalog) {
+        // The catalog groups Songs by creator, so this only touches this Artist's own Songs,
+        // and printing straight from the Stream avoids building a list that is only read once.
+        long[] count = new long[1];
+        catalog.streamByArtist(this.getUsername()).forEach(s -> {
+            if (count[0]++ == 0) {
+                System.out.println("=== " + this.getUsername() + "'s CATALOG ===");
             }
-        } else {
+            System.out.println(s);
+        });
+        // We only print the heading if the Artist has songs.
+        if (count[0] == 0) {
             System.out.println(this.getUsername() + " does not have any songs.");
         }
-        
-        return localCatalog;
+        return count[0];
     }
     
     /**
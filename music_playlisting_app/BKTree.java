@@ -0,0 +1,508 @@
+import java.util.*;
+
+/**
+ * Burkhard-Keller tree over search keys, as worked out by a {@link TextAnalyzer}, each pointing to the Songs it was added for.
+ * Finds every key within a given edit (Levenshtein) distance of a query without checking them all.
+ *
+ * Every child of a node sits at a known distance from the node's key. By the triangle inequality a key within
+ * distance k of the query can only be under a child whose distance d' from the node satisfies |d - d'| <= k,
+ * where d is the query's distance from the node, so every other branch is skipped.
+ *
+ * Distances from a key of at most 64 characters are worked out with Myers' bit-parallel algorithm, which
+ * handles a whole column of the edit distance table in a few operations on a long, rather than cell by cell.
+ *
+ * Keys are kept in separate trees by length, since a key more than k characters longer or shorter than the query
+ * cannot be within distance k of it. Removing the last Song of a key leaves its node in place as a tombstone, since
+ * the node still routes searches to its children; a tree is rebuilt once more than half of its nodes are tombstones.
+ *
+ * SearchService keeps one BKTree for titles and one for creators, updated whenever the catalog changes.
+ */
+public class BKTree {
+    // Trees with fewer nodes than this are never rebuilt, since the tombstones cost little
+    private static final int MIN_REBUILD_NODES = 64;
+
+    // Maps each key length to the root of the tree holding keys of that length
+    private HashMap<Integer, Node> roots;
+
+    // Maps each key length to the number of nodes, including tombstones, in its tree
+    private HashMap<Integer, Integer> nodeCounts;
+
+    // Maps each key length to the number of tombstones in its tree
+    private HashMap<Integer, Integer> tombstoneCounts;
+
+    // Number of keys that have at least one Song
+    private int liveKeys;
+
+    /**
+     * Constructor for an empty BKTree
+     */
+    public BKTree() {
+        this.roots = new HashMap<Integer, Node>();
+        this.nodeCounts = new HashMap<Integer, Integer>();
+        this.tombstoneCounts = new HashMap<Integer, Integer>();
+        this.liveKeys = 0;
+    }
+
+    /**
+     * Adds a Song under a key.
+     *
+     * @param key  search key
+     * @param song Song the key was taken from
+     */
+    public void add(String key, Song song) {
+        addTo(insert(key, new Pattern(key)), song);
+    }
+
+    /**
+     * Adds many Songs, each under the key at the same position, as when a catalog is loaded.
+     * Each distinct key is placed in the tree once, and its Songs are added to its node together,
+     * so a key shared by many Songs, such as a creator's, is compared along the tree only once.
+     *
+     * @param keys  search keys, one per Song
+     * @param songs Songs the keys were taken from
+     */
+    public void addAll(List<String> keys, List<Song> songs) {
+        HashMap<String, Node> placed = new HashMap<String, Node>();
+        Pattern pattern = new Pattern("");
+        for (int i = 0; i < keys.size(); i++) {
+            String key = keys.get(i);
+            Node node = placed.get(key);
+            if (node == null) {
+                pattern.set(key);
+                node = insert(key, pattern);
+                placed.put(key, node);
+            }
+            addTo(node, songs.get(i));
+        }
+    }
+
+    /**
+     * Finds the node holding a key, adding one for it if it has none.
+     *
+     * @param key     search key
+     * @param pattern the key, ready to work out distances from
+     * @return Node the key's node
+     */
+    private Node insert(String key, Pattern pattern) {
+        Node node = roots.get(key.length());
+        if (node == null) {
+            node = new Node(key);
+            roots.put(key.length(), node);
+            nodeCounts.merge(key.length(), 1, Integer::sum);
+            return node;
+        }
+        while (!node.key.equals(key)) {
+            int distance = pattern.distance(node.key);
+            Node child = node.child(distance);
+            if (child == null) {
+                child = new Node(key);
+                node.addChild(distance, child);
+                nodeCounts.merge(key.length(), 1, Integer::sum);
+            }
+            node = child;
+        }
+        return node;
+    }
+
+    /**
+     * Adds a Song to a key's node, bringing the key back if it had been removed.
+     *
+     * @param node the key's node
+     * @param song Song the key was taken from
+     */
+    private void addTo(Node node, Song song) {
+        if (node.songs.isEmpty()) {
+            liveKeys++;
+            if (node.tombstone) { // A removed key is added again
+                node.tombstone = false;
+                tombstoneCounts.merge(node.key.length(), -1, Integer::sum);
+            }
+        }
+        node.songs.add(song);
+    }
+
+    /**
+     * Removes a Song from under a key. The key's node stays in the tree once it has no Songs left.
+     *
+     * @param key  search key the Song was added under
+     * @param song Song we are removing
+     */
+    public void remove(String key, Song song) {
+        Node node = find(key);
+        if (node == null || !node.songs.remove(song) || !node.songs.isEmpty()) return;
+        node.tombstone = true;
+        liveKeys--;
+        int length = key.length();
+        int tombstones = tombstoneCounts.merge(length, 1, Integer::sum);
+        int nodes = nodeCounts.get(length);
+        if (tombstones == nodes) {
+            // Nothing left to route to
+            roots.remove(length);
+            nodeCounts.remove(length);
+            tombstoneCounts.remove(length);
+        } else if (nodes >= MIN_REBUILD_NODES && tombstones * 2 > nodes) {
+            rebuild(length);
+        }
+    }
+
+    /**
+     * Getter for the number of keys that have at least one Song.
+     *
+     * @return int number of live keys
+     */
+    public int size() {
+        return liveKeys;
+    }
+
+    /**
+     * Finds every key within a distance of the query, with its Songs.
+     *
+     * @param query       query key
+     * @param maxDistance the largest edit distance to accept (Positive integer >=0)
+     * @return ArrayList<Match> one Match per key found, in no particular order
+     */
+    public ArrayList<Match> search(String query, int maxDistance) {
+        if (maxDistance < 0) throw new IllegalArgumentException("The distance must not be negative");
+        ArrayList<Match> result = new ArrayList<>();
+        Pattern pattern = new Pattern(query);
+        ArrayDeque<Node> pending = new ArrayDeque<Node>();
+        int shortest = Math.max(0, query.length() - maxDistance);
+        for (int length = shortest; length <= query.length() + maxDistance; length++) {
+            Node root = roots.get(length);
+            if (root != null) pending.push(root);
+        }
+        while (!pending.isEmpty()) {
+            Node node = pending.pop();
+            int distance = pattern.distance(node.key);
+            if (distance <= maxDistance && !node.songs.isEmpty()) {
+                result.add(new Match(node.key, distance, new ArrayList<Song>(node.songs)));
+            }
+            for (int i = 0; i < node.distances.length; i++) {
+                if (Math.abs(node.distances[i] - distance) <= maxDistance) {
+                    pending.push(node.children[i]);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Looks up the node holding a key.
+     *
+     * @param key search key
+     * @return Node the key's node, or null if the key was never added
+     */
+    private Node find(String key) {
+        Node node = roots.get(key.length());
+        Pattern pattern = new Pattern(key);
+        while (node != null && !node.key.equals(key)) {
+            node = node.child(pattern.distance(node.key));
+        }
+        return node;
+    }
+
+    /**
+     * Rebuilds the tree of one key length from its live keys, dropping its tombstones.
+     *
+     * @param length the key length whose tree is rebuilt
+     */
+    private void rebuild(int length) {
+        ArrayList<Node> live = new ArrayList<>();
+        ArrayDeque<Node> pending = new ArrayDeque<Node>();
+        pending.push(roots.get(length));
+        while (!pending.isEmpty()) {
+            Node node = pending.pop();
+            if (!node.songs.isEmpty()) live.add(node);
+            for (Node child : node.children) {
+                pending.push(child);
+            }
+        }
+        roots.remove(length);
+        nodeCounts.remove(length);
+        tombstoneCounts.remove(length);
+        liveKeys -= live.size();
+        Pattern pattern = new Pattern("");
+        for (Node node : live) {
+            pattern.set(node.key);
+            Node placed = insert(node.key, pattern);
+            for (Song song : node.songs) {
+                addTo(placed, song);
+            }
+        }
+    }
+
+    /**
+     * Calculates the Levenshtein distance between two strings: the fewest single-character
+     * insertions, deletions and substitutions that turn one into the other.
+     *
+     * @param a the first string
+     * @param b the second string
+     * @return int the edit distance
+     */
+    public static int distance(String a, String b) {
+        return new Pattern(a).distance(b);
+    }
+
+    /**
+     * One key found by a search: the key, its distance from the query, and its Songs.
+     */
+    public static class Match {
+        // The search key that matched
+        private final String key;
+
+        // Edit distance between the key and the query
+        private final int distance;
+
+        // Songs added under the key, in the order they were added
+        private final ArrayList<Song> songs;
+
+        /**
+         * Constructor for a Match
+         *
+         * @param key      the search key that matched
+         * @param distance edit distance from the query
+         * @param songs    Songs added under the key
+         */
+        Match(String key, int distance, ArrayList<Song> songs) {
+            this.key = key;
+            this.distance = distance;
+            this.songs = songs;
+        }
+
+        /**
+         * Getter for the search key that matched.
+         *
+         * @return String the key
+         */
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * Getter for the edit distance between the key and the query.
+         *
+         * @return int the distance
+         */
+        public int getDistance() {
+            return distance;
+        }
+
+        /**
+         * Getter for the Songs added under the key.
+         *
+         * @return ArrayList<Song> the Songs, in the order they were added
+         */
+        public ArrayList<Song> getSongs() {
+            return songs;
+        }
+    }
+
+    /**
+     * One key, ready to work out its distance from many others. For a key of at most 64 characters it holds
+     * a bit mask of the positions of each of its characters, as Myers' algorithm needs; for a longer key,
+     * two rows of working space for the usual table. A Pattern can be set to another key and used again.
+     */
+    private static class Pattern {
+        // Longest key handled a column at a time, one bit a character
+        private static final int MAX_BIT_LENGTH = 64;
+
+        // The key's characters
+        private char[] chars;
+
+        // The positions of each character below 128 in the key, one bit each
+        private long[] asciiMasks;
+
+        // Characters of the key from 128 up, each at most once
+        private char[] otherChars;
+
+        // The positions of each character in otherChars, at the same index
+        private long[] otherMasks;
+
+        // Number of characters in otherChars
+        private int otherCount;
+
+        // Two rows of working space, for a key longer than MAX_BIT_LENGTH; null until one is set
+        private int[][] rows;
+
+        /**
+         * Constructor for a Pattern
+         *
+         * @param key the key
+         */
+        Pattern(String key) {
+            this.chars = new char[0];
+            this.asciiMasks = new long[128];
+            this.otherChars = new char[4];
+            this.otherMasks = new long[4];
+            this.otherCount = 0;
+            set(key);
+        }
+
+        /**
+         * Sets the key distances are worked out from, clearing only the masks of the previous key.
+         *
+         * @param key the key
+         */
+        void set(String key) {
+            for (char c : chars) {
+                if (c < 128) asciiMasks[c] = 0;
+            }
+            otherCount = 0;
+            chars = key.toCharArray();
+            if (chars.length > MAX_BIT_LENGTH) {
+                if (rows == null || rows[0].length <= chars.length) rows = new int[2][chars.length + 1];
+                return;
+            }
+            for (int i = 0; i < chars.length; i++) {
+                char c = chars[i];
+                if (c < 128) {
+                    asciiMasks[c] |= 1L << i;
+                    continue;
+                }
+                int k = 0;
+                while (k < otherCount && otherChars[k] != c) k++;
+                if (k == otherCount) {
+                    if (k == otherChars.length) {
+                        otherChars = Arrays.copyOf(otherChars, k * 2);
+                        otherMasks = Arrays.copyOf(otherMasks, k * 2);
+                    }
+                    otherChars[k] = c;
+                    otherMasks[k] = 0;
+                    otherCount++;
+                }
+                otherMasks[k] |= 1L << i;
+            }
+        }
+
+        /**
+         * Calculates the Levenshtein distance between the key and another string: the fewest single-character
+         * insertions, deletions and substitutions that turn one into the other.
+         *
+         * @param other the other string
+         * @return int the edit distance
+         */
+        int distance(String other) {
+            int m = chars.length;
+            if (m == 0) return other.length();
+            if (m > MAX_BIT_LENGTH) return tableDistance(other);
+            // Pv and Mv mark where a column of the table rises and falls by one from each row to the next
+            long last = 1L << (m - 1);
+            long pv = -1L;
+            long mv = 0;
+            int score = m;
+            for (int j = 0; j < other.length(); j++) {
+                long eq = mask(other.charAt(j));
+                long xv = eq | mv;
+                long xh = (((eq & pv) + pv) ^ pv) | eq;
+                long ph = mv | ~(xh | pv);
+                long mh = pv & xh;
+                if ((ph & last) != 0) {
+                    score++;
+                } else if ((mh & last) != 0) {
+                    score--;
+                }
+                // The first row of the table rises by one in every column
+                ph = (ph << 1) | 1;
+                mh <<= 1;
+                pv = mh | ~(xv | ph);
+                mv = ph & xv;
+            }
+            return score;
+        }
+
+        /**
+         * Getter for the positions of a character in the key.
+         *
+         * @param c a character
+         * @return long one bit for each position holding the character
+         */
+        private long mask(char c) {
+            if (c < 128) return asciiMasks[c];
+            for (int k = 0; k < otherCount; k++) {
+                if (otherChars[k] == c) return otherMasks[k];
+            }
+            return 0;
+        }
+
+        /**
+         * Calculates the Levenshtein distance a row of the table at a time, for a key too long for one long.
+         *
+         * @param other the other string
+         * @return int the edit distance
+         */
+        private int tableDistance(String other) {
+            int[] previous = rows[0];
+            int[] current = rows[1];
+            for (int i = 0; i <= chars.length; i++) {
+                previous[i] = i;
+            }
+            for (int j = 1; j <= other.length(); j++) {
+                char c = other.charAt(j - 1);
+                current[0] = j;
+                for (int i = 1; i <= chars.length; i++) {
+                    int cost = chars[i - 1] == c ? 0 : 1;
+                    current[i] = Math.min(Math.min(current[i - 1], previous[i]) + 1, previous[i - 1] + cost);
+                }
+                int[] swap = previous;
+                previous = current;
+                current = swap;
+            }
+            return previous[chars.length];
+        }
+    }
+
+    /**
+     * A key in the tree, its Songs, and its children by distance.
+     */
+    private static class Node {
+        // The search key
+        private final String key;
+
+        // Songs added under the key; empty once the node is a tombstone
+        private final LinkedHashSet<Song> songs = new LinkedHashSet<Song>(2);
+
+        // Signifies if every Song of the node has been removed
+        private boolean tombstone;
+
+        // Distance of each child's key from this key, at the same position as the child
+        private int[] distances = new int[0];
+
+        // Children, at most one per distance
+        private Node[] children = new Node[0];
+
+        /**
+         * Constructor for a Node
+         *
+         * @param key the search key
+         */
+        Node(String key) {
+            this.key = key;
+        }
+
+        /**
+         * Getter for the child at a distance.
+         *
+         * @param distance distance of the child's key from this key
+         * @return Node the child, or null if there is none
+         */
+        Node child(int distance) {
+            for (int i = 0; i < distances.length; i++) {
+                if (distances[i] == distance) return children[i];
+            }
+            return null;
+        }
+
+        /**
+         * Adds a child at a distance that has none yet.
+         *
+         * @param distance distance of the child's key from this key
+         * @param child    the new child
+         */
+        void addChild(int distance, Node child) {
+            distances = Arrays.copyOf(distances, distances.length + 1);
+            children = Arrays.copyOf(children, children.length + 1);
+            distances[distances.length - 1] = distance;
+            children[children.length - 1] = child;
+        }
+    }
+}
@@ -0,0 +1,406 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * Imports Songs into the catalog in bulk from a CSV or TSV file with the columns title, creator and duration (in seconds).
+ *
+ * The file is read as a stream, one batch of rows at a time, so only a single batch is ever held in memory.
+ * Each batch is validated in parallel with the same rules as uploads from the Artist menu
+ * ({@link Artist#validateSong}), checked for Songs already in the catalog or earlier in the file,
+ * then added with a single {@link SearchService#addSongsToCatalog} call.
+ *
+ * Fields may be wrapped in double quotes, so they can contain the delimiter, line breaks,
+ * or a double quote written twice. A first row whose third field is "duration" is treated
+ * as a header and skipped. Every rejected row is reported with its line number and the reason.
+ */
+public class CatalogImporter {
+    // Rows validated and added together, unless changed
+    public static final int DEFAULT_BATCH_SIZE = 10_000;
+
+    // The catalog Songs are imported into
+    private final SearchService catalog;
+
+    // Rows validated and added together
+    private final int batchSize;
+
+    /**
+     * Constructor for a CatalogImporter using the default batch size.
+     *
+     * @param catalog the catalog to import Songs into
+     */
+    public CatalogImporter(SearchService catalog) {
+        this(catalog, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Constructor for a CatalogImporter.
+     *
+     * @param catalog   the catalog to import Songs into
+     * @param batchSize rows validated and added together (Positive integer >=1)
+     */
+    public CatalogImporter(SearchService catalog, int batchSize) {
+        if (batchSize < 1) throw new IllegalArgumentException("The batch size must be at least 1");
+        this.catalog = catalog;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Imports a file, using tabs as the delimiter if its name ends in ".tsv" and commas otherwise.
+     *
+     * @param file    the file to import, encoded in UTF-8
+     * @param rejects where each rejected row is reported
+     * @return ImportReport counts and speed of the import
+     * @throws IOException if the file cannot be read
+     */
+    public ImportReport importFile(Path file, PrintStream rejects) throws IOException {
+        char delimiter = file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".tsv") ? '\t' : ',';
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return importFrom(reader, delimiter, rejects);
+        }
+    }
+
+    /**
+     * Imports rows from a stream of text.
+     *
+     * @param reader    the rows to import
+     * @param delimiter the character between fields, usually ',' or '\t'
+     * @param rejects   where each rejected row is reported
+     * @return ImportReport counts and speed of the import
+     * @throws IOException if the rows cannot be read
+     */
+    public ImportReport importFrom(Reader reader, char delimiter, PrintStream rejects) throws IOException {
+        long start = System.nanoTime();
+        RowReader rows = new RowReader(reader, delimiter);
+        long read = 0;
+        long imported = 0;
+        long rejected = 0;
+        boolean first = true;
+
+        ArrayList<Row> batch = new ArrayList<Row>(batchSize);
+        Row row;
+        do {
+            row = rows.next();
+            if (row != null) {
+                if (first && isHeader(row)) {
+                    first = false;
+                    continue;
+                }
+                first = false;
+                batch.add(row);
+                read++;
+            }
+            if (batch.size() == batchSize || (row == null && !batch.isEmpty())) {
+                int added = importBatch(batch, rejects);
+                imported += added;
+                rejected += batch.size() - added;
+                batch.clear();
+            }
+        } while (row != null);
+
+        return new ImportReport(read, imported, rejected, System.nanoTime() - start);
+    }
+
+    /**
+     * Validates a batch of rows in parallel, then adds the valid Songs that are not already in the catalog.
+     *
+     * @param batch   the rows to import, in file order
+     * @param rejects where each rejected row is reported
+     * @return int number of Songs added
+     */
+    private int importBatch(ArrayList<Row> batch, PrintStream rejects) {
+        Song[] songs = new Song[batch.size()];
+        String[] reasons = new String[batch.size()];
+        // Each row is checked on its own, so the rows can be shared out across threads
+        IntStream.range(0, batch.size()).parallel().forEach(i -> {
+            Row row = batch.get(i);
+            if (row.error != null) {
+                reasons[i] = row.error;
+                return;
+            }
+            if (row.fields.size() != 3) {
+                reasons[i] = "expected 3 fields (title, creator, duration) but found " + row.fields.size();
+                return;
+            }
+            int duration;
+            try {
+                duration = Integer.parseInt(row.fields.get(2).trim());
+            } catch (NumberFormatException e) {
+                reasons[i] = "duration is not a whole number of seconds";
+                return;
+            }
+            Song song = new Song(row.fields.get(0).trim(), row.fields.get(1).trim(), duration);
+            reasons[i] = Artist.validateSong(song);
+            if (reasons[i] == null) {
+                songs[i] = song;
+            }
+        });
+
+        // Duplicates are found in file order, so the first copy of a Song is the one imported
+        HashSet<Song> seen = new HashSet<Song>();
+        ArrayList<Song> accepted = new ArrayList<Song>(batch.size());
+        for (int i = 0; i < songs.length; i++) {
+            if (songs[i] == null) {
+                reject(rejects, batch.get(i), reasons[i]);
+            } else if (catalog.globalCatContains(songs[i])) {
+                reject(rejects, batch.get(i), "already in the catalog");
+            } else if (!seen.add(songs[i])) {
+                reject(rejects, batch.get(i), "duplicate of an earlier row");
+            } else {
+                accepted.add(songs[i]);
+            }
+        }
+        return catalog.addSongsToCatalog(accepted).size();
+    }
+
+    /**
+     * Reports a rejected row.
+     *
+     * @param rejects where the row is reported
+     * @param row     the rejected row
+     * @param reason  why it was rejected
+     */
+    private static void reject(PrintStream rejects, Row row, String reason) {
+        rejects.println("line " + row.line + ": " + reason + ": " + String.join(" | ", row.fields));
+    }
+
+    /**
+     * Signifies if a row is a header naming the columns.
+     *
+     * @param row the first row of the file
+     * @return boolean true if its third field is "duration", ignoring case and surrounding spaces
+     */
+    private static boolean isHeader(Row row) {
+        return row.error == null && row.fields.size() == 3 && row.fields.get(2).trim().equalsIgnoreCase("duration");
+    }
+
+    /**
+     * One row of the file: its fields, and the line it starts on.
+     */
+    private static class Row {
+        // Line number the row starts on, counting from 1
+        private final long line;
+
+        // The row's fields, with quotes removed
+        private final ArrayList<String> fields;
+
+        // Why the row could not be read, or null if it was read correctly
+        private final String error;
+
+        /**
+         * Constructor for a Row
+         *
+         * @param line   line number the row starts on
+         * @param fields the row's fields
+         * @param error  why the row could not be read, or null
+         */
+        Row(long line, ArrayList<String> fields, String error) {
+            this.line = line;
+            this.fields = fields;
+            this.error = error;
+        }
+    }
+
+    /**
+     * Splits a stream of text into rows of fields, one row at a time.
+     * Blank lines are skipped. Line breaks may be "\n", "\r\n" or "\r".
+     */
+    private static class RowReader {
+        // The text being read
+        private final Reader in;
+
+        // The character between fields
+        private final char delimiter;
+
+        // The current line number, counting from 1
+        private long line = 1;
+
+        // The character after the last row's line break, or -2 if it has not been read yet
+        private int pending = -2;
+
+        /**
+         * Constructor for a RowReader
+         *
+         * @param in        the text being read; buffered by the caller
+         * @param delimiter the character between fields
+         */
+        RowReader(Reader in, char delimiter) {
+            this.in = in;
+            this.delimiter = delimiter;
+        }
+
+        /**
+         * Reads the next row.
+         *
+         * @return Row the next non-blank row, or null at the end of the text
+         * @throws IOException if the text cannot be read
+         */
+        Row next() throws IOException {
+            int c = read();
+            while (c == '\n' || c == '\r') { // Skip blank lines
+                c = endLine(c);
+            }
+            if (c == -1) return null;
+
+            long startLine = line;
+            ArrayList<String> fields = new ArrayList<String>(3);
+            StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+            while (true) {
+                if (quoted) {
+                    if (c == -1) {
+                        fields.add(field.toString());
+                        return new Row(startLine, fields, "quoted field is never closed");
+                    } else if (c == '"') {
+                        c = read();
+                        if (c == '"') {
+                            field.append('"'); // An escaped quote
+                            c = read();
+                        } else {
+                            quoted = false;
+                        }
+                        continue;
+                    } else if (c == '\r' || c == '\n') {
+                        field.append('\n');
+                        c = endLine(c);
+                        continue;
+                    }
+                    field.append((char) c);
+                } else if (c == -1 || c == '\n' || c == '\r') {
+                    fields.add(field.toString());
+                    if (c != -1) pending = endLine(c); // The first character of the next row
+                    return new Row(startLine, fields, null);
+                } else if (c == delimiter) {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else if (c == '"' && field.length() == 0) {
+                    quoted = true;
+                } else {
+                    field.append((char) c);
+                }
+                c = read();
+            }
+        }
+
+        /**
+         * Moves past a line break, treating "\r\n" as one break.
+         *
+         * @param c the '\r' or '\n' just read
+         * @return int the character after the line break
+         * @throws IOException if the text cannot be read
+         */
+        private int endLine(int c) throws IOException {
+            line++;
+            int after = read();
+            if (c == '\r' && after == '\n') {
+                after = read();
+            }
+            return after;
+        }
+
+        /**
+         * Reads one character, starting with the one left by the last row.
+         *
+         * @return int the character, or -1 at the end of the text
+         * @throws IOException if the text cannot be read
+         */
+        private int read() throws IOException {
+            if (pending != -2) {
+                int c = pending;
+                pending = -2;
+                return c;
+            }
+            return in.read();
+        }
+    }
+
+    /**
+     * Counts and speed of one import.
+     */
+    public static class ImportReport {
+        // Rows read from the file, not counting a header
+        private final long rowsRead;
+
+        // Songs added to the catalog
+        private final long rowsImported;
+
+        // Rows rejected as invalid or duplicate
+        private final long rowsRejected;
+
+        // Time the import took
+        private final long elapsedNanos;
+
+        /**
+         * Constructor for an ImportReport
+         *
+         * @param rowsRead     rows read, not counting a header
+         * @param rowsImported Songs added to the catalog
+         * @param rowsRejected rows rejected
+         * @param elapsedNanos time the import took, in nanoseconds
+         */
+        public ImportReport(long rowsRead, long rowsImported, long rowsRejected, long elapsedNanos) {
+            this.rowsRead = rowsRead;
+            this.rowsImported = rowsImported;
+            this.rowsRejected = rowsRejected;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * Getter for the number of rows read, not counting a header.
+         *
+         * @return long rows read
+         */
+        public long getRowsRead() {
+            return rowsRead;
+        }
+
+        /**
+         * Getter for the number of Songs added to the catalog.
+         *
+         * @return long rows imported
+         */
+        public long getRowsImported() {
+            return rowsImported;
+        }
+
+        /**
+         * Getter for the number of rows rejected as invalid or duplicate.
+         *
+         * @return long rows rejected
+         */
+        public long getRowsRejected() {
+            return rowsRejected;
+        }
+
+        /**
+         * Getter for the time the import took.
+         *
+         * @return long elapsed time in nanoseconds
+         */
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * Getter for the import speed.
+         *
+         * @return double rows read per second
+         */
+        public double getRowsPerSecond() {
+            return elapsedNanos == 0 ? 0 : rowsRead * 1_000_000_000.0 / elapsedNanos;
+        }
+
+        /**
+         * Override of the toString() method; prints a summary of the import
+         *
+         * @return String descriptor of an ImportReport object
+         */
+        @Override
+        public String toString() {
+            return String.format("%d rows read, %d imported, %d rejected in %.2f s (%.0f rows/s)",
+                rowsRead, rowsImported, rowsRejected, elapsedNanos / 1e9, getRowsPerSecond());
+        }
+    }
+}
@@ -0,0 +1,224 @@
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * A {@link SongStore} that holds Songs as a struct of arrays on the heap instead of one object per Song,
+ * for catalogs too large to keep three objects per Song.
+ *
+ * Each Song is given a dense int id, in the order Songs are added, and its fields are kept at that
+ * position in a few shared arrays:
+ * <ul>
+ *   <li>titles are encoded as UTF-8 one after another in a single byte arena, with each title's start offset in an int[]</li>
+ *   <li>creators are dictionary encoded: each distinct name is kept once, and each Song holds the name's int code</li>
+ *   <li>durations are kept in an int[]</li>
+ * </ul>
+ * So a Song costs its title's bytes plus 16 bytes, and spare capacity while the arrays grow. A Song object
+ * with its title String costs about 90 bytes, and over 110 when, as after an import, it also has its own creator String;
+ * the memory suite of {@link PerformanceBenchmark} measures both.
+ *
+ * {@link #get} returns a Song that is a view over a record, reading its title and creator from the store
+ * when asked, so views are meant to be made as needed rather than kept. The scanning methods compare
+ * records in place, without making a Song or a String for each record.
+ */
+public class CompactSongStore implements SongStore {
+    // Initial number of records, and bytes of title text, that the arrays hold before growing
+    private static final int INITIAL_CAPACITY = 16;
+
+    // Every title's UTF-8 bytes, one after another in id order
+    private byte[] titleArena;
+
+    // Number of bytes of the arena in use
+    private int arenaSize;
+
+    // Where each id's title starts in the arena; the title ends where the next id's starts
+    private int[] titleStarts;
+
+    // Each id's creator code
+    private int[] creatorCodes;
+
+    // Each id's duration
+    private int[] durations;
+
+    // The id of the Song each record was added from
+    private int[] songIds;
+
+    // Each distinct creator name, at the position of its code
+    private ArrayList<String> creatorNames;
+
+    // Maps each distinct creator name to its code
+    private HashMap<String, Integer> creatorCodesByName;
+
+    // Ids whose Song has been removed
+    private BitSet removed;
+
+    // Number of ids given out, including those of removed Songs
+    private int idCount;
+
+    /**
+     * Constructor for an empty CompactSongStore
+     */
+    public CompactSongStore() {
+        this.titleArena = new byte[INITIAL_CAPACITY * 16];
+        this.arenaSize = 0;
+        this.titleStarts = new int[INITIAL_CAPACITY + 1];
+        this.creatorCodes = new int[INITIAL_CAPACITY];
+        this.durations = new int[INITIAL_CAPACITY];
+        this.songIds = new int[INITIAL_CAPACITY];
+        this.creatorNames = new ArrayList<String>();
+        this.creatorCodesByName = new HashMap<String, Integer>();
+        this.removed = new BitSet();
+        this.idCount = 0;
+    }
+
+    @Override
+    public int add(int songId, String title, String creator, int duration) {
+        if (title == null || creator == null) throw new IllegalArgumentException("The title and creator must not be null");
+        byte[] bytes = title.getBytes(StandardCharsets.UTF_8);
+        if (arenaSize + bytes.length > titleArena.length) {
+            titleArena = Arrays.copyOf(titleArena, Math.max(titleArena.length * 2, arenaSize + bytes.length));
+        }
+        if (idCount == durations.length) {
+            titleStarts = Arrays.copyOf(titleStarts, idCount * 2 + 1);
+            creatorCodes = Arrays.copyOf(creatorCodes, idCount * 2);
+            durations = Arrays.copyOf(durations, idCount * 2);
+            songIds = Arrays.copyOf(songIds, idCount * 2);
+        }
+        System.arraycopy(bytes, 0, titleArena, arenaSize, bytes.length);
+        titleStarts[idCount] = arenaSize;
+        arenaSize += bytes.length;
+        titleStarts[idCount + 1] = arenaSize;
+        creatorCodes[idCount] = creatorCodesByName.computeIfAbsent(creator, name -> {
+            creatorNames.add(name);
+            return creatorNames.size() - 1;
+        });
+        durations[idCount] = duration;
+        songIds[idCount] = songId;
+        return idCount++;
+    }
+
+    @Override
+    public boolean remove(int id) {
+        checkId(id);
+        if (removed.get(id)) return false;
+        removed.set(id);
+        return true;
+    }
+
+    @Override
+    public boolean contains(int id) {
+        return id >= 0 && id < idCount && !removed.get(id);
+    }
+
+    @Override
+    public int size() {
+        return idCount - removed.cardinality();
+    }
+
+    @Override
+    public int idCount() {
+        return idCount;
+    }
+
+    @Override
+    public int creatorCount() {
+        return creatorNames.size();
+    }
+
+    @Override
+    public int getSongId(int id) {
+        checkId(id);
+        return songIds[id];
+    }
+
+    @Override
+    public String getTitle(int id) {
+        checkId(id);
+        return new String(titleArena, titleStarts[id], titleStarts[id + 1] - titleStarts[id], StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String getCreatorName(int code) {
+        return creatorNames.get(code);
+    }
+
+    @Override
+    public String getCreator(int id) {
+        checkId(id);
+        return creatorNames.get(creatorCodes[id]);
+    }
+
+    @Override
+    public int getDuration(int id) {
+        checkId(id);
+        return durations[id];
+    }
+
+    @Override
+    public int[] findByTitle(String title) {
+        byte[] query = title.getBytes(StandardCharsets.UTF_8);
+        int[] found = new int[4];
+        int count = 0;
+        for (int id = 0; id < idCount; id++) {
+            int start = titleStarts[id];
+            if (titleStarts[id + 1] - start == query.length
+                    && Arrays.equals(titleArena, start, start + query.length, query, 0, query.length)
+                    && !removed.get(id)) {
+                if (count == found.length) found = Arrays.copyOf(found, count * 2);
+                found[count++] = id;
+            }
+        }
+        return Arrays.copyOf(found, count);
+    }
+
+    @Override
+    public int[] findByCreator(String creator) {
+        Integer code = creatorCodesByName.get(creator);
+        if (code == null) return new int[0];
+        int[] found = new int[4];
+        int count = 0;
+        for (int id = 0; id < idCount; id++) {
+            if (creatorCodes[id] == code && !removed.get(id)) {
+                if (count == found.length) found = Arrays.copyOf(found, count * 2);
+                found[count++] = id;
+            }
+        }
+        return Arrays.copyOf(found, count);
+    }
+
+    @Override
+    public int[] findByCreatorCodes(BitSet codes) {
+        int[] found = new int[16];
+        int count = 0;
+        for (int id = 0; id < idCount; id++) {
+            if (codes.get(creatorCodes[id]) && !removed.get(id)) {
+                if (count == found.length) found = Arrays.copyOf(found, count * 2);
+                found[count++] = id;
+            }
+        }
+        return Arrays.copyOf(found, count);
+    }
+
+    @Override
+    public long estimateBytes() {
+        long bytes = 16L + titleArena.length;
+        bytes += 16L + 4L * titleStarts.length;
+        bytes += 16L + 4L * creatorCodes.length;
+        bytes += 16L + 4L * durations.length;
+        bytes += 16L + 4L * songIds.length;
+        bytes += removed.size() / 8;
+        for (String name : creatorNames) {
+            // The String and its bytes, its slot in the list, and its entry and boxed code in the map
+            bytes += 24 + 16 + name.length() + 4 + 32 + 16;
+        }
+        return bytes;
+    }
+
+    /**
+     * Checks that an id has been given out.
+     *
+     * @param id the id to check
+     */
+    private void checkId(int id) {
+        if (id < 0 || id >= idCount) throw new IndexOutOfBoundsException("No song has the id " + id);
+    }
+}
@@ -0,0 +1,169 @@
+/**
+ * Validates usernames, email addresses and passwords for new accounts.
+ *
+ * Each rule is checked in a single pass over the characters of the input without creating
+ * any objects, so validation stays cheap in retry loops and bulk imports.
+ * The rules accept and reject exactly the same strings as these regular expressions,
+ * which LoginService used to compile on every call:
+ * <ul>
+ *   <li>username: {@code ^[A-Za-z][A-Za-z0-9_]{5,30}$}</li>
+ *   <li>email: {@code ^[a-zA-Z0-9_+&*-]+(?:\.[a-zA-Z0-9_+&*-]+)*@(?:[a-zA-Z0-9-]+\.)+[a-zA-Z]{2,7}$}</li>
+ *   <li>password: {@code ^(?=.*[0-9])(?=.*[a-z])(?=.*[A-Z])(?=.*[@#$%^&+=])(?=\S+$).{8,20}$}</li>
+ * </ul>
+ */
+public class CredentialValidator {
+    /**
+     * Checks that a username starts with a letter and is followed by 5 to 30 letters, digits or underscores.
+     *
+     * @param username the username to validate
+     * @return boolean true if the username is valid; false otherwise
+     */
+    public static boolean isValidUsername(String username) {
+        if (username == null) return false;
+        int length = username.length();
+        if (length < 6 || length > 31 || !isAsciiLetter(username.charAt(0))) return false;
+        for (int i = 1; i < length; i++) {
+            char c = username.charAt(i);
+            if (!isAsciiLetter(c) && !isAsciiDigit(c) && c != '_') return false;
+        }
+        return true;
+    }
+
+    /**
+     * Checks that an email address has a local part of dot-separated words, a single '@',
+     * and a domain of at least two dot-separated labels ending in a 2 to 7 letter top-level domain.
+     *
+     * @param email the email address to validate
+     * @return boolean true if the email address is valid; false otherwise
+     */
+    public static boolean isValidEmail(String email) {
+        if (email == null) return false;
+        int length = email.length();
+        int i = 0;
+
+        // Local part: words of [a-zA-Z0-9_+&*-], separated by single dots, up to the '@'
+        int wordLength = 0;
+        for (; i < length; i++) {
+            char c = email.charAt(i);
+            if (c == '@') break;
+            if (c == '.') {
+                if (wordLength == 0) return false; // Leading dot or two dots in a row
+                wordLength = 0;
+            } else if (isLocalChar(c)) {
+                wordLength++;
+            } else {
+                return false;
+            }
+        }
+        if (i == length || wordLength == 0) return false; // No '@', or nothing (or a dot) right before it
+
+        // Domain: labels of [a-zA-Z0-9-] separated by single dots; the last one is the top-level domain
+        int separators = 0;
+        int labelLength = 0;
+        boolean labelAllLetters = true;
+        for (i++; i < length; i++) {
+            char c = email.charAt(i);
+            if (c == '.') {
+                if (labelLength == 0) return false; // Empty label
+                separators++;
+                labelLength = 0;
+                labelAllLetters = true;
+            } else if (isAsciiLetter(c)) {
+                labelLength++;
+            } else if (isAsciiDigit(c) || c == '-') {
+                labelLength++;
+                labelAllLetters = false;
+            } else {
+                return false;
+            }
+        }
+        return separators > 0 && labelAllLetters && labelLength >= 2 && labelLength <= 7;
+    }
+
+    /**
+     * Checks that a password is 8 to 20 characters with no whitespace, and contains at least
+     * one digit, one lowercase letter, one uppercase letter and one of {@code @#$%^&+=}.
+     * Length is counted in code points, as the regular expression's '.' does.
+     *
+     * @param password the password to validate
+     * @return boolean true if the password is valid; false otherwise
+     */
+    public static boolean isValidPassword(String password) {
+        if (password == null) return false;
+        int length = password.length();
+        int codePoints = 0;
+        boolean digit = false;
+        boolean lower = false;
+        boolean upper = false;
+        boolean special = false;
+        for (int i = 0; i < length; i++) {
+            char c = password.charAt(i);
+            if (isWhitespaceOrLineTerminator(c)) return false;
+            if (isAsciiDigit(c)) {
+                digit = true;
+            } else if (c >= 'a' && c <= 'z') {
+                lower = true;
+            } else if (c >= 'A' && c <= 'Z') {
+                upper = true;
+            } else if (isPasswordSpecial(c)) {
+                special = true;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(password.charAt(i + 1))) {
+                i++; // A surrogate pair is a single character
+            }
+            codePoints++;
+        }
+        return codePoints >= 8 && codePoints <= 20 && digit && lower && upper && special;
+    }
+
+    /**
+     * Signifies if a character is an ASCII letter.
+     *
+     * @param c the character to check
+     * @return boolean true for [A-Za-z]
+     */
+    private static boolean isAsciiLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    /**
+     * Signifies if a character is an ASCII digit.
+     *
+     * @param c the character to check
+     * @return boolean true for [0-9]
+     */
+    private static boolean isAsciiDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * Signifies if a character may appear in the local part of an email address.
+     *
+     * @param c the character to check
+     * @return boolean true for [a-zA-Z0-9_+&*-]
+     */
+    private static boolean isLocalChar(char c) {
+        return isAsciiLetter(c) || isAsciiDigit(c) || c == '_' || c == '+' || c == '&' || c == '*' || c == '-';
+    }
+
+    /**
+     * Signifies if a character counts as a password's special character.
+     *
+     * @param c the character to check
+     * @return boolean true for [@#$%^&+=]
+     */
+    private static boolean isPasswordSpecial(char c) {
+        return c == '@' || c == '#' || c == '$' || c == '%' || c == '^' || c == '&' || c == '+' || c == '=';
+    }
+
+    /**
+     * Signifies if a character is rejected in a password: regex whitespace ({@code \s}) or a line
+     * terminator, which the regular expression's '.' does not match.
+     *
+     * @param c the character to check
+     * @return boolean true for [ \t\n\x0B\f\r], U+0085, U+2028 and U+2029
+     */
+    private static boolean isWhitespaceOrLineTerminator(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r'
+            || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+}
@@ -0,0 +1,211 @@
+import java.util.*;
+
+/**
+ * Reads and writes the small JSON documents exchanged by {@link ApiServer}.
+ *
+ * Request bodies are single objects whose values are strings, numbers, booleans or null. No request needs
+ * nested objects or arrays, so they are rejected rather than parsed. Responses are built by the server
+ * with quote(), which escapes a String for use as a JSON value.
+ */
+final class Json {
+    // The text being parsed
+    private final String text;
+
+    // Position of the next character to read
+    private int position;
+
+    /**
+     * Constructor for a parser; use parseObject() to parse a document.
+     *
+     * @param text the document
+     */
+    private Json(String text) {
+        this.text = text;
+        this.position = 0;
+    }
+
+    /**
+     * Parses a document holding one object with simple values.
+     *
+     * @param text the document
+     * @return Map<String, Object> the object's members in order: each a String, Long, Double, Boolean or null
+     * @throws IllegalArgumentException if the document is not such an object
+     */
+    static Map<String, Object> parseObject(String text) {
+        Json parser = new Json(text);
+        LinkedHashMap<String, Object> members = new LinkedHashMap<String, Object>();
+        parser.expect('{');
+        if (!parser.consume('}')) {
+            do {
+                String name = parser.readString();
+                parser.expect(':');
+                members.put(name, parser.readValue());
+            } while (parser.consume(','));
+            parser.expect('}');
+        }
+        parser.skipWhitespace();
+        if (parser.position < text.length()) throw parser.error("Unexpected text after the object");
+        return members;
+    }
+
+    /**
+     * Writes a String as a JSON string, escaping what JSON requires.
+     *
+     * @param value the String; null is written as null
+     * @return String the quoted value
+     */
+    static String quote(String value) {
+        if (value == null) return "null";
+        StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':  quoted.append("\\\""); break;
+                case '\\': quoted.append("\\\\"); break;
+                case '\n': quoted.append("\\n"); break;
+                case '\r': quoted.append("\\r"); break;
+                case '\t': quoted.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        quoted.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        quoted.append(c);
+                    }
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    /**
+     * Reads a simple value.
+     *
+     * @return Object a String, Long, Double, Boolean or null
+     */
+    private Object readValue() {
+        skipWhitespace();
+        if (position >= text.length()) throw error("Expected a value");
+        char c = text.charAt(position);
+        if (c == '"') return readString();
+        if (text.startsWith("true", position)) {
+            position += 4;
+            return Boolean.TRUE;
+        }
+        if (text.startsWith("false", position)) {
+            position += 5;
+            return Boolean.FALSE;
+        }
+        if (text.startsWith("null", position)) {
+            position += 4;
+            return null;
+        }
+        if (c == '-' || (c >= '0' && c <= '9')) return readNumber();
+        throw error("Only strings, numbers, booleans and null are accepted as values");
+    }
+
+    /**
+     * Reads a string, decoding its escapes.
+     *
+     * @return String the string's value
+     */
+    private String readString() {
+        expect('"');
+        StringBuilder value = new StringBuilder();
+        while (position < text.length()) {
+            char c = text.charAt(position++);
+            if (c == '"') return value.toString();
+            if (c != '\\') {
+                value.append(c);
+                continue;
+            }
+            if (position >= text.length()) break;
+            char escaped = text.charAt(position++);
+            switch (escaped) {
+                case '"':
+                case '\\':
+                case '/': value.append(escaped); break;
+                case 'b': value.append('\b'); break;
+                case 'f': value.append('\f'); break;
+                case 'n': value.append('\n'); break;
+                case 'r': value.append('\r'); break;
+                case 't': value.append('\t'); break;
+                case 'u':
+                    if (position + 4 > text.length()) throw error("Incomplete escape");
+                    try {
+                        value.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                    } catch (NumberFormatException e) {
+                        throw error("Invalid escape");
+                    }
+                    position += 4;
+                    break;
+                default:
+                    throw error("Invalid escape");
+            }
+        }
+        throw error("Unterminated string");
+    }
+
+    /**
+     * Reads a number.
+     *
+     * @return Object a Long if the number is a whole number that fits one, otherwise a Double
+     */
+    private Object readNumber() {
+        int start = position;
+        while (position < text.length() && "+-0123456789.eE".indexOf(text.charAt(position)) >= 0) {
+            position++;
+        }
+        String number = text.substring(start, position);
+        try {
+            return Long.parseLong(number);
+        } catch (NumberFormatException e) {
+            try {
+                return Double.parseDouble(number);
+            } catch (NumberFormatException notANumber) {
+                throw error("Invalid number");
+            }
+        }
+    }
+
+    /**
+     * Skips whitespace, then reads a character that must come next.
+     *
+     * @param c the character
+     */
+    private void expect(char c) {
+        if (!consume(c)) throw error("Expected '" + c + "'");
+    }
+
+    /**
+     * Skips whitespace, then reads a character if it comes next.
+     *
+     * @param c the character
+     * @return boolean true if it was read; false otherwise
+     */
+    private boolean consume(char c) {
+        skipWhitespace();
+        if (position < text.length() && text.charAt(position) == c) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Moves past any whitespace.
+     */
+    private void skipWhitespace() {
+        while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+            position++;
+        }
+    }
+
+    /**
+     * Makes the exception thrown for a malformed document.
+     *
+     * @param message what is wrong
+     * @return IllegalArgumentException saying what is wrong, and where
+     */
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message + " at position " + position);
+    }
+}
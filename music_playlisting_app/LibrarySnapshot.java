@@ -0,0 +1,102 @@
+import java.util.*;
+
+/**
+ * An immutable version of a Listener's library: a {@link PlaylistSnapshot} of each of its Playlists,
+ * all taken at the same moment.
+ *
+ * A Listener publishes a new LibrarySnapshot whenever a playlist is created or deleted, or any of its playlists
+ * changes, so a reader holding one sees every playlist as it was at that moment, from any thread, without locks.
+ * Each snapshot has a version, one more than the snapshot it was made from. A new version shares every
+ * playlist's snapshot with the version it was made from, and copies only the list of them.
+ */
+public final class LibrarySnapshot extends AbstractList<PlaylistSnapshot> implements RandomAccess {
+    // Counts the versions of the library, starting from 0 for an empty one
+    private final long version;
+
+    // A snapshot of each playlist, in library order
+    private final PlaylistSnapshot[] playlists;
+
+    /**
+     * Constructor for an empty library's first version
+     */
+    LibrarySnapshot() {
+        this(0, new PlaylistSnapshot[0]);
+    }
+
+    /**
+     * Constructor for a LibrarySnapshot
+     *
+     * @param version   the snapshot's version
+     * @param playlists a snapshot of each playlist, which must never be changed afterwards
+     */
+    private LibrarySnapshot(long version, PlaylistSnapshot[] playlists) {
+        this.version = version;
+        this.playlists = playlists;
+    }
+
+    /**
+     * Getter for the snapshot's version. Each change to the library or one of its playlists publishes the next version.
+     *
+     * @return long the version, 0 for the library as it was made
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    @Override
+    public PlaylistSnapshot get(int index) {
+        return playlists[index];
+    }
+
+    @Override
+    public int size() {
+        return playlists.length;
+    }
+
+    /**
+     * Makes the next version, with a playlist added to the end of the library.
+     *
+     * @param playlist the new playlist's snapshot
+     * @return LibrarySnapshot the next version
+     */
+    LibrarySnapshot withAdded(PlaylistSnapshot playlist) {
+        PlaylistSnapshot[] next = Arrays.copyOf(playlists, playlists.length + 1);
+        next[playlists.length] = playlist;
+        return new LibrarySnapshot(version + 1, next);
+    }
+
+    /**
+     * Makes the next version, with one playlist's snapshot replaced by a newer one.
+     *
+     * @param index    the playlist's position in the library
+     * @param playlist the playlist's new snapshot
+     * @return LibrarySnapshot the next version
+     */
+    LibrarySnapshot withReplaced(int index, PlaylistSnapshot playlist) {
+        PlaylistSnapshot[] next = playlists.clone();
+        next[index] = playlist;
+        return new LibrarySnapshot(version + 1, next);
+    }
+
+    /**
+     * Makes the next version, with the playlist at a position removed.
+     *
+     * @param index the playlist's position in the library
+     * @return LibrarySnapshot the next version
+     */
+    LibrarySnapshot withRemovedAt(int index) {
+        PlaylistSnapshot[] next = new PlaylistSnapshot[playlists.length - 1];
+        System.arraycopy(playlists, 0, next, 0, index);
+        System.arraycopy(playlists, index + 1, next, index, next.length - index);
+        return new LibrarySnapshot(version + 1, next);
+    }
+
+    /**
+     * Makes the next version, with every playlist removed.
+     *
+     * @return LibrarySnapshot the next version
+     */
+    LibrarySnapshot cleared() {
+        return new LibrarySnapshot(version + 1, new PlaylistSnapshot[0]);
+    }
+}
@@ -1,15 +1,40 @@
 import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
 
 /**
  * Class representing a Listener type of User.  Extends User class.
  * 
  * Listeners store an ArrayList of Playlists representing their library.
  * Methods here serve to modify that library's content.
+ *
+ * Changes to the library and to its Playlists are made one at a time, while holding the lock of the library's
+ * {@link SongRegistry}. After each change the Listener publishes an immutable list of its Playlists and an
+ * immutable, versioned {@link LibrarySnapshot} of their contents, so readers on other threads can iterate
+ * either without locks and without meeting a change in progress.
  */
 public class Listener extends User {
-    // Represents the library as a collection of Playlists
+    // Represents the library as a collection of Playlists; only changed while holding lock
     private ArrayList<Playlist> library;
 
+    // The Playlists of the library as last published, read without locks
+    private volatile List<Playlist> playlists;
+
+    // The contents of the library as last published, read without locks
+    private volatile LibrarySnapshot current;
+
+    // Gives the Songs in the library's tracklists their ids, shared by every Playlist in the library
+    private final SongRegistry songIds;
+
+    // The registry's lock, held while the library or any of its Playlists changes
+    private final ReentrantLock lock;
+
+    // Records changes to the library so it can be restored on the next start
+    private MutationLog mutationLog;
+
+    // The index of the registry holding this Listener, where its Playlists record their Songs; null if unregistered
+    private PlaylistIndex playlistIndex;
+
     /**
      * Constructor for Listener-type Users.
      *
@@ -22,6 +47,47 @@ public class Listener extends User {
     public Listener(String email, String username, String password, int id, ArrayList<Playlist> library) {
         super(email, username, password, id); // Inherits from User class
         this.library = new ArrayList<Playlist>();
+        this.playlists = List.of();
+        this.current = new LibrarySnapshot();
+        this.songIds = new SongRegistry();
+        this.lock = songIds.getLock();
+        this.mutationLog = MutationLog.NONE;
+        this.playlistIndex = null;
+    }
+
+    /**
+     * Setter for the MutationLog told about every change to the library and its Playlists.
+     *
+     * @param mutationLog the log to record changes to; null records nothing
+     */
+    public void setMutationLog(MutationLog mutationLog) {
+        lock.lock();
+        try {
+            this.mutationLog = mutationLog == null ? MutationLog.NONE : mutationLog;
+            for (Playlist p : library) {
+                p.setMutationLog(this.mutationLog);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Setter for the PlaylistIndex the library's Playlists record their Songs in.
+     * The UserRegistry sets this when the Listener is added, and clears it when the Listener is removed.
+     *
+     * @param playlistIndex the registry's index, or null to leave it
+     */
+    void setPlaylistIndex(PlaylistIndex playlistIndex) {
+        lock.lock();
+        try {
+            this.playlistIndex = playlistIndex;
+            for (Playlist p : library) {
+                p.setPlaylistIndex(playlistIndex);
+            }
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -31,8 +97,18 @@ public class Listener extends User {
      * @return Playlist object of the new playlist.  Any string is valid.
      */
     public Playlist createNewPlaylist(String playlistName) {
-        Playlist newPlaylist = new Playlist(playlistName, this.getUsername(), new ArrayList<Song>());
-        library.add(newPlaylist);  // Add the new playlist to the listener's list of playlists
+        Playlist newPlaylist = new Playlist(playlistName, this.getUsername(), new ArrayList<Song>(), songIds);
+        lock.lock();
+        try {
+            library.add(newPlaylist);  // Add the new playlist to the listener's list of playlists
+            newPlaylist.setOwner(this);
+            publish(current.withAdded(newPlaylist.snapshot()));
+            newPlaylist.setMutationLog(mutationLog);
+            newPlaylist.setPlaylistIndex(playlistIndex);
+            mutationLog.playlistCreated(this, newPlaylist);
+        } finally {
+            lock.unlock();
+        }
         return newPlaylist;
     }
 
@@ -42,10 +118,60 @@ public class Listener extends User {
      * @return void
      */
     public void clearLibrary() {
-        library.clear();
+        lock.lock();
+        try {
+            removeAllPlaylists();
+            mutationLog.libraryCleared(this);
+        } finally {
+            lock.unlock();
+        }
         System.out.println("All of " + this.getUsername() + "'s playlists have been removed.");
     }
 
+    /**
+     * Removes every Playlist from the library without printing or recording anything,
+     * as when a change that was already recorded is restored.
+     *
+     * @return void
+     */
+    public void removeAllPlaylists() {
+        lock.lock();
+        try {
+            for (Playlist p : library) {
+                p.release(); // Deleted playlists should no longer be found when a Song is removed from the catalog
+                p.setMutationLog(MutationLog.NONE);
+                p.setOwner(null);
+            }
+            library.clear();
+            publish(current.cleared());
+            compactSongIdsIfDue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the Playlist at an index from the library without printing or recording anything,
+     * as when a change that was already recorded is restored.
+     *
+     * @param index position in the library (Positive integer >=0, below the library's size)
+     * @return Playlist the Playlist removed
+     */
+    public Playlist removePlaylistAtIndex(int index) {
+        lock.lock();
+        try {
+            Playlist removed = library.remove(index);
+            removed.release(); // Deleted playlists should no longer be found when a Song is removed from the catalog
+            removed.setMutationLog(MutationLog.NONE);
+            removed.setOwner(null);
+            publish(current.withRemovedAt(index));
+            compactSongIdsIfDue();
+            return removed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
     /**
      * Getter for a specific playlist from the Listener's library based on an index.
      * Before this method is run the user is printed a list of their playlists with
@@ -55,36 +181,118 @@ public class Listener extends User {
      * @return Playlist object of the desired playlist
      */
     public Playlist getPlaylistAtIndex(int index) {
-        return library.get(index);
+        return playlists.get(index);
+    }
+
+    /**
+     * Runs an action on the Playlist at an index while holding the library's lock, so the Playlist cannot be
+     * deleted, or another take its place, until the action is done.
+     *
+     * @param index  position in the library (Positive integer >=0)
+     * @param action what to do with the Playlist; given null if no Playlist has the index
+     * @return T what action returns
+     */
+    public <T> T withPlaylistAtIndex(int index, Function<Playlist, T> action) {
+        lock.lock();
+        try {
+            return action.apply(index < library.size() ? library.get(index) : null);
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
      * Deletes a specific playlist from the Listener's library based on an index.
      *
      * @param index an integer representing the desired playlist.  The index is validated inside the method.
-     * @return void
+     * @return boolean true if a playlist was deleted; false if the index was invalid
      */
-    public void deletePlaylistAtIndex(int index) {
-        // Validates the user input
-        if (library.size() <= 0) {
-            System.out.print("There are no playlists to delete");
-            return;
-        } else if (index < library.size() && index >= 0) { // We directly use Java's count-from-0 indexes here, so we need to allow values 0 and above so long as they are within the range of the Library's indexes.
-            Playlist deleted = library.get(index);
-            library.remove(index);
-            System.out.println("The playlist '" + deleted.getName() + "' has been deleted from " + this.getUsername() + "'s library.");
-        } else {
-            System.out.println("Invalid index.");
+    public boolean deletePlaylistAtIndex(int index) {
+        Playlist deleted;
+        lock.lock();
+        try {
+            // Validates the user input
+            if (library.size() <= 0) {
+                System.out.print("There are no playlists to delete");
+                return false;
+            } else if (index < library.size() && index >= 0) { // We directly use Java's count-from-0 indexes here, so we need to allow values 0 and above so long as they are within the range of the Library's indexes.
+                deleted = removePlaylistAtIndex(index);
+                mutationLog.playlistDeleted(this, index);
+            } else {
+                System.out.println("Invalid index.");
+                return false;
+            }
+        } finally {
+            lock.unlock();
         }
+        System.out.println("The playlist '" + deleted.getName() + "' has been deleted from " + this.getUsername() + "'s library.");
+        return true;
     }
 
     /**
      * Getter for the Listener's 'library', or collection of Playlists 
+     * The list is immutable: it holds the Playlists the library had when it was last changed, so it can be
+     * iterated while Playlists are created and deleted. The Playlists themselves are live; use snapshot() for
+     * their contents at one moment.
      * 
-     * @return ArrayList<Playlist> representing the Listener's library
+     * @return List<Playlist> representing the Listener's library
+     */
+    public List<Playlist> getLibrary() {
+        return playlists;
+    }
+
+    /**
+     * Getter for the latest published version of the library's contents.
+     * The snapshot never changes, so it can be kept and iterated from any thread while the library changes.
+     *
+     * @return LibrarySnapshot a snapshot of every Playlist in the library, as it is now
+     */
+    public LibrarySnapshot snapshot() {
+        return current;
+    }
+
+    /**
+     * Publishes a new version of one of the library's Playlists as part of the library.
+     * Called by the Playlist while holding the library's lock.
+     *
+     * @param playlist the Playlist that changed
+     * @param version  its new snapshot
+     */
+    void playlistChanged(Playlist playlist, PlaylistSnapshot version) {
+        int index = library.indexOf(playlist);
+        if (index >= 0) {
+            current = current.withReplaced(index, version);
+        }
+    }
+
+    /**
+     * Numbers the registry's song ids again from 0, and has every Playlist in the library publish a version
+     * holding its new ids. Called by a Playlist while holding the library's lock, once the registry is due.
+     */
+    void compactSongIds() {
+        int[] newIds = songIds.compact();
+        for (Playlist p : library) {
+            p.remapSongIds(newIds);
+        }
+    }
+
+    /**
+     * Compacts the registry's song ids if enough have been released, e.g. by deleting Playlists.
+     */
+    private void compactSongIdsIfDue() {
+        if (songIds.isCompactionDue()) {
+            compactSongIds();
+        }
+    }
+
+    /**
+     * Publishes a new version of the library, together with the list of its Playlists.
+     *
+     * @param next the new version
      */
-    public ArrayList<Playlist> getLibrary() {
-        return library;
+    private void publish(LibrarySnapshot next) {
+        current = next;
+        playlists = List.copyOf(library);
     }
 
     /**
@@ -95,6 +303,7 @@ public class Listener extends User {
      */
     public void listLibrary() {
         int i = 0;
+        List<Playlist> library = playlists;
         // Checks the amount of playlists before trying to print data on them.
         if (library.size() > 0) {
             System.out.println("=== " + this.getUsername() + "'s Playlists ===");
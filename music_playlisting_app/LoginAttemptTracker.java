@@ -0,0 +1,405 @@
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Tracks failed login attempts and lockouts for LoginService, using a bounded amount of memory.
+ *
+ * <p>A username is tracked from its first login attempt until one of these happens:</p>
+ * <ul>
+ *   <li>the user logs in successfully,</li>
+ *   <li>its 10-minute lockout expires,</li>
+ *   <li>it goes a full idle period without another attempt, or</li>
+ *   <li>it does not belong to any account and the cap on unknown usernames is reached.</li>
+ * </ul>
+ *
+ * <p>Expired and idle entries are swept out at most once per sweep interval, by whichever
+ * login thread first notices the interval has passed, so no background thread is needed.
+ * Known accounts can therefore hold at most one entry each, and unknown usernames, as
+ * tried in a credential-stuffing run, are capped.</p>
+ *
+ * <p>All methods are safe to call from many threads at once.</p>
+ */
+public class LoginAttemptTracker {
+    /**
+     * Number of failed login attempts that locks an account.
+     */
+    public static final int MAX_ATTEMPTS = 3;
+
+    /**
+     * How long an account stays locked, in milliseconds (10 minutes).
+     */
+    public static final long LOCKOUT_MILLIS = 600_000;
+
+    /**
+     * Default time without attempts after which an unlocked username's failures are forgotten (10 minutes).
+     */
+    public static final long DEFAULT_IDLE_MILLIS = 600_000;
+
+    /**
+     * Default minimum time between two sweeps of expired and idle entries (1 minute).
+     */
+    public static final long DEFAULT_SWEEP_INTERVAL_MILLIS = 60_000;
+
+    /**
+     * Default cap on the number of tracked usernames that do not belong to any account.
+     */
+    public static final int DEFAULT_UNKNOWN_CAPACITY = 10_000;
+
+    /**
+     * Rough heap cost of one tracked username besides the characters of the name itself:
+     * the map node, the entry and its counter, and the String and array headers.
+     */
+    private static final int ESTIMATED_ENTRY_BYTES = 120;
+
+    // Maps each tracked username to its attempt state
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    // Number of tracked usernames that did not belong to an account when first tried
+    private final AtomicInteger unknownCount = new AtomicInteger();
+
+    // Signifies if a thread is currently evicting unknown usernames, so only one does at a time
+    private final AtomicBoolean evictingUnknown = new AtomicBoolean();
+
+    // Time (in milliseconds) at or after which the next sweep is due
+    private final AtomicLong nextSweep;
+
+    // Counts entries removed because their lockout expired
+    private final AtomicLong expiredLockouts = new AtomicLong();
+
+    // Counts entries removed because they sat idle for a full idle period
+    private final AtomicLong idleEvictions = new AtomicLong();
+
+    // Counts unknown usernames removed to stay within the cap
+    private final AtomicLong capacityEvictions = new AtomicLong();
+
+    // Counts accounts locked since the tracker was created
+    private final AtomicLong lockouts = new AtomicLong();
+
+    // Maximum number of unknown usernames tracked at once
+    private final int unknownCapacity;
+
+    // Time without attempts after which an unlocked username is forgotten
+    private final long idleMillis;
+
+    // Minimum time between two sweeps
+    private final long sweepIntervalMillis;
+
+    // Source of the current time in milliseconds
+    private final LongSupplier clock;
+
+    /**
+     * Constructor for a LoginAttemptTracker with the default limits and the system clock.
+     */
+    public LoginAttemptTracker() {
+        this(DEFAULT_UNKNOWN_CAPACITY, DEFAULT_IDLE_MILLIS, DEFAULT_SWEEP_INTERVAL_MILLIS, System::currentTimeMillis);
+    }
+
+    /**
+     * Constructor for a LoginAttemptTracker with custom limits.
+     *
+     * @param unknownCapacity     maximum number of unknown usernames tracked at once (at least 1)
+     * @param idleMillis          time without attempts after which an unlocked username is forgotten
+     * @param sweepIntervalMillis minimum time between two sweeps
+     * @param clock               source of the current time in milliseconds
+     */
+    public LoginAttemptTracker(int unknownCapacity, long idleMillis, long sweepIntervalMillis, LongSupplier clock) {
+        if (unknownCapacity < 1) {
+            throw new IllegalArgumentException("unknownCapacity must be at least 1");
+        }
+        this.unknownCapacity = unknownCapacity;
+        this.idleMillis = idleMillis;
+        this.sweepIntervalMillis = sweepIntervalMillis;
+        this.clock = clock;
+        this.nextSweep = new AtomicLong(clock.getAsLong() + sweepIntervalMillis);
+    }
+
+    /**
+     * Checks whether a username is currently locked.
+     * A lockout that has expired is cleared, giving the user three fresh attempts.
+     *
+     * @param username the username to check
+     * @return boolean true if the username is locked; false otherwise
+     */
+    public boolean isLocked(String username) {
+        sweepIfDue();
+        Entry entry = entries.get(username);
+        if (entry == null || entry.lockedAt == 0) {
+            return false;
+        }
+        if (clock.getAsLong() - entry.lockedAt < LOCKOUT_MILLIS) {
+            return true;
+        }
+        evict(username, entry, expiredLockouts);
+        return false;
+    }
+
+    /**
+     * Claims one of a username's login attempts before its password is checked.
+     *
+     * <p>The count is raised with a compare-and-set loop, so two threads can never
+     * claim the same attempt and at most three attempts are ever claimed per lockout.</p>
+     *
+     * @param username  the username being logged in to
+     * @param knownUser true if the username belongs to a registered account
+     * @return Attempt the claimed attempt, or null if no attempts are left
+     */
+    public Attempt beginAttempt(String username, boolean knownUser) {
+        Entry entry = entries.computeIfAbsent(username, k -> {
+            if (!knownUser) {
+                unknownCount.incrementAndGet();
+            }
+            return new Entry(!knownUser);
+        });
+        entry.lastAttempt = clock.getAsLong();
+        if (!knownUser && unknownCount.get() > unknownCapacity) {
+            evictUnknown();
+        }
+        while (true) {
+            int used = entry.attempts.get();
+            if (used >= MAX_ATTEMPTS) {
+                return null;
+            }
+            if (entry.attempts.compareAndSet(used, used + 1)) {
+                return new Attempt(username, entry, used + 1);
+            }
+        }
+    }
+
+    /**
+     * Records that an attempt logged in successfully, forgetting the username's failures.
+     *
+     * @param attempt the attempt that succeeded
+     */
+    public void succeeded(Attempt attempt) {
+        evict(attempt.username, attempt.entry, null);
+    }
+
+    /**
+     * Records that an attempt failed; the thread that fails the last allowed attempt locks the account.
+     *
+     * @param attempt the attempt that failed
+     * @return boolean true if this failure locked the account; false otherwise
+     */
+    public boolean failed(Attempt attempt) {
+        if (attempt.number < MAX_ATTEMPTS) {
+            return false;
+        }
+        attempt.entry.lockedAt = clock.getAsLong();
+        lockouts.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Sweeps now if the sweep interval has passed since the last sweep.
+     * Only the thread that moves the deadline forward does the sweep.
+     */
+    public void sweepIfDue() {
+        long due = nextSweep.get();
+        long now = clock.getAsLong();
+        if (now >= due && nextSweep.compareAndSet(due, now + sweepIntervalMillis)) {
+            sweep();
+        }
+    }
+
+    /**
+     * Removes every entry whose lockout has expired or that has been idle for a full idle period.
+     */
+    public void sweep() {
+        long now = clock.getAsLong();
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            Entry entry = e.getValue();
+            if (entry.lockedAt != 0) {
+                if (now - entry.lockedAt >= LOCKOUT_MILLIS) {
+                    evict(e.getKey(), entry, expiredLockouts);
+                }
+            } else if (now - entry.lastAttempt >= idleMillis) {
+                evict(e.getKey(), entry, idleEvictions);
+            }
+        }
+    }
+
+    /**
+     * Getter for a snapshot of the tracker's size and eviction counts.
+     *
+     * @return Stats describing the tracker at this moment
+     */
+    public Stats getStats() {
+        long tracked = 0;
+        long locked = 0;
+        long bytes = 0;
+        long now = clock.getAsLong();
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            tracked++;
+            bytes += ESTIMATED_ENTRY_BYTES + e.getKey().length();
+            long lockedAt = e.getValue().lockedAt;
+            if (lockedAt != 0 && now - lockedAt < LOCKOUT_MILLIS) {
+                locked++;
+            }
+        }
+        return new Stats(tracked, unknownCount.get(), locked, bytes, lockouts.get(),
+                         expiredLockouts.get(), idleEvictions.get(), capacityEvictions.get());
+    }
+
+    /**
+     * Removes unknown usernames until at most nine tenths of the cap remain,
+     * so that the next evictions are not needed straight away.
+     * Unlocked usernames go first; locked ones are only removed if that is not enough.
+     */
+    private void evictUnknown() {
+        if (!evictingUnknown.compareAndSet(false, true)) {
+            return; // Another thread is already making room
+        }
+        try {
+            int target = unknownCapacity - unknownCapacity / 10;
+            for (int pass = 0; pass < 2 && unknownCount.get() > target; pass++) {
+                boolean includeLocked = pass == 1;
+                for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                    if (unknownCount.get() <= target) {
+                        break;
+                    }
+                    Entry entry = e.getValue();
+                    if (entry.unknown && (includeLocked || entry.lockedAt == 0)) {
+                        evict(e.getKey(), entry, capacityEvictions);
+                    }
+                }
+            }
+        } finally {
+            evictingUnknown.set(false);
+        }
+    }
+
+    /**
+     * Removes a username's entry, provided it has not already been replaced.
+     *
+     * @param username the username to forget
+     * @param entry    the entry the caller saw for that username
+     * @param counter  the eviction count to raise, or null if the removal is not an eviction
+     */
+    private void evict(String username, Entry entry, AtomicLong counter) {
+        if (entries.remove(username, entry)) {
+            if (entry.unknown) {
+                unknownCount.decrementAndGet();
+            }
+            if (counter != null) {
+                counter.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * The attempt state of one tracked username.
+     */
+    private static final class Entry {
+        // Number of attempts claimed since the entry was created, including ones still being checked
+        final AtomicInteger attempts = new AtomicInteger();
+
+        // Signifies if the username did not belong to an account when it was first tried
+        final boolean unknown;
+
+        // Time (in milliseconds) the account was locked, or 0 if it is not locked
+        volatile long lockedAt;
+
+        // Time (in milliseconds) of the most recent attempt
+        volatile long lastAttempt;
+
+        Entry(boolean unknown) {
+            this.unknown = unknown;
+        }
+    }
+
+    /**
+     * A login attempt claimed by beginAttempt(), to be reported back as succeeded or failed.
+     */
+    public static final class Attempt {
+        // The username being logged in to
+        private final String username;
+
+        // The entry the attempt was claimed from
+        private final Entry entry;
+
+        // Which of the allowed attempts this is, from 1 to MAX_ATTEMPTS
+        private final int number;
+
+        private Attempt(String username, Entry entry, int number) {
+            this.username = username;
+            this.entry = entry;
+            this.number = number;
+        }
+
+        /**
+         * Getter for which of the allowed attempts this is.
+         *
+         * @return int attempt number, from 1 to MAX_ATTEMPTS
+         */
+        public int getNumber() {
+            return number;
+        }
+    }
+
+    /**
+     * A snapshot of the tracker's memory use and eviction counts, for sizing the tracker in production.
+     */
+    public static final class Stats {
+        private final long trackedUsernames;
+        private final long unknownUsernames;
+        private final long lockedUsernames;
+        private final long estimatedBytes;
+        private final long lockouts;
+        private final long expiredLockouts;
+        private final long idleEvictions;
+        private final long capacityEvictions;
+
+        private Stats(long trackedUsernames, long unknownUsernames, long lockedUsernames, long estimatedBytes,
+                      long lockouts, long expiredLockouts, long idleEvictions, long capacityEvictions) {
+            this.trackedUsernames = trackedUsernames;
+            this.unknownUsernames = unknownUsernames;
+            this.lockedUsernames = lockedUsernames;
+            this.estimatedBytes = estimatedBytes;
+            this.lockouts = lockouts;
+            this.expiredLockouts = expiredLockouts;
+            this.idleEvictions = idleEvictions;
+            this.capacityEvictions = capacityEvictions;
+        }
+
+        /** @return long number of usernames currently tracked */
+        public long getTrackedUsernames() { return trackedUsernames; }
+
+        /** @return long number of tracked usernames that do not belong to an account */
+        public long getUnknownUsernames() { return unknownUsernames; }
+
+        /** @return long number of usernames currently locked */
+        public long getLockedUsernames() { return lockedUsernames; }
+
+        /** @return long approximate heap used by the tracked usernames, in bytes */
+        public long getEstimatedBytes() { return estimatedBytes; }
+
+        /** @return long number of accounts locked since the tracker was created */
+        public long getLockouts() { return lockouts; }
+
+        /** @return long number of entries removed because their lockout expired */
+        public long getExpiredLockouts() { return expiredLockouts; }
+
+        /** @return long number of entries removed because they were idle */
+        public long getIdleEvictions() { return idleEvictions; }
+
+        /** @return long number of unknown usernames removed to stay within the cap */
+        public long getCapacityEvictions() { return capacityEvictions; }
+
+        /**
+         * Override of the toString() method; prints a description of the statistics
+         *
+         * @return String descriptor of a Stats object
+         */
+        @Override
+        public String toString() {
+            return "tracked=" + trackedUsernames + " (unknown=" + unknownUsernames + ", locked=" + lockedUsernames + ")"
+                + " ~" + estimatedBytes + " bytes - lockouts=" + lockouts
+                + " evictions: expired=" + expiredLockouts + " idle=" + idleEvictions + " capacity=" + capacityEvictions;
+        }
+    }
+}
@@ -1,39 +1,37 @@
-import java.util.*;
-import java.util.regex.*;
-
 public class LoginService {
     
     public static boolean isValidUsername(String username) {
-        String usernameRegex = "^[A-Za-z][A-Za-z0-9_]{5,30}$";
-        Pattern pattern = Pattern.compile(usernameRegex);
-        return username !=null && pattern.matcher(username).matches();
+        return CredentialValidator.isValidUsername(username);
     }
     
     public static boolean isValidEmail(String email) {
-        String emailRegex = "^[a-zA-Z0-9_+&*-]+(?:\\.[a-zA-Z0-9_+&*-]+)*@" +
-                            "(?:[a-zA-Z0-9-]+\\.)+[a-zA-Z]{2,7}$";
-        Pattern pattern = Pattern.compile(emailRegex);
-        return email !=null && pattern.matcher(email).matches();
+        return CredentialValidator.isValidEmail(email);
     }
     
     public static boolean isValidPassword(String password) {
-        String passwordRegex = "^(?=.*[0-9])(?=.*[a-z])(?=.*[A-Z])(?=.*[@#$%^&+=])(?=\\S+$).{8,20}$";
-        Pattern pattern = Pattern.compile(passwordRegex);
-        return password !=null && pattern.matcher(password).matches();
+        return CredentialValidator.isValidPassword(password);
     }
     
     /**
-     * Map tracking the number of failed login attempts by username.
-     * <p>The key is the username, and the value is the number of failed attempts.</p>
+     * Tracks failed login attempts and lockouts, keeping its memory use bounded.
      */
-    private final Map<String, Integer> failedAttempts = new HashMap<>();
+    private final LoginAttemptTracker attempts;
+
+    /**
+     * Constructs a LoginService with a default {@link LoginAttemptTracker}.
+     */
+    public LoginService() {
+        this(new LoginAttemptTracker());
+    }
 
     /**
-     * Map tracking locked users and the timestamp of when they were locked.
-     * <p>The key is the username, and the value is the time (in milliseconds)
-     * when the account was locked.</p>
+     * Constructs a LoginService that records attempts in the given tracker.
+     *
+     * @param attempts the tracker for failed attempts and lockouts
      */
-    private final Map<String, Long> lockedUsers = new HashMap<>();
+    public LoginService(LoginAttemptTracker attempts) {
+        this.attempts = attempts;
+    }
 
     /**
      * Attempts to authenticate a user by validating username and password.
@@ -42,101 +40,86 @@ public class LoginService {
      * authentication will fail immediately. On successful authentication,
      * failed attempts are reset.</p>
      *
+     * <p>Safe to call from many threads at once, even while the registry is
+     * being modified. Each attempt claims one of the user's
+     * three attempts before the password is checked, so concurrent guesses can
+     * never check more than three wrong passwords before the account locks.
+     * Logins for different users never wait on each other.</p>
+     *
      * @param username the username provided by the user
      * @param password the password provided by the user
-     * @param allUsers the list of all registered users
+     * @param allUsers the registry of all registered users
      * @return the authenticated {@link User} if credentials are valid;
      *         {@code null} otherwise
      */
-    public User authenticate(String username, String password, List<User> allUsers) {
-        if (isLocked(username)) {
+    public User authenticate(String username, String password, UserRegistry allUsers) {
+        if (username == null) {
+            System.out.println("Invalid login. Try again.");
+            return null;
+        }
+        if (attempts.isLocked(username)) {
             System.out.println("Account is locked due to too many failed login attempts.");
             return null;
         }
 
         User user = findUser(username, allUsers);
+        LoginAttemptTracker.Attempt attempt = attempts.beginAttempt(username, user != null);
+        if (attempt == null) {
+            // Every attempt is in use by failures or by logins still being checked
+            System.out.println("Account is locked due to too many failed login attempts.");
+            return null;
+        }
+
         if (user != null && user.getPassword().equals(password)) {
-            resetFailedAttempts(username); // Successful login
+            attempts.succeeded(attempt); // Successful login
             System.out.println("Login successful! Welcome " + username);
             return user;
         } else {
-            handleFailedAttempt(username);
+            handleFailedAttempt(attempt);
             return null;
         }
     }
 
     /**
-     * Finds a user by username from the provided list.
+     * Getter for the tracker of failed attempts and lockouts, e.g. to read its statistics.
      *
-     * @param username the username to search for
-     * @param allUsers the list of all registered users
-     * @return the matching {@link User}, or {@code null} if not found
+     * @return LoginAttemptTracker used by this service
      */
-    private User findUser(String username, List<User> allUsers) {
-        for (User user : allUsers) {
-            if (user.getUsername().equals(username)) {
-                return user;
-            }
-        }
-        return null;
+    public LoginAttemptTracker getAttemptTracker() {
+        return attempts;
     }
 
     /**
-     * Handles a failed login attempt for the specified username.
+     * Finds a user by username from the provided registry.
      *
-     * <p>Increments the failed attempt count and locks the account
-     * if the maximum number of attempts is reached.</p>
+     * <p>The registry looks usernames up ignoring case, but logging in
+     * still requires the username exactly as it was registered.</p>
      *
-     * @param username the username that failed to authenticate
+     * @param username the username to search for
+     * @param allUsers the registry of all registered users
+     * @return the matching {@link User}, or {@code null} if not found
      */
-    private void handleFailedAttempt(String username) {
-        failedAttempts.put(username, failedAttempts.getOrDefault(username, 0) + 1);
-        int attempts = failedAttempts.get(username);
-
-        if (attempts >= 3) {
-            lockUser(username);
-            System.out.println("Too many failed attempts. Your account has been locked.");
-        } else {
-            System.out.println("Invalid login. Try again.");
+    private User findUser(String username, UserRegistry allUsers) {
+        User user = allUsers.findByUsername(username);
+        if (user != null && user.getUsername().equals(username)) {
+            return user;
         }
+        return null;
     }
 
     /**
-     * Locks a user account by recording the current system time.
-     *
-     * @param username the username to lock
-     */
-    private void lockUser(String username) {
-        lockedUsers.put(username, System.currentTimeMillis());
-    }
-
-    /**
-     * Checks whether a user account is currently locked.
+     * Handles a failed login attempt.
      *
-     * <p>Accounts remain locked for 10 minutes after the lock time.
-     * If the lockout period has expired, the user is automatically unlocked.</p>
+     * <p>The attempt has already been counted when it was claimed; the
+     * account is locked by whichever thread failed the last allowed attempt.</p>
      *
-     * @param username the username to check
-     * @return {@code true} if the user is locked; {@code false} otherwise
+     * @param attempt the attempt that failed
      */
-    private boolean isLocked(String username) {
-        if (lockedUsers.containsKey(username)) {
-            long lockTime = lockedUsers.get(username);
-            if (System.currentTimeMillis() - lockTime < 600_000) { // 10 minutes lockout
-                return true;
-            } else {
-                lockedUsers.remove(username); // Unlock after lockout period
-            }
+    private void handleFailedAttempt(LoginAttemptTracker.Attempt attempt) {
+        if (attempts.failed(attempt)) {
+            System.out.println("Too many failed attempts. Your account has been locked.");
+        } else {
+            System.out.println("Invalid login. Try again.");
         }
-        return false;
-    }
-
-    /**
-     * Resets the failed login attempts for a user.
-     *
-     * @param username the username whose attempts should be reset
-     */
-    private void resetFailedAttempts(String username) {
-        failedAttempts.put(username, 0);
     }
 }
@@ -1,15 +1,27 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.Scanner;
 
 /**
  * The entry point for the Music Playlisting Application
  * 
  * GLOBAL VARIABLES:
- * ArrayList<User> USERS - Stores the created, valid login credentials for all accounts
- * SearchService CATALOG - Manages the searchable global song catalog for the application
+ * UserRegistry USERS - Stores the created, valid login credentials for all accounts
+ * SearchService CATALOG - Manages the searchable global song catalog for the application; the catalog.store
+ *                         system property chooses whether its creator scans read shards or a compact copy of the records
  * LoginService loginService - Responsible for authenticating credentials against the stored USER credentials.
+ * StorageEngine STORAGE - Saves every change to USERS, CATALOG and the Listeners' libraries under DATA_DIR.
  * 
- * The application can be started be executing the main() method.
+ * The application can be started be executing the main() method. Started with the --serve option, it instead
+ * serves the same data as a JSON API over HTTP; see {@link ApiServer}.
+ * The application requires JDK 21 or later, since ApiServer runs each request on a virtual thread.
  * 
  * @author Hitiksh Doshi
  * @author Mateusz Gembarzewski
@@ -17,58 +29,62 @@ import java.util.Scanner;
  */
 public class Main {
     // Stores created, valid login credentials for all accounts
-    public static final ArrayList<User> USERS = new ArrayList<>();
+    public static final UserRegistry USERS = new UserRegistry();
 
-    // Manages the global song catalog.
-    private static SearchService CATALOG = new SearchService();
+    // Manages the global song catalog. Start with -Dcatalog.store=compact to have creator scans read a CompactSongStore.
+    private static SearchService CATALOG = createCatalog(System.getProperty("catalog.store", "shards"));
 
     // Necessary for authenticating credentials.
     private static LoginService loginService = new LoginService();
 
+    // Directory the application's data is saved in, relative to the working directory
+    private static final Path DATA_DIR = Paths.get("music-data");
+
+    // Search results printed at a time in the listener menu
+    private static final int SEARCH_PAGE_SIZE = 10;
+
+    // Saves every change so accounts, songs and playlists survive a restart.
+    private static StorageEngine STORAGE;
+
+    // Port the API server listens on when --serve does not give one
+    private static final int DEFAULT_HTTP_PORT = 8080;
+
     /**
      * The actual method setup to begin the application's proper execution.
      *
-     * main() initializes account and song data to assist in demoing and development.
-     * It then feeds into a while loop that simulates an interactive text-based UI.
+     * main() restores the data saved by previous runs; on the first run it instead
+     * initializes account and song data to assist in demoing and development.
+     * It then feeds into a while loop that simulates an interactive text-based UI,
+     * or, if started with --serve [port], serves the data over HTTP until "stop" is entered.
      * 
-     * @param args command-line arguments (not used in this demo)
+     * @param args command-line arguments: none for the text UI, or --serve and optionally a port
      * @return void
      */
     public static void main(String[] args) {
         Scanner scanner = new Scanner(System.in); // Set up to take user input
 
-        // Preload demo users and songs
-        Listener defaultListener = new Listener("testuser@gmail.com", "testuser", "password", 1, new ArrayList<>());
-        USERS.add(defaultListener);
-
-        Artist defaultArtist = new Artist("artist@gmail.com", "artist", "artistpass", 2);
-        USERS.add(defaultArtist);
-        
-        Admin admin = new Admin("admin@gmail.com", "admin", "adminpass", 3);
-        USERS.add(admin);
-        
-        // Users with no data
-        Listener noNameListener = new Listener("noname1@gmail.com", "noname", "password", 1, new ArrayList<>());
-        USERS.add(noNameListener);
+        try {
+            STORAGE = StorageEngine.open(DATA_DIR, USERS, CATALOG);
+        } catch (IOException e) {
+            System.out.println("Could not load saved data from " + DATA_DIR.toAbsolutePath() + ": " + e.getMessage());
+            return;
+        }
+        if (STORAGE.getBytesDiscarded() > 0) {
+            System.out.println("The last change before the application stopped was incomplete and has been discarded.");
+        }
+        if (USERS.isEmpty()) {
+            loadDemoData(); // First run; the demo data is saved like any other change
+        }
 
-        Artist noNameArtist = new Artist("noname2@gmail.com", "nothing", "password", 2);
-        USERS.add(noNameArtist);
-        
-        // Initialize songs to populate catalog
-        Song song1 = new Song("Somebody Else", "artist", 347);
-        Song song2 = new Song("RAWFEAR", "artist", 202);
-        Song song3 = new Song("Hammer", "artist", 193);
-        Song song4 = new Song("One More Time", "artist", 320);
-        Song song5 = new Song("Club classics", "artist", 153);
-        Song song6 = new Song("Hard Times", "artist", 182);
-        
-        // Populate the catalog
-        defaultArtist.addSongToCatalog(CATALOG, song1);
-        defaultArtist.addSongToCatalog(CATALOG, song2);
-        defaultArtist.addSongToCatalog(CATALOG, song3);
-        defaultArtist.addSongToCatalog(CATALOG, song4);
-        defaultArtist.addSongToCatalog(CATALOG, song5);
-        defaultArtist.addSongToCatalog(CATALOG, song6);
+        if (args.length > 0 && args[0].equals("--serve")) {
+            try {
+                serve(scanner, args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_HTTP_PORT);
+            } catch (NumberFormatException e) {
+                System.out.println("Invalid port: " + args[1]);
+                closeStorage();
+            }
+            return;
+        }
 
         System.out.println("Welcome to the HMM Music Playlisting Application!"); // welcome message
 
@@ -110,12 +126,143 @@ public class Main {
                 default:
                     System.out.println("Unknown option.");
             }
+            checkpointIfDue();
         }
 
         scanner.close();
+        closeStorage();
         System.out.println("Closing application.");
     }
 
+    /**
+     * Serves the application's data as a JSON API until "stop" is entered, or the process is stopped.
+     * Each request runs on its own virtual thread; see {@link ApiServer} for the routes.
+     *
+     * @param scanner the scanner for user input
+     * @param port    the port to listen on
+     * @return void
+     */
+    private static void serve(Scanner scanner, int port) {
+        ApiServer server;
+        try {
+            server = new ApiServer(new InetSocketAddress(port), USERS, CATALOG, loginService, STORAGE);
+        } catch (IOException e) {
+            System.out.println("Could not listen on port " + port + ": " + e.getMessage());
+            closeStorage();
+            return;
+        }
+        // Finishes the requests in progress and saves a snapshot, however the server is stopped
+        Thread shutdown = new Thread(() -> {
+            server.close();
+            closeStorage();
+            System.out.println("Server stopped.");
+        });
+        Runtime.getRuntime().addShutdownHook(shutdown);
+        server.start();
+        System.out.println("Serving the API at http://localhost:" + server.getPort() + "/api/ - enter stop to stop.");
+
+        while (scanner.hasNextLine()) {
+            if (scanner.nextLine().trim().equals("stop")) {
+                Runtime.getRuntime().removeShutdownHook(shutdown);
+                shutdown.run();
+                return;
+            }
+        }
+        try {
+            Thread.currentThread().join(); // No console to read from, so serve until the process is stopped
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Leaves a snapshot of everything, so the next start does not replay this session's changes, and closes the storage.
+     *
+     * @return void
+     */
+    private static void closeStorage() {
+        try {
+            if (STORAGE.getRecordsSinceCheckpoint() > 0) {
+                STORAGE.checkpoint();
+            }
+            STORAGE.close();
+        } catch (IOException e) {
+            System.out.println("Could not save data: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes a new snapshot of the saved data once enough changes have been made since the last one,
+     * so the journal replayed at the next start stays short. A failed checkpoint loses nothing,
+     * since every change is already in the journal.
+     *
+     * @return void
+     */
+    private static void checkpointIfDue() {
+        try {
+            STORAGE.checkpointIfDue();
+        } catch (IOException e) {
+            System.out.println("Could not write a snapshot of the saved data: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Creates the global catalog with its creator scans reading what the catalog.store system property asks for.
+     *
+     * @param store "compact" to scan a copy of the records kept in a CompactSongStore,
+     *              anything else to scan shards of the catalog's Songs across every core
+     * @return SearchService the empty catalog
+     */
+    private static SearchService createCatalog(String store) {
+        switch (store) {
+            case "compact":
+                return new SearchService(new CompactSongStore());
+            default:
+                return new SearchService(Runtime.getRuntime().availableProcessors() * 2,
+                                         SearchService.DEFAULT_PARALLEL_THRESHOLD);
+        }
+    }
+
+    /**
+     * Preloads demo users and songs to assist in demoing and development.
+     * Called on the first run only, when there is no saved data.
+     *
+     * @return void
+     */
+    private static void loadDemoData() {
+        Listener defaultListener = new Listener("testuser@gmail.com", "testuser", "password", 1, new ArrayList<>());
+        USERS.add(defaultListener);
+
+        Artist defaultArtist = new Artist("artist@gmail.com", "artist", "artistpass", 2);
+        USERS.add(defaultArtist);
+        
+        Admin admin = new Admin("admin@gmail.com", "admin", "adminpass", 3);
+        USERS.add(admin);
+        
+        // Users with no data
+        Listener noNameListener = new Listener("noname1@gmail.com", "noname", "password", 4, new ArrayList<>());
+        USERS.add(noNameListener);
+
+        Artist noNameArtist = new Artist("noname2@gmail.com", "nothing", "password", 5);
+        USERS.add(noNameArtist);
+        
+        // Initialize songs to populate catalog
+        Song song1 = new Song("Somebody Else", "artist", 347);
+        Song song2 = new Song("RAWFEAR", "artist", 202);
+        Song song3 = new Song("Hammer", "artist", 193);
+        Song song4 = new Song("One More Time", "artist", 320);
+        Song song5 = new Song("Club classics", "artist", 153);
+        Song song6 = new Song("Hard Times", "artist", 182);
+        
+        // Populate the catalog
+        defaultArtist.addSongToCatalog(CATALOG, song1);
+        defaultArtist.addSongToCatalog(CATALOG, song2);
+        defaultArtist.addSongToCatalog(CATALOG, song3);
+        defaultArtist.addSongToCatalog(CATALOG, song4);
+        defaultArtist.addSongToCatalog(CATALOG, song5);
+        defaultArtist.addSongToCatalog(CATALOG, song6);
+    }
+
     /**
      * Takes in the Scanner and authenticated User and casts it to a specific user type.
      * Then passes context over to that user type's UI.
@@ -186,7 +333,7 @@ public class Main {
                     Playlist viewPlaylist = listener.getPlaylistAtIndex(viewPlaylistIndex);
                     
                     // Only try to print data to the user if that data exists.
-                    if (viewPlaylist.getTracklist().size() > 0) {
+                    if (viewPlaylist.getSongCount() > 0) {
                         viewPlaylist.listSongs(); // Prints tracklist to user
                     } else {
                         System.out.println(viewPlaylist.getName() + " is empty.");
@@ -196,9 +343,28 @@ public class Main {
                 case "4":
                     System.out.print("Enter a search term: ");
                     String term = scanner.nextLine();
-                    ArrayList<Song> results = CATALOG.searchByPartialTitle(term);
-                    for (int i = 0; i < results.size(); i++) {
-                        System.out.println("[" + (i + 1) + "] " + results.get(i));
+                    SearchPage page = CATALOG.searchRanked(term, 0, SEARCH_PAGE_SIZE);
+                    if (page.getTotalMatches() == 0) {
+                        // Offer close matches rather than leaving the user to guess the spelling
+                        ArrayList<Song> close = CATALOG.searchFuzzy(term);
+                        if (!close.isEmpty()) {
+                            System.out.println("No songs contain \"" + term + "\". Did you mean:");
+                        }
+                        for (int i = 0; i < close.size() && i < SEARCH_PAGE_SIZE; i++) {
+                            System.out.println("[" + close.get(i).getId() + "] " + close.get(i));
+                        }
+                        break;
+                    }
+                    // Print one page at a time, so a broad term does not list the whole catalog
+                    while (true) {
+                        for (int i = 0; i < page.getSongs().size(); i++) {
+                            System.out.println("[" + page.getSongs().get(i).getId() + "] " + page.getSongs().get(i));
+                        }
+                        if (!page.hasNextPage()) break;
+                        System.out.print("Showing " + page.getNextOffset() + " of " + page.getTotalMatches()
+                                         + " results. Press Enter for more, or type anything to stop: ");
+                        if (!scanner.nextLine().isEmpty()) break;
+                        page = CATALOG.searchRanked(term, page.getNextOffset(), SEARCH_PAGE_SIZE);
                     }
                     break;
 
@@ -211,16 +377,21 @@ public class Main {
                         // Validate user input 
                         if (addPlaylistIndex < listener.getLibrary().size() && addPlaylistIndex >= 0) {
                             Playlist addPlaylist = listener.getPlaylistAtIndex(addPlaylistIndex);
-                            CATALOG.listSongs();
-                            System.out.print("Enter a song index: ");
-                            int addSongIndex = Integer.parseInt(scanner.nextLine());
-                            // Validate user input 
-                            if (addSongIndex < CATALOG.getGlobalCatalog().size() && addSongIndex >= 0) {
-                                Song addSong = CATALOG.getSongAtIndex(addSongIndex);
+                            // Ids are shown by searches too, so the whole catalog is only listed when asked for
+                            System.out.print("Enter a song id, or press Enter to list the catalog: ");
+                            String addSongId = scanner.nextLine().trim();
+                            if (addSongId.isEmpty()) {
+                                CATALOG.listSongs();
+                                System.out.print("Enter a song id: ");
+                                addSongId = scanner.nextLine().trim();
+                            }
+                            // Validate user input; an id never names a different Song, even if the catalog changed meanwhile
+                            Song addSong = CATALOG.getSongById(Integer.parseInt(addSongId));
+                            if (addSong != null) {
                                 addPlaylist.addSong(addSong);
                                 System.out.println("'" + addSong.getTitle() + "' has been added to '" + addPlaylist.getName() + "'.");
                             } else {
-                                System.out.println("Invalid index.");
+                                System.out.println("Invalid id.");
                             }
                         } else {
                             System.out.println("Invalid index.");
@@ -236,13 +407,15 @@ public class Main {
                         System.out.print("Enter a playlist index: ");
                         int removePlaylistIndex = Integer.parseInt(scanner.nextLine());
                         Playlist removePlaylist = listener.getPlaylistAtIndex(removePlaylistIndex);
-                        int sizeSongs = removePlaylist.getTracklist().size();
+                        int sizeSongs = removePlaylist.getSongCount();
                         // Only allow a user to select a song when at least one exists.
                         if (sizeSongs > 0) {
                             removePlaylist.listSongs();
-                            System.out.print("Enter a song index: ");
-                            int removeSongIndex = Integer.parseInt(scanner.nextLine());
-                            removePlaylist.removeSongAtIndex(removeSongIndex);
+                            System.out.print("Enter a song id: ");
+                            int removeSongId = Integer.parseInt(scanner.nextLine());
+                            if (!removePlaylist.removeSongById(removeSongId)) {
+                                System.out.println("Invalid id.");
+                            }
                         } else {
                             System.out.print("There are no songs.");
                         }
@@ -316,20 +489,18 @@ public class Main {
                     break;
 
                 case "2":
-                    ArrayList<Song> results = CATALOG.searchSongByArtist(artist.getUsername());
-                    for (int i = 0; i < results.size(); i++) {
-                        System.out.println("[" + i + "] " + results.get(i));
-                    }
+                    listArtistSongs(artist);
                     break;
 
                 case "3":
-                    ArrayList<Song> result = CATALOG.searchSongByArtist(artist.getUsername());
-                    for (int i = 0; i < result.size(); i++) {
-                        System.out.println("[" + i + "] " + result.get(i));
+                    if (listArtistSongs(artist) == 0) break; // Nothing to delete
+                    System.out.print("Enter the id of the song you want to delete: ");
+                    Song tempResult = CATALOG.getSongById(Integer.parseInt(scanner.nextLine()));
+                    // An Artist may only delete their own Songs
+                    if (tempResult == null || !artist.getUsername().equals(tempResult.getCreator())) {
+                        System.out.println("Invalid id.");
+                        break;
                     }
-                    System.out.print("Enter the index of the song you want to delete: ");
-                    int removeSongIndex = Integer.parseInt(scanner.nextLine());
-                    Song tempResult = result.get(removeSongIndex);
                     boolean checker = CATALOG.removeSongFromCatalog(tempResult); // Validates that a removal actually occurred.
                     if (checker) {
                         System.out.println(tempResult.getTitle() + " has been removed from the catalog.");
@@ -357,6 +528,7 @@ public class Main {
      * 
      * Allows for listing users and querying their account details
      * Allows for adding or removing songs from the global catalog for ANY artist name.
+     * Allows for importing songs into the global catalog in bulk from a CSV/TSV file.
      * Allows for adding or removing Users from the application.
      *
      * @param scanner the scanner for user input
@@ -373,6 +545,8 @@ public class Main {
                 "\n4 = Remove from global catalog" + 
                 "\n5 = Add new user" + 
                 "\n6 = Delete a user" + 
+                "\n7 = View login lockout statistics" + 
+                "\n8 = Import songs from a CSV/TSV file" + 
                 "\n0 = Logout"
             );
             
@@ -425,16 +599,15 @@ public class Main {
                     break;
                     
                 case "4":
-                    if (CATALOG.getGlobalCatalog().size() <= 0) {
+                    if (CATALOG.size() <= 0) {
                         System.out.println("No songs exist on the catalog.");
                     } else {
                         CATALOG.listSongs();
                     }
-                    System.out.print("Enter a song index: ");
-                    int removeSongIndex = Integer.parseInt(scanner.nextLine());
+                    System.out.print("Enter a song id: ");
+                    Song removeSong = CATALOG.getSongById(Integer.parseInt(scanner.nextLine()));
                     // Validate user input
-                    if (removeSongIndex < CATALOG.getGlobalCatalog().size() && removeSongIndex >= 0) {
-                        Song removeSong = CATALOG.getSongAtIndex(removeSongIndex);
+                    if (removeSong != null) {
                         boolean removeCatalogSuccess = CATALOG.removeSongFromCatalog(removeSong);
                         boolean removePlaylistSuccess = removeSongFromPlaylists(removeSong);
                         // If song was successfully removed, print information about it
@@ -447,7 +620,7 @@ public class Main {
                             System.out.println("Song did not exist in any playlists.");
                         } 
                     } else {
-                        System.out.println("Invalid index.");
+                        System.out.println("Invalid id.");
                     }
                     break;
                     
@@ -494,29 +667,28 @@ public class Main {
                         }
                     }
                     
-                    for (User u : USERS) {
-                        if (u.getEmail().equalsIgnoreCase(email)) {
-                            System.out.println("Error: An account with this email already exists.");
-                            break;
-                        }
-                        if (u.getUsername().equalsIgnoreCase(username)) {
-                            System.out.println("Error: Username already taken, please choose another.");
-                            break;
-                        }
+                    // The registry would refuse a duplicate account, so stop here rather than report a false success.
+                    if (USERS.isEmailTaken(email)) {
+                        System.out.println("Error: An account with this email already exists.");
+                        break;
+                    }
+                    if (USERS.isUsernameTaken(username)) {
+                        System.out.println("Error: Username already taken, please choose another.");
+                        break;
                     }
                     
                     if (entry.equalsIgnoreCase("ADM")) {
-                        User newUser = new Admin(email, username, password, USERS.size() + 1);
+                        User newUser = new Admin(email, username, password, USERS.nextId());
                         USERS.add(newUser);
                         System.out.println("Admin account created successfully!");
                         System.out.print("This account has been created: " + USERS.get(USERS.size() - 1).toString());   
                     } else if (entry.equalsIgnoreCase("LIS")) {
-                        User newUser = new Listener(email, username, password, USERS.size() + 1, new ArrayList<Playlist>());
+                        User newUser = new Listener(email, username, password, USERS.nextId(), new ArrayList<Playlist>());
                         USERS.add(newUser);
                         System.out.println("Listener account created successfully!");
                         System.out.print("This account has been created: " + USERS.get(USERS.size() - 1).toString());
                     } else if (entry.equalsIgnoreCase("ART")) {
-                        User newUser = new Artist(email, username, password, USERS.size() + 1);
+                        User newUser = new Artist(email, username, password, USERS.nextId());
                         USERS.add(newUser);
                         System.out.println("Artist account created successfully!");
                         System.out.print("This account has been created: " + USERS.get(USERS.size() - 1).toString());
@@ -530,15 +702,47 @@ public class Main {
                     listUsers();
                     System.out.print("Enter a user index: ");
                     int value = Integer.parseInt(scanner.nextLine());
-                    System.out.println("The arraylist USERS.size() is : " + USERS.size());
+                    System.out.println("The number of USERS is : " + USERS.size());
                     if( value >= USERS.size() || value < 0 ) {
-                        System.out.println("Invalid entry, value out of arraylist bounds."); 
+                        System.out.println("Invalid entry, value out of bounds."); 
                         break;
                     } else {
-                    USERS.remove(value);
+                    User removedUser = USERS.remove(value);
+                    if (removedUser instanceof Listener) {
+                        ((Listener) removedUser).clearLibrary(); // A deleted Listener's playlists must not be edited by later catalog removals
+                    }
                     }
                     break; 
                     
+                case "7":
+                    // Shows how much memory failed-attempt tracking uses and how often it evicts entries.
+                    System.out.println("=== LOGIN LOCKOUT STATISTICS ===");
+                    System.out.println(loginService.getAttemptTracker().getStats());
+                    break;
+
+                case "8":
+                    // Each row holds a title, artist name and duration in seconds; a header row is optional.
+                    System.out.print("Enter the path of the file to import: ");
+                    String importPath = scanner.nextLine().trim();
+                    Path importFile;
+                    try {
+                        importFile = Paths.get(importPath);
+                    } catch (InvalidPathException e) {
+                        System.out.println("Invalid path.");
+                        break;
+                    }
+                    Path rejectsFile = Paths.get(importPath + ".rejects.txt");
+                    try (PrintStream rejects = new PrintStream(Files.newOutputStream(rejectsFile), false, "UTF-8")) {
+                        CatalogImporter.ImportReport report = new CatalogImporter(CATALOG).importFile(importFile, rejects);
+                        System.out.println(report);
+                        if (report.getRowsRejected() > 0) {
+                            System.out.println("Rejected rows and the reasons are listed in " + rejectsFile);
+                        }
+                    } catch (IOException e) {
+                        System.out.println("Could not import " + importFile + ": " + e.getMessage());
+                    }
+                    break;
+
                 case "0":
                     System.out.println("Logging out...");
                     running = false;
@@ -597,25 +801,23 @@ public class Main {
         String type = scanner.nextLine().trim().toUpperCase();
 
         // Check for duplicate email or username
-        for (User u : USERS) {
-            if (u.getEmail().equalsIgnoreCase(email)) {
-                System.out.println("Error: An account with this email already exists.");
-                return null;
-            }
-            if (u.getUsername().equalsIgnoreCase(username)) {
-                System.out.println("Error: Username already taken, please choose another.");
-                return null;
-            }
+        if (USERS.isEmailTaken(email)) {
+            System.out.println("Error: An account with this email already exists.");
+            return null;
+        }
+        if (USERS.isUsernameTaken(username)) {
+            System.out.println("Error: Username already taken, please choose another.");
+            return null;
         }
 
         User newUser = null; // Initialize a value for the new User
 
         if ("A".equals(type)) {
-            newUser = new Artist(email, username, password, USERS.size() + 1);
+            newUser = new Artist(email, username, password, USERS.nextId());
             USERS.add(newUser);
             System.out.println("Artist account created successfully!");
         } else if ("L".equals(type)) {
-            newUser = new Listener(email, username, password, USERS.size() + 1, new ArrayList<Playlist>());
+            newUser = new Listener(email, username, password, USERS.nextId(), new ArrayList<Playlist>());
             USERS.add(newUser);
             System.out.println("Listener account created successfully!");
         } else {
@@ -626,7 +828,7 @@ public class Main {
     }
     
     /**
-     * Prints the contents of the USERS ArrayList to the user.
+     * Prints the contents of the USERS registry to the user.
      * Called from Admin user Choice #1
      * 
      * @return void
@@ -638,6 +840,27 @@ public class Main {
         }
     }
     
+    /**
+     * Prints an Artist's Songs with the id used to choose one of them, or says that there are none.
+     * Called from Artist user Choices #2 and #3
+     *
+     * @param artist the Artist whose Songs are printed
+     * @return int the number of Songs printed
+     */
+    private static int listArtistSongs(Artist artist) {
+        Iterator<Song> songs = CATALOG.streamByArtist(artist.getUsername()).iterator();
+        int i = 0;
+        while (songs.hasNext()) {
+            Song song = songs.next();
+            System.out.println("[" + song.getId() + "] " + song);
+            i++;
+        }
+        if (i == 0) {
+            System.out.println("You have no songs on the catalog.");
+        }
+        return i;
+    }
+
     /**
      * Determines the type of user and runs the corresponding adminQuery() function, 
      * which prints account details in a format specific to the Admin user role
@@ -661,7 +884,7 @@ public class Main {
                 if (viewPlaylistIndex < queryListener.getLibrary().size() && viewPlaylistIndex >= 0) {
                     Playlist viewPlaylist = queryListener.getPlaylistAtIndex(viewPlaylistIndex);
                     // Only run Playlist.listSongs() if the tracklist actually has Songs to list.
-                    if (viewPlaylist.getTracklist().size() > 0) {
+                    if (viewPlaylist.getSongCount() > 0) {
                         viewPlaylist.listSongs();
                     } else {
                         System.out.println(viewPlaylist.getName() + " is empty.");
@@ -674,7 +897,7 @@ public class Main {
             Artist queryArtist = (Artist) queryUser;
             queryArtist.adminQuery();
             // Printing the Catalog must be done from Main as the Catalog must be passed forward to the Artist class.
-            ArrayList artistCatalog = queryArtist.getCatalog(CATALOG);
+            queryArtist.getCatalog(CATALOG);
         } else if (queryUser instanceof Admin) {
             Admin queryAdmin = (Admin) queryUser;
             queryAdmin.adminQuery();
@@ -682,33 +905,15 @@ public class Main {
     }
 
     /**
-     * Iterates through all listener's libraries' and playlists' and removes a specific song.
+     * Removes a specific song from every playlist that contains it.
+     * Playlists index their Songs, so only the playlists holding the song are visited.
+     * 
+     * Package-private so PerformanceBenchmark can time it.
      * 
      * @param removeSong the song we are searching for and removing
      * @return boolean true if removeSong actually existed on any playlists; false otherwise
      */
-    private static boolean removeSongFromPlaylists(Song removeSong) {
-        boolean success = false;
-        for (User u : USERS) {
-            if (u instanceof Listener) {
-                Listener l = (Listener) u;
-                ArrayList<Playlist> library = l.getLibrary();
-                for (Playlist p : library) {
-                    ArrayList<Song> tracklist = p.getTracklist();
-                    for (Song s : tracklist) {
-                        if (tracklist.contains(removeSong)) {
-                            success = true;
-                        }
-                    }
-                    // Only try to remove the song if a match was found
-                    // This avoids a ConcurrentModificationException that
-                    // you reach when trying to modify the playlist during iteration
-                    if (success) {
-                        p.removeSong(removeSong);
-                    }
-                }
-            }
-        }
-        return success;
+    static boolean removeSongFromPlaylists(Song removeSong) {
+        return USERS.getPlaylistIndex().removeFromAllPlaylists(removeSong);
     }
 }
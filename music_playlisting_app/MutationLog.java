@@ -0,0 +1,102 @@
+import java.util.List;
+
+/**
+ * Receives every change made to users, the catalog and Listener libraries, so they can be recorded.
+ *
+ * The objects that hold application data (UserRegistry, SearchService, Listener and Playlist) each
+ * have a MutationLog, which is {@link #NONE} until a StorageEngine attaches itself. Each method is
+ * called after the change has been made in memory. Every method does nothing by default.
+ */
+public interface MutationLog {
+    /**
+     * A MutationLog that records nothing; used until a StorageEngine is attached.
+     */
+    MutationLog NONE = new MutationLog() {};
+
+    /**
+     * Called after a User is added to the registry.
+     *
+     * @param user the User that was added
+     */
+    default void userAdded(User user) {}
+
+    /**
+     * Called after a User is removed from the registry.
+     *
+     * @param user the User that was removed
+     */
+    default void userRemoved(User user) {}
+
+    /**
+     * Called after a Song is added to the catalog.
+     *
+     * @param song the Song that was added
+     */
+    default void songAdded(Song song) {}
+
+    /**
+     * Called after several Songs are added to the catalog at once.
+     * Records each Song with songAdded() unless overridden.
+     *
+     * @param songs the Songs that were added, in order
+     */
+    default void songsAdded(List<Song> songs) {
+        for (Song song : songs) {
+            songAdded(song);
+        }
+    }
+
+    /**
+     * Called after a Song is removed from the catalog.
+     *
+     * @param song the Song that was removed
+     */
+    default void songRemoved(Song song) {}
+
+    /**
+     * Called after a Listener creates a new Playlist at the end of their library.
+     *
+     * @param owner    the Listener who created the Playlist
+     * @param playlist the Playlist that was created
+     */
+    default void playlistCreated(Listener owner, Playlist playlist) {}
+
+    /**
+     * Called after a Listener deletes one Playlist from their library.
+     *
+     * @param owner the Listener whose Playlist was deleted
+     * @param index the position the Playlist had in the library
+     */
+    default void playlistDeleted(Listener owner, int index) {}
+
+    /**
+     * Called after a Listener deletes every Playlist in their library.
+     *
+     * @param owner the Listener whose library was cleared
+     */
+    default void libraryCleared(Listener owner) {}
+
+    /**
+     * Called after a Song is added to the end of a Playlist.
+     *
+     * @param playlist the Playlist the Song was added to
+     * @param song     the Song that was added
+     */
+    default void playlistSongAdded(Playlist playlist, Song song) {}
+
+    /**
+     * Called after the first copy of a Song is removed from a Playlist.
+     *
+     * @param playlist the Playlist the Song was removed from
+     * @param song     the Song that was removed
+     */
+    default void playlistSongRemoved(Playlist playlist, Song song) {}
+
+    /**
+     * Called after the Song at a position of a Playlist is removed.
+     *
+     * @param playlist the Playlist the Song was removed from
+     * @param index    the position the Song had in the tracklist
+     */
+    default void playlistSongRemovedAt(Playlist playlist, int index) {}
+}
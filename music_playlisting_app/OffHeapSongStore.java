@@ -0,0 +1,248 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * A {@link SongStore} that keeps its records in direct memory, outside the Java heap, so that the
+ * records add nothing for the garbage collector to trace. A SearchService given a store keeps its own
+ * Songs and indexes on the heap as well, so this holds only a copy for its creator scans.
+ *
+ * Each Song is a fixed-width record of five ints in one direct buffer, at its id times the record width:
+ * where its title starts in the title arena, the title's length in bytes, its creator's code, its duration,
+ * and the id of the Song it was added from.
+ * Titles are encoded as UTF-8 one after another in a second direct buffer, the title arena. Only the creator
+ * dictionary, which has one entry per artist rather than per Song, and one bit per Song marking removals,
+ * stay on the heap.
+ *
+ * Both buffers double in size when full, and the old buffer's memory is freed once it is garbage collected.
+ * Direct memory is limited by -XX:MaxDirectMemorySize, which defaults to the maximum heap size, and each
+ * buffer to 2 GB, so the store holds at most about 107 million records and 2 GB of title text.
+ */
+public class OffHeapSongStore implements SongStore {
+    // Bytes in each record: title start, title length, creator code, duration and Song id
+    private static final int RECORD_BYTES = 20;
+
+    // Positions of the fields within a record
+    private static final int TITLE_START = 0;
+    private static final int TITLE_LENGTH = 4;
+    private static final int CREATOR_CODE = 8;
+    private static final int DURATION = 12;
+    private static final int SONG_ID = 16;
+
+    // Initial number of records the store holds before growing
+    private static final int INITIAL_CAPACITY = 1_024;
+
+    // Every record, at its id times RECORD_BYTES
+    private ByteBuffer records;
+
+    // Every title's UTF-8 bytes, one after another in id order
+    private ByteBuffer titleArena;
+
+    // Number of bytes of the arena in use
+    private int arenaSize;
+
+    // Each distinct creator name, at the position of its code
+    private ArrayList<String> creatorNames;
+
+    // Maps each distinct creator name to its code
+    private HashMap<String, Integer> creatorCodesByName;
+
+    // Ids whose Song has been removed
+    private BitSet removed;
+
+    // Number of ids given out, including those of removed Songs
+    private int idCount;
+
+    /**
+     * Constructor for an empty OffHeapSongStore
+     */
+    public OffHeapSongStore() {
+        this.records = ByteBuffer.allocateDirect(INITIAL_CAPACITY * RECORD_BYTES);
+        this.titleArena = ByteBuffer.allocateDirect(INITIAL_CAPACITY * 16);
+        this.arenaSize = 0;
+        this.creatorNames = new ArrayList<String>();
+        this.creatorCodesByName = new HashMap<String, Integer>();
+        this.removed = new BitSet();
+        this.idCount = 0;
+    }
+
+    @Override
+    public int add(int songId, String title, String creator, int duration) {
+        if (title == null || creator == null) throw new IllegalArgumentException("The title and creator must not be null");
+        byte[] bytes = title.getBytes(StandardCharsets.UTF_8);
+        if ((long) arenaSize + bytes.length > titleArena.capacity()) {
+            titleArena = grow(titleArena, arenaSize, (long) arenaSize + bytes.length);
+        }
+        int offset = idCount * RECORD_BYTES;
+        if (offset + RECORD_BYTES > records.capacity()) {
+            records = grow(records, offset, (long) offset + RECORD_BYTES);
+        }
+        titleArena.put(arenaSize, bytes);
+        int code = creatorCodesByName.computeIfAbsent(creator, name -> {
+            creatorNames.add(name);
+            return creatorNames.size() - 1;
+        });
+        records.putInt(offset + TITLE_START, arenaSize);
+        records.putInt(offset + TITLE_LENGTH, bytes.length);
+        records.putInt(offset + CREATOR_CODE, code);
+        records.putInt(offset + DURATION, duration);
+        records.putInt(offset + SONG_ID, songId);
+        arenaSize += bytes.length;
+        return idCount++;
+    }
+
+    @Override
+    public boolean remove(int id) {
+        checkId(id);
+        if (removed.get(id)) return false;
+        removed.set(id);
+        return true;
+    }
+
+    @Override
+    public boolean contains(int id) {
+        return id >= 0 && id < idCount && !removed.get(id);
+    }
+
+    @Override
+    public int size() {
+        return idCount - removed.cardinality();
+    }
+
+    @Override
+    public int idCount() {
+        return idCount;
+    }
+
+    @Override
+    public int creatorCount() {
+        return creatorNames.size();
+    }
+
+    @Override
+    public String getCreatorName(int code) {
+        return creatorNames.get(code);
+    }
+
+    @Override
+    public int getSongId(int id) {
+        checkId(id);
+        return records.getInt(id * RECORD_BYTES + SONG_ID);
+    }
+
+    @Override
+    public String getTitle(int id) {
+        checkId(id);
+        byte[] bytes = new byte[records.getInt(id * RECORD_BYTES + TITLE_LENGTH)];
+        titleArena.get(records.getInt(id * RECORD_BYTES + TITLE_START), bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String getCreator(int id) {
+        checkId(id);
+        return creatorNames.get(records.getInt(id * RECORD_BYTES + CREATOR_CODE));
+    }
+
+    @Override
+    public int getDuration(int id) {
+        checkId(id);
+        return records.getInt(id * RECORD_BYTES + DURATION);
+    }
+
+    @Override
+    public int[] findByTitle(String title) {
+        byte[] query = title.getBytes(StandardCharsets.UTF_8);
+        int[] found = new int[4];
+        int count = 0;
+        for (int id = 0; id < idCount; id++) {
+            int offset = id * RECORD_BYTES;
+            if (records.getInt(offset + TITLE_LENGTH) == query.length
+                    && titleEquals(records.getInt(offset + TITLE_START), query) && !removed.get(id)) {
+                if (count == found.length) found = Arrays.copyOf(found, count * 2);
+                found[count++] = id;
+            }
+        }
+        return Arrays.copyOf(found, count);
+    }
+
+    @Override
+    public int[] findByCreator(String creator) {
+        Integer code = creatorCodesByName.get(creator);
+        if (code == null) return new int[0];
+        BitSet codes = new BitSet();
+        codes.set(code);
+        return findByCreatorCodes(codes);
+    }
+
+    @Override
+    public int[] findByCreatorCodes(BitSet codes) {
+        int[] found = new int[16];
+        int count = 0;
+        for (int id = 0; id < idCount; id++) {
+            if (codes.get(records.getInt(id * RECORD_BYTES + CREATOR_CODE)) && !removed.get(id)) {
+                if (count == found.length) found = Arrays.copyOf(found, count * 2);
+                found[count++] = id;
+            }
+        }
+        return Arrays.copyOf(found, count);
+    }
+
+    @Override
+    public long estimateBytes() {
+        long bytes = records.capacity() + titleArena.capacity() + removed.size() / 8;
+        for (String name : creatorNames) {
+            // The String and its bytes, its slot in the list, and its entry and boxed code in the map
+            bytes += 24 + 16 + name.length() + 4 + 32 + 16;
+        }
+        return bytes;
+    }
+
+    /**
+     * Getter for the direct memory reserved by the store's buffers, used or not.
+     *
+     * @return long bytes of direct memory
+     */
+    public long offHeapBytes() {
+        return (long) records.capacity() + titleArena.capacity();
+    }
+
+    /**
+     * Compares a title in the arena with a query, byte by byte, without copying the title out.
+     *
+     * @param start where the title starts in the arena; its length must equal the query's
+     * @param query the query's UTF-8 bytes
+     * @return boolean true if the bytes are equal; false otherwise
+     */
+    private boolean titleEquals(int start, byte[] query) {
+        for (int i = 0; i < query.length; i++) {
+            if (titleArena.get(start + i) != query[i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Moves a buffer's contents to a new direct buffer of at least double the size.
+     *
+     * @param buffer the full buffer
+     * @param used   number of bytes of the buffer in use
+     * @param needed number of bytes the new buffer must hold
+     * @return ByteBuffer the new buffer, holding the used bytes
+     */
+    private static ByteBuffer grow(ByteBuffer buffer, int used, long needed) {
+        long capacity = Math.max(needed, 2L * buffer.capacity());
+        if (needed > Integer.MAX_VALUE) throw new IllegalStateException("The store cannot hold more than 2 GB in one buffer");
+        ByteBuffer grown = ByteBuffer.allocateDirect((int) Math.min(capacity, Integer.MAX_VALUE));
+        grown.put(0, buffer, 0, used);
+        return grown;
+    }
+
+    /**
+     * Checks that an id has been given out.
+     *
+     * @param id the id to check
+     */
+    private void checkId(int id) {
+        if (id < 0 || id >= idCount) throw new IndexOutOfBoundsException("No song has the id " + id);
+    }
+}
@@ -0,0 +1,994 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+/**
+ * <p><b>Performance benchmarks for the Music Playlisting Application</b></p>
+ *
+ * <p>Times the hot paths of the application at several data sizes so their scaling
+ * can be compared between versions:</p>
+ * <ul>
+ *   <li>{@link SearchService} title, partial title, lazy Stream, ranked page and artist searches, by catalog size,
+ *       and the {@link StandardAnalyzer} that works out their keys</li>
+ *   <li>{@link SearchService#searchFuzzy} and the {@link BKTree} behind it, with misspelled queries, by catalog size</li>
+ *   <li>{@link SearchService#autocompleteTitle} and the {@link PrefixTrie} behind it, by catalog size</li>
+ *   <li>{@link ShardedCatalog#searchByPartialCreator}, by catalog size and by number of threads</li>
+ *   <li>{@link LoginService#authenticate}, by user count, and the {@code isValid*} validators</li>
+ *   <li>{@link Playlist#addSong}, {@link Playlist#getTotalDurationFormatted}, and publishing and iterating
+ *       {@link PlaylistSnapshot} versions, by playlist length</li>
+ *   <li>{@code Main.removeSongFromPlaylists}, by user count</li>
+ *   <li>{@link StorageEngine#open} from a full journal and from a snapshot, by catalog size</li>
+ *   <li>the heap retained per Song by Song objects and by a {@link CompactSongStore}, and scans of the store, by song count,
+ *       and per {@link Playlist} tracklist entry</li>
+ *   <li>garbage collection pauses and retained heap of a {@link SearchService} scanning shards, a {@link CompactSongStore}
+ *       or an {@link OffHeapSongStore}, while idle and under a steady search load</li>
+ * </ul>
+ *
+ * <p>Each benchmark is warmed up before it is measured, and the results of every
+ * operation are consumed so the JIT cannot discard the work. Results are printed
+ * as comma separated rows of benchmark, parameter, nanoseconds per operation, and
+ * bytes allocated per operation by the benchmarking thread.</p>
+ *
+ * <p>Run all suites with {@code java PerformanceBenchmark}, or name the suites to run,
+ * e.g. {@code java PerformanceBenchmark search login}. Suites: search, login, validators,
+ * fuzzy, autocomplete, sharded, playlist, removal, startup, memory, gc.</p>
+ */
+public class PerformanceBenchmark {
+    // Time spent running a benchmark before measuring, so the JIT has compiled the code under test
+    private static final long WARMUP_NANOS = 500_000_000L;
+
+    // Timed samples per benchmark; the best and mean samples are reported
+    private static final int SAMPLES = 10;
+
+    // Minimum length of one sample; short rounds are repeated until a sample lasts this long
+    private static final long SAMPLE_NANOS = 50_000_000L;
+
+    // Catalog sizes for the search suite
+    private static final int[] CATALOG_SIZES = {1_000, 10_000, 100_000};
+
+    // Catalog sizes for the fuzzy suite's searchFuzzy benchmark
+    private static final int[] FUZZY_CATALOG_SIZES = {10_000, 100_000};
+
+    // Key counts for the fuzzy suite's BKTree benchmark, which skips the catalog's other indexes to fit larger sizes
+    private static final int[] FUZZY_TREE_SIZES = {100_000, 1_000_000};
+
+    // Key counts for the autocomplete suite's PrefixTrie benchmark
+    private static final int[] AUTOCOMPLETE_TREE_SIZES = {100_000, 1_000_000};
+
+    // Completions requested per autocomplete query
+    private static final int AUTOCOMPLETE_LIMIT = 10;
+
+    // Catalog sizes for the sharded suite, which builds only the shards to fit larger sizes
+    private static final int[] SHARDED_SIZES = {100_000, 1_000_000};
+
+    // User counts for the login and removal suites
+    private static final int[] USER_COUNTS = {100, 10_000, 100_000};
+
+    // Playlist lengths for the playlist suite
+    private static final int[] PLAYLIST_LENGTHS = {10, 1_000, 10_000, 100_000};
+
+    // Catalog sizes for the startup suite; one listener with a playlist is saved per hundred songs
+    private static final int[] STARTUP_SIZES = {10_000, 100_000};
+
+    // Song counts for the memory suite
+    private static final int[] MEMORY_SIZES = {100_000, 1_000_000};
+
+    // Catalog sizes for the gc suite's full collections, which build every index of each catalog
+    private static final int[] GC_HOLD_SIZES = {100_000, 200_000};
+
+    // Catalog size for the gc suite's search load, which builds every index of each catalog
+    private static final int GC_LOAD_CATALOG_SIZE = 200_000;
+
+    // How long the gc suite runs its search load on each catalog
+    private static final long GC_LOAD_NANOS = 5_000_000_000L;
+
+    // Songs in each saved playlist for the startup suite
+    private static final int STARTUP_PLAYLIST_LENGTH = 20;
+
+    // Threads writing the startup suite's journal; concurrent writers share each flush to disk
+    private static final int JOURNAL_WRITERS = 64;
+
+    // Words used to build song titles, so that substring queries have realistic hit rates
+    private static final String[] WORDS = {
+        "love", "night", "shape", "time", "heart", "fire", "dream", "light",
+        "summer", "blue", "road", "home", "rain", "dance", "gold", "wild"
+    };
+
+    // Receives the result of every operation so the work cannot be optimised away
+    private static volatile Object sink;
+
+    // Reports bytes allocated by the current thread, so allocation-free code can be confirmed
+    private static final com.sun.management.ThreadMXBean THREADS =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    // The real standard output; System.out is silenced while benchmarks run
+    private static final PrintStream REPORT = System.out;
+
+    /**
+     * Runs the requested benchmark suites, or all of them when none are named.
+     *
+     * @param args names of the suites to run (optional)
+     */
+    public static void main(String[] args) {
+        Set<String> suites = new HashSet<>(Arrays.asList(args));
+        boolean all = suites.isEmpty();
+
+        REPORT.println("benchmark,parameter,ns/op (best),ns/op (mean),B/op");
+        // The services under test print progress messages; keep them out of the report.
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            if (all || suites.contains("search")) {
+                for (int size : CATALOG_SIZES) benchSearch(size);
+                benchAnalyzer();
+            }
+            if (all || suites.contains("fuzzy")) {
+                for (int size : FUZZY_CATALOG_SIZES) benchFuzzy(size);
+                for (int size : FUZZY_TREE_SIZES) benchFuzzyTree(size);
+            }
+            if (all || suites.contains("autocomplete")) {
+                for (int size : FUZZY_CATALOG_SIZES) benchAutocomplete(size);
+                for (int size : AUTOCOMPLETE_TREE_SIZES) benchAutocompleteTrie(size);
+            }
+            if (all || suites.contains("sharded")) {
+                for (int size : SHARDED_SIZES) benchSharded(size);
+            }
+            if (all || suites.contains("login")) {
+                for (int count : USER_COUNTS) benchLogin(count);
+            }
+            if (all || suites.contains("validators")) {
+                benchValidators();
+            }
+            if (all || suites.contains("playlist")) {
+                for (int length : PLAYLIST_LENGTHS) benchPlaylist(length);
+            }
+            if (all || suites.contains("removal")) {
+                for (int count : USER_COUNTS) benchRemoval(count);
+            }
+            if (all || suites.contains("startup")) {
+                for (int size : STARTUP_SIZES) benchStartup(size);
+            }
+            if (all || suites.contains("memory")) {
+                for (int size : MEMORY_SIZES) benchMemory(size);
+            }
+            if (all || suites.contains("gc")) {
+                for (int size : GC_HOLD_SIZES) benchGcHold(size);
+                benchGcLoad(GC_LOAD_CATALOG_SIZE);
+            }
+        } finally {
+            System.setOut(REPORT);
+        }
+    }
+
+    /**
+     * Times the three SearchService queries against a catalog of the given size.
+     *
+     * @param catalogSize number of songs in the catalog
+     */
+    static void benchSearch(int catalogSize) {
+        SearchService catalog = buildCatalog(catalogSize, 1_000);
+        String param = "catalog=" + catalogSize;
+        String[] titles = new String[64];
+        for (int i = 0; i < titles.length; i++) {
+            titles[i] = catalog.getSongAtIndex(i * (catalogSize / titles.length)).getTitle();
+        }
+
+        measure("searchByTitle", param, titles.length, () -> {
+            for (String t : titles) sink = catalog.searchByTitle(t);
+        });
+        measure("searchByPartialTitle", param, WORDS.length, () -> {
+            for (String w : WORDS) sink = catalog.searchByPartialTitle(w + " ");
+        });
+        measure("searchByPartialTitle(short)", param, WORDS.length, () -> {
+            for (String w : WORDS) sink = catalog.searchByPartialTitle(w.substring(0, 2));
+        });
+        measure("streamByPartialTitle(short).findFirst", param, WORDS.length, () -> {
+            for (String w : WORDS) sink = catalog.streamByPartialTitle(w.substring(0, 2)).findFirst();
+        });
+        measure("streamByPartialTitle(short).count", param, WORDS.length, () -> {
+            for (String w : WORDS) sink = catalog.streamByPartialTitle(w.substring(0, 2)).count();
+        });
+        measure("searchRanked(short, page 1)", param, WORDS.length, () -> {
+            for (String w : WORDS) sink = catalog.searchRanked(w.substring(0, 2), 0, 10);
+        });
+        measure("searchRanked(short, page 10)", param, WORDS.length, () -> {
+            for (String w : WORDS) sink = catalog.searchRanked(w.substring(0, 2), 90, 10);
+        });
+        measure("searchSongByArtist", param, 100, () -> {
+            for (int i = 0; i < 100; i++) sink = catalog.searchSongByArtist("artist" + i);
+        });
+        // Removing from the front is the worst case for a list that shifts the Songs after a removed one
+        Song[] front = new Song[100];
+        for (int i = 0; i < front.length; i++) front[i] = catalog.getSongAtIndex(i);
+        measure("removeSongFromCatalog + re-add", param, front.length, () -> {
+            for (Song song : front) {
+                catalog.removeSongFromCatalog(song);
+                catalog.addSongToCatalog(song);
+            }
+        });
+    }
+
+    /**
+     * Times the StandardAnalyzer on plain ASCII text, which skips the Unicode tables, and on accented text.
+     * Each Song pays this once when added to the catalog, and each query once per search.
+     */
+    static void benchAnalyzer() {
+        String[] ascii = {"Shape of You", "Don't Stop Me Now", "  Hello, Goodbye  ", "AC/DC - Back in Black"};
+        String[] accented = {"Beyonc\u00e9 - D\u00e9j\u00e0 Vu", "M\u00f6tley Cr\u00fce", "Stra\u00dfe", "Caf\u00e9 del Mar"};
+        measure("analyze(ascii)", "texts=" + ascii.length, ascii.length, () -> {
+            for (String t : ascii) sink = TextAnalyzer.STANDARD.analyze(t);
+        });
+        measure("analyze(accented)", "texts=" + accented.length, accented.length, () -> {
+            for (String t : accented) sink = TextAnalyzer.STANDARD.analyze(t);
+        });
+    }
+
+    /**
+     * Times typo-tolerant searches for titles and artists with one or two typos, against a catalog of the given size.
+     *
+     * @param catalogSize number of songs in the catalog
+     */
+    static void benchFuzzy(int catalogSize) {
+        SearchService catalog = buildCatalog(catalogSize, 1_000);
+        String param = "catalog=" + catalogSize;
+        Random random = new Random(7);
+        String[] titles = new String[64];
+        for (int i = 0; i < titles.length; i++) {
+            titles[i] = misspell(catalog.getSongAtIndex(i * (catalogSize / titles.length)).getTitle(), 2, random);
+        }
+        String[] artists = new String[64];
+        for (int i = 0; i < artists.length; i++) {
+            artists[i] = misspell("artist" + (i * 15), 1, random);
+        }
+
+        measure("searchFuzzy(title)", param, titles.length, () -> {
+            for (String t : titles) sink = catalog.searchFuzzy(t);
+        });
+        measure("searchFuzzy(artist)", param, artists.length, () -> {
+            for (String a : artists) sink = catalog.searchFuzzy(a);
+        });
+    }
+
+    /**
+     * Times BKTree searches within distance 2 over the given number of generated titles.
+     *
+     * @param keyCount number of keys in the tree
+     */
+    static void benchFuzzyTree(int keyCount) {
+        Random random = new Random(42);
+        BKTree tree = new BKTree();
+        String[] queries = new String[64];
+        for (int i = 0; i < keyCount; i++) {
+            String title = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)] + " " + i;
+            tree.add(title, null);
+            if (i % (keyCount / queries.length) == 0 && i / (keyCount / queries.length) < queries.length) {
+                queries[i / (keyCount / queries.length)] = misspell(title, 2, random);
+            }
+        }
+        measure("BKTree.search(2)", "keys=" + keyCount, queries.length, () -> {
+            for (String q : queries) sink = tree.search(q, 2);
+        });
+    }
+
+    /**
+     * Times completing one, two and five typed characters of a title, against a catalog of the given size.
+     *
+     * @param catalogSize number of songs in the catalog
+     */
+    static void benchAutocomplete(int catalogSize) {
+        SearchService catalog = buildCatalog(catalogSize, 1_000);
+        String param = "catalog=" + catalogSize;
+        for (int typed : new int[] {1, 2, 5}) {
+            measure("autocompleteTitle(" + typed + " chars)", param, WORDS.length, () -> {
+                for (String w : WORDS) sink = catalog.autocompleteTitle(w.substring(0, Math.min(typed, w.length())), AUTOCOMPLETE_LIMIT);
+            });
+        }
+    }
+
+    /**
+     * Times PrefixTrie completions over the given number of generated titles, and reports the trie's size.
+     *
+     * @param keyCount number of keys in the trie
+     */
+    static void benchAutocompleteTrie(int keyCount) {
+        Random random = new Random(42);
+        PrefixTrie trie = new PrefixTrie();
+        for (int i = 0; i < keyCount; i++) {
+            trie.add(WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)] + " " + i);
+        }
+        String param = "keys=" + keyCount;
+        measure("PrefixTrie.complete", param, WORDS.length, () -> {
+            for (String w : WORDS) sink = trie.complete(w.substring(0, 2), AUTOCOMPLETE_LIMIT);
+        });
+        REPORT.println("PrefixTrie.nodes," + param + "," + trie.nodeCount() + ",,");
+    }
+
+    /**
+     * Times substring searches over creators on one thread, then on sharded catalogs scanned by
+     * 1, 2, 4, ... threads up to the number of cores, so the speedup by core count can be read off.
+     *
+     * @param catalogSize number of songs in the catalog
+     */
+    static void benchSharded(int catalogSize) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        int shardCount = Math.max(16, cores * 4);
+        Random random = new Random(42);
+        Song[] songs = new Song[catalogSize];
+        for (int i = 0; i < catalogSize; i++) {
+            songs[i] = new Song("Sharded " + i, "Artist " + WORDS[random.nextInt(WORDS.length)] + " " + (i % 5_000), 60 + i % 300);
+        }
+        String[] creatorKeys = new String[catalogSize];
+        for (int i = 0; i < catalogSize; i++) {
+            creatorKeys[i] = TextAnalyzer.STANDARD.analyze(songs[i].getCreator());
+        }
+        String[] queries = {"night 12", "gold", "rain 4999"};
+
+        { // Scoped so the single shard can be collected before the sharded copies are built
+            ShardedCatalog sequential = new ShardedCatalog(1, Integer.MAX_VALUE, ForkJoinPool.commonPool());
+            for (int i = 0; i < catalogSize; i++) sequential.add(songs[i], creatorKeys[i]);
+            measure("searchByPartialCreator(sequential)", "catalog=" + catalogSize, queries.length, () -> {
+                for (String q : queries) sink = sequential.searchByPartialCreator(q);
+            });
+        }
+
+        for (int threads = 1; threads <= cores; threads *= 2) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                ShardedCatalog sharded = new ShardedCatalog(shardCount, 0, pool);
+                for (int i = 0; i < catalogSize; i++) sharded.add(songs[i], creatorKeys[i]);
+                measure("searchByPartialCreator(sharded)", "catalog=" + catalogSize + " threads=" + threads, queries.length, () -> {
+                    for (String q : queries) sink = sharded.searchByPartialCreator(q);
+                });
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Introduces typos into a string by replacing, dropping or doubling random characters.
+     *
+     * @param text   the string to misspell
+     * @param typos  number of typos to make
+     * @param random source of the typo positions
+     * @return String the misspelled string
+     */
+    static String misspell(String text, int typos, Random random) {
+        StringBuilder result = new StringBuilder(text);
+        for (int t = 0; t < typos; t++) {
+            int i = random.nextInt(result.length());
+            switch (random.nextInt(3)) {
+                case 0:
+                    result.setCharAt(i, (char) ('a' + random.nextInt(26)));
+                    break;
+                case 1:
+                    result.deleteCharAt(i);
+                    break;
+                default:
+                    result.insert(i, result.charAt(i));
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * Times successful logins against a registry of the given size.
+     *
+     * @param userCount number of registered users
+     */
+    static void benchLogin(int userCount) {
+        UserRegistry users = buildUsers(userCount);
+        LoginService loginService = new LoginService();
+        String param = "users=" + userCount;
+        String[] names = new String[64];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = users.get(i * (userCount / names.length)).getUsername();
+        }
+
+        measure("authenticate", param, names.length, () -> {
+            for (String n : names) sink = loginService.authenticate(n, "Passw0rd!", users);
+        });
+    }
+
+    /**
+     * Times the username, email and password validators on valid and invalid input.
+     */
+    static void benchValidators() {
+        String[] usernames = {"testuser", "a_valid_username_1", "1invalid", "short"};
+        String[] emails = {"testuser@gmail.com", "first.last+tag@mail.example.org", "not-an-email", "a@b.c"};
+        String[] passwords = {"Passw0rd!", "Sup3r$ecretPass", "password", "Sh0rt!"};
+
+        measure("isValidUsername", "mixed", usernames.length, () -> {
+            for (String u : usernames) sink = LoginService.isValidUsername(u);
+        });
+        measure("isValidEmail", "mixed", emails.length, () -> {
+            for (String e : emails) sink = LoginService.isValidEmail(e);
+        });
+        measure("isValidPassword", "mixed", passwords.length, () -> {
+            for (String p : passwords) sink = LoginService.isValidPassword(p);
+        });
+    }
+
+    /**
+     * Times filling a playlist of the given length and formatting its total duration.
+     *
+     * @param length number of songs in the playlist
+     */
+    static void benchPlaylist(int length) {
+        String param = "length=" + length;
+        Song[] songs = new Song[length];
+        for (int i = 0; i < length; i++) {
+            songs[i] = new Song("Playlist Track " + i, "artist" + (i % 100), 120 + i % 180);
+        }
+
+        measure("Playlist.addSong", param, length, () -> {
+            Playlist playlist = new Playlist("bench", "listener", new ArrayList<>());
+            for (Song s : songs) playlist.addSong(s);
+            sink = playlist;
+        });
+
+        Playlist full = new Playlist("bench", "listener", new ArrayList<>());
+        for (Song s : songs) full.addSong(s);
+        measure("Playlist.getTotalDurationFormatted", param, 1_000, () -> {
+            for (int i = 0; i < 1_000; i++) sink = full.getTotalDurationFormatted();
+        });
+
+        // Each edit publishes two versions; copying the whole list for each is what sharing chunks avoids
+        int middle = length / 2;
+        measure("Playlist edit (2 versions)", param, 1, () -> {
+            Song moved = full.getSongAtIndex(middle);
+            full.removeSongAtIndex(middle);
+            full.addSong(moved);
+            sink = full.snapshot();
+        });
+        ArrayList<Song> copied = new ArrayList<>(full.snapshot());
+        measure("ArrayList copy-on-write edit (2 versions)", param, 1, () -> {
+            ArrayList<Song> removed = new ArrayList<>(copied);
+            Song moved = removed.remove(middle);
+            ArrayList<Song> added = new ArrayList<>(removed);
+            added.add(moved);
+            sink = added;
+        });
+        measure("PlaylistSnapshot iteration", param, length, () -> {
+            long total = 0;
+            for (Song s : full.snapshot()) total += s.getDuration();
+            sink = total;
+        });
+    }
+
+    /**
+     * Times removing a song from every playlist when the given number of listeners exist,
+     * one in a hundred of them having the song in a playlist.
+     * Each operation removes the song and then adds it back so every round does the same work.
+     *
+     * @param userCount number of listeners, each with one ten-song playlist
+     */
+    static void benchRemoval(int userCount) {
+        String param = "users=" + userCount;
+        Song target = new Song("Removal Target", "artist0", 200);
+        UserRegistry users = new UserRegistry();
+        ArrayList<Playlist> holders = new ArrayList<>();
+        for (int i = 0; i < userCount; i++) {
+            Listener listener = new Listener("bench" + i + "@example.com", "bench" + i, "Passw0rd!", i, new ArrayList<>());
+            users.add(listener);
+            Playlist playlist = listener.createNewPlaylist("playlist");
+            for (int j = 0; j < 10; j++) {
+                playlist.addSong(new Song("Track " + j, "artist" + j, 180));
+            }
+            if (i % 100 == 0) {
+                playlist.addSong(target);
+                holders.add(playlist);
+            }
+        }
+
+        PlaylistIndex index = users.getPlaylistIndex();
+        measure("PlaylistIndex.removeFromAllPlaylists", param, 1, () -> {
+            sink = index.removeFromAllPlaylists(target);
+            for (Playlist p : holders) p.addSong(target);
+        });
+    }
+
+    /**
+     * Times restoring saved data of the given size, once by replaying a journal holding every change
+     * and once by loading a snapshot taken at a checkpoint.
+     *
+     * @param catalogSize number of songs in the saved catalog
+     */
+    static void benchStartup(int catalogSize) {
+        String param = "catalog=" + catalogSize;
+        Path replayDir = null;
+        Path snapshotDir = null;
+        try {
+            replayDir = Files.createTempDirectory("bench-replay");
+            snapshotDir = Files.createTempDirectory("bench-snapshot");
+            UserRegistry users = new UserRegistry();
+            SearchService catalog = buildCatalog(catalogSize, 1_000);
+            List<Song> songs = catalog.getGlobalCatalog();
+            for (int i = 0; i < catalogSize / 100; i++) {
+                Listener listener = new Listener("saved" + i + "@example.com", "saved" + i, "Passw0rd!", i + 1, new ArrayList<>());
+                users.add(listener);
+                Playlist playlist = listener.createNewPlaylist("playlist " + i);
+                for (int j = 0; j < STARTUP_PLAYLIST_LENGTH; j++) {
+                    playlist.addSong(songs.get((i * STARTUP_PLAYLIST_LENGTH + j) % catalogSize));
+                }
+            }
+            writeJournal(replayDir, users, catalog);
+            try (StorageEngine engine = StorageEngine.open(snapshotDir, users, catalog)) {
+                engine.checkpoint(); // Nothing to replay; this only saves the data built above
+            }
+
+            Path replay = replayDir;
+            Path snapshot = snapshotDir;
+            measure("StorageEngine.open(replay)", param, 1, () -> sink = openAndClose(replay));
+            measure("StorageEngine.open(snapshot)", param, 1, () -> sink = openAndClose(snapshot));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            deleteDirectory(replayDir);
+            deleteDirectory(snapshotDir);
+        }
+    }
+
+    /**
+     * Reports the heap retained per Song when a catalog is held as Song objects in a list, with creator Strings
+     * shared as Artist uploads share them or with a String per Song as an import makes them, and when it is held
+     * in a CompactSongStore. Then times scans of the store, which compare records without making Songs.
+     * Memory rows give retained bytes per Song in place of the timings, and the store's own estimate as B/op.
+     *
+     * @param songCount number of songs held
+     */
+    static void benchMemory(int songCount) {
+        String param = "songs=" + songCount;
+        String[] artists = new String[1_000];
+        for (int i = 0; i < artists.length; i++) artists[i] = "artist" + i;
+
+        long before = retainedHeap();
+        ArrayList<Song> shared = new ArrayList<>();
+        Random random = new Random(42);
+        for (int i = 0; i < songCount; i++) {
+            shared.add(new Song(randomTitle(random, i), artists[i % artists.length], 60 + i % 300));
+        }
+        reportMemory("ArrayList<Song>(shared creators)", param, (double) (retainedHeap() - before) / songCount, 0);
+        sink = shared;
+        shared = null;
+        sink = null;
+
+        before = retainedHeap();
+        ArrayList<Song> imported = new ArrayList<>();
+        random = new Random(42);
+        for (int i = 0; i < songCount; i++) {
+            imported.add(new Song(randomTitle(random, i), new String(artists[i % artists.length]), 60 + i % 300));
+        }
+        reportMemory("ArrayList<Song>(imported)", param, (double) (retainedHeap() - before) / songCount, 0);
+        sink = imported;
+        imported = null;
+        sink = null;
+
+        before = retainedHeap();
+        CompactSongStore store = new CompactSongStore();
+        random = new Random(42);
+        for (int i = 0; i < songCount; i++) {
+            store.add(randomTitle(random, i), new String(artists[i % artists.length]), 60 + i % 300);
+        }
+        reportMemory("CompactSongStore", param, (double) (retainedHeap() - before) / songCount,
+                     (double) store.estimateBytes() / songCount);
+
+        String title = store.getTitle(songCount / 2);
+        measure("CompactSongStore.findByTitle", param, 1, () -> sink = store.findByTitle(title));
+        measure("CompactSongStore.findByCreator", param, 1, () -> sink = store.findByCreator("artist500"));
+        sink = store;
+        sink = null;
+
+        benchPlaylistMemory(songCount);
+    }
+
+    /**
+     * Reports the heap retained per tracklist entry by ten Playlists of one library, against the same entries
+     * held as an ArrayList of Songs with a HashMap of counts per playlist, as tracklists were before song ids.
+     * Both layouts include the index from Songs to Playlists. The Songs are built first, so only the entries
+     * are counted: once with every entry a different Song, and once with each Song in all ten playlists.
+     *
+     * @param entryCount number of tracklist entries across the playlists
+     */
+    static void benchPlaylistMemory(int entryCount) {
+        Song[] songs = new Song[entryCount];
+        for (int i = 0; i < entryCount; i++) {
+            songs[i] = new Song("Entry " + i, "artist" + i % 1_000, 60 + i % 300);
+        }
+        reportPlaylistMemory(songs, "distinct", entryCount, 1);
+        reportPlaylistMemory(songs, "shared", entryCount, 10);
+        sink = songs;
+    }
+
+    /**
+     * Fills ten playlists in each layout and reports the heap each retains per entry.
+     *
+     * @param songs      the Songs to fill the playlists from
+     * @param kind       describes how the Songs are shared, for the report
+     * @param entryCount number of tracklist entries across the playlists
+     * @param copies     number of playlists each Song is in; 1 or 10
+     */
+    static void reportPlaylistMemory(Song[] songs, String kind, int entryCount, int copies) {
+        String param = "entries=" + entryCount + " " + kind;
+        int perPlaylist = entryCount / 10;
+
+        long before = retainedHeap();
+        ArrayList<Object> lists = new ArrayList<>();
+        HashMap<Song, LinkedHashSet<Object>> index = new HashMap<>();
+        for (int p = 0; p < 10; p++) {
+            ArrayList<Song> tracklist = new ArrayList<>();
+            HashMap<Song, Integer> counts = new HashMap<>();
+            // Stands in for the Playlist in the index, hashed by identity as a Playlist is
+            Object playlist = new Object();
+            for (int i = 0; i < perPlaylist; i++) {
+                Song song = songs[copies == 1 ? p * perPlaylist + i : i];
+                tracklist.add(song);
+                counts.merge(song, 1, Integer::sum);
+                index.computeIfAbsent(song, k -> new LinkedHashSet<>()).add(playlist);
+            }
+            lists.add(tracklist);
+            lists.add(counts);
+        }
+        lists.add(index);
+        sink = lists;
+        reportMemory("ArrayList<Song> tracklist", param, (double) (retainedHeap() - before) / entryCount, 0);
+        lists = null;
+        index = null;
+        sink = null;
+
+        before = retainedHeap();
+        ArrayList<Playlist> playlists = new ArrayList<>();
+        UserRegistry users = new UserRegistry();
+        Listener listener = new Listener("memory@example.com", "memory", "Passw0rd!", 1, new ArrayList<>());
+        users.add(listener);
+        for (int p = 0; p < 10; p++) {
+            Playlist playlist = listener.createNewPlaylist("memory " + p);
+            for (int i = 0; i < perPlaylist; i++) playlist.addSong(songs[copies == 1 ? p * perPlaylist + i : i]);
+            playlists.add(playlist);
+        }
+        sink = users;
+        reportMemory("Playlist tracklist", param, (double) (retainedHeap() - before) / entryCount, 0);
+        measure("Playlist iteration", param, entryCount, () -> {
+            long total = 0;
+            for (Playlist playlist : playlists) {
+                for (int i = 0; i < playlist.getSongCount(); i++) total += playlist.getSongAtIndex(i).getDuration();
+            }
+            sink = total;
+        });
+    }
+
+    /**
+     * Times full garbage collections while a number of Songs are held by a whole SearchService, in each of its
+     * modes: scanning shards of Song objects, and scanning a copy of the records in a CompactSongStore or an
+     * OffHeapSongStore. Every mode keeps the catalog's Songs and indexes on the heap, so the stores add to what
+     * is traced rather than replacing it. GC rows give the longest and mean pause in place of the timings,
+     * and the heap retained per Song as B/op; an OffHeapSongStore's direct memory is not counted.
+     *
+     * @param songCount number of songs held
+     */
+    static void benchGcHold(int songCount) {
+        String param = "songs=" + songCount;
+        for (String mode : new String[] {"shards", "CompactSongStore", "OffHeapSongStore"}) {
+            long before = retainedHeap();
+            SearchService catalog = newCatalog(mode);
+            Random random = new Random(42);
+            for (int i = 0; i < songCount; i++) {
+                catalog.addSongToCatalog(new Song(randomTitle(random, i), "artist" + (i % 1_000), 60 + i % 300));
+            }
+            reportFullGc("SearchService, " + mode, param, before, songCount);
+            sink = catalog;
+            sink = null;
+        }
+    }
+
+    /**
+     * Makes an empty catalog in one of the modes the gc suite compares.
+     *
+     * @param mode "shards", "CompactSongStore" or "OffHeapSongStore"
+     * @return SearchService the catalog
+     */
+    static SearchService newCatalog(String mode) {
+        switch (mode) {
+            case "CompactSongStore":
+                return new SearchService(new CompactSongStore());
+            case "OffHeapSongStore":
+                return new SearchService(new OffHeapSongStore());
+            default:
+                return new SearchService();
+        }
+    }
+
+    /**
+     * Times a few full collections of whatever is held now, and prints a GC row of the report.
+     *
+     * @param name      what is held
+     * @param param     how many Songs are held
+     * @param before    heap in use before the Songs were added
+     * @param songCount number of Songs held
+     */
+    static void reportFullGc(String name, String param, long before, int songCount) {
+        long retained = retainedHeap() - before;
+        long longest = 0;
+        long total = 0;
+        for (int i = 0; i < SAMPLES; i++) {
+            long start = System.nanoTime();
+            System.gc();
+            long pause = System.nanoTime() - start;
+            longest = Math.max(longest, pause);
+            total += pause;
+        }
+        REPORT.printf("gc(full, %s),%s,%d,%d,%.1f%n", name, param, longest, total / SAMPLES, (double) retained / songCount);
+    }
+
+    /**
+     * Runs a steady load of creator and title searches against catalogs whose creator scans read shards of
+     * Song objects, a CompactSongStore and an OffHeapSongStore, and records every collection pause meanwhile.
+     * GC rows give the longest and mean pause in place of the timings, and the number of pauses as B/op.
+     *
+     * @param catalogSize number of songs in each catalog
+     */
+    static void benchGcLoad(int catalogSize) {
+        String[] modes = {"shards", "CompactSongStore", "OffHeapSongStore"};
+        for (String mode : modes) {
+            SearchService catalog = newCatalog(mode);
+            Random random = new Random(42);
+            for (int i = 0; i < catalogSize; i++) {
+                catalog.addSongToCatalog(new Song(randomTitle(random, i), "artist" + (i % 1_000), 60 + random.nextInt(300)));
+            }
+            retainedHeap();
+
+            ArrayList<Long> pauses = new ArrayList<>();
+            List<Runnable> stop = recordPauses(pauses);
+            long end = System.nanoTime() + GC_LOAD_NANOS;
+            int round = 0;
+            while (System.nanoTime() < end) {
+                sink = catalog.searchByPartialCreator("artist" + (round % 1_000));
+                sink = catalog.searchByPartialTitle(WORDS[round % WORDS.length]);
+                round++;
+            }
+            stop.forEach(Runnable::run);
+
+            long longest = 0;
+            long total = 0;
+            for (long pause : pauses) {
+                longest = Math.max(longest, pause);
+                total += pause;
+            }
+            REPORT.printf("gc(search load, %s),catalog=%d searches=%d,%d,%d,%d%n", mode, catalogSize, round * 2,
+                          longest, pauses.isEmpty() ? 0 : total / pauses.size(), pauses.size());
+            sink = catalog;
+            sink = null;
+        }
+    }
+
+    /**
+     * Records the length of every stop-the-world collection from now on. Concurrent collector cycles,
+     * which run alongside the application, are not counted.
+     *
+     * @param pauses receives each pause, in nanoseconds
+     * @return List<Runnable> actions that stop recording
+     */
+    static List<Runnable> recordPauses(List<Long> pauses) {
+        ArrayList<Runnable> stop = new ArrayList<>();
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (bean.getName().contains("Concurrent") || !(bean instanceof javax.management.NotificationEmitter)) continue;
+            javax.management.NotificationEmitter emitter = (javax.management.NotificationEmitter) bean;
+            javax.management.NotificationListener listener = (notification, handback) -> {
+                if (!notification.getType().equals(com.sun.management.GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) return;
+                com.sun.management.GarbageCollectionNotificationInfo info = com.sun.management.GarbageCollectionNotificationInfo
+                    .from((javax.management.openmbean.CompositeData) notification.getUserData());
+                synchronized (pauses) {
+                    pauses.add(info.getGcInfo().getDuration() * 1_000_000L);
+                }
+            };
+            emitter.addNotificationListener(listener, null, null);
+            stop.add(() -> {
+                try {
+                    emitter.removeNotificationListener(listener);
+                } catch (javax.management.ListenerNotFoundException e) {
+                    // Already removed
+                }
+            });
+        }
+        return stop;
+    }
+
+    /**
+     * Builds a title from two random words and a number, like the titles of generated catalogs.
+     *
+     * @param random source of the words
+     * @param i      number ending the title
+     * @return String the title
+     */
+    static String randomTitle(Random random, int i) {
+        return WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)] + " " + i;
+    }
+
+    /**
+     * Measures the heap in use once garbage has been collected.
+     *
+     * @return long bytes of heap in use
+     */
+    static long retainedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        // A single request may not collect everything, so collect until the figure stops falling
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            long now = runtime.totalMemory() - runtime.freeMemory();
+            if (now >= used) break;
+            used = now;
+        }
+        return used;
+    }
+
+    /**
+     * Prints a memory row of the report.
+     *
+     * @param name      what is held
+     * @param param     how many Songs are held
+     * @param retained  heap retained per Song, measured
+     * @param estimated heap per Song as estimated by the structure itself, or 0 if it has no estimate
+     */
+    static void reportMemory(String name, String param, double retained, double estimated) {
+        REPORT.printf("memory(%s),%s,%.1f,%.1f,%.1f%n", name, param, retained, retained, estimated);
+    }
+
+    /**
+     * Writes a journal recording every user, catalog Song and playlist in a registry and catalog.
+     * A change is only acknowledged once it is on disk, so the records are written from many threads
+     * to share each flush: first the users, then the songs, then each listener's playlists.
+     *
+     * @param directory an empty directory to write the journal in
+     * @param users     the users, whose listeners have one playlist each
+     * @param catalog   the catalog
+     * @throws IOException if the journal cannot be written
+     */
+    static void writeJournal(Path directory, UserRegistry users, SearchService catalog) throws IOException {
+        // The engine is given the filled registry and catalog so it can find each playlist's owner,
+        // and each record is written by calling the engine directly.
+        try (StorageEngine engine = StorageEngine.open(directory, users, catalog)) {
+            ArrayList<User> allUsers = new ArrayList<>();
+            for (User u : users) allUsers.add(u);
+            List<Song> songs = catalog.getGlobalCatalog();
+            inParallel(allUsers.size(), i -> engine.userAdded(allUsers.get(i)));
+            inParallel(songs.size(), i -> engine.songAdded(songs.get(i)));
+            inParallel(allUsers.size(), i -> {
+                Listener listener = (Listener) allUsers.get(i);
+                for (Playlist p : listener.getLibrary()) {
+                    engine.playlistCreated(listener, p);
+                    for (Song s : p.getTracklist()) engine.playlistSongAdded(p, s);
+                }
+            });
+        }
+    }
+
+    /**
+     * Runs a task for every index from 0 up to a count, spread over JOURNAL_WRITERS threads,
+     * and waits for all of them.
+     *
+     * @param count number of indexes
+     * @param task  the work for one index
+     */
+    static void inParallel(int count, java.util.function.IntConsumer task) {
+        Thread[] threads = new Thread[JOURNAL_WRITERS];
+        for (int t = 0; t < threads.length; t++) {
+            int first = t;
+            threads[t] = new Thread(() -> {
+                for (int i = first; i < count; i += JOURNAL_WRITERS) task.accept(i);
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * Restores saved data into a new registry and catalog, then closes the engine.
+     *
+     * @param directory the saved data
+     * @return SearchService the restored catalog
+     */
+    static SearchService openAndClose(Path directory) {
+        UserRegistry users = new UserRegistry();
+        SearchService catalog = new SearchService();
+        try {
+            StorageEngine.open(directory, users, catalog).close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return catalog;
+    }
+
+    /**
+     * Deletes a directory and everything in it, if it exists.
+     *
+     * @param directory the directory, or null
+     */
+    static void deleteDirectory(Path directory) {
+        if (directory == null) return;
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        } catch (IOException e) {
+            // Left for the operating system to clean up
+        }
+    }
+
+    /**
+     * Builds a catalog of generated songs spread across a number of artists.
+     *
+     * @param catalogSize number of songs to add
+     * @param artists     number of distinct creators
+     * @return SearchService holding the generated catalog
+     */
+    static SearchService buildCatalog(int catalogSize, int artists) {
+        Random random = new Random(42);
+        SearchService catalog = new SearchService();
+        for (int i = 0; i < catalogSize; i++) {
+            String title = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)] + " " + i;
+            catalog.addSongToCatalog(new Song(title, "artist" + (i % artists), 60 + random.nextInt(300)));
+        }
+        return catalog;
+    }
+
+    /**
+     * Builds a registry of generated listeners sharing one password.
+     *
+     * @param userCount number of users to register
+     * @return UserRegistry holding the generated users
+     */
+    static UserRegistry buildUsers(int userCount) {
+        UserRegistry users = new UserRegistry();
+        for (int i = 0; i < userCount; i++) {
+            users.add(new Listener("user" + i + "@example.com", "user" + i, "Passw0rd!", i + 1, new ArrayList<>()));
+        }
+        return users;
+    }
+
+    /**
+     * Runs a benchmark round repeatedly and reports the time per operation.
+     *
+     * @param name        benchmark name
+     * @param param       description of the data size
+     * @param opsPerRound number of operations one round performs
+     * @param round       the work for one round
+     */
+    static void measure(String name, String param, int opsPerRound, Runnable round) {
+        long warmupEnd = System.nanoTime() + WARMUP_NANOS;
+        while (System.nanoTime() < warmupEnd) {
+            round.run();
+        }
+        double best = Double.MAX_VALUE;
+        double total = 0;
+        long totalOps = 0;
+        long allocatedBefore = THREADS.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < SAMPLES; i++) {
+            long rounds = 0;
+            long start = System.nanoTime();
+            long elapsed;
+            do {
+                round.run();
+                rounds++;
+                elapsed = System.nanoTime() - start;
+            } while (elapsed < SAMPLE_NANOS);
+            double perOp = (double) elapsed / (rounds * opsPerRound);
+            best = Math.min(best, perOp);
+            total += perOp;
+            totalOps += rounds * opsPerRound;
+        }
+        double bytesPerOp = (double) (THREADS.getCurrentThreadAllocatedBytes() - allocatedBefore) / totalOps;
+        REPORT.printf("%s,%s,%.1f,%.1f,%.1f%n", name, param, best, total / SAMPLES, bytesPerOp);
+    }
+}
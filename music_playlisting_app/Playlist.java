@@ -1,7 +1,24 @@
 import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Represents a collection of Songs with an attached 'name' and 'creator' (corresponds to some existing Listener's username)
+ *
+ * While its Listener is registered, a Playlist also records its Songs in the registry's {@link PlaylistIndex},
+ * so a Song can be removed from every playlist without visiting each Listener's library.
+ *
+ * The tracklist is published as an immutable, versioned {@link PlaylistSnapshot}. Each change makes the next
+ * version from the current one, sharing every chunk of song ids it does not touch, and publishes it with a single
+ * volatile write, so readers on any thread see either the old version or the new one, never a change in progress,
+ * and can iterate without locks. Changes are made one at a time while holding the lock of the library's
+ * {@link SongRegistry}, which every Playlist in a Listener's library shares, so the registry, the PlaylistIndex
+ * and the library's own snapshot are updated together with the tracklist.
+ *
+ * The registry gives each distinct Song in the library one id and one instance, so a Song kept in several
+ * playlists is held once, and membership is counted by id in a small open-addressing table of ints rather
+ * than a HashMap of boxed counts. The registry never gives an id to another Song, so each version can read its
+ * Songs without the registry's lock, even after they are removed. Once the registry is compacted, every Playlist
+ * sharing it publishes a version holding the new ids.
  */
 public class Playlist {
     // Represents the name of the playlist
@@ -10,8 +27,29 @@ public class Playlist {
     // Represents the creator of the playlist
     private String creator;
 
-    // Represents the tracklisting of the playlist itself
-    private ArrayList<Song> tracklist;
+    // Held while the Playlist changes; the lock of the registry the Playlist was made with, shared by the whole library
+    private final ReentrantLock lock;
+
+    // Gives the tracklist's Songs their ids; shared with the other Playlists of the library until this one is released
+    private SongRegistry songIds;
+
+    // Represents the tracklisting of the playlist itself, as its latest published version
+    private volatile PlaylistSnapshot current;
+
+    // Counts how many times each song id appears in the tracklist, for constant-time membership checks
+    private TrackCounts trackCounts;
+
+    // The Listener whose library holds this Playlist and is told of each new version; null if there is none
+    private Listener owner;
+
+    // The index the Playlist records its Songs in; null if the Playlist is not indexed
+    private PlaylistIndex playlistIndex;
+
+    // Signifies if this Playlist has been released from its library
+    private boolean released;
+
+    // Records changes to the tracklist so the Playlist can be restored on the next start
+    private MutationLog mutationLog;
 
     /**
      * Constructor for Song objects
@@ -21,14 +59,92 @@ public class Playlist {
      * @param tracklist the tracklisting of the playlist; contains the Song content of the object.
      */
     public Playlist(String name, String creator, ArrayList<Song> tracklist) {
+        this(name, creator, tracklist, new SongRegistry());
+    }
+
+    /**
+     * Constructor for a Playlist whose song ids come from a registry shared with other Playlists
+     *
+     * @param name      name of the playlist
+     * @param creator   Listener who created and owns the playlist
+     * @param tracklist the tracklisting of the playlist; contains the Song content of the object.
+     * @param songIds   gives the tracklist's Songs their ids, usually shared by the owner's whole library
+     */
+    Playlist(String name, String creator, ArrayList<Song> tracklist, SongRegistry songIds) {
         this.name = name;
         this.creator = creator;
-        this.tracklist = tracklist;
+        this.lock = songIds.getLock();
+        this.songIds = songIds;
+        this.trackCounts = new TrackCounts();
+        this.playlistIndex = null;
+        this.released = false;
+        this.mutationLog = MutationLog.NONE;
+        lock.lock();
+        try {
+            int[] ids = new int[tracklist.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = register(tracklist.get(i));
+            }
+            this.current = PlaylistSnapshot.of(name, creator, ids, songIds.songs());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Setter for the MutationLog told about every Song added to or removed from this Playlist.
+     * The owning Listener sets this when the Playlist is created.
+     *
+     * @param mutationLog the log to record changes to; null records nothing
+     */
+    public void setMutationLog(MutationLog mutationLog) {
+        this.mutationLog = mutationLog == null ? MutationLog.NONE : mutationLog;
+    }
+
+    /**
+     * Setter for the Listener told about each new version of this Playlist.
+     * The owning Listener sets this while holding the library's lock.
+     *
+     * @param owner the Listener whose library holds this Playlist, or null once it leaves the library
+     */
+    void setOwner(Listener owner) {
+        this.owner = owner;
+    }
+
+    /**
+     * Setter for the index the Playlist records its Songs in. Every Song already in the tracklist is moved
+     * from the old index to the new one. The owning Listener sets this while it is registered.
+     *
+     * @param playlistIndex the index to record Songs in, or null to leave the current one
+     */
+    void setPlaylistIndex(PlaylistIndex playlistIndex) {
+        lock.lock();
+        try {
+            if (this.playlistIndex == playlistIndex) return;
+            for (Song song : current) {
+                unindex(song);
+            }
+            this.playlistIndex = playlistIndex;
+            for (Song song : current) {
+                index(song);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Getter for the Listener whose library holds this Playlist. Read while holding the library's lock.
+     *
+     * @return Listener the owner, or null if the Playlist is in no library
+     */
+    Listener getOwner() {
+        return owner;
     }
 
     /**
      * Getter for the Playlist's 'name'
-     * 
+     *
      * @return String storing the Playlist's name
      */
     public String getName() {
@@ -37,20 +153,67 @@ public class Playlist {
 
     /**
      * Getter for the Playlist's 'creator'
-     * 
-     * @return String storing the Playlist's creator 
+     *
+     * @return String storing the Playlist's creator
      */
     public String getCreator() {
         return creator;
     }
 
+    /**
+     * Getter for the latest published version of the Playlist.
+     * The snapshot never changes, so it can be kept and iterated from any thread while the Playlist changes.
+     *
+     * @return PlaylistSnapshot the Playlist as it is now
+     */
+    public PlaylistSnapshot snapshot() {
+        return current;
+    }
+
     /**
      * Getter for the Playlist's 'tracklist'
+     * The list is a read-only view that follows later changes; changes must go through addSong()
+     * and the remove methods. Each iteration walks the version published when it began, so it is never
+     * disturbed by changes made meanwhile; use snapshot() to read one version throughout.
      *
-     * @return ArrayList<Song> storing the Song content of the Playlist object.
+     * @return List<Song> storing the Song content of the Playlist object.
      */
-    public ArrayList<Song> getTracklist() {
-        return tracklist;
+    public List<Song> getTracklist() {
+        return new AbstractList<Song>() {
+            @Override
+            public Song get(int index) {
+                return current.get(index);
+            }
+
+            @Override
+            public int size() {
+                return current.size();
+            }
+
+            @Override
+            public Iterator<Song> iterator() {
+                return current.iterator();
+            }
+        };
+    }
+
+    /**
+     * Getter for the number of Songs in the tracklist.
+     *
+     * @return int number of Songs
+     */
+    public int getSongCount() {
+        return current.size();
+    }
+
+    /**
+     * Getter for the Song at a position in the tracklist.
+     *
+     * @param index position in the tracklist (Positive integer >=0, below getSongCount())
+     * @return Song the Song at that position
+     */
+    public Song getSongAtIndex(int index) {
+        return current.get(index);
     }
 
     /**
@@ -60,9 +223,18 @@ public class Playlist {
      * @return boolean true if Song is added to Playlist; false if Playlist already contains Song
      */
     public boolean addSong(Song song) {
-        if (song == null || tracklist.contains(song)) return false;
-        tracklist.add(song);
-        return true;
+        if (song == null) return false;
+        lock.lock();
+        try {
+            int id = songIds.idOf(song);
+            if (id != PlaylistSnapshot.NO_SONG && trackCounts.get(id) > 0) return false;
+            publish(current.withAdded(register(song), songIds.songs()));
+            index(song);
+            mutationLog.playlistSongAdded(this, song);
+            return true;
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -72,54 +244,213 @@ public class Playlist {
      * @return void
      */
     public void removeSongAtIndex(int index) {
-        if (tracklist.isEmpty()) {
-            System.out.print("There are no songs to delete.\n");
-            return;
-        } else if (index >= 0 && index < tracklist.size()) {
-            tracklist.remove(index);
-            return;
-        } else {
-            System.out.println("Invalid Index Number");
-            return;
+        lock.lock();
+        try {
+            if (current.isEmpty()) {
+                System.out.print("There are no songs to delete.\n");
+                return;
+            } else if (index >= 0 && index < current.size()) {
+                removeAt(index);
+                mutationLog.playlistSongRemovedAt(this, index);
+                return;
+            } else {
+                System.out.println("Invalid Index Number");
+                return;
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
     /**
      * Removes a specific song from this Playlist wherever it may exist.
-     * 
+     *
      * @param song Song we are removing from this Playlist.
      * @return boolean true if song was present and removed; false otherwise.
      */
     public boolean removeSong(Song song) {
-        return tracklist.remove(song);
+        lock.lock();
+        try {
+            int id = song == null ? PlaylistSnapshot.NO_SONG : songIds.idOf(song);
+            if (song != null && (id == PlaylistSnapshot.NO_SONG || trackCounts.get(id) == 0)) return false;
+            int index = current.indexOfEntry(id);
+            if (index < 0) return false;
+            removeAt(index);
+            mutationLog.playlistSongRemoved(this, song);
+            return true;
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
-     * Calculates the total duration of the Playlist
-     * Then converts the duration integer value into a formatted string with colon separated values.
+     * Removes the Song with an id from this Playlist.
+     * Unlike an index, the id still names the same Song if the tracklist has changed since it was listed.
+     *
+     * @param songId the {@link Song#getId() id} of the Song we are removing, as listed by listSongs()
+     * @return boolean true if a Song with the id was present and removed; false otherwise.
+     */
+    public boolean removeSongById(int songId) {
+        lock.lock();
+        try {
+            int index = current.indexOfId(songId);
+            if (index < 0) return false;
+            Song song = current.get(index);
+            removeAt(index);
+            mutationLog.playlistSongRemoved(this, song);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes this Playlist from its PlaylistIndex, and moves its tracklist to a SongRegistry of its own.
+     * Called when the playlist is deleted from its library, so later catalog removals no longer visit it,
+     * and the library's registry no longer holds its Songs.
+     *
+     * @return void
+     */
+    public void release() {
+        lock.lock();
+        try {
+            if (released) return;
+            setPlaylistIndex(null);
+            SongRegistry own = new SongRegistry();
+            TrackCounts counts = new TrackCounts();
+            int[] ids = current.ids();
+            for (int i = 0; i < ids.length; i++) {
+                if (ids[i] == PlaylistSnapshot.NO_SONG) continue;
+                Song song = songIds.get(ids[i]);
+                songIds.release(ids[i]);
+                ids[i] = own.acquire(song);
+                counts.add(ids[i], 1);
+            }
+            songIds = own;
+            trackCounts = counts;
+            released = true;
+            publish(current.withIds(ids, own.songs()));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Replaces every song id in the tracklist after the registry has been compacted, publishing the next version.
+     * Called while holding the library's lock, for each Playlist sharing the registry.
+     *
+     * @param newIds the new id of each old id, as returned by {@link SongRegistry#compact()}
+     */
+    void remapSongIds(int[] newIds) {
+        TrackCounts counts = new TrackCounts();
+        int[] ids = current.ids();
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] == PlaylistSnapshot.NO_SONG) continue;
+            ids[i] = newIds[ids[i]];
+            counts.add(ids[i], 1);
+        }
+        trackCounts = counts;
+        publish(current.withIds(ids, songIds.songs()));
+    }
+
+    /**
+     * Records in the PlaylistIndex that this Playlist contains a Song.
+     *
+     * @param song the Song now in this Playlist
+     */
+    private void index(Song song) {
+        if (playlistIndex == null || song == null) return;
+        playlistIndex.add(song, this);
+    }
+
+    /**
+     * Removes this Playlist from a Song's entry in the PlaylistIndex.
+     *
+     * @param song the Song no longer in this Playlist
+     */
+    private void unindex(Song song) {
+        if (playlistIndex == null || song == null) return;
+        playlistIndex.remove(song, this);
+    }
+
+    /**
+     * Takes a reference to a Song in the registry and counts it in the tracklist.
+     *
+     * @param song the Song being added; may be null
+     * @return int the Song's id, or NO_SONG for null
+     */
+    private int register(Song song) {
+        if (song == null) return PlaylistSnapshot.NO_SONG;
+        int id = songIds.acquire(song);
+        trackCounts.add(id, 1);
+        return id;
+    }
+
+    /**
+     * Removes the Song at a position from the tracklist, and drops its reference in the registry.
+     * The Song leaves the PlaylistIndex once no copy of it remains in the tracklist.
+     *
+     * @param index position in the tracklist
+     */
+    private void removeAt(int index) {
+        int id = current.idAt(index);
+        publish(current.withRemovedAt(index));
+        if (id == PlaylistSnapshot.NO_SONG) return;
+        if (trackCounts.add(id, -1) == 0) {
+            unindex(songIds.get(id));
+        }
+        songIds.release(id);
+        if (songIds.isCompactionDue()) {
+            // The library renumbers every Playlist sharing its registry; a Playlist on its own renumbers itself
+            if (owner != null) {
+                owner.compactSongIds();
+            } else {
+                remapSongIds(songIds.compact());
+            }
+        }
+    }
+
+    /**
+     * Publishes the next version of the Playlist to readers, and to the owner's library.
+     *
+     * @param next the new version
+     */
+    private void publish(PlaylistSnapshot next) {
+        current = next;
+        if (owner != null) {
+            owner.playlistChanged(this, next);
+        }
+    }
+
+    /**
+     * Getter for the total duration of the Playlist.
+     * The total is kept in each version as Songs are added and removed, so this does not walk the tracklist.
+     *
+     * @return int total duration in seconds
+     */
+    public int getTotalDuration() {
+        return current.getTotalDuration();
+    }
+
+    /**
+     * Converts the total duration of the Playlist into a formatted string with colon separated values.
      *
      * @return String formatted time string
      */
     public String getTotalDurationFormatted() {
-        int totalDuration = 0;
-        for (Song s : tracklist) {
-            totalDuration += s.getDuration();
-        }
-        int minutes = totalDuration / 60;
-        int seconds = totalDuration % 60;
-        return String.format("%02d:%02d", minutes, seconds);
+        return formatDuration(getTotalDuration());
     }
 
     /**
      * Prints the contents of the 'tracklist' to the user.
-     * Songs are printed with an index as this function can be used to help users choose a song
-     * 
+     * Songs are printed with their id as this function can be used to help users choose a song for removeSongById()
+     *
      * @return void
      */
     public void listSongs() {
         System.out.println("=== " + this.getName() + "'s Songs ===");
-        for (int i = 0; i < tracklist.size(); i++) {
-            System.out.println("[" + i + "] - " + tracklist.get(i).toString());
+        for (Song song : current) {
+            System.out.println("[" + (song == null ? "-" : song.getId()) + "] - " + song);
         }
     }
 
@@ -130,6 +461,137 @@ public class Playlist {
      */
     @Override
     public String toString() {
-        return "'" + name + "' created by " + creator + " - " + tracklist.size() + " songs - " + getTotalDurationFormatted();
+        PlaylistSnapshot version = current;
+        return "'" + name + "' created by " + creator + " - " + version.size() + " songs - " + formatDuration(version.getTotalDuration());
+    }
+
+    /**
+     * Converts a duration into a formatted string with colon separated values.
+     *
+     * @param duration a duration in seconds
+     * @return String formatted time string
+     */
+    private static String formatDuration(int duration) {
+        int minutes = duration / 60;
+        int seconds = duration % 60;
+        return String.format("%02d:%02d", minutes, seconds);
+    }
+
+    /**
+     * Counts how many times each song id appears in a tracklist, as an open-addressing set of ints.
+     * addSong() never adds a Song twice, so only a tracklist given to the constructor can repeat one;
+     * the copies past the first are counted in a small map, made only when there are any.
+     */
+    private static class TrackCounts {
+        // Each slot's id plus 1, so that 0 marks an empty slot
+        private int[] keys = new int[8];
+
+        // Number of ids kept
+        private int size;
+
+        // The number of copies of each repeated id past its first; null while no id is repeated
+        private HashMap<Integer, Integer> repeats;
+
+        /**
+         * Getter for the count of an id.
+         *
+         * @param id a song id (Positive integer >=0)
+         * @return int the number of times the id appears; 0 if it does not
+         */
+        int get(int id) {
+            if (keys[find(id)] == 0) return 0;
+            return repeats == null ? 1 : 1 + repeats.getOrDefault(id, 0);
+        }
+
+        /**
+         * Adds one to or takes one from the count of an id, dropping the id once its count reaches 0.
+         *
+         * @param id    a song id (Positive integer >=0)
+         * @param delta 1, or -1 only for an id that is kept
+         * @return int the id's new count
+         */
+        int add(int id, int delta) {
+            int slot = find(id);
+            if (keys[slot] == 0) {
+                keys[slot] = id + 1;
+                if (++size * 2 > keys.length) grow();
+                return 1;
+            }
+            int extra = repeats == null ? 0 : repeats.getOrDefault(id, 0);
+            if (delta > 0) {
+                if (repeats == null) repeats = new HashMap<Integer, Integer>();
+                repeats.put(id, extra + 1);
+                return extra + 2;
+            }
+            if (extra == 0) {
+                delete(slot);
+                return 0;
+            }
+            if (extra == 1) {
+                repeats.remove(id);
+            } else {
+                repeats.put(id, extra - 1);
+            }
+            return extra;
+        }
+
+        /**
+         * Finds the slot holding an id, or the empty slot where it would go.
+         *
+         * @param id a song id
+         * @return int the slot
+         */
+        private int find(int id) {
+            int mask = keys.length - 1;
+            int slot = mix(id) & mask;
+            while (keys[slot] != 0 && keys[slot] != id + 1) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        /**
+         * Empties a slot, then moves back any later ids in the same run that could sit in it,
+         * so every lookup still finds its id before reaching an empty slot.
+         *
+         * @param slot the slot to empty
+         */
+        private void delete(int slot) {
+            int mask = keys.length - 1;
+            size--;
+            int next = (slot + 1) & mask;
+            while (keys[next] != 0) {
+                int home = mix(keys[next] - 1) & mask;
+                // Move the id back unless its home lies after the emptied slot, up to the id's own slot
+                if (((next - home) & mask) >= ((next - slot) & mask)) {
+                    keys[slot] = keys[next];
+                    slot = next;
+                }
+                next = (next + 1) & mask;
+            }
+            keys[slot] = 0;
+        }
+
+        /**
+         * Doubles the table, placing every id again.
+         */
+        private void grow() {
+            int[] oldKeys = keys;
+            keys = new int[oldKeys.length * 2];
+            for (int key : oldKeys) {
+                if (key != 0) keys[find(key - 1)] = key;
+            }
+        }
+
+        /**
+         * Spreads the bits of an id, since dense ids would otherwise fill runs of neighbouring slots.
+         *
+         * @param id a song id
+         * @return int the mixed bits
+         */
+        private static int mix(int id) {
+            int h = id * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
     }
 }
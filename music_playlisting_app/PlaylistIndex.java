@@ -0,0 +1,86 @@
+import java.util.*;
+
+/**
+ * Indexes which Playlists contain each Song, so a Song can be removed from every playlist without visiting
+ * each Listener's library.
+ *
+ * Each UserRegistry keeps one PlaylistIndex for the libraries of its Listeners. A Listener's Playlists are
+ * listed while the Listener is registered, and a Playlist leaves the index when it is deleted from its library,
+ * so the index never keeps a deleted Playlist reachable, and separate registries never see each other's playlists.
+ *
+ * The index may be shared by many threads. Its map is guarded by the index's own lock, which is only held
+ * for the lookup or update itself.
+ */
+public class PlaylistIndex {
+    // Maps each Song to the Playlists that currently contain it; guarded by its own lock
+    private final HashMap<Song, LinkedHashSet<Playlist>> playlistsBySong;
+
+    /**
+     * Constructor for an empty PlaylistIndex
+     */
+    public PlaylistIndex() {
+        this.playlistsBySong = new HashMap<Song, LinkedHashSet<Playlist>>();
+    }
+
+    /**
+     * Records that a Playlist contains a Song.
+     *
+     * @param song     the Song now in the Playlist
+     * @param playlist the Playlist containing it
+     */
+    void add(Song song, Playlist playlist) {
+        synchronized (playlistsBySong) {
+            playlistsBySong.computeIfAbsent(song, k -> new LinkedHashSet<Playlist>()).add(playlist);
+        }
+    }
+
+    /**
+     * Removes a Playlist from a Song's entry, dropping the entry once no Playlist contains the Song.
+     *
+     * @param song     the Song no longer in the Playlist
+     * @param playlist the Playlist that held it
+     */
+    void remove(Song song, Playlist playlist) {
+        synchronized (playlistsBySong) {
+            LinkedHashSet<Playlist> playlists = playlistsBySong.get(song);
+            if (playlists != null) {
+                playlists.remove(playlist);
+                if (playlists.isEmpty()) {
+                    playlistsBySong.remove(song);
+                }
+            }
+        }
+    }
+
+    /**
+     * Getter for every indexed Playlist that currently contains a specific Song.
+     *
+     * @param song the Song we are looking for
+     * @return ArrayList<Playlist> a copy of the Playlists containing the Song; empty if there are none
+     */
+    public ArrayList<Playlist> getPlaylistsContaining(Song song) {
+        synchronized (playlistsBySong) {
+            LinkedHashSet<Playlist> playlists = playlistsBySong.get(song);
+            if (playlists == null) {
+                return new ArrayList<>();
+            }
+            return new ArrayList<>(playlists);
+        }
+    }
+
+    /**
+     * Removes a specific Song from every indexed Playlist that contains it, e.g. once it leaves the catalog.
+     * Only the Playlists holding the Song are visited.
+     *
+     * @param song the Song we are removing
+     * @return boolean true if any Playlist contained the Song; false otherwise
+     */
+    public boolean removeFromAllPlaylists(Song song) {
+        // getPlaylistsContaining() returns a copy, so removing the song below does not disturb this loop
+        ArrayList<Playlist> playlists = getPlaylistsContaining(song);
+        for (Playlist p : playlists) {
+            p.removeSong(song);
+        }
+        return !playlists.isEmpty();
+    }
+}
@@ -0,0 +1,479 @@
+import java.util.*;
+
+/**
+ * An immutable version of a Playlist: its name, creator and tracklist as they were at one moment.
+ *
+ * A Playlist publishes a new PlaylistSnapshot each time its tracklist changes, so a reader holding a snapshot
+ * can iterate it from any thread, without locks, and never sees a later change or a ConcurrentModificationException.
+ * Each snapshot has a version, one more than the snapshot it was made from, so readers can tell which is newer.
+ *
+ * The tracklist is held as int song ids from the library's {@link SongRegistry}, in chunks of at most CHUNK_SIZE,
+ * and a new version shares every chunk it does not change with the version it was made from. Removing a Song
+ * copies the one chunk it touches and the list of chunks, rather than the whole tracklist, so a small edit to a
+ * playlist of a million Songs copies about sixteen thousand ids instead of a million. Neighbouring chunks are merged
+ * once they fit in one, so a tracklist never needs many more chunks than a full packing would. Adding a Song to the
+ * newest version writes its id into spare room past the end, which older versions never read, so building a
+ * playlist one Song at a time stays linear.
+ *
+ * Each version keeps the registry's array of Songs by id as it was when the version was made. The registry never
+ * gives an id to another Song, or changes the array at an id it has counted out, so a version reads its Songs
+ * through that array without the registry's lock, and stays readable after its Songs are released.
+ */
+public final class PlaylistSnapshot extends AbstractList<Song> implements RandomAccess {
+    // Most Songs held in one chunk
+    static final int CHUNK_SIZE = 64;
+
+    // Id held in a chunk for a null entry
+    static final int NO_SONG = -1;
+
+    // Room given to the first chunk of a tracklist built one Song at a time
+    private static final int FIRST_CHUNK_SIZE = 4;
+
+    // The name of the playlist
+    private final String name;
+
+    // The creator of the playlist
+    private final String creator;
+
+    // Counts the versions of the playlist, starting from 0 for an empty one
+    private final long version;
+
+    // The chunks, shared with other versions, of which this version reads the first chunkCount
+    private final Backing backing;
+
+    // The Song of each id, from the registry that gave out the ids; a null entry is held as NO_SONG
+    private final Song[] songs;
+
+    // The number of chunks in this version's tracklist
+    private final int chunkCount;
+
+    // The number of Songs in this version's tracklist
+    private final int size;
+
+    // The sum of the durations of every Song in the tracklist, in seconds
+    private final int totalDuration;
+
+    /**
+     * The arrays a run of versions share. Each version reads only its own first chunkCount chunks and size Songs,
+     * so the newest version may add to the arrays past that point without changing what an older version sees.
+     */
+    private static final class Backing {
+        // The tracklist's song ids in order, split into non-empty chunks of at most CHUNK_SIZE, with room to spare
+        final int[][] chunks;
+
+        // The number of Songs in each chunk and every chunk before it
+        final int[] ends;
+
+        // The size of the newest version made on these arrays, the only one allowed to add to them
+        int size;
+
+        /**
+         * Constructor for a Backing
+         *
+         * @param chunks the chunks
+         * @param ends   the number of Songs up to and including each chunk
+         * @param size   the size of the version that owns them
+         */
+        Backing(int[][] chunks, int[] ends, int size) {
+            this.chunks = chunks;
+            this.ends = ends;
+            this.size = size;
+        }
+    }
+
+    /**
+     * Constructor for a PlaylistSnapshot
+     *
+     * @param name          the name of the playlist
+     * @param creator       the creator of the playlist
+     * @param version       the snapshot's version
+     * @param backing       the arrays holding the tracklist
+     * @param songs         the Song of each id in the tracklist
+     * @param chunkCount    the number of chunks in the tracklist
+     * @param size          the number of Songs in the tracklist
+     * @param totalDuration the sum of the Songs' durations
+     */
+    private PlaylistSnapshot(String name, String creator, long version, Backing backing, Song[] songs, int chunkCount, int size,
+                             int totalDuration) {
+        this.name = name;
+        this.creator = creator;
+        this.version = version;
+        this.backing = backing;
+        this.songs = songs;
+        this.chunkCount = chunkCount;
+        this.size = size;
+        this.totalDuration = totalDuration;
+    }
+
+    /**
+     * Makes the first version of a playlist.
+     *
+     * @param name    the name of the playlist
+     * @param creator the creator of the playlist
+     * @param ids     the song ids of the tracklist, in order; NO_SONG for a null entry
+     * @param songs   the Song of each id, which must never change at those ids
+     * @return PlaylistSnapshot version 0, holding the Songs
+     */
+    static PlaylistSnapshot of(String name, String creator, int[] ids, Song[] songs) {
+        return build(name, creator, 0, ids, songs);
+    }
+
+    /**
+     * Makes a version holding a tracklist in full chunks.
+     *
+     * @param name    the name of the playlist
+     * @param creator the creator of the playlist
+     * @param version the version
+     * @param ids     the song ids of the tracklist, in order
+     * @param songs   the Song of each id
+     * @return PlaylistSnapshot the version
+     */
+    private static PlaylistSnapshot build(String name, String creator, long version, int[] ids, Song[] songs) {
+        int size = ids.length;
+        int[][] chunks = new int[(size + CHUNK_SIZE - 1) / CHUNK_SIZE][];
+        int[] ends = new int[chunks.length];
+        int totalDuration = 0;
+        for (int c = 0; c < chunks.length; c++) {
+            chunks[c] = Arrays.copyOfRange(ids, c * CHUNK_SIZE, Math.min(size, (c + 1) * CHUNK_SIZE));
+            ends[c] = c * CHUNK_SIZE + chunks[c].length;
+        }
+        for (int id : ids) {
+            if (id != NO_SONG) totalDuration += songs[id].getDuration();
+        }
+        return new PlaylistSnapshot(name, creator, version, new Backing(chunks, ends, size), songs, chunks.length, size, totalDuration);
+    }
+
+    /**
+     * Getter for the playlist's 'name'
+     *
+     * @return String storing the playlist's name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Getter for the playlist's 'creator'
+     *
+     * @return String storing the playlist's creator
+     */
+    public String getCreator() {
+        return creator;
+    }
+
+    /**
+     * Getter for the snapshot's version. Each change to a playlist publishes the next version.
+     *
+     * @return long the version, 0 for the playlist as it was made
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Getter for the total duration of the tracklist.
+     *
+     * @return int total duration in seconds
+     */
+    public int getTotalDuration() {
+        return totalDuration;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Song get(int index) {
+        return song(idAt(index));
+    }
+
+    /**
+     * Getter for the song id at a position.
+     *
+     * @param index position in the tracklist (Positive integer >=0, below size())
+     * @return int the id, or NO_SONG for a null entry
+     */
+    int idAt(int index) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+        int c = chunkOf(index);
+        return backing.chunks[c][index - start(c)];
+    }
+
+    /**
+     * Copies the tracklist's song ids into one array.
+     *
+     * @return int[] the ids in order
+     */
+    int[] ids() {
+        int[] ids = new int[size];
+        for (int c = 0; c < chunkCount; c++) {
+            System.arraycopy(backing.chunks[c], 0, ids, start(c), chunkLength(c));
+        }
+        return ids;
+    }
+
+    /**
+     * Walks the tracklist a chunk at a time, rather than looking each position up.
+     *
+     * @return Iterator<Song> over the Songs in order
+     */
+    @Override
+    public Iterator<Song> iterator() {
+        return new Iterator<Song>() {
+            private int chunk = 0;
+            private int offset = 0;
+            private int length = chunkCount == 0 ? 0 : chunkLength(0);
+
+            @Override
+            public boolean hasNext() {
+                return chunk < chunkCount;
+            }
+
+            @Override
+            public Song next() {
+                if (chunk >= chunkCount) throw new NoSuchElementException();
+                Song song = song(backing.chunks[chunk][offset++]);
+                if (offset == length) {
+                    chunk++;
+                    offset = 0;
+                    if (chunk < chunkCount) length = chunkLength(chunk);
+                }
+                return song;
+            }
+        };
+    }
+
+    /**
+     * Finds the first position holding a Song equal to the one given, walking the chunks directly.
+     *
+     * @param o the Song to look for; may be null
+     * @return int its position, or -1 if the tracklist does not hold it
+     */
+    @Override
+    public int indexOf(Object o) {
+        for (int c = 0; c < chunkCount; c++) {
+            int[] chunk = backing.chunks[c];
+            int length = chunkLength(c);
+            for (int i = 0; i < length; i++) {
+                if (Objects.equals(o, song(chunk[i]))) return start(c) + i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the first position holding a song id from the registry, comparing ints only.
+     *
+     * @param id the id to look for
+     * @return int its position, or -1 if the tracklist does not hold it
+     */
+    int indexOfEntry(int id) {
+        for (int c = 0; c < chunkCount; c++) {
+            int[] chunk = backing.chunks[c];
+            int length = chunkLength(c);
+            for (int i = 0; i < length; i++) {
+                if (chunk[i] == id) return start(c) + i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the first position holding a Song with an id.
+     *
+     * @param songId the {@link Song#getId() id} to look for
+     * @return int its position, or -1 if no Song in the tracklist has the id
+     */
+    int indexOfId(int songId) {
+        for (int c = 0; c < chunkCount; c++) {
+            int[] chunk = backing.chunks[c];
+            int length = chunkLength(c);
+            for (int i = 0; i < length; i++) {
+                if (chunk[i] != NO_SONG && songs[chunk[i]].getId() == songId) return start(c) + i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Makes the next version, with a Song added to the end of the tracklist.
+     * When this is the newest version the id is written into the spare room after its last chunk;
+     * otherwise, or when there is no room, only the last chunk and the list of chunks are copied.
+     *
+     * @param id    the Song's id from the registry that gave out this version's ids, or NO_SONG for null
+     * @param songs the registry's Songs by id now, which hold every id this version's Songs had
+     * @return PlaylistSnapshot the next version
+     */
+    PlaylistSnapshot withAdded(int id, Song[] songs) {
+        int duration = totalDuration + (id == NO_SONG ? 0 : songs[id].getDuration());
+        boolean owned = backing.size == size;
+        int last = chunkCount - 1;
+        int length = last < 0 ? 0 : chunkLength(last);
+        if (last >= 0 && length < CHUNK_SIZE) {
+            Backing target = backing;
+            if (!owned || length == backing.chunks[last].length) {
+                // Give the last chunk more room in copies of the arrays, as older versions may be reading it
+                target = copyOf(backing.chunks.length);
+                target.chunks[last] = Arrays.copyOf(backing.chunks[last], Math.min(CHUNK_SIZE, Math.max(FIRST_CHUNK_SIZE, length * 2)));
+            }
+            target.chunks[last][length] = id;
+            target.ends[last] = size + 1;
+            target.size = size + 1;
+            return new PlaylistSnapshot(name, creator, version + 1, target, songs, chunkCount, size + 1, duration);
+        }
+        Backing target = owned && chunkCount < backing.chunks.length ? backing : copyOf(Math.max(FIRST_CHUNK_SIZE, chunkCount * 2));
+        int[] chunk = new int[chunkCount == 0 ? FIRST_CHUNK_SIZE : CHUNK_SIZE];
+        chunk[0] = id;
+        target.chunks[chunkCount] = chunk;
+        target.ends[chunkCount] = size + 1;
+        target.size = size + 1;
+        return new PlaylistSnapshot(name, creator, version + 1, target, songs, chunkCount + 1, size + 1, duration);
+    }
+
+    /**
+     * Makes the next version, with the Song at a position removed.
+     * Only the chunk holding it, a neighbour it is merged with, the last chunk and the list of chunks are copied.
+     *
+     * @param index position in the tracklist (Positive integer >=0, below size())
+     * @return PlaylistSnapshot the next version
+     */
+    PlaylistSnapshot withRemovedAt(int index) {
+        Song removed = get(index);
+        int duration = totalDuration - (removed == null ? 0 : removed.getDuration());
+        int[][] chunks = backing.chunks;
+        int c = chunkOf(index);
+        int offset = index - start(c);
+        int[] shrunk = new int[chunkLength(c) - 1];
+        System.arraycopy(chunks[c], 0, shrunk, 0, offset);
+        System.arraycopy(chunks[c], offset + 1, shrunk, offset, shrunk.length - offset);
+
+        // Join the shrunken chunk to a neighbour when both fit in one, so removals do not leave many small chunks
+        int first = c;
+        int replaced = 1;
+        int[] replacement = shrunk;
+        if (c > 0 && chunkLength(c - 1) + shrunk.length <= CHUNK_SIZE) {
+            first = c - 1;
+            replaced = 2;
+            replacement = concat(chunks[c - 1], chunkLength(c - 1), shrunk, shrunk.length);
+        } else if (c + 1 < chunkCount && shrunk.length + chunkLength(c + 1) <= CHUNK_SIZE) {
+            replaced = 2;
+            replacement = concat(shrunk, shrunk.length, chunks[c + 1], chunkLength(c + 1));
+        }
+        // The replaced chunks from first on become the replacement, or nothing if it is empty
+        int kept = replacement.length == 0 ? 0 : 1;
+        int[][] nextChunks = new int[chunkCount - replaced + kept][];
+        int[] nextEnds = new int[nextChunks.length];
+        System.arraycopy(chunks, 0, nextChunks, 0, first);
+        System.arraycopy(backing.ends, 0, nextEnds, 0, first);
+        if (kept == 1) {
+            nextChunks[first] = replacement;
+            nextEnds[first] = start(first) + replacement.length;
+        }
+        for (int i = first + replaced; i < chunkCount; i++) {
+            nextChunks[i - replaced + kept] = chunks[i];
+            nextEnds[i - replaced + kept] = (i == chunkCount - 1 ? size : backing.ends[i]) - 1;
+        }
+        // The last chunk is where Songs are added in place, so it must not be one other versions may add to as well
+        int last = nextChunks.length - 1;
+        if (last >= 0 && nextChunks[last] != replacement) {
+            nextChunks[last] = Arrays.copyOf(nextChunks[last], nextEnds[last] - (last == 0 ? 0 : nextEnds[last - 1]));
+        }
+        return new PlaylistSnapshot(name, creator, version + 1, new Backing(nextChunks, nextEnds, size - 1), songs, nextChunks.length,
+                                    size - 1, duration);
+    }
+
+    /**
+     * Makes the next version, holding the same Songs under ids from another registry, or from the same
+     * registry once it has been compacted. No chunk is shared with this version.
+     *
+     * @param ids   the new id of the Song at each position, in order
+     * @param songs the registry's Songs by id
+     * @return PlaylistSnapshot the next version
+     */
+    PlaylistSnapshot withIds(int[] ids, Song[] songs) {
+        return build(name, creator, version + 1, ids, songs);
+    }
+
+    /**
+     * Looks up the Song of an id in this version's array.
+     *
+     * @param id a song id, or NO_SONG
+     * @return Song the Song, or null for NO_SONG
+     */
+    private Song song(int id) {
+        return id == NO_SONG ? null : songs[id];
+    }
+
+    /**
+     * Finds the chunk holding a position, by binary search over the chunk ends.
+     *
+     * @param index a position in the tracklist
+     * @return int the chunk's position in chunks
+     */
+    private int chunkOf(int index) {
+        int[] ends = backing.ends;
+        int low = 0;
+        int high = chunkCount - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (ends[mid] <= index) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Getter for the position of a chunk's first Song in the tracklist.
+     *
+     * @param chunk the chunk's position in chunks
+     * @return int the number of Songs in the chunks before it
+     */
+    private int start(int chunk) {
+        return chunk == 0 ? 0 : backing.ends[chunk - 1];
+    }
+
+    /**
+     * Getter for the number of Songs this version holds in a chunk. The last chunk may hold more Songs,
+     * added by newer versions, so its length comes from this version's size.
+     *
+     * @param chunk the chunk's position in chunks
+     * @return int the number of Songs in the chunk
+     */
+    private int chunkLength(int chunk) {
+        return (chunk == chunkCount - 1 ? size : backing.ends[chunk]) - start(chunk);
+    }
+
+    /**
+     * Copies this version's part of the shared arrays, so the next version can change them freely.
+     *
+     * @param capacity the number of chunks the copies have room for, at least chunkCount
+     * @return Backing the copies, owned by a version one Song longer than this one
+     */
+    private Backing copyOf(int capacity) {
+        int[][] chunks = new int[capacity][];
+        int[] ends = new int[capacity];
+        System.arraycopy(backing.chunks, 0, chunks, 0, chunkCount);
+        System.arraycopy(backing.ends, 0, ends, 0, chunkCount);
+        return new Backing(chunks, ends, size);
+    }
+
+    /**
+     * Joins the start of two chunks into a new one.
+     *
+     * @param a       the first chunk
+     * @param aLength the number of ids to take from a
+     * @param b       the second chunk
+     * @param bLength the number of ids to take from b
+     * @return int[] a's ids followed by b's
+     */
+    private static int[] concat(int[] a, int aLength, int[] b, int bLength) {
+        int[] joined = Arrays.copyOf(a, aLength + bLength);
+        System.arraycopy(b, 0, joined, aLength, bLength);
+        return joined;
+    }
+}
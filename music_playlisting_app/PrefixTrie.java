@@ -0,0 +1,390 @@
+import java.util.*;
+
+/**
+ * Compact (radix) trie over search keys, used to complete what a user has typed so far.
+ * Each edge holds a run of characters rather than a single one, so a key adds at most two nodes,
+ * and every node records how many distinct keys lie below it.
+ *
+ * The trie counts how many Songs share each key, and completes a prefix with the keys shared by the most Songs
+ * first. Each node also records the largest count below it, so a completion only visits the nodes on the way
+ * to the keys it returns. When a key's last Song is removed its node is pruned, and a node left with a single
+ * child is merged into it, so the trie never holds more than two nodes per live key.
+ *
+ * SearchService keeps one PrefixTrie for titles and one for creators, updated whenever the catalog changes.
+ */
+public class PrefixTrie {
+    // Shared by every node without children
+    private static final Node[] NO_CHILDREN = new Node[0];
+
+    // The node for the empty key; its label is always empty
+    private Node root;
+
+    /**
+     * Constructor for an empty PrefixTrie
+     */
+    public PrefixTrie() {
+        this.root = new Node(new char[0]);
+    }
+
+    /**
+     * Adds one Song's key to the trie.
+     *
+     * @param key search key, as worked out by a {@link TextAnalyzer}
+     */
+    public void add(String key) {
+        add(key, 1);
+    }
+
+    /**
+     * Adds many Songs' keys to the trie, as when a catalog is loaded.
+     * The Songs sharing each key are counted first, so each distinct key is walked down once.
+     *
+     * @param keys search keys, one per Song
+     */
+    public void addAll(List<String> keys) {
+        HashMap<String, Integer> counts = new HashMap<String, Integer>();
+        for (String key : keys) {
+            counts.merge(key, 1, Integer::sum);
+        }
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            add(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Adds a number of Songs sharing a key to the trie.
+     *
+     * @param key   search key
+     * @param count number of Songs (Positive integer >=1)
+     */
+    private void add(String key, int count) {
+        ArrayList<Node> path = new ArrayList<>();
+        Node node = root;
+        int i = 0;
+        path.add(node);
+        while (i < key.length()) {
+            int at = node.indexOf(key.charAt(i));
+            if (at < 0) {
+                Node leaf = new Node(key.substring(i).toCharArray());
+                node.insertChild(-at - 1, leaf);
+                node = leaf;
+                path.add(node);
+                break;
+            }
+            Node child = node.children[at];
+            int common = commonLength(child.label, key, i);
+            if (common < child.label.length) {
+                // The key leaves the edge part way along, so split the edge where they differ
+                Node middle = new Node(Arrays.copyOf(child.label, common));
+                child.label = Arrays.copyOfRange(child.label, common, child.label.length);
+                middle.children = new Node[] {child};
+                middle.keys = child.keys;
+                middle.best = child.best;
+                node.children[at] = middle;
+                child = middle;
+            }
+            node = child;
+            path.add(node);
+            i += common;
+        }
+        boolean added = node.songs == 0;
+        int songs = node.songs += count;
+        for (Node n : path) {
+            n.best = Math.max(n.best, songs);
+            if (added) {
+                n.keys++;
+            }
+        }
+    }
+
+    /**
+     * Removes one Song's key from the trie, pruning the key once no Songs share it.
+     *
+     * @param key search key the Song was added under
+     */
+    public void remove(String key) {
+        ArrayList<Node> path = new ArrayList<>();
+        Node node = root;
+        int i = 0;
+        path.add(node);
+        while (i < key.length()) {
+            int at = node.indexOf(key.charAt(i));
+            if (at < 0) return;
+            node = node.children[at];
+            if (commonLength(node.label, key, i) != node.label.length) return;
+            path.add(node);
+            i += node.label.length;
+        }
+        if (node.songs == 0) return;
+        node.songs--;
+        for (int p = path.size() - 1; p >= 0; p--) {
+            path.get(p).updateBest();
+        }
+        if (node.songs > 0) return;
+        for (Node n : path) {
+            n.keys--;
+        }
+
+        // Prune the emptied node, then merge whichever node is left with a single child and no key of its own
+        for (int p = path.size() - 1; p > 0; p--) {
+            Node current = path.get(p);
+            Node parent = path.get(p - 1);
+            if (current.songs > 0) break;
+            if (current.children.length == 0) {
+                parent.removeChild(parent.indexOf(current.label[0]));
+            } else if (current.children.length == 1) {
+                Node child = current.children[0];
+                char[] label = Arrays.copyOf(current.label, current.label.length + child.label.length);
+                System.arraycopy(child.label, 0, label, current.label.length, child.label.length);
+                child.label = label;
+                parent.children[parent.indexOf(label[0])] = child;
+                break;
+            } else {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Finds the top keys that start with a prefix: those shared by the most Songs, with ties in alphabetical order.
+     * The walk is best-first, going down only into subtrees whose largest count could still make the result,
+     * so the cost depends on the limit rather than on how many keys match.
+     *
+     * @param prefix prefix of a search key
+     * @param limit  the most keys to return (Positive integer >=0)
+     * @return ArrayList<String> up to limit keys starting with the prefix, most shared first
+     */
+    public ArrayList<String> complete(String prefix, int limit) {
+        if (limit < 0) throw new IllegalArgumentException("The limit must not be negative");
+        ArrayList<String> result = new ArrayList<>(Math.min(limit, 16));
+        StringBuilder key = new StringBuilder(prefix.length() + 16);
+        Node start = find(prefix, key);
+        if (start == null || limit == 0) return result;
+
+        // Each entry is either a subtree, ranked by the largest count below it, or a key, ranked by its own count.
+        // Every key below a subtree is at least its prefix, so a subtree never ranks after one of its own keys.
+        PriorityQueue<Candidate> pending = new PriorityQueue<Candidate>();
+        pending.add(new Candidate(start, key.toString(), start.best, false));
+        while (!pending.isEmpty() && result.size() < limit) {
+            Candidate next = pending.poll();
+            if (next.isKey) {
+                result.add(next.key);
+                continue;
+            }
+            Node node = next.node;
+            if (node.songs > 0) {
+                pending.add(new Candidate(node, next.key, node.songs, true));
+            }
+            for (Node child : node.children) {
+                pending.add(new Candidate(child, next.key + new String(child.label), child.best, false));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Counts the distinct keys that start with a prefix.
+     *
+     * @param prefix prefix of a search key
+     * @return int number of keys starting with the prefix
+     */
+    public int countWithPrefix(String prefix) {
+        Node node = find(prefix, new StringBuilder());
+        return node == null ? 0 : node.keys;
+    }
+
+    /**
+     * Getter for the number of distinct keys in the trie.
+     *
+     * @return int number of keys
+     */
+    public int size() {
+        return root.keys;
+    }
+
+    /**
+     * Counts the nodes in the trie, including the root.
+     *
+     * @return int number of nodes
+     */
+    public int nodeCount() {
+        int count = 0;
+        ArrayDeque<Node> pending = new ArrayDeque<Node>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            Node node = pending.pop();
+            count++;
+            for (Node child : node.children) {
+                pending.push(child);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Walks down to the highest node whose key starts with a prefix.
+     *
+     * @param prefix prefix of a search key
+     * @param key    receives the node's full key
+     * @return Node the node, or null if no key starts with the prefix
+     */
+    private Node find(String prefix, StringBuilder key) {
+        Node node = root;
+        int i = 0;
+        while (i < prefix.length()) {
+            int at = node.indexOf(prefix.charAt(i));
+            if (at < 0) return null;
+            node = node.children[at];
+            int common = commonLength(node.label, prefix, i);
+            // The prefix must either cover the whole edge or end part way along it
+            if (common < node.label.length && i + common < prefix.length()) return null;
+            key.append(node.label);
+            i += node.label.length;
+        }
+        return node;
+    }
+
+    /**
+     * Counts how many characters of a label match a key from a position onwards.
+     *
+     * @param label the edge label
+     * @param key   the key being followed
+     * @param from  position in the key where the label starts
+     * @return int length of the common run
+     */
+    private static int commonLength(char[] label, String key, int from) {
+        int n = Math.min(label.length, key.length() - from);
+        int i = 0;
+        while (i < n && label[i] == key.charAt(from + i)) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * A node of the trie: the characters on the edge into it, its children and its counts.
+     */
+    private static class Node {
+        // Characters on the edge from the parent to this node
+        private char[] label;
+
+        // Children, sorted by the first character of their label
+        private Node[] children = NO_CHILDREN;
+
+        // Number of Songs whose key ends at this node
+        private int songs;
+
+        // Number of distinct keys ending at or below this node
+        private int keys;
+
+        // Most Songs sharing any one key at or below this node
+        private int best;
+
+        /**
+         * Constructor for a Node
+         *
+         * @param label characters on the edge into the node
+         */
+        Node(char[] label) {
+            this.label = label;
+        }
+
+        /**
+         * Works out best again from this node's own count and its children's, after a count below it fell.
+         */
+        void updateBest() {
+            int most = songs;
+            for (Node child : children) {
+                most = Math.max(most, child.best);
+            }
+            best = most;
+        }
+
+        /**
+         * Looks up the child whose label starts with a character.
+         *
+         * @param c the first character of the label
+         * @return int the child's position, or (-(insertion point) - 1) if there is none
+         */
+        int indexOf(char c) {
+            int low = 0;
+            int high = children.length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                char first = children[mid].label[0];
+                if (first < c) {
+                    low = mid + 1;
+                } else if (first > c) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -low - 1;
+        }
+
+        /**
+         * Inserts a child at a position, keeping the children sorted.
+         *
+         * @param at    the position to insert at
+         * @param child the new child
+         */
+        void insertChild(int at, Node child) {
+            Node[] grown = new Node[children.length + 1];
+            System.arraycopy(children, 0, grown, 0, at);
+            System.arraycopy(children, at, grown, at + 1, children.length - at);
+            grown[at] = child;
+            children = grown;
+        }
+
+        /**
+         * Removes the child at a position.
+         *
+         * @param at the child's position
+         */
+        void removeChild(int at) {
+            Node[] shrunk = children.length == 1 ? NO_CHILDREN : new Node[children.length - 1];
+            System.arraycopy(children, 0, shrunk, 0, at);
+            System.arraycopy(children, at + 1, shrunk, at, children.length - at - 1);
+            children = shrunk;
+        }
+    }
+
+    /**
+     * A subtree or key waiting in a completion's queue, ordered by count, highest first, then by key.
+     */
+    private static class Candidate implements Comparable<Candidate> {
+        // The node of the subtree or key
+        private final Node node;
+
+        // The node's full key
+        private final String key;
+
+        // The key's count, or the largest count in the subtree
+        private final int rank;
+
+        // True for the key ending at the node; false for the whole subtree below it
+        private final boolean isKey;
+
+        /**
+         * Constructor for a Candidate
+         *
+         * @param node  the node of the subtree or key
+         * @param key   the node's full key
+         * @param rank  the key's count, or the largest count in the subtree
+         * @param isKey true for the key ending at the node; false for the subtree
+         */
+        Candidate(Node node, String key, int rank, boolean isKey) {
+            this.node = node;
+            this.key = key;
+            this.rank = rank;
+            this.isKey = isKey;
+        }
+
+        @Override
+        public int compareTo(Candidate other) {
+            if (rank != other.rank) return Integer.compare(other.rank, rank);
+            return key.compareTo(other.key);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+import java.util.*;
+
+/**
+ * One page of ranked search results, along with where it falls among all the matches.
+ * Returned by {@link SearchService#searchRanked}; pass {@link #getNextOffset()} back to it for the next page.
+ */
+public class SearchPage {
+    // The Songs on this page, best ranked first
+    private final List<Song> songs;
+
+    // Position of the page's first Song among all the matches
+    private final int offset;
+
+    // Number of Songs that match the query in total
+    private final int totalMatches;
+
+    /**
+     * Constructor for a SearchPage
+     *
+     * @param songs        the Songs on the page, best ranked first
+     * @param offset       position of the page's first Song among all the matches
+     * @param totalMatches number of Songs that match the query in total
+     */
+    public SearchPage(List<Song> songs, int offset, int totalMatches) {
+        this.songs = Collections.unmodifiableList(songs);
+        this.offset = offset;
+        this.totalMatches = totalMatches;
+    }
+
+    /**
+     * Getter for the Songs on this page.
+     *
+     * @return List<Song> the page's Songs, best ranked first; cannot be modified
+     */
+    public List<Song> getSongs() {
+        return songs;
+    }
+
+    /**
+     * Getter for the position of the page's first Song among all the matches.
+     *
+     * @return int the page's offset
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * Getter for the number of Songs that match the query, across every page.
+     *
+     * @return int total number of matches
+     */
+    public int getTotalMatches() {
+        return totalMatches;
+    }
+
+    /**
+     * Signifies if there are more matches after this page.
+     *
+     * @return boolean true if a later page has Songs; false otherwise
+     */
+    public boolean hasNextPage() {
+        return getNextOffset() < totalMatches;
+    }
+
+    /**
+     * Getter for the offset of the page after this one.
+     *
+     * @return int the offset to request the next page with
+     */
+    public int getNextOffset() {
+        return offset + songs.size();
+    }
+}
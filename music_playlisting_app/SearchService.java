@@ -1,18 +1,198 @@
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Provides a service and object representing the searchable catalog of songs on the system.
  * One SearchService instance should be created in main to manage the global catalog.
+ *
+ * Titles and creators are compared by their search keys, worked out by a {@link TextAnalyzer} once when a Song
+ * enters the catalog and kept in the indexes; each query is analyzed once in the same way. The standard analyzer
+ * ignores case, accents, punctuation and spacing, so "Beyonc&eacute; - D&eacute;j&agrave; Vu!" is found by "beyonce deja vu".
+ *
+ * The scan behind searchByPartialCreator(), which no index can narrow, reads either the shards of Song
+ * objects or, when the catalog is given a {@link SongStore}, the store's records: the creator keys are then
+ * matched once per distinct creator, and each record is checked by its int creator code. The store is a copy
+ * kept for these scans alongside the catalog's Songs and indexes, so it speeds them up but adds to the
+ * memory the catalog uses rather than taking anything off the heap.
+ *
+ * Every catalog Song can be looked up by its {@link Song#getId() id} in constant time, and removed by it.
+ * Clients that pick Songs by id rather than by position in a listing keep naming the same Song while
+ * other Songs are added and removed, and need not list the catalog to find one.
+ *
+ * Searches are available both as lists and as lazy Streams. A Stream is read from a copy of the catalog
+ * taken when it is created, and the copy is shared by every Stream until the catalog next changes, so
+ * callers that only count, test or walk the results once do not copy them, and may change the catalog
+ * while a Stream is still open.
+ *
+ * A SearchService may be shared by many threads. Searches hold a read lock, so they run at the same time as
+ * each other, while additions and removals hold the write lock and wait for the searches in progress to finish.
+ * Lists and Streams are read from copies, so they may be read after the search returns, on any thread.
+ * getGlobalCatalog() is the exception: it is a live view, so only the thread that changes the catalog should read it.
  */
 public class SearchService {
-    // Represents the global catalog as a collection of Songs
+    // Most typos searchFuzzy(String) allows in a query
+    public static final int FUZZY_MAX_DISTANCE = 2;
+
+    // Catalog size from which a sharded catalog scans in parallel, unless changed
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 20_000;
+
+    // Represents the global catalog as a collection of Songs, in order. A removed Song leaves a null in its place
+    // until the list is compacted, so removals do not shift the Songs after it
     private ArrayList<Song> songCatalog;
 
+    // The sequence number of the Song at each position of songCatalog, rising with the position
+    private long[] catalogSequences;
+
+    // Maps each Song in songCatalog to the sequence number it was given when added: its record id in records, or its
+    // sequence number in shards. Membership checks and removals look Songs up here rather than scanning, and an equal
+    // Song finds the catalog's copy through it
+    private HashMap<Song, Long> sequencesBySong;
+
+    // Number of nulls left in songCatalog by removals since it was last compacted
+    private int removedSlots;
+
+    // Maps each Song in songCatalog from its id
+    private HashMap<Integer, Song> songsById;
+
+    // Works out the search keys of titles, creators and queries
+    private final TextAnalyzer analyzer;
+
+    // Indexes the catalog's title keys so partial title searches avoid a full scan
+    private TrigramIndex titleIndex;
+
+    // Groups the catalog's Songs by title key, each group kept in catalog order
+    private HashMap<String, LinkedHashSet<Song>> songsByTitleKey;
+
+    // Groups the catalog's Songs by creator, each group kept in catalog order
+    private HashMap<String, LinkedHashSet<Song>> songsByCreator;
+
+    // Indexes the catalog's title keys for typo-tolerant searches
+    private BKTree fuzzyTitles;
+
+    // Indexes the catalog's creator keys for typo-tolerant searches
+    private BKTree fuzzyCreators;
+
+    // Holds the catalog's title keys for completing partly typed titles
+    private PrefixTrie titlePrefixes;
+
+    // Holds the catalog's creator keys for completing partly typed names
+    private PrefixTrie creatorPrefixes;
+
+    // Records additions and removals so the catalog can be restored on the next start
+    private MutationLog mutationLog;
+
+    // Partitions the catalog's Songs so scans that no index can narrow run across several cores
+    private ShardedCatalog shards;
+
+    // Holds the catalog's records for creator scans; null if the shards are scanned instead
+    private final SongStore records;
+
+    // The creator key of each creator code in records
+    private ArrayList<String> creatorKeysByCode;
+
+    // The catalog's Songs in order, shared by Streams until the catalog next changes; null until one is needed.
+    // Volatile, as searches sharing the read lock may each make one
+    private volatile Song[] snapshot;
+
+    // Held to read the catalog, so searches run at the same time; its write lock is held to change the catalog
+    private final ReentrantReadWriteLock lock;
+
     /**
-     * Constructor for a SearchService instance
+     * Constructor for a SearchService instance whose scans run on a single thread
      */
     public SearchService() {
+        this(1, Integer.MAX_VALUE, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructor for a SearchService instance that partitions the catalog into shards, so that
+     * scans of large catalogs run on the common ForkJoinPool.
+     *
+     * @param shardCount        number of shards, usually a small multiple of the number of cores (Positive integer >=1)
+     * @param parallelThreshold catalog size from which scans run in parallel (Positive integer >=0)
+     */
+    public SearchService(int shardCount, int parallelThreshold) {
+        this(shardCount, parallelThreshold, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructor for a SearchService instance that partitions the catalog into shards, so that
+     * scans of large catalogs run on a given ForkJoinPool.
+     *
+     * @param shardCount        number of shards, usually a small multiple of the pool's parallelism (Positive integer >=1)
+     * @param parallelThreshold catalog size from which scans run in parallel (Positive integer >=0)
+     * @param pool              the pool that runs parallel scans
+     */
+    public SearchService(int shardCount, int parallelThreshold, ForkJoinPool pool) {
+        this(shardCount, parallelThreshold, pool, TextAnalyzer.STANDARD);
+    }
+
+    /**
+     * Constructor for a SearchService instance with its own TextAnalyzer, that partitions the catalog
+     * into shards so that scans of large catalogs run on a given ForkJoinPool.
+     *
+     * @param shardCount        number of shards, usually a small multiple of the pool's parallelism (Positive integer >=1)
+     * @param parallelThreshold catalog size from which scans run in parallel (Positive integer >=0)
+     * @param pool              the pool that runs parallel scans
+     * @param analyzer          works out the search keys of titles, creators and queries
+     */
+    public SearchService(int shardCount, int parallelThreshold, ForkJoinPool pool, TextAnalyzer analyzer) {
+        this(shardCount, parallelThreshold, pool, analyzer, null);
+    }
+
+    /**
+     * Constructor for a SearchService instance whose creator scans read a copy of the catalog's records kept in a SongStore.
+     * Songs whose title or creator is null cannot be stored, so they are not added.
+     *
+     * @param records an empty store to hold the catalog's records
+     */
+    public SearchService(SongStore records) {
+        this(1, Integer.MAX_VALUE, ForkJoinPool.commonPool(), TextAnalyzer.STANDARD, records);
+    }
+
+    /**
+     * Constructor for a SearchService instance with its own TextAnalyzer, whose creator scans either read
+     * a SongStore or run across shards on a given ForkJoinPool.
+     *
+     * @param shardCount        number of shards, usually a small multiple of the pool's parallelism (Positive integer >=1)
+     * @param parallelThreshold catalog size from which scans run in parallel (Positive integer >=0)
+     * @param pool              the pool that runs parallel scans
+     * @param analyzer          works out the search keys of titles, creators and queries
+     * @param records           an empty store to hold the catalog's records, or null to scan the shards
+     */
+    public SearchService(int shardCount, int parallelThreshold, ForkJoinPool pool, TextAnalyzer analyzer, SongStore records) {
+        if (records != null && records.idCount() > 0) throw new IllegalArgumentException("The store must be empty");
+        this.analyzer = analyzer;
+        this.records = records;
+        this.creatorKeysByCode = new ArrayList<String>();
+        this.shards = new ShardedCatalog(shardCount, parallelThreshold, pool);
         this.songCatalog = new ArrayList<Song>();
+        this.catalogSequences = new long[16];
+        this.sequencesBySong = new HashMap<Song, Long>();
+        this.removedSlots = 0;
+        this.songsById = new HashMap<Integer, Song>();
+        this.titleIndex = new TrigramIndex();
+        this.songsByTitleKey = new HashMap<String, LinkedHashSet<Song>>();
+        this.songsByCreator = new HashMap<String, LinkedHashSet<Song>>();
+        this.fuzzyTitles = new BKTree();
+        this.fuzzyCreators = new BKTree();
+        this.titlePrefixes = new PrefixTrie();
+        this.creatorPrefixes = new PrefixTrie();
+        this.mutationLog = MutationLog.NONE;
+        this.lock = new ReentrantReadWriteLock();
+    }
+
+    /**
+     * Setter for the MutationLog told about every Song added to or removed from the catalog.
+     *
+     * @param mutationLog the log to record changes to; null records nothing
+     */
+    public void setMutationLog(MutationLog mutationLog) {
+        write(() -> this.mutationLog = mutationLog == null ? MutationLog.NONE : mutationLog);
     }
 
     /**
@@ -22,85 +202,530 @@ public class SearchService {
      * @return boolean true if Song is added to catalog; false if catalog already contains Song
      */
     public boolean addSongToCatalog(Song song) {
-        if (song == null) return false;
-        // Refactored present code to use ArrayList.contains() method instead of a for-loop to find a match
-        // This is cleaner--use this scheme if you need to be certain an object exists before doing an action on it.
-        if (songCatalog.contains(song)) {
-            return false;
+        return write(() -> {
+            if (!insert(song)) {
+                return false;
+            } else {
+                mutationLog.songAdded(song);
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Adds several Songs to the catalog, skipping any that are null or already present.
+     * The additions are recorded together, so a large import costs one write to the MutationLog per call.
+     * The title trigrams, fuzzy trees and prefix tries are then built from the whole batch at once, rather than
+     * Song by Song, so loading a saved catalog does not pay for a full index update per Song.
+     *
+     * @param songs Songs we are adding to the catalog, in order
+     * @return ArrayList<Song> the Songs that were added, in order
+     */
+    public ArrayList<Song> addSongsToCatalog(List<Song> songs) {
+        return write(() -> {
+            ArrayList<Song> added = new ArrayList<>(songs.size());
+            ArrayList<String> titles = new ArrayList<>(songs.size());
+            ArrayList<String> creators = new ArrayList<>(songs.size());
+            songCatalog.ensureCapacity(songCatalog.size() + songs.size());
+            if (catalogSequences.length < songCatalog.size() + songs.size()) {
+                catalogSequences = Arrays.copyOf(catalogSequences, songCatalog.size() + songs.size());
+            }
+            for (Song song : songs) {
+                if (!accepts(song)) continue;
+                String title = analyzer.analyze(song.getTitle());
+                String creator = analyzer.analyze(song.getCreator());
+                record(song, title, creator);
+                added.add(song);
+                titles.add(title);
+                creators.add(creator);
+            }
+            titleIndex.addAll(added, titles);
+            fuzzyTitles.addAll(titles, added);
+            fuzzyCreators.addAll(creators, added);
+            titlePrefixes.addAll(titles);
+            creatorPrefixes.addAll(creators);
+            if (!added.isEmpty()) {
+                mutationLog.songsAdded(added);
+            }
+            return added;
+        });
+    }
+
+    /**
+     * Adds a Song to the catalog and its indexes provided it is not already present.
+     *
+     * @param song Song we are adding to the catalog
+     * @return boolean true if Song is added to catalog; false if it is null, catalog already contains Song,
+     *         or another Song in the catalog has its id
+     */
+    private boolean insert(Song song) {
+        if (!accepts(song)) return false;
+        // The keys are worked out once here, so searches never analyze the catalog's text again
+        String title = analyzer.analyze(song.getTitle());
+        String creator = analyzer.analyze(song.getCreator());
+        record(song, title, creator);
+        titleIndex.add(song, title);
+        fuzzyTitles.add(title, song);
+        fuzzyCreators.add(creator, song);
+        titlePrefixes.add(title);
+        creatorPrefixes.add(creator);
+        return true;
+    }
+
+    /**
+     * Signifies if a Song may be added to the catalog.
+     *
+     * @param song Song we are adding to the catalog
+     * @return boolean false if it is null, catalog already contains Song, or another Song in the catalog has its id
+     */
+    private boolean accepts(Song song) {
+        if (song == null || songsById.containsKey(song.getId())) return false;
+        if (records != null && (song.getTitle() == null || song.getCreator() == null)) return false;
+        // Songs compare by value, so re-uploading an identical Song is also rejected here.
+        return !sequencesBySong.containsKey(song);
+    }
+
+    /**
+     * Adds a Song to the catalog list, its shard or record, and the maps by id, title key and creator.
+     * The title trigrams, fuzzy trees and prefix tries are left to the caller.
+     *
+     * @param song    Song we are adding to the catalog, accepted by accepts()
+     * @param title   the Song's title key
+     * @param creator the Song's creator key
+     */
+    private void record(Song song, String title, String creator) {
+        songsById.put(song.getId(), song);
+        long sequence;
+        if (records != null) {
+            sequence = records.add(song);
+            if (creatorKeysByCode.size() < records.creatorCount()) {
+                creatorKeysByCode.add(creator); // The Song's creator is new to the store's dictionary
+            }
         } else {
-            songCatalog.add(song);
-            return true;
+            sequence = shards.add(song, creator);
+        }
+        sequencesBySong.put(song, sequence);
+        if (songCatalog.size() == catalogSequences.length) {
+            catalogSequences = Arrays.copyOf(catalogSequences, catalogSequences.length * 2);
         }
+        catalogSequences[songCatalog.size()] = sequence;
+        songCatalog.add(song);
+        snapshot = null;
+        songsByTitleKey.computeIfAbsent(title, k -> new LinkedHashSet<Song>()).add(song);
+        songsByCreator.computeIfAbsent(song.getCreator(), k -> new LinkedHashSet<Song>()).add(song);
     }
 
     /**
      * Removes a specific song from the catalog wherever it may exist.
      * 
-     * @param song Song we are removing from the catalog.
+     * @param removed Song we are removing from the catalog; an equal Song removes the catalog's copy.
      * @return boolean true if song was present and removed; false otherwise.
      */
-    public boolean removeSongFromCatalog(Song song) {
-        // We only try to remove a song that we can prove exists
-        // See comment in addSongToCatalog method above
-        if (songCatalog.contains(song)) {
-            songCatalog.remove(song);
-            return true;
-        } else {
-            return false;
+    public boolean removeSongFromCatalog(Song removed) {
+        return write(() -> {
+            // We only try to remove a song that we can prove exists
+            // See comment in addSongToCatalog method above
+            Long sequence = sequencesBySong.remove(removed);
+            if (sequence != null) {
+                // Sequence numbers rise through the list, so the Song's position is found by binary search
+                int position = Arrays.binarySearch(catalogSequences, 0, songCatalog.size(), sequence);
+                Song song = songCatalog.set(position, null);
+                if (++removedSlots > songCatalog.size() / 2) {
+                    compact(); // Each compaction follows as many removals as it moves Songs, so removals stay cheap on average
+                }
+                songsById.remove(song.getId());
+                String title = titleIndex.keyOf(song);
+                String creator = analyzer.analyze(song.getCreator());
+                if (records != null) {
+                    records.remove((int) (long) sequence);
+                } else {
+                    shards.remove(sequence);
+                }
+                snapshot = null;
+                titleIndex.remove(song);
+                removeFromGroup(songsByTitleKey, title, song);
+                removeFromGroup(songsByCreator, song.getCreator(), song);
+                fuzzyTitles.remove(title, song);
+                fuzzyCreators.remove(creator, song);
+                titlePrefixes.remove(title);
+                creatorPrefixes.remove(creator);
+                mutationLog.songRemoved(song);
+                return true;
+            } else {
+                return false;
+            }
+        });
+    }
+
+    /**
+     * Removes the Song with an id from the catalog.
+     * Unlike a position, the id cannot have come to name a different Song since the caller last saw it.
+     *
+     * @param id the id of the Song we are removing
+     * @return boolean true if a Song with the id was in the catalog and was removed; false otherwise
+     */
+    public boolean removeSongById(int id) {
+        return write(() -> {
+            Song song = songsById.get(id);
+            return song != null && removeSongFromCatalog(song);
+        });
+    }
+
+    /**
+     * Getter for the catalog's Song with an id.
+     *
+     * @param id the Song's id
+     * @return Song the Song with the id, or null if no Song in the catalog has it
+     */
+    public Song getSongById(int id) {
+        return read(() -> songsById.get(id));
+    }
+
+    /**
+     * Removes a Song from its group, and removes the group once it is empty.
+     *
+     * @param groups Songs grouped by a key
+     * @param key    the Song's key
+     * @param song   Song we are removing
+     */
+    private static void removeFromGroup(HashMap<String, LinkedHashSet<Song>> groups, String key, Song song) {
+        LinkedHashSet<Song> group = groups.get(key);
+        group.remove(song);
+        if (group.isEmpty()) {
+            groups.remove(key); // Don't keep empty groups, e.g. for artists with no songs left
         }
     }
 
     /**
-     * Constructs an ArrayList of Songs where the 'title' matches the parameter (ignoring case)
+     * Runs part of a search while holding the read lock, so it sees the catalog between changes.
+     *
+     * @param search reads the catalog
+     * @return T what search returns
+     */
+    private <T> T read(Supplier<T> search) {
+        lock.readLock().lock();
+        try {
+            return search.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Changes the catalog while holding the write lock, so no search sees the change half made.
+     *
+     * @param change changes the catalog and its indexes
+     * @return T what change returns
+     */
+    private <T> T write(Supplier<T> change) {
+        lock.writeLock().lock();
+        try {
+            return change.get();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Getter for the TextAnalyzer that works out the catalog's search keys.
+     *
+     * @return TextAnalyzer the catalog's analyzer
+     */
+    public TextAnalyzer getAnalyzer() {
+        return analyzer;
+    }
+
+    /**
+     * Constructs an ArrayList of Songs where the 'title' matches the parameter, ignoring case, accents and punctuation.
      * Allows user to search the global catalog by a hard term.
      * 
      * @param title The string we are matching against the catalog's Song titles.
      * @return ArrayList<Song> containing search results.
      */
     public ArrayList<Song> searchByTitle(String title) {
-        ArrayList<Song> result = new ArrayList<>();
-        for (Song song : songCatalog) {
-            if (song.getTitle().equalsIgnoreCase(title)) {
-                result.add(song);
+        return streamByTitle(title).collect(Collectors.toCollection(ArrayList::new));
+    }
+
+    /**
+     * Lazily finds the Songs whose 'title' matches the parameter, ignoring case, accents and punctuation, in catalog order.
+     * Only costs as much as the number of matching Songs.
+     *
+     * @param title The string we are matching against the catalog's Song titles.
+     * @return Stream<Song> of the matching Songs.
+     */
+    public Stream<Song> streamByTitle(String title) {
+        String key = analyzer.analyze(title);
+        return read(() -> {
+            LinkedHashSet<Song> titleSongs = songsByTitleKey.get(key);
+            if (titleSongs == null) {
+                return Stream.<Song>empty();
             }
-        }
-        return result;
+            // Copied so the Stream is unaffected if the catalog changes before it is read
+            return Arrays.stream(titleSongs.toArray(new Song[0]));
+        });
     }
 
     /**
      * Constructs an ArrayList of Songs where the 'title' contains the parameter.
      * Allows the user to search the global catalog by a soft term.
+     * Matching ignores case, accents and punctuation, and results keep their catalog order.
      * 
      * @param partialTitle The string we are checking for the presence of in the catalog's Song titles.
      * @return ArrayList<Song> containing search results.
      */
     public ArrayList<Song> searchByPartialTitle(String partialTitle) {
-        ArrayList<Song> result = new ArrayList<>();
-        for (Song song : songCatalog) {
-            if (song.getTitle().toLowerCase().contains(partialTitle.toLowerCase())) {
-                result.add(song);
-            }
+        return streamByPartialTitle(partialTitle).collect(Collectors.toCollection(ArrayList::new));
+    }
+
+    /**
+     * Lazily finds the Songs whose 'title' contains the parameter, ignoring case, accents and punctuation, in catalog order.
+     *
+     * @param partialTitle The string we are checking for the presence of in the catalog's Song titles.
+     * @return Stream<Song> of the matching Songs.
+     */
+    public Stream<Song> streamByPartialTitle(String partialTitle) {
+        // The trigram index narrows the search to titles sharing the query's rarest trigram.
+        String key = analyzer.analyze(partialTitle);
+        return read(() -> titleIndex.stream(key));
+    }
+
+    /**
+     * Finds one page of the Songs whose title contains the parameter, ranked by how well the title matches.
+     * Titles equal to the query come first, then titles starting with it, then titles containing it elsewhere,
+     * all compared by title key. Within each group shorter titles come first, then titles and creators in alphabetical order.
+     *
+     * Only the best offset + limit matches are kept while the catalog is searched, so the memory
+     * used depends on the page requested rather than on how many Songs match.
+     *
+     * @param partialTitle The string we are checking for the presence of in the catalog's Song titles.
+     * @param offset       number of best ranked matches to skip (Positive integer >=0)
+     * @param limit        the most Songs to return on the page (Positive integer >=1)
+     * @return SearchPage the requested page, and the total number of matches
+     */
+    public SearchPage searchRanked(String partialTitle, int offset, int limit) {
+        if (offset < 0) throw new IllegalArgumentException("The offset must not be negative");
+        if (limit < 1) throw new IllegalArgumentException("The limit must be at least 1");
+        String query = analyzer.analyze(partialTitle);
+        int keep = (int) Math.min((long) offset + limit, Integer.MAX_VALUE);
+
+        // The heap's head is the worst of the matches kept, so it is the one replaced by a better match
+        PriorityQueue<RankedSong> best = new PriorityQueue<RankedSong>(Math.min(keep, 1024), Collections.reverseOrder());
+        int[] total = new int[1];
+        read(() -> {
+            titleIndex.forEachMatch(query, (song, key) -> {
+                total[0]++;
+                int tier = key.equals(query) ? 0 : key.startsWith(query) ? 1 : 2;
+                if (best.size() < keep) {
+                    best.add(new RankedSong(song, key, tier));
+                } else if (best.peek().compareTo(song, key, tier) > 0) {
+                    best.poll();
+                    best.add(new RankedSong(song, key, tier));
+                }
+            });
+            return null;
+        });
+
+        ArrayList<Song> page = new ArrayList<>(Math.max(0, best.size() - offset));
+        while (best.size() > offset) {
+            page.add(best.poll().song);
         }
-        return result;
+        Collections.reverse(page);
+        return new SearchPage(page, offset, total[0]);
     }
 
     /**
-     * Constructs an ArrayList of Songs where the 'creator' contains the parameter.
-     * Allows the user to search the global catalog by an artist's name, softly.
+     * Constructs an ArrayList of Songs where the 'creator' matches the parameter.
+     * Allows the user to search the global catalog by an artist's name.
+     * Results keep their catalog order and only cost as much as the artist's own song count.
      * 
-     * @param partialArtist The string we are checking for the presence of in the catalog's Song's 'creator' attribute.
+     * @param partialArtist The string we are matching against the catalog's Song's 'creator' attribute.
      * @return ArrayList<Song> containing search results.
      */
     public ArrayList<Song> searchSongByArtist(String partialArtist) {
-        ArrayList<Song> result = new ArrayList<>();
-        for (Song song : songCatalog) {
-            if (song.getCreator().equals(partialArtist)) {
-                result.add(song);
+        return read(() -> {
+            LinkedHashSet<Song> creatorSongs = songsByCreator.get(partialArtist);
+            if (creatorSongs == null) {
+                return new ArrayList<Song>();
+            }
+            return new ArrayList<>(creatorSongs);
+        });
+    }
+
+    /**
+     * Constructs an ArrayList of Songs where the 'creator' contains the parameter, ignoring case, accents and punctuation.
+     * No index can narrow this search, so every Song is checked; on a sharded catalog above the
+     * parallel threshold the shards are checked at the same time. On a catalog backed by a SongStore
+     * each distinct creator is checked once, then the records are scanned by creator code, and the
+     * results are views over the matching records.
+     *
+     * @param partialCreator The string we are checking for the presence of in the catalog's Song creators.
+     * @return ArrayList<Song> containing search results, in catalog order.
+     */
+    public ArrayList<Song> searchByPartialCreator(String partialCreator) {
+        String query = analyzer.analyze(partialCreator);
+        return read(() -> {
+            if (records == null) {
+                return shards.searchByPartialCreator(query);
+            }
+            BitSet codes = new BitSet(creatorKeysByCode.size());
+            for (int code = 0; code < creatorKeysByCode.size(); code++) {
+                if (creatorKeysByCode.get(code).contains(query)) codes.set(code);
+            }
+            int[] ids = codes.isEmpty() ? new int[0] : records.findByCreatorCodes(codes);
+            ArrayList<Song> result = new ArrayList<>(ids.length);
+            for (int id : ids) {
+                result.add(records.get(id));
+            }
+            return result;
+        });
+    }
+
+    /**
+     * Getter for the SongStore holding the catalog's records.
+     *
+     * @return SongStore the store, or null if the catalog's creator scans read the shards
+     */
+    public SongStore getSongStore() {
+        return records;
+    }
+
+    /**
+     * Getter for the number of shards the catalog is partitioned into.
+     *
+     * @return int number of shards; 1 if the catalog is not sharded
+     */
+    public int getShardCount() {
+        return shards.getShardCount();
+    }
+
+    /**
+     * Lazily finds the Songs whose 'creator' matches the parameter, in catalog order.
+     * Only costs as much as the artist's own song count.
+     *
+     * @param creator The string we are matching against the catalog's Song's 'creator' attribute.
+     * @return Stream<Song> of the artist's Songs.
+     */
+    public Stream<Song> streamByArtist(String creator) {
+        return read(() -> {
+            LinkedHashSet<Song> creatorSongs = songsByCreator.get(creator);
+            if (creatorSongs == null) {
+                return Stream.<Song>empty();
             }
+            // Copied so the Stream is unaffected if the artist's Songs change before it is read
+            return Arrays.stream(creatorSongs.toArray(new Song[0]));
+        });
+    }
+
+    /**
+     * Constructs an ArrayList of Songs whose title or creator is close to the parameter,
+     * so a misspelled query still finds what the user meant.
+     * The allowed number of typos grows with the query: none below 3 characters, 1 below 6, and 2 from then on.
+     *
+     * @param query The string we are matching against the catalog's Song titles and creators.
+     * @return ArrayList<Song> containing search results, closest first.
+     */
+    public ArrayList<Song> searchFuzzy(String query) {
+        String key = analyzer.analyze(query);
+        int maxDistance = key.length() < 3 ? 0 : key.length() < 6 ? 1 : FUZZY_MAX_DISTANCE;
+        return searchFuzzy(query, maxDistance);
+    }
+
+    /**
+     * Constructs an ArrayList of Songs whose title or creator is within an edit distance of the parameter.
+     * Titles and creators are compared by their search keys.
+     * Results are ordered by distance, counting whichever of title and creator is closer,
+     * then by title and creator so the order is the same for every search.
+     *
+     * @param query       The string we are matching against the catalog's Song titles and creators.
+     * @param maxDistance the most single-character insertions, deletions or substitutions allowed (Positive integer >=0)
+     * @return ArrayList<Song> containing search results, closest first.
+     */
+    public ArrayList<Song> searchFuzzy(String query, int maxDistance) {
+        String key = analyzer.analyze(query);
+        HashMap<Song, Integer> distances = new HashMap<Song, Integer>();
+        read(() -> {
+            for (BKTree tree : new BKTree[] {fuzzyTitles, fuzzyCreators}) {
+                for (BKTree.Match match : tree.search(key, maxDistance)) {
+                    for (Song song : match.getSongs()) {
+                        distances.merge(song, match.getDistance(), Math::min);
+                    }
+                }
+            }
+            return null;
+        });
+        // Songs are grouped by distance first, so each group only has to be sorted by name
+        ArrayList<ArrayList<Song>> byDistance = new ArrayList<>();
+        for (Map.Entry<Song, Integer> entry : distances.entrySet()) {
+            while (byDistance.size() <= entry.getValue()) {
+                byDistance.add(new ArrayList<Song>());
+            }
+            byDistance.get(entry.getValue()).add(entry.getKey());
+        }
+        Comparator<Song> byName = Comparator.comparing(Song::getTitle, Comparator.nullsFirst(String.CASE_INSENSITIVE_ORDER))
+                                            .thenComparing(Song::getCreator, Comparator.nullsFirst(String.CASE_INSENSITIVE_ORDER))
+                                            .thenComparingInt(Song::getDuration);
+        ArrayList<Song> result = new ArrayList<>(distances.size());
+        for (ArrayList<Song> group : byDistance) {
+            group.sort(byName);
+            result.addAll(group);
         }
         return result;
     }
 
+    /**
+     * Completes a partly typed title, for searching as the user types.
+     * Titles are compared and returned as title keys, so "Don't Stop" is completed as "dont stop".
+     *
+     * @param prefix the start of a title, as typed so far
+     * @param limit  the most completions to return (Positive integer >=0)
+     * @return ArrayList<String> up to limit distinct catalog titles starting with the prefix: the titles shared by
+     *         the most Songs first, ties in alphabetical order
+     */
+    public ArrayList<String> autocompleteTitle(String prefix, int limit) {
+        String key = normalizePrefix(prefix);
+        return read(() -> titlePrefixes.complete(key, limit));
+    }
+
+    /**
+     * Completes a partly typed creator name, for searching as the user types.
+     * Names are compared and returned as creator keys.
+     *
+     * @param prefix the start of a creator's name, as typed so far
+     * @param limit  the most completions to return (Positive integer >=0)
+     * @return ArrayList<String> up to limit distinct creator names starting with the prefix: the creators with
+     *         the most Songs first, ties in alphabetical order
+     */
+    public ArrayList<String> autocompleteCreator(String prefix, int limit) {
+        String key = normalizePrefix(prefix);
+        return read(() -> creatorPrefixes.complete(key, limit));
+    }
+
+    /**
+     * Counts the distinct catalog titles that start with a partly typed title.
+     *
+     * @param prefix the start of a title, as typed so far
+     * @return int number of distinct titles that autocompleteTitle() could return
+     */
+    public int countTitlesWithPrefix(String prefix) {
+        String key = normalizePrefix(prefix);
+        return read(() -> titlePrefixes.countWithPrefix(key));
+    }
+
+    /**
+     * Analyzes a partly typed prefix. Unlike a whole key, a space the user has just typed
+     * at the end is kept, since it means the next word has not been started yet.
+     *
+     * @param prefix the text typed so far
+     * @return String the prefix's search key
+     */
+    private String normalizePrefix(String prefix) {
+        String key = analyzer.analyze(prefix);
+        if (!key.isEmpty() && prefix != null && Character.isWhitespace(prefix.charAt(prefix.length() - 1))) {
+            key += " ";
+        }
+        return key;
+    }
+
     /**
      * Signifies if the catalog does or does not contain a specific Song.
      * 
@@ -108,39 +733,160 @@ public class SearchService {
      * @return boolean true if song is present; false otherwise.
      */
     public boolean globalCatContains(Song song) {
-        return songCatalog.contains(song);
+        return read(() -> sequencesBySong.containsKey(song));
     }
 
     /**
-     * Getter for the catalog's ArrayList of Songs.
+     * Getter for the catalog's Songs.
      * 
-     * @return ArrayList<Song> representing the entire catalog.
+     * @return List<Song> representing the entire catalog, in order; a read-only view that follows later changes.
+     */
+    public List<Song> getGlobalCatalog() {
+        return new CatalogView();
+    }
+
+    /**
+     * Getter for the number of Songs in the catalog.
+     *
+     * @return int the catalog's size
      */
-    public ArrayList<Song> getGlobalCatalog() {
-        return songCatalog;
+    public int size() {
+        return read(() -> sequencesBySong.size());
+    }
+
+    /**
+     * Lazily walks the whole catalog in order, for filtering, counting or testing without copying it.
+     *
+     * @return Stream<Song> of every Song in the catalog when the Stream is created.
+     */
+    public Stream<Song> songs() {
+        Song[] songs = snapshot;
+        if (songs == null) {
+            songs = read(() -> {
+                Song[] copy = new Song[sequencesBySong.size()];
+                int copied = 0;
+                for (Song song : songCatalog) {
+                    if (song != null) copy[copied++] = song;
+                }
+                snapshot = copy;
+                return copy;
+            });
+        }
+        return Arrays.stream(songs);
     }
 
     /**
      * Prints the contents of the catalog to the user.
-     * Songs are printed with an index as this function typically is to help the user choose a song.
+     * Songs are printed with their id as this function typically is to help the user choose a song,
+     * and an id still names the same Song if the catalog changes before the user chooses.
      * 
      * @return void
      */
     public void listSongs() {
-        int i = 0;
-        for (Song s : songCatalog) {
-            System.out.println("[" + i + "] - " + s.toString());
-            i++;
-        }
+        // Printed from a copy, so the lock is not held while writing to the console
+        songs().forEach(s -> System.out.println("[" + s.getId() + "] - " + s.toString()));
     }
 
     /**
      * Getter for a song at a specified index.
+     * Positions shift as Songs are removed, so a Song chosen by the user should be looked up with getSongById().
+     * The first call after a removal compacts the catalog, so the calls after it take constant time.
      * 
      * @param index the targetting index (Positive integer >=0; must be within range of the Catalog's size)
      * @return Song the song being targetted.
      */
     public Song getSongAtIndex(int index) {
-        return songCatalog.get(index);
+        Song song = read(() -> removedSlots == 0 ? songCatalog.get(index) : null);
+        if (song != null) return song;
+        return write(() -> {
+            compact();
+            return songCatalog.get(index);
+        });
+    }
+
+    /**
+     * Closes up the nulls left in songCatalog by removals, keeping the Songs in order. The write lock must be held.
+     */
+    private void compact() {
+        if (removedSlots == 0) return;
+        int kept = 0;
+        for (int i = 0; i < songCatalog.size(); i++) {
+            Song song = songCatalog.get(i);
+            if (song == null) continue;
+            songCatalog.set(kept, song);
+            catalogSequences[kept] = catalogSequences[i];
+            kept++;
+        }
+        songCatalog.subList(kept, songCatalog.size()).clear();
+        removedSlots = 0;
+    }
+
+    /**
+     * The read-only view returned by getGlobalCatalog(), which skips removed Songs by reading through getSongAtIndex().
+     */
+    private class CatalogView extends AbstractList<Song> implements RandomAccess {
+        @Override
+        public Song get(int index) {
+            return getSongAtIndex(index);
+        }
+
+        @Override
+        public int size() {
+            return SearchService.this.size();
+        }
+    }
+
+    /**
+     * A Song matched by searchRanked(), with what it is ranked by.
+     */
+    private static class RankedSong implements Comparable<RankedSong> {
+        // The matching Song
+        private final Song song;
+
+        // The Song's title key
+        private final String key;
+
+        // 0 if the title equals the query, 1 if it starts with it, 2 if it contains it elsewhere
+        private final int tier;
+
+        /**
+         * Constructor for a RankedSong
+         *
+         * @param song the matching Song
+         * @param key  the Song's title key
+         * @param tier how the title matched the query
+         */
+        RankedSong(Song song, String key, int tier) {
+            this.song = song;
+            this.key = key;
+            this.tier = tier;
+        }
+
+        /**
+         * Compares this match with another match that has not been wrapped in a RankedSong yet.
+         *
+         * @param otherSong the other matching Song
+         * @param otherKey  the other Song's title key
+         * @param otherTier how the other title matched the query
+         * @return int negative if this match ranks first, positive if the other one does
+         */
+        int compareTo(Song otherSong, String otherKey, int otherTier) {
+            if (tier != otherTier) return Integer.compare(tier, otherTier);
+            if (key.length() != otherKey.length()) return Integer.compare(key.length(), otherKey.length());
+            int byTitle = key.compareTo(otherKey);
+            if (byTitle != 0) return byTitle;
+            int byCreator = Objects.compare(song.getCreator(), otherSong.getCreator(),
+                                            Comparator.nullsFirst(String.CASE_INSENSITIVE_ORDER));
+            if (byCreator != 0) return byCreator;
+            // Titles with the same key are otherwise equal, so order them exactly to keep pages stable
+            int byCase = Objects.compare(song.getTitle(), otherSong.getTitle(), Comparator.nullsFirst(Comparator.naturalOrder()));
+            if (byCase != 0) return byCase;
+            return Integer.compare(song.getDuration(), otherSong.getDuration());
+        }
+
+        @Override
+        public int compareTo(RankedSong other) {
+            return compareTo(other.song, other.key, other.tier);
+        }
     }
 }
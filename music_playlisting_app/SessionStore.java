@@ -0,0 +1,224 @@
+import java.security.SecureRandom;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps the login sessions of ApiServer, using a bounded amount of memory.
+ *
+ * <p>Each session maps a random token to the User who logged in with it, and lasts until one of these happens:</p>
+ * <ul>
+ *   <li>the user logs out, or their account is deleted,</li>
+ *   <li>it goes a full idle period without a request,</li>
+ *   <li>it reaches its maximum age, however often it is used, or</li>
+ *   <li>the cap on sessions is reached and it is the session used least recently.</li>
+ * </ul>
+ *
+ * <p>Sessions are kept in order of last use, so idle ones are swept from the front whenever a session starts,
+ * with no background thread, and the one to evict at the cap is found in constant time. Expiry is also checked
+ * whenever a token is looked up, so an expired token never authorizes a request.</p>
+ *
+ * <p>All methods are safe to call from many threads at once. They share a ReentrantLock, held only while
+ * the sessions are read or changed.</p>
+ */
+public class SessionStore {
+    /**
+     * Default time without requests after which a session ends (30 minutes).
+     */
+    public static final long DEFAULT_IDLE_MILLIS = 1_800_000;
+
+    /**
+     * Default time after logging in at which a session ends however often it is used (12 hours).
+     */
+    public static final long DEFAULT_MAX_AGE_MILLIS = 43_200_000;
+
+    /**
+     * Default cap on the number of sessions kept at once.
+     */
+    public static final int DEFAULT_CAPACITY = 100_000;
+
+    // Random bytes in a session token
+    private static final int TOKEN_BYTES = 24;
+
+    // Maps each token to its session, least recently used first; guarded by lock
+    private final LinkedHashMap<String, Session> sessions;
+
+    // Held while the sessions are read or changed
+    private final ReentrantLock lock;
+
+    // Makes session tokens
+    private final SecureRandom random;
+
+    // Maximum number of sessions kept at once
+    private final int capacity;
+
+    // Time without requests after which a session ends
+    private final long idleMillis;
+
+    // Time after logging in at which a session ends
+    private final long maxAgeMillis;
+
+    // Source of the current time in milliseconds
+    private final LongSupplier clock;
+
+    /**
+     * Constructor for a SessionStore with the default limits and the system clock.
+     */
+    public SessionStore() {
+        this(DEFAULT_CAPACITY, DEFAULT_IDLE_MILLIS, DEFAULT_MAX_AGE_MILLIS, System::currentTimeMillis);
+    }
+
+    /**
+     * Constructor for a SessionStore with custom limits.
+     *
+     * @param capacity     maximum number of sessions kept at once (at least 1)
+     * @param idleMillis   time without requests after which a session ends
+     * @param maxAgeMillis time after logging in at which a session ends
+     * @param clock        source of the current time in milliseconds
+     */
+    public SessionStore(int capacity, long idleMillis, long maxAgeMillis, LongSupplier clock) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1");
+        }
+        this.sessions = new LinkedHashMap<String, Session>(16, 0.75f, true);
+        this.lock = new ReentrantLock();
+        this.random = new SecureRandom();
+        this.capacity = capacity;
+        this.idleMillis = idleMillis;
+        this.maxAgeMillis = maxAgeMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * Starts a session for a User. Idle sessions are swept out first, and if the cap is still reached,
+     * the session used least recently ends to make room.
+     *
+     * @param user the User who logged in
+     * @return String the session's token
+     */
+    public String start(User user) {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        random.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        long now = clock.getAsLong();
+        lock.lock();
+        try {
+            sweep(now);
+            if (sessions.size() >= capacity) {
+                Iterator<Session> eldest = sessions.values().iterator();
+                eldest.next();
+                eldest.remove();
+            }
+            sessions.put(token, new Session(user, now));
+        } finally {
+            lock.unlock();
+        }
+        return token;
+    }
+
+    /**
+     * Finds the User whose session a token belongs to, and counts the lookup as a use of the session.
+     * A session found to have expired is ended.
+     *
+     * @param token the token; may be null
+     * @return User the User, or null if the token belongs to no session or its session has expired
+     */
+    public User get(String token) {
+        if (token == null) return null;
+        long now = clock.getAsLong();
+        lock.lock();
+        try {
+            Session session = sessions.get(token);
+            if (session == null) return null;
+            if (now - session.lastUsed >= idleMillis || now - session.started >= maxAgeMillis) {
+                sessions.remove(token);
+                return null;
+            }
+            session.lastUsed = now;
+            return session.user;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Ends the session a token belongs to, if any.
+     *
+     * @param token the token
+     */
+    public void end(String token) {
+        lock.lock();
+        try {
+            sessions.remove(token);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Ends every session of a User, e.g. once their account is deleted.
+     *
+     * @param user the User
+     */
+    public void endAll(User user) {
+        lock.lock();
+        try {
+            sessions.values().removeIf(session -> session.user == user);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Getter for the number of sessions kept, including any that have expired but not yet been swept out.
+     *
+     * @return int number of sessions
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return sessions.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Ends the sessions at the front of the order that have gone a full idle period without a request.
+     * Sessions are kept in order of last use, so the sweep stops at the first one still in use.
+     *
+     * @param now the current time in milliseconds
+     */
+    private void sweep(long now) {
+        Iterator<Session> it = sessions.values().iterator();
+        while (it.hasNext() && now - it.next().lastUsed >= idleMillis) {
+            it.remove();
+        }
+    }
+
+    /**
+     * One session: the User who logged in, and when the session started and was last used.
+     */
+    private static final class Session {
+        // The User who logged in
+        final User user;
+
+        // Time (in milliseconds) the User logged in
+        final long started;
+
+        // Time (in milliseconds) of the latest request with the token; guarded by the store's lock
+        long lastUsed;
+
+        /**
+         * Constructor for a Session
+         *
+         * @param user    the User who logged in
+         * @param started the time the User logged in
+         */
+        Session(User user, long started) {
+            this.user = user;
+            this.started = started;
+            this.lastUsed = started;
+        }
+    }
+}
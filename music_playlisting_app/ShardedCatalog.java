@@ -0,0 +1,310 @@
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Partitions the catalog's Songs across a number of shards so that scans can run on several cores at once.
+ *
+ * Each Song is given the next number in sequence when it is added, and Songs are dealt to the shards in turn,
+ * so each shard holds its Songs in catalog order, along with their creator keys. A scan runs one fork-join task per shard in a ForkJoinPool,
+ * then merges the shards' matches by sequence number, so results come back in catalog order whatever the
+ * number of shards or threads. Below a size threshold the shards are scanned on the calling thread instead,
+ * since splitting a small scan costs more than it saves.
+ *
+ * SearchService keeps one ShardedCatalog, updated whenever the catalog changes. It is not safe for
+ * concurrent changes, but the shards are only read while a scan runs.
+ */
+public class ShardedCatalog {
+    // The shards, each holding every shardCount-th Song added
+    private final Shard[] shards;
+
+    // Catalog size from which scans run in parallel
+    private final int parallelThreshold;
+
+    // Runs the scan tasks
+    private final ForkJoinPool pool;
+
+    // Number of Songs held across every shard
+    private int size;
+
+    // Sequence number given to the next Song added
+    private long nextSequence;
+
+    /**
+     * Constructor for an empty ShardedCatalog
+     *
+     * @param shardCount        number of shards to partition Songs across (Positive integer >=1)
+     * @param parallelThreshold catalog size from which scans run in parallel (Positive integer >=0)
+     * @param pool              the pool that runs parallel scans
+     */
+    public ShardedCatalog(int shardCount, int parallelThreshold, ForkJoinPool pool) {
+        if (shardCount < 1) throw new IllegalArgumentException("There must be at least 1 shard");
+        if (parallelThreshold < 0) throw new IllegalArgumentException("The threshold must not be negative");
+        this.shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard();
+        }
+        this.parallelThreshold = parallelThreshold;
+        this.pool = pool;
+        this.size = 0;
+        this.nextSequence = 0;
+    }
+
+    /**
+     * Adds a Song after every Song already added.
+     *
+     * @param song       Song being added to the catalog
+     * @param creatorKey the Song's creator key, worked out by a {@link TextAnalyzer}
+     * @return long the Song's sequence number, one more than the last one given out; remove() takes it
+     */
+    public long add(Song song, String creatorKey) {
+        long sequence = nextSequence++;
+        shards[(int) (sequence % shards.length)].add(sequence, song, creatorKey);
+        size++;
+        return sequence;
+    }
+
+    /**
+     * Removes the Song with a sequence number. The number names the shard holding the Song,
+     * and the shard finds it by binary search, so no Songs are checked one by one.
+     *
+     * @param sequence the sequence number add() gave the Song
+     */
+    public void remove(long sequence) {
+        if (shards[(int) (sequence % shards.length)].remove(sequence)) {
+            size--;
+        }
+    }
+
+    /**
+     * Getter for the number of shards.
+     *
+     * @return int number of shards
+     */
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Getter for the number of Songs held across every shard.
+     *
+     * @return int number of Songs
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Constructs an ArrayList of Songs whose creator key contains a query key.
+     *
+     * @param query The key we are checking for the presence of in the creator keys.
+     * @return ArrayList<Song> containing search results, in catalog order.
+     */
+    public ArrayList<Song> searchByPartialCreator(String query) {
+        int[][] matches = new int[shards.length][];
+        if (size() < parallelThreshold || shards.length == 1) {
+            for (int i = 0; i < shards.length; i++) {
+                matches[i] = shards[i].scanCreators(query);
+            }
+        } else {
+            pool.invoke(new ScanTask(query, matches, 0, shards.length));
+        }
+        return merge(matches);
+    }
+
+    /**
+     * Merges the shards' matches into one list in catalog order, by always taking the match with
+     * the lowest sequence number next. The shards are kept in a binary heap ordered by their next
+     * match's sequence number, so each match costs O(log shards) to place.
+     *
+     * @param matches the positions of each shard's matches, in order
+     * @return ArrayList<Song> every match, in catalog order
+     */
+    private ArrayList<Song> merge(int[][] matches) {
+        int total = 0;
+        int[] heap = new int[shards.length];
+        int heapSize = 0;
+        for (int s = 0; s < shards.length; s++) {
+            total += matches[s].length;
+            if (matches[s].length > 0) heap[heapSize++] = s;
+        }
+        ArrayList<Song> result = new ArrayList<>(total);
+        int[] next = new int[shards.length];
+        long[] head = new long[shards.length]; // Sequence number of each shard's next match
+        for (int i = 0; i < heapSize; i++) {
+            head[heap[i]] = shards[heap[i]].sequences[matches[heap[i]][0]];
+        }
+        for (int i = heapSize / 2 - 1; i >= 0; i--) {
+            siftDown(heap, heapSize, i, head);
+        }
+        while (heapSize > 0) {
+            int s = heap[0];
+            result.add(shards[s].songs[matches[s][next[s]++]]);
+            if (next[s] < matches[s].length) {
+                head[s] = shards[s].sequences[matches[s][next[s]]];
+            } else {
+                heap[0] = heap[--heapSize];
+            }
+            siftDown(heap, heapSize, 0, head);
+        }
+        return result;
+    }
+
+    /**
+     * Moves a shard down the merge heap until neither of its children has a lower next sequence number.
+     *
+     * @param heap     shard numbers, as a binary heap
+     * @param heapSize number of shards in the heap
+     * @param i        position of the shard to move
+     * @param head     each shard's next sequence number
+     */
+    private static void siftDown(int[] heap, int heapSize, int i, long[] head) {
+        int shard = heap[i];
+        while (2 * i + 1 < heapSize) {
+            int child = 2 * i + 1;
+            if (child + 1 < heapSize && head[heap[child + 1]] < head[heap[child]]) child++;
+            if (head[heap[child]] >= head[shard]) break;
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = shard;
+    }
+
+    /**
+     * Scans a range of shards, splitting the range in half until each task scans one shard.
+     */
+    private class ScanTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        // The query key
+        private final String query;
+
+        // Receives each shard's matches, at the shard's position
+        private final int[][] matches;
+
+        // First shard to scan
+        private final int from;
+
+        // One past the last shard to scan
+        private final int to;
+
+        /**
+         * Constructor for a ScanTask
+         *
+         * @param query   the query key
+         * @param matches receives each shard's matches
+         * @param from    first shard to scan
+         * @param to      one past the last shard to scan
+         */
+        ScanTask(String query, int[][] matches, int from, int to) {
+            this.query = query;
+            this.matches = matches;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                matches[from] = shards[from].scanCreators(query);
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new ScanTask(query, matches, from, mid), new ScanTask(query, matches, mid, to));
+            }
+        }
+    }
+
+    /**
+     * One shard: its Songs in catalog order, with their sequence numbers and creator keys in parallel arrays.
+     * A removed Song leaves a null Song and creator key, with its sequence number, until the shard is compacted.
+     */
+    private static class Shard {
+        // The shard's Songs, in catalog order
+        private Song[] songs = new Song[16];
+
+        // Each Song's sequence number, at the same position
+        private long[] sequences = new long[16];
+
+        // Each Song's creator key, at the same position
+        private String[] creators = new String[16];
+
+        // Number of positions in use, including those of removed Songs
+        private int size;
+
+        // Number of positions left empty by removals since the shard was last compacted
+        private int holes;
+
+        /**
+         * Adds a Song at the end of the shard.
+         *
+         * @param sequence   the Song's sequence number, higher than any already in the shard
+         * @param song       Song being added
+         * @param creatorKey the Song's creator key
+         */
+        void add(long sequence, Song song, String creatorKey) {
+            if (size == songs.length) {
+                songs = Arrays.copyOf(songs, size * 2);
+                sequences = Arrays.copyOf(sequences, size * 2);
+                creators = Arrays.copyOf(creators, size * 2);
+            }
+            songs[size] = song;
+            sequences[size] = sequence;
+            creators[size] = creatorKey;
+            size++;
+        }
+
+        /**
+         * Removes the Song with a sequence number, keeping the rest in order.
+         * Sequence numbers rise through the shard, so the Song is found by binary search.
+         *
+         * @param sequence the Song's sequence number
+         * @return boolean true if the shard held the Song; false otherwise
+         */
+        boolean remove(long sequence) {
+            int i = Arrays.binarySearch(sequences, 0, size, sequence);
+            if (i < 0 || songs[i] == null) return false;
+            songs[i] = null;
+            creators[i] = null;
+            if (++holes > size / 2) {
+                compact(); // Each compaction follows as many removals as it moves Songs, so removals stay O(log n) on average
+            }
+            return true;
+        }
+
+        /**
+         * Closes up the positions left empty by removals, keeping the Songs in order.
+         */
+        private void compact() {
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                if (songs[i] == null) continue;
+                songs[kept] = songs[i];
+                sequences[kept] = sequences[i];
+                creators[kept] = creators[i];
+                kept++;
+            }
+            Arrays.fill(songs, kept, size, null);
+            Arrays.fill(creators, kept, size, null);
+            size = kept;
+            holes = 0;
+        }
+
+        /**
+         * Finds the Songs whose creator key contains a query key.
+         *
+         * @param query the query key
+         * @return int[] positions of the matching Songs in this shard, in order
+         */
+        int[] scanCreators(String query) {
+            int[] found = new int[16];
+            int count = 0;
+            for (int i = 0; i < size; i++) {
+                if (creators[i] != null && creators[i].contains(query)) {
+                    if (count == found.length) found = Arrays.copyOf(found, count * 2);
+                    found[count++] = i;
+                }
+            }
+            return Arrays.copyOf(found, count);
+        }
+    }
+}
@@ -0,0 +1,263 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Reads and writes a compact binary copy of every user, catalog Song and Listener library.
+ *
+ * StorageEngine writes a snapshot at each checkpoint so that startup loads one file instead of
+ * replaying every change ever made. A snapshot is laid out as:
+ * <ul>
+ *   <li>a header: magic number, format version, the registry's next unused user id, and the next unused Song id</li>
+ *   <li>a string table: every distinct title, creator, name and credential, stored once</li>
+ *   <li>songs: id, title and creator as string table positions, and duration; within the snapshot a Song is
+ *       referred to by its position. The catalog's Songs come first, in catalog order, followed by Songs found only in playlists</li>
+ *   <li>users: kind, id, and email, username and password as string table positions</li>
+ *   <li>playlists: owner id, name, and the ids of the Songs in the tracklist</li>
+ *   <li>a CRC32 checksum of everything before it</li>
+ * </ul>
+ * Version 1 snapshots, written before Songs had ids, have no Song ids; their Songs are given new ids when loaded.
+ * Numbers are 4 byte big-endian ints, and strings are UTF-8. A string table position of -1 stands for null.
+ * Snapshots are read through a MappedByteBuffer, so the file is not copied into the heap before it is decoded.
+ * The catalog's Songs are decoded into one array and added to the catalog as a batch, so each of its search
+ * indexes is built once from the whole catalog rather than Song by Song.
+ */
+public class Snapshot {
+    // Identifies a snapshot file: "MPSN"
+    private static final int MAGIC = 0x4D50534E;
+
+    // Version of the layout described above
+    private static final int VERSION = 2;
+
+    // Version of the layout before Songs had ids, which is still read
+    private static final int VERSION_WITHOUT_SONG_IDS = 1;
+
+    /**
+     * Writes a snapshot of a registry and catalog, and the libraries of the registry's Listeners,
+     * then forces it to disk.
+     *
+     * @param file    the file to write; replaced if it exists
+     * @param users   the accounts to save
+     * @param catalog the catalog to save
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(Path file, UserRegistry users, SearchService catalog) throws IOException {
+        // Number every distinct string and Song before writing, so the tables can be written first
+        StringTable strings = new StringTable();
+        LinkedHashMap<Song, Integer> songPositions = new LinkedHashMap<Song, Integer>();
+        for (Song s : catalog.getGlobalCatalog()) {
+            songPositions.put(s, songPositions.size());
+        }
+        int catalogCount = songPositions.size();
+        int playlistCount = 0;
+        for (User user : users) {
+            strings.add(user.getEmail());
+            strings.add(user.getUsername());
+            strings.add(user.getPassword());
+            if (user instanceof Listener) {
+                for (Playlist p : ((Listener) user).getLibrary()) {
+                    strings.add(p.getName());
+                    for (Song s : p.getTracklist()) {
+                        songPositions.putIfAbsent(s, songPositions.size());
+                    }
+                    playlistCount++;
+                }
+            }
+        }
+        for (Song s : songPositions.keySet()) {
+            strings.add(s.getTitle());
+            strings.add(s.getCreator());
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING)) {
+            CRC32 crc = new CRC32();
+            // Not closed here: closing the stream would close the channel before it is forced.
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new CheckedOutputStream(Channels.newOutputStream(channel), crc), 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(users.nextId());
+            out.writeInt(Song.nextId());
+
+            out.writeInt(strings.values.size());
+            for (String s : strings.values) {
+                byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+
+            out.writeInt(songPositions.size());
+            out.writeInt(catalogCount);
+            for (Song s : songPositions.keySet()) {
+                out.writeInt(s.getId());
+                out.writeInt(strings.indexOf(s.getTitle()));
+                out.writeInt(strings.indexOf(s.getCreator()));
+                out.writeInt(s.getDuration());
+            }
+
+            int userCount = 0;
+            for (User user : users) {
+                if (StorageEngine.kindOf(user) != 0) userCount++;
+            }
+            out.writeInt(userCount);
+            for (User user : users) {
+                byte kind = StorageEngine.kindOf(user);
+                if (kind == 0) continue; // Not a kind of User that can be restored
+                out.writeByte(kind);
+                out.writeInt(user.getId());
+                out.writeInt(strings.indexOf(user.getEmail()));
+                out.writeInt(strings.indexOf(user.getUsername()));
+                out.writeInt(strings.indexOf(user.getPassword()));
+            }
+
+            out.writeInt(playlistCount);
+            for (User user : users) {
+                if (!(user instanceof Listener)) continue;
+                for (Playlist p : ((Listener) user).getLibrary()) {
+                    out.writeInt(user.getId());
+                    out.writeInt(strings.indexOf(p.getName()));
+                    out.writeInt(p.getSongCount());
+                    for (Song s : p.getTracklist()) {
+                        out.writeInt(songPositions.get(s));
+                    }
+                }
+            }
+            out.flush();
+            // The checksum covers everything above, so it is written straight to the channel
+            ByteBuffer trailer = ByteBuffer.allocate(4).putInt(0, (int) crc.getValue());
+            while (trailer.hasRemaining()) {
+                channel.write(trailer);
+            }
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Restores a snapshot into an empty registry and catalog.
+     *
+     * @param file    the snapshot to read
+     * @param users   an empty UserRegistry to restore the accounts and libraries into
+     * @param catalog an empty SearchService to restore the catalog into
+     * @throws IOException if the file cannot be read, or is not a complete snapshot
+     */
+    public static void load(Path file, UserRegistry users, SearchService catalog) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) throw new IOException("Snapshot is too large to map: " + file);
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size); // Stays valid after the channel is closed
+        }
+        int end = buffer.capacity() - 4;
+        if (end < 12 || buffer.getInt(0) != MAGIC) throw new IOException("Not a snapshot: " + file);
+        int version = buffer.getInt(4);
+        if (version != VERSION && version != VERSION_WITHOUT_SONG_IDS) throw new IOException("Unsupported snapshot version " + version + ": " + file);
+        boolean hasSongIds = version != VERSION_WITHOUT_SONG_IDS;
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate().limit(end));
+        if ((int) crc.getValue() != buffer.getInt(end)) throw new IOException("Snapshot failed its checksum: " + file);
+
+        try {
+            buffer.position(8).limit(end);
+            int nextId = buffer.getInt();
+            if (hasSongIds) Song.advanceNextId(buffer.getInt());
+
+            String[] strings = new String[buffer.getInt()];
+            byte[] scratch = new byte[256];
+            for (int i = 0; i < strings.length; i++) {
+                int length = buffer.getInt();
+                if (length > scratch.length) scratch = new byte[Math.max(length, scratch.length * 2)];
+                buffer.get(scratch, 0, length);
+                strings[i] = new String(scratch, 0, length, StandardCharsets.UTF_8);
+            }
+
+            Song[] songs = new Song[buffer.getInt()];
+            int catalogCount = buffer.getInt();
+            for (int i = 0; i < songs.length; i++) {
+                int id = hasSongIds ? buffer.getInt() : 0;
+                String title = string(strings, buffer.getInt());
+                String creator = string(strings, buffer.getInt());
+                int duration = buffer.getInt();
+                songs[i] = hasSongIds ? new Song(id, title, creator, duration) : new Song(title, creator, duration);
+            }
+            // Added as one batch, so the catalog builds each of its indexes once rather than Song by Song
+            catalog.addSongsToCatalog(Arrays.asList(songs).subList(0, catalogCount));
+
+            int userCount = buffer.getInt();
+            for (int i = 0; i < userCount; i++) {
+                byte kind = buffer.get();
+                int id = buffer.getInt();
+                String email = string(strings, buffer.getInt());
+                String username = string(strings, buffer.getInt());
+                String password = string(strings, buffer.getInt());
+                users.add(StorageEngine.newUser(kind, id, email, username, password));
+            }
+            users.advanceNextId(nextId);
+
+            int playlistCount = buffer.getInt();
+            for (int i = 0; i < playlistCount; i++) {
+                User owner = users.findById(buffer.getInt());
+                String name = string(strings, buffer.getInt());
+                int trackCount = buffer.getInt();
+                if (!(owner instanceof Listener)) throw new IOException("Snapshot playlist has no owner: " + file);
+                Playlist playlist = ((Listener) owner).createNewPlaylist(name);
+                for (int t = 0; t < trackCount; t++) {
+                    playlist.addSong(songs[buffer.getInt()]);
+                }
+            }
+        } catch (RuntimeException e) {
+            // A checksummed file that does not decode was written by something other than write()
+            throw new IOException("Snapshot is malformed: " + file, e);
+        }
+    }
+
+    /**
+     * Looks up a string table position.
+     *
+     * @param strings the string table
+     * @param index   the position, or -1 for null
+     * @return String the string at that position, or null
+     */
+    private static String string(String[] strings, int index) {
+        return index < 0 ? null : strings[index];
+    }
+
+    /**
+     * Numbers distinct strings in the order they are first added.
+     */
+    private static class StringTable {
+        // Every distinct string, at its position
+        private final ArrayList<String> values = new ArrayList<String>();
+
+        // Maps each string to its position
+        private final HashMap<String, Integer> positions = new HashMap<String, Integer>();
+
+        /**
+         * Adds a string to the table if it is not already present. Null is never added.
+         *
+         * @param value the string to add
+         */
+        void add(String value) {
+            if (value != null && positions.putIfAbsent(value, values.size()) == null) {
+                values.add(value);
+            }
+        }
+
+        /**
+         * Getter for a string's position.
+         *
+         * @param value a string previously added, or null
+         * @return int the string's position, or -1 for null
+         */
+        int indexOf(String value) {
+            return value == null ? -1 : positions.get(value);
+        }
+    }
+}
@@ -1,17 +1,33 @@
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  *  Song represents a single song with a title, creator, and duration.
+ *
+ *  A Song either holds its own fields, or is a {@link SongStore.View} over one record of a {@link SongStore},
+ *  whose getters read the record from the store. The catalog only makes views when it is given a store, for the
+ *  results of its creator scans. Both kinds compare equal when their values match.
+ *
+ *  Every Song is given an id when it is made, counted up from 1 and never given to another Song, even
+ *  after the Song is removed from the catalog. Unlike a position in a list, an id keeps naming the same Song
+ *  while others are added and removed. Ids identify instances, so two equal Songs may have different ids;
+ *  the catalog holds one Song for each value, and looks Songs up by id with {@link SearchService#getSongById}.
  */
 public class Song {
+    // The id the next Song made without one is given
+    private static final AtomicInteger NEXT_ID = new AtomicInteger(1);
+
+    // Identifies this Song; never reused
+    private final int id;
+
     // Represents the title for the song
-    private String title;
+    private final String title;
 
     // Represents the creator for a song
-    private String creator;
+    private final String creator;
 
     // Represents the duration of a song
-    private int duration;
+    private final int duration;
 
     /**
      * Constructor for Song objects 
@@ -20,11 +36,57 @@ public class Song {
      * @param creator Artist who uploaded the Song's username
      */
     public Song(String title, String creator, int duration) {
+        this.id = NEXT_ID.getAndIncrement();
+        this.title = title;
+        this.creator = creator;
+        this.duration = duration;
+    }
+
+    /**
+     * Constructor for a Song that was given its id earlier, e.g. one restored from disk.
+     * Songs made later are given higher ids.
+     *
+     * @param id       the Song's id (Positive integer >0), or 0 for a Song with no id of its own
+     * @param title    name of the song
+     * @param creator  Artist who uploaded the Song's username
+     * @param duration length of the song in seconds
+     */
+    public Song(int id, String title, String creator, int duration) {
+        advanceNextId(id + 1);
+        this.id = id;
         this.title = title;
         this.creator = creator;
         this.duration = duration;
     }
 
+    /**
+     * Getter for the Song's 'id'
+     *
+     * @return int storing the Song's id
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Getter for the id the next Song made without one will be given.
+     *
+     * @return int the next unused id
+     */
+    public static int nextId() {
+        return NEXT_ID.get();
+    }
+
+    /**
+     * Ensures nextId() returns at least a given id, so ids used by Songs that were
+     * saved and later removed are never given out again.
+     *
+     * @param id the lowest id nextId() may return
+     */
+    public static void advanceNextId(int id) {
+        NEXT_ID.accumulateAndGet(id, Math::max);
+    }
+
     /**
      * Getter for the Song's 'title'
      *
@@ -52,6 +114,34 @@ public class Song {
         return duration;
     }
 
+    /**
+     * Override of the equals() method; two Songs are equal when their title, creator and duration all match.
+     * This lets the catalog and playlists recognise a re-upload of the same Song.
+     *
+     * @param o the object we are comparing against
+     * @return boolean true if o is a Song with the same title, creator and duration; false otherwise
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Song)) return false;
+        Song other = (Song) o;
+        return getDuration() == other.getDuration()
+            && Objects.equals(getTitle(), other.getTitle())
+            && Objects.equals(getCreator(), other.getCreator());
+    }
+
+    /**
+     * Override of the hashCode() method; consistent with equals() so Songs can be kept in hash-based collections.
+     *
+     * @return int hash of the Song's title, creator and duration
+     */
+    @Override
+    public int hashCode() {
+        // The same value as Objects.hash(title, creator, duration), without boxing the fields into an array
+        return (31 * (31 + Objects.hashCode(getTitle())) + Objects.hashCode(getCreator())) * 31 + getDuration();
+    }
+
     /**
      * Override of the toString() method; prints a description of the Song
      *
@@ -59,7 +149,7 @@ public class Song {
      */
     @Override
     public String toString() {
-        return title + " – " + creator + " - " + durationToString();
+        return getTitle() + " – " + getCreator() + " - " + durationToString();
     }
 
     /**
@@ -68,8 +158,8 @@ public class Song {
      * @return String formatted time string
      */
     public String durationToString() {
-        int minutes = duration / 60;
-        int seconds = duration % 60;
+        int minutes = getDuration() / 60;
+        int seconds = getDuration() % 60;
         return String.format("%02d:%02d", minutes, seconds);
     }
 }
@@ -0,0 +1,295 @@
+import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Gives each distinct Song a dense int id, so that collections of Songs can be stored as int arrays
+ * rather than as arrays of references.
+ *
+ * Ids are counted out from 0 and looked up by Song value, so equal Songs share one id and the first
+ * instance registered is the one returned for it. The registry counts the references held to each id:
+ * {@link #acquire} adds one and {@link #release} removes one, and once an id has no references left
+ * its Song can no longer be looked up, and the next equal Song registered is given a new id.
+ *
+ * An id is never given to another Song, and {@link #songs()} returns an array in which every id counted
+ * out so far still finds its Song. So a {@link PlaylistSnapshot} can keep the array it was made with and
+ * read its ids from any thread, without the registry's lock, after the Songs have been released. The array
+ * is only ever written at ids not yet counted out, and a copy is made whenever it grows.
+ *
+ * Released ids would otherwise pile up, so once more ids have been released than are still held,
+ * {@link #compact} starts a new generation: the ids still held are numbered again from 0, in new arrays, and
+ * the caller renumbers every tracklist that uses the registry. Each compaction follows at least as many
+ * releases as there are Songs left to renumber, and snapshots made before it keep the old arrays.
+ *
+ * The Playlists of a Listener's library share one SongRegistry for their tracklists, so a Song kept in
+ * several playlists is held once. Songs are looked up in an open-addressing table of ids rather than a HashMap,
+ * so each registered Song costs a few ints instead of a map entry and a boxed Integer.
+ *
+ * A SongRegistry is not thread-safe; the library sharing it holds {@link #getLock()} while using it.
+ */
+public class SongRegistry {
+    // Fewest released ids a compaction waits for, so small registries are not renumbered after every removal
+    private static final int MIN_RELEASED_TO_COMPACT = 64;
+
+    // Each held id plus 1, at the slot its Song's hash leads to; 0 marks an empty slot
+    private int[] table;
+
+    // Number of ids still held, each in the table
+    private int size;
+
+    // The Song of each id counted out in this generation, including released ones
+    private Song[] songs;
+
+    // The hash code of each id's Song, so the table can be searched and grown without hashing Songs again
+    private int[] hashes;
+
+    // Number of references held to each id
+    private int[] references;
+
+    // Number of ids counted out in this generation, held or released
+    private int idCount;
+
+    // Held by the library sharing the registry while it changes
+    private final ReentrantLock lock;
+
+    /**
+     * Constructor for an empty SongRegistry
+     */
+    public SongRegistry() {
+        this.table = new int[32];
+        this.size = 0;
+        this.songs = new Song[16];
+        this.hashes = new int[16];
+        this.references = new int[16];
+        this.idCount = 0;
+        this.lock = new ReentrantLock();
+    }
+
+    /**
+     * Getter for the lock held while the library sharing this registry changes.
+     * It is a ReentrantLock rather than a monitor because changes wait for the journal while holding it,
+     * and a virtual thread blocked inside a synchronized block would keep its carrier thread from running others.
+     *
+     * @return ReentrantLock the library's lock
+     */
+    ReentrantLock getLock() {
+        return lock;
+    }
+
+    /**
+     * Takes a reference to a Song's id, registering the Song under a new id if it has none.
+     *
+     * @param song Song to take a reference to (not null)
+     * @return int the Song's id
+     */
+    public int acquire(Song song) {
+        int hash = song.hashCode();
+        int slot = find(song, hash);
+        int id = table[slot] - 1;
+        if (id < 0) {
+            id = nextId();
+            songs[id] = song;
+            hashes[id] = hash;
+            table[slot] = id + 1;
+            if (++size * 2 > table.length) grow();
+        }
+        references[id]++;
+        return id;
+    }
+
+    /**
+     * Drops a reference to an id. Once no references are left, the id's Song can no longer be looked up,
+     * but the id keeps finding it in {@link #songs()} until the registry is compacted.
+     *
+     * @param id an id a reference was taken to
+     */
+    public void release(int id) {
+        if (id < 0 || id >= idCount || references[id] == 0) throw new IllegalArgumentException("No reference is held to the id " + id);
+        if (--references[id] == 0) {
+            delete(find(songs[id], hashes[id]));
+        }
+    }
+
+    /**
+     * Getter for the Song with an id.
+     *
+     * @param id an id counted out in this generation
+     * @return Song the Song registered under the id
+     */
+    public Song get(int id) {
+        return songs[id];
+    }
+
+    /**
+     * Getter for the Songs of every id counted out in this generation, indexed by id.
+     * The array must not be changed; the registry only writes to it at ids it has not counted out yet.
+     *
+     * @return Song[] the Songs by id, with room to spare at the end
+     */
+    Song[] songs() {
+        return songs;
+    }
+
+    /**
+     * Looks up the id of a Song, without taking a reference to it.
+     *
+     * @param song the Song to look up
+     * @return int the Song's id, or -1 if no reference is held to an equal Song
+     */
+    public int idOf(Song song) {
+        return song == null ? -1 : table[find(song, song.hashCode())] - 1;
+    }
+
+    /**
+     * Getter for the number of Songs registered.
+     *
+     * @return int number of Songs with at least one reference
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Signifies if enough ids have been released that the registry should be compacted.
+     *
+     * @return boolean true if more ids have been released than are still held, and at least a minimum number
+     */
+    public boolean isCompactionDue() {
+        int released = idCount - size;
+        return released >= MIN_RELEASED_TO_COMPACT && released > size;
+    }
+
+    /**
+     * Starts a new generation, numbering the ids still held again from 0 in their current order.
+     * Every tracklist using the registry must then replace each id with its new one; the arrays
+     * returned by songs() before this keep their contents, so snapshots holding them stay readable.
+     *
+     * @return int[] the new id of each old id, or -1 for an id that had been released
+     */
+    public int[] compact() {
+        int[] newIds = new int[idCount];
+        int capacity = Math.max(16, Integer.highestOneBit(Math.max(1, size)) * 2);
+        Song[] nextSongs = new Song[capacity];
+        int[] nextHashes = new int[capacity];
+        int[] nextReferences = new int[capacity];
+        int kept = 0;
+        for (int id = 0; id < idCount; id++) {
+            if (references[id] == 0) {
+                newIds[id] = -1;
+                continue;
+            }
+            newIds[id] = kept;
+            nextSongs[kept] = songs[id];
+            nextHashes[kept] = hashes[id];
+            nextReferences[kept] = references[id];
+            kept++;
+        }
+        songs = nextSongs;
+        hashes = nextHashes;
+        references = nextReferences;
+        idCount = kept;
+        table = new int[Math.max(32, capacity * 2)];
+        place(kept);
+        return newIds;
+    }
+
+    /**
+     * Finds the slot of the table holding a Song's id, or the empty slot where it would go.
+     *
+     * @param song the Song to look for
+     * @param hash the Song's hash code
+     * @return int the slot
+     */
+    private int find(Song song, int hash) {
+        int mask = table.length - 1;
+        int slot = spread(hash) & mask;
+        while (table[slot] != 0) {
+            int id = table[slot] - 1;
+            if (hashes[id] == hash && songs[id].equals(song)) return slot;
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Empties a slot of the table, then moves back any later ids in the same run that could sit in it,
+     * so every lookup still finds its Song before reaching an empty slot.
+     *
+     * @param slot the slot to empty
+     */
+    private void delete(int slot) {
+        int mask = table.length - 1;
+        size--;
+        int next = (slot + 1) & mask;
+        while (table[next] != 0) {
+            int home = spread(hashes[table[next] - 1]) & mask;
+            // Move the id back unless its home lies after the emptied slot, up to the id's own slot
+            if (((next - home) & mask) >= ((next - slot) & mask)) {
+                table[slot] = table[next];
+                slot = next;
+            }
+            next = (next + 1) & mask;
+        }
+        table[slot] = 0;
+    }
+
+    /**
+     * Doubles the table, placing every held id again by its stored hash.
+     */
+    private void grow() {
+        int[] old = table;
+        table = new int[old.length * 2];
+        for (int entry : old) {
+            if (entry != 0) put(entry);
+        }
+    }
+
+    /**
+     * Places the ids below a count in the empty table by their stored hashes.
+     *
+     * @param count number of ids to place, all of them held
+     */
+    private void place(int count) {
+        for (int id = 0; id < count; id++) {
+            put(id + 1);
+        }
+    }
+
+    /**
+     * Puts a table entry in the first empty slot from its home.
+     *
+     * @param entry an id plus 1
+     */
+    private void put(int entry) {
+        int mask = table.length - 1;
+        int slot = spread(hashes[entry - 1]) & mask;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = entry;
+    }
+
+    /**
+     * Spreads the bits of a hash code, since Song hashes built from short fields differ mostly in their low bits.
+     *
+     * @param hash a hash code
+     * @return int the mixed bits
+     */
+    private static int spread(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Counts out a new id, growing the arrays if they are full.
+     *
+     * @return int the new id
+     */
+    private int nextId() {
+        if (idCount == songs.length) {
+            songs = Arrays.copyOf(songs, idCount * 2);
+            hashes = Arrays.copyOf(hashes, idCount * 2);
+            references = Arrays.copyOf(references, idCount * 2);
+        }
+        return idCount++;
+    }
+}
@@ -0,0 +1,227 @@
+import java.util.BitSet;
+
+/**
+ * Holds Songs as records addressed by dense int ids, rather than as one object per Song.
+ *
+ * Each Song is given the next id when it is added, so ids follow the order Songs were added. Records
+ * never change once added, and a removed Song's id is not reused. Creators are dictionary encoded:
+ * each distinct name has an int code, so scans by creator compare ints instead of Strings.
+ *
+ * A record's id is its position in the store. Each record also keeps the {@link Song#getId() id}
+ * of the Song it was added from, so views over it report the same id as the catalog's Song.
+ *
+ * {@link CompactSongStore} keeps the records in arrays on the heap, and {@link OffHeapSongStore}
+ * keeps them in direct memory outside it, where the garbage collector never has to visit them.
+ */
+public interface SongStore {
+    /**
+     * Adds a Song's fields as a new record.
+     *
+     * @param song Song to store; its title and creator must not be null
+     * @return int the record's id, one more than the last id given out
+     */
+    default int add(Song song) {
+        return add(song.getId(), song.getTitle(), song.getCreator(), song.getDuration());
+    }
+
+    /**
+     * Adds a new record, for a Song with no id of its own.
+     *
+     * @param title    name of the song (not null)
+     * @param creator  username of the Artist who uploaded the song (not null)
+     * @param duration length of the song in seconds
+     * @return int the record's id, one more than the last id given out
+     */
+    default int add(String title, String creator, int duration) {
+        return add(0, title, creator, duration);
+    }
+
+    /**
+     * Adds a new record.
+     *
+     * @param songId   the Song's own id, or 0 if it has none
+     * @param title    name of the song (not null)
+     * @param creator  username of the Artist who uploaded the song (not null)
+     * @param duration length of the song in seconds
+     * @return int the record's id, one more than the last id given out
+     */
+    int add(int songId, String title, String creator, int duration);
+
+    /**
+     * Removes the Song with an id. Its record is kept, so views over it stay valid, but it is
+     * no longer counted or found by scans.
+     *
+     * @param id the Song's id
+     * @return boolean true if the Song was in the store; false if it had already been removed
+     */
+    boolean remove(int id);
+
+    /**
+     * Signifies if an id belongs to a Song that has not been removed.
+     *
+     * @param id the id to check
+     * @return boolean true if the Song is in the store; false otherwise
+     */
+    boolean contains(int id);
+
+    /**
+     * Getter for the number of Songs in the store, not counting removed ones.
+     *
+     * @return int number of Songs
+     */
+    int size();
+
+    /**
+     * Getter for the number of ids given out, including those of removed Songs.
+     * Every id is below this number.
+     *
+     * @return int number of ids
+     */
+    int idCount();
+
+    /**
+     * Getter for the number of distinct creators ever stored. Every creator code is below this number.
+     *
+     * @return int number of creator names in the dictionary
+     */
+    int creatorCount();
+
+    /**
+     * Looks up a creator name in the dictionary by its code.
+     *
+     * @param code the creator's code
+     * @return String the creator's username
+     */
+    String getCreatorName(int code);
+
+    /**
+     * Makes a Song that reads the record with an id from the store.
+     *
+     * @param id the Song's id
+     * @return Song a view over the record
+     */
+    default Song get(int id) {
+        if (id < 0 || id >= idCount()) throw new IndexOutOfBoundsException("No song has the id " + id);
+        return new View(this, id);
+    }
+
+    /**
+     * Getter for the id of the Song a record was added from.
+     *
+     * @param id the record's id
+     * @return int the Song's own id, or 0 if it had none
+     */
+    int getSongId(int id);
+
+    /**
+     * Decodes the title of a record.
+     *
+     * @param id the Song's id
+     * @return String the title
+     */
+    String getTitle(int id);
+
+    /**
+     * Looks up the creator of a record in the dictionary.
+     *
+     * @param id the Song's id
+     * @return String the creator's username, shared by every record with the same creator
+     */
+    String getCreator(int id);
+
+    /**
+     * Getter for the duration of a record.
+     *
+     * @param id the Song's id
+     * @return int the duration in seconds
+     */
+    int getDuration(int id);
+
+    /**
+     * Finds the Songs whose title is exactly a given title, comparing the UTF-8 bytes in place.
+     *
+     * @param title the title to match
+     * @return int[] ids of the matching Songs, in id order
+     */
+    int[] findByTitle(String title);
+
+    /**
+     * Finds the Songs by a creator. The name is looked up once in the dictionary, then only int codes are compared.
+     *
+     * @param creator the creator's username
+     * @return int[] ids of the creator's Songs, in id order
+     */
+    int[] findByCreator(String creator);
+
+    /**
+     * Finds the Songs by any of a set of creators, comparing only int codes.
+     *
+     * @param codes the codes of the creators to match
+     * @return int[] ids of the matching Songs, in id order
+     */
+    int[] findByCreatorCodes(BitSet codes);
+
+    /**
+     * Finds the id of a Song with the same title, creator and duration as a given Song.
+     *
+     * @param song the Song to look for
+     * @return int the Song's id, or -1 if the store holds no such Song
+     */
+    default int find(Song song) {
+        if (song.getTitle() == null) return -1;
+        for (int id : findByTitle(song.getTitle())) {
+            if (getDuration(id) == song.getDuration() && getCreator(id).equals(song.getCreator())) return id;
+        }
+        return -1;
+    }
+
+    /**
+     * Estimates the memory used by the store, at its current capacity.
+     *
+     * @return long estimated bytes used, on and off the heap
+     */
+    long estimateBytes();
+
+    /**
+     * A Song whose fields are read from a record of a store.
+     */
+    class View extends Song {
+        // The store holding the record
+        private final SongStore store;
+
+        // The record's id
+        private final int id;
+
+        /**
+         * Constructor for a View
+         *
+         * @param store the store holding the record
+         * @param id    the record's id
+         */
+        View(SongStore store, int id) {
+            super(0, null, null, 0);
+            this.store = store;
+            this.id = id;
+        }
+
+        @Override
+        public int getId() {
+            return store.getSongId(id);
+        }
+
+        @Override
+        public String getTitle() {
+            return store.getTitle(id);
+        }
+
+        @Override
+        public String getCreator() {
+            return store.getCreator(id);
+        }
+
+        @Override
+        public int getDuration() {
+            return store.getDuration(id);
+        }
+    }
+}
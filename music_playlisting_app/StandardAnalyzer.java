@@ -0,0 +1,80 @@
+import java.text.Normalizer;
+import java.util.*;
+
+/**
+ * The TextAnalyzer used by SearchService unless another is given. Each text goes through:
+ * <ol>
+ *   <li>Unicode NFKD decomposition, so compatibility forms such as ligatures and full-width letters
+ *       become plain letters, and accented letters become a letter followed by its accent</li>
+ *   <li>accent stripping: the combining marks left by decomposition are dropped, so "Beyonc&eacute;" matches "beyonce"</li>
+ *   <li>case folding, including letters whose lower case is more than one letter, such as "&szlig;" to "ss"</li>
+ *   <li>punctuation stripping: apostrophes are dropped, so "Don't" matches "dont", and every other character
+ *       that is not a letter or digit separates words</li>
+ *   <li>tokenization into the words left</li>
+ * </ol>
+ * Plain ASCII text, the common case, skips the first three steps' Unicode tables.
+ */
+public class StandardAnalyzer implements TextAnalyzer {
+    // Returned for texts with no words
+    private static final String[] NO_TOKENS = new String[0];
+
+    @Override
+    public String[] tokenize(String text) {
+        String key = analyze(text);
+        return key.isEmpty() ? NO_TOKENS : key.split(" ");
+    }
+
+    @Override
+    public String analyze(String text) {
+        if (text == null || text.isEmpty()) return "";
+        String folded = isAscii(text) ? text : fold(text);
+        StringBuilder key = new StringBuilder(folded.length());
+        boolean separator = false;
+        for (int i = 0; i < folded.length(); ) {
+            int c = folded.codePointAt(i);
+            i += Character.charCount(c);
+            if (Character.isLetterOrDigit(c)) {
+                if (separator && key.length() > 0) key.append(' ');
+                key.appendCodePoint(c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c);
+                separator = false;
+            } else if (c != '\'' && c != '\u2019') { // Apostrophes join the letters around them
+                separator = true;
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * Decomposes a text, strips its accents and folds its case.
+     *
+     * @param text text containing characters outside ASCII
+     * @return String the folded text
+     */
+    private static String fold(String text) {
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFKD);
+        StringBuilder stripped = new StringBuilder(decomposed.length());
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            int type = Character.getType(c);
+            if (type != Character.NON_SPACING_MARK && type != Character.COMBINING_SPACING_MARK
+                    && type != Character.ENCLOSING_MARK) {
+                stripped.append(c);
+            }
+        }
+        // Upper-casing first expands letters such as the German sharp s to "SS", which then lower-case to "ss"
+        return stripped.toString().toUpperCase(Locale.ROOT).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Signifies if a text is plain ASCII.
+     *
+     * @param text the text to check
+     * @return boolean true if every character is below 128; false otherwise
+     */
+    private static boolean isAscii(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) >= 128) return false;
+        }
+        return true;
+    }
+}
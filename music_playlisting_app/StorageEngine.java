@@ -0,0 +1,964 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.zip.CRC32;
+
+/**
+ * Saves users, the song catalog and every Listener's library to disk, so they survive a restart.
+ *
+ * Every change is appended as one record to a journal file, which is never rewritten.
+ * A record is written as its payload length, a CRC32 checksum of the payload, then the payload itself:
+ * a one byte record type followed by the record's fields. Records that add a Song also hold its id,
+ * so a restored Song keeps the id it was known by; journals written before Songs had ids are still read,
+ * and their Songs are given new ids.
+ *
+ * Writes use group commit: callers hand their record to a single writer thread and wait,
+ * and the writer writes every record that is waiting with one call to the FileChannel and makes
+ * them durable with one force(). Many callers therefore share the cost of each flush to disk,
+ * and a change has reached the disk by the time the method that made it returns.
+ *
+ * checkpoint() saves everything in a Snapshot and starts a new, empty journal, so the journal only
+ * holds the changes made since the last checkpoint. Each checkpoint is a new generation: the data
+ * directory holds snapshot-N.snap, written at checkpoint N, and journal-N.log, the changes made after it.
+ * Older generations are deleted once the new one is safely on disk.
+ *
+ * When the engine is opened it loads the newest snapshot, if there is one, into an empty UserRegistry
+ * and SearchService, then replays that generation's journal on top of it.
+ * If the application stopped while a record was being written, the incomplete or corrupt record
+ * at the end of the journal is discarded and the file is truncated to the last complete record.
+ */
+public class StorageEngine implements MutationLog, AutoCloseable {
+    // Name of the single journal used before checkpoints existed; opened as the journal of generation 0
+    private static final String LEGACY_JOURNAL_FILE = "journal.log";
+
+    // Number of records after which checkpointIfDue() writes a new snapshot, unless changed
+    public static final long DEFAULT_CHECKPOINT_RECORDS = 10_000;
+
+    // Bytes before each record's payload: its length and its checksum
+    private static final int HEADER_BYTES = 8;
+
+    // Most records written together in one group commit
+    private static final int MAX_BATCH = 1024;
+
+    // Record types; SONG_ADDED, SONGS_ADDED and PLAYLIST_SONG_ADDED are only read, from journals written before Songs had ids
+    private static final byte USER_ADDED = 1;
+    private static final byte USER_REMOVED = 2;
+    private static final byte SONG_ADDED = 3;
+    private static final byte SONG_REMOVED = 4;
+    private static final byte PLAYLIST_CREATED = 5;
+    private static final byte PLAYLIST_DELETED = 6;
+    private static final byte LIBRARY_CLEARED = 7;
+    private static final byte PLAYLIST_SONG_ADDED = 8;
+    private static final byte PLAYLIST_SONG_REMOVED = 9;
+    private static final byte PLAYLIST_SONG_REMOVED_AT = 10;
+    private static final byte SONGS_ADDED = 11;
+    private static final byte SONG_ADDED_WITH_ID = 12;
+    private static final byte SONGS_ADDED_WITH_IDS = 13;
+    private static final byte PLAYLIST_SONG_ADDED_WITH_ID = 14;
+
+    // User kinds stored in USER_ADDED records
+    private static final byte LISTENER = 'L';
+    private static final byte ARTIST = 'A';
+    private static final byte ADMIN = 'D';
+
+    // Directory holding the snapshots and journals
+    private final Path directory;
+
+    // The accounts being saved
+    private final UserRegistry users;
+
+    // The catalog being saved
+    private final SearchService catalog;
+
+    // The current generation's journal, open for appending; replaced by checkpoint()
+    private volatile FileChannel channel;
+
+    // The current generation: the number of the snapshot loaded or last written, 0 before the first checkpoint
+    private long generation;
+
+    // Number of records after which checkpointIfDue() writes a new snapshot
+    private long checkpointInterval;
+
+    // Value of getRecordsReplayed() + getRecordsWritten() at the last checkpoint
+    private long recordsAtCheckpoint;
+
+    // Records waiting for the writer thread
+    private final LinkedBlockingQueue<PendingWrite> queue;
+
+    // Writes and forces batches of records from the queue
+    private final Thread writer;
+
+    // Signifies if close() has been called; no records are accepted afterwards
+    private boolean closed;
+
+    // Number of records applied when the journal was replayed
+    private final long recordsReplayed;
+
+    // Number of bytes discarded from the end of the journal when it was replayed
+    private final long bytesDiscarded;
+
+    // Number of records written since the engine was opened
+    private volatile long recordsWritten;
+
+    // Number of group commits (forces of the journal) since the engine was opened
+    private volatile long batchesWritten;
+
+    /**
+     * Constructor for a StorageEngine; use open() to create one.
+     *
+     * @param directory       directory holding the snapshots and journals
+     * @param users           the accounts to save
+     * @param catalog         the catalog to save
+     * @param generation      the generation that was loaded
+     * @param channel         that generation's journal, positioned after its last complete record
+     * @param recordsReplayed number of records applied during replay
+     * @param bytesDiscarded  number of bytes truncated from the end of the journal
+     */
+    private StorageEngine(Path directory, UserRegistry users, SearchService catalog, long generation, FileChannel channel,
+                          long recordsReplayed, long bytesDiscarded) {
+        this.directory = directory;
+        this.users = users;
+        this.catalog = catalog;
+        this.generation = generation;
+        this.channel = channel;
+        this.checkpointInterval = DEFAULT_CHECKPOINT_RECORDS;
+        this.recordsReplayed = recordsReplayed;
+        this.bytesDiscarded = bytesDiscarded;
+        this.queue = new LinkedBlockingQueue<PendingWrite>();
+        this.writer = new Thread(this::writeLoop, "storage-writer");
+        this.writer.setDaemon(true);
+    }
+
+    /**
+     * Opens the data in a directory, creating it if it does not exist, and restores the newest
+     * snapshot and the changes made after it into the given registry and catalog.
+     * Afterwards every change made to them, or to the libraries of their Listeners, is recorded.
+     *
+     * @param directory directory holding the snapshots and journals
+     * @param users     an empty UserRegistry to restore the accounts into
+     * @param catalog   an empty SearchService to restore the catalog into
+     * @return StorageEngine recording changes to the registry and catalog
+     * @throws IOException if the data cannot be read or written
+     */
+    public static StorageEngine open(Path directory, UserRegistry users, SearchService catalog) throws IOException {
+        Files.createDirectories(directory);
+        Path legacy = directory.resolve(LEGACY_JOURNAL_FILE);
+        if (Files.exists(legacy) && !Files.exists(journalPath(directory, 0))) {
+            Files.move(legacy, journalPath(directory, 0), StandardCopyOption.ATOMIC_MOVE);
+        }
+        long generation = latestGeneration(directory);
+        if (generation > 0) {
+            Snapshot.load(snapshotPath(directory, generation), users, catalog);
+        }
+        FileChannel channel = FileChannel.open(journalPath(directory, generation),
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long[] replayed = replay(channel, users, catalog);
+            long validEnd = replayed[1];
+            long discarded = channel.size() - validEnd;
+            if (discarded > 0) {
+                // The last record was only partly written; drop it so new records follow a complete one.
+                channel.truncate(validEnd);
+                channel.force(true);
+            }
+            channel.position(validEnd);
+
+            // Files left by an older generation, or by a checkpoint that did not finish, are no longer needed
+            deleteOtherGenerations(directory, generation);
+
+            StorageEngine engine = new StorageEngine(directory, users, catalog, generation, channel, replayed[0], discarded);
+            users.setMutationLog(engine);
+            catalog.setMutationLog(engine);
+            engine.writer.start();
+            return engine;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Saves everything in a new snapshot and starts a new, empty journal, then deletes the previous
+     * generation's snapshot and journal. Changes made by other threads wait until the checkpoint finishes.
+     * Call this from the thread that changes the registry, catalog and libraries, so the snapshot
+     * does not include a change whose record has not been written yet.
+     *
+     * If the checkpoint fails part way through, the previous generation is left in place and is
+     * what the next open() loads.
+     *
+     * @throws IOException if the snapshot or new journal cannot be written
+     * @throws IllegalStateException if the engine has been closed
+     */
+    public synchronized void checkpoint() throws IOException {
+        if (closed) throw new IllegalStateException("The storage engine has been closed");
+        // Every record accepted so far is written before the journal is swapped. No more can be
+        // accepted meanwhile, because append() needs the lock this method holds.
+        PendingWrite barrier = new PendingWrite(null, false);
+        queue.add(barrier);
+        barrier.await();
+
+        long next = generation + 1;
+        Path snapshot = snapshotPath(directory, next);
+        Path temporary = directory.resolve(snapshot.getFileName() + ".tmp");
+        Snapshot.write(temporary, users, catalog);
+        // The snapshot only appears under its real name once it is complete
+        Files.move(temporary, snapshot, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        syncDirectory(directory);
+
+        FileChannel nextJournal = FileChannel.open(journalPath(directory, next),
+            StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        FileChannel previous = channel;
+        channel = nextJournal;
+        generation = next;
+        recordsAtCheckpoint = recordsReplayed + recordsWritten;
+        previous.close();
+        deleteOtherGenerations(directory, next);
+    }
+
+    /**
+     * Calls checkpoint() if at least getCheckpointInterval() records have been written or replayed since the last one.
+     *
+     * @return boolean true if a checkpoint was written; false otherwise
+     * @throws IOException if the snapshot or new journal cannot be written
+     */
+    public synchronized boolean checkpointIfDue() throws IOException {
+        if (getRecordsSinceCheckpoint() < checkpointInterval) return false;
+        checkpoint();
+        return true;
+    }
+
+    /**
+     * Getter for the number of records in the current journal: those replayed or written since the last checkpoint.
+     *
+     * @return long count of records a restart would replay
+     */
+    public synchronized long getRecordsSinceCheckpoint() {
+        return recordsReplayed + recordsWritten - recordsAtCheckpoint;
+    }
+
+    /**
+     * Getter for the number of records after which checkpointIfDue() writes a new snapshot.
+     *
+     * @return long the checkpoint interval in records
+     */
+    public synchronized long getCheckpointInterval() {
+        return checkpointInterval;
+    }
+
+    /**
+     * Setter for the number of records after which checkpointIfDue() writes a new snapshot.
+     *
+     * @param checkpointInterval the checkpoint interval in records (Positive integer >=1)
+     */
+    public synchronized void setCheckpointInterval(long checkpointInterval) {
+        if (checkpointInterval < 1) throw new IllegalArgumentException("The checkpoint interval must be at least 1");
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    /**
+     * Getter for the current generation: the number of the newest snapshot, or 0 if none has been written.
+     *
+     * @return long the current generation
+     */
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Getter for the current generation's journal file.
+     *
+     * @return Path of the journal new records are appended to
+     */
+    public synchronized Path getJournalPath() {
+        return journalPath(directory, generation);
+    }
+
+    /**
+     * Getter for the path of a generation's journal.
+     *
+     * @param directory the data directory
+     * @param generation the generation
+     * @return Path of journal-N.log
+     */
+    private static Path journalPath(Path directory, long generation) {
+        return directory.resolve("journal-" + generation + ".log");
+    }
+
+    /**
+     * Getter for the path of a generation's snapshot.
+     *
+     * @param directory the data directory
+     * @param generation the generation (Positive integer >=1)
+     * @return Path of snapshot-N.snap
+     */
+    private static Path snapshotPath(Path directory, long generation) {
+        return directory.resolve("snapshot-" + generation + ".snap");
+    }
+
+    /**
+     * Finds the newest complete snapshot in a data directory.
+     *
+     * @param directory the data directory
+     * @return long the generation of the newest snapshot, or 0 if there is none
+     * @throws IOException if the directory cannot be listed
+     */
+    private static long latestGeneration(Path directory) throws IOException {
+        long latest = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "snapshot-*.snap")) {
+            for (Path file : files) {
+                long generation = generationOf(file.getFileName().toString(), "snapshot-", ".snap");
+                latest = Math.max(latest, generation);
+            }
+        }
+        return latest;
+    }
+
+    /**
+     * Deletes every snapshot and journal that does not belong to a generation, and any unfinished snapshot.
+     *
+     * @param directory  the data directory
+     * @param generation the generation to keep
+     * @throws IOException if the directory cannot be listed or a file cannot be deleted
+     */
+    private static void deleteOtherGenerations(Path directory, long generation) throws IOException {
+        ArrayList<Path> stale = new ArrayList<Path>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                long snapshot = generationOf(name, "snapshot-", ".snap");
+                long journal = generationOf(name, "journal-", ".log");
+                if ((snapshot >= 0 && snapshot != generation) || (journal >= 0 && journal != generation)
+                    || (name.startsWith("snapshot-") && name.endsWith(".tmp"))) {
+                    stale.add(file);
+                }
+            }
+        }
+        for (Path file : stale) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Reads the generation number out of a snapshot or journal file name.
+     *
+     * @param name   the file name
+     * @param prefix the text before the number
+     * @param suffix the text after the number
+     * @return long the generation, or -1 if the name does not have that form
+     */
+    private static long generationOf(String name, String prefix, String suffix) {
+        if (!name.startsWith(prefix) || !name.endsWith(suffix) || name.length() == prefix.length() + suffix.length()) return -1;
+        String number = name.substring(prefix.length(), name.length() - suffix.length());
+        for (int i = 0; i < number.length(); i++) {
+            if (number.charAt(i) < '0' || number.charAt(i) > '9') return -1;
+        }
+        try {
+            return Long.parseLong(number);
+        } catch (NumberFormatException e) {
+            return -1; // Too many digits
+        }
+    }
+
+    /**
+     * Forces a directory's entries to disk, so a renamed or created file survives a crash.
+     * Not every platform can open a directory; there the rename is left to the file system.
+     *
+     * @param directory the directory to force
+     */
+    private static void syncDirectory(Path directory) {
+        try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException e) {
+            // Directories cannot be opened on this platform
+        }
+    }
+
+    /**
+     * Applies every complete record in the journal to the registry and catalog.
+     * Reading stops at the first record that is cut short or fails its checksum.
+     *
+     * @param channel the journal
+     * @param users   the registry to restore into
+     * @param catalog the catalog to restore into
+     * @return long[] the number of records applied, and the offset just past the last of them
+     * @throws IOException if the journal cannot be read, or a record with a valid checksum cannot be understood
+     */
+    private static long[] replay(FileChannel channel, UserRegistry users, SearchService catalog) throws IOException {
+        long size = channel.size();
+        channel.position(0);
+        // Not closed here: closing the stream would close the channel.
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 1 << 16));
+        CRC32 crc = new CRC32();
+        long offset = 0;
+        long records = 0;
+        while (size - offset >= HEADER_BYTES) {
+            int length = in.readInt();
+            int checksum = in.readInt();
+            if (length <= 0 || length > size - offset - HEADER_BYTES) break; // Torn record
+            byte[] payload = new byte[length];
+            in.readFully(payload);
+            crc.reset();
+            crc.update(payload, 0, length);
+            if ((int) crc.getValue() != checksum) break; // Torn record
+            apply(new DataInputStream(new ByteArrayInputStream(payload)), users, catalog);
+            offset += HEADER_BYTES + length;
+            records++;
+        }
+        return new long[] {records, offset};
+    }
+
+    /**
+     * Applies one record to the registry and catalog.
+     * Changes to libraries are made directly, so the messages the Listener methods print are not repeated.
+     *
+     * @param in      the record's payload
+     * @param users   the registry to restore into
+     * @param catalog the catalog to restore into
+     * @throws IOException if the record cannot be understood
+     */
+    private static void apply(DataInputStream in, UserRegistry users, SearchService catalog) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case USER_ADDED: {
+                byte kind = in.readByte();
+                int id = in.readInt();
+                String email = readString(in);
+                String username = readString(in);
+                String password = readString(in);
+                users.add(newUser(kind, id, email, username, password));
+                break;
+            }
+            case USER_REMOVED: {
+                User removed = users.findById(in.readInt());
+                users.remove(removed);
+                if (removed instanceof Listener) {
+                    // Main clears a deleted Listener's library once it has left the registry
+                    releaseAll((Listener) removed);
+                }
+                break;
+            }
+            case SONG_ADDED:
+            case SONG_ADDED_WITH_ID:
+                catalog.addSongToCatalog(readSong(in, type == SONG_ADDED_WITH_ID));
+                break;
+            case SONG_REMOVED:
+                catalog.removeSongFromCatalog(readSong(in, false));
+                break;
+            case SONGS_ADDED:
+            case SONGS_ADDED_WITH_IDS: {
+                int count = in.readInt();
+                ArrayList<Song> songs = new ArrayList<Song>(count);
+                for (int i = 0; i < count; i++) {
+                    songs.add(readSong(in, type == SONGS_ADDED_WITH_IDS));
+                }
+                catalog.addSongsToCatalog(songs);
+                break;
+            }
+            case PLAYLIST_CREATED: {
+                Listener owner = findListener(users, in.readInt());
+                String name = readString(in);
+                if (owner != null) owner.createNewPlaylist(name);
+                break;
+            }
+            case PLAYLIST_DELETED: {
+                Listener owner = findListener(users, in.readInt());
+                int index = in.readInt();
+                if (owner != null && index >= 0 && index < owner.getLibrary().size()) {
+                    owner.removePlaylistAtIndex(index);
+                }
+                break;
+            }
+            case LIBRARY_CLEARED: {
+                Listener owner = findListener(users, in.readInt());
+                if (owner != null) releaseAll(owner);
+                break;
+            }
+            case PLAYLIST_SONG_ADDED:
+            case PLAYLIST_SONG_ADDED_WITH_ID:
+            case PLAYLIST_SONG_REMOVED:
+            case PLAYLIST_SONG_REMOVED_AT: {
+                Listener owner = findListener(users, in.readInt());
+                int playlistIndex = in.readInt();
+                Playlist playlist = owner != null && playlistIndex >= 0 && playlistIndex < owner.getLibrary().size()
+                    ? owner.getPlaylistAtIndex(playlistIndex) : null;
+                if (type == PLAYLIST_SONG_ADDED || type == PLAYLIST_SONG_ADDED_WITH_ID) {
+                    Song song = readSong(in, type == PLAYLIST_SONG_ADDED_WITH_ID);
+                    // Share the catalog's copy, as the playlist did before the restart
+                    Song catalogSong = catalog.getSongById(song.getId());
+                    if (song.equals(catalogSong)) song = catalogSong;
+                    if (playlist != null) playlist.addSong(song);
+                } else if (type == PLAYLIST_SONG_REMOVED) {
+                    Song song = readSong(in, false);
+                    if (playlist != null) playlist.removeSong(song);
+                } else {
+                    int songIndex = in.readInt();
+                    if (playlist != null && songIndex >= 0 && songIndex < playlist.getSongCount()) {
+                        playlist.removeSongAtIndex(songIndex);
+                    }
+                }
+                break;
+            }
+            default:
+                throw new IOException("Unknown record type in journal: " + type);
+        }
+    }
+
+    /**
+     * Getter for the code a kind of User is saved as.
+     *
+     * @param user the User being saved
+     * @return byte the User's kind, or 0 if it is not a kind of User that can be restored
+     */
+    static byte kindOf(User user) {
+        if (user instanceof Listener) {
+            return LISTENER;
+        } else if (user instanceof Artist) {
+            return ARTIST;
+        } else if (user instanceof Admin) {
+            return ADMIN;
+        }
+        return 0;
+    }
+
+    /**
+     * Creates a User of a saved kind.
+     *
+     * @param kind     the code returned by kindOf()
+     * @param id       the User's identifier
+     * @param email    the User's email address
+     * @param username the User's username
+     * @param password the User's password
+     * @return User a new Listener (with an empty library), Artist or Admin
+     * @throws IOException if the kind is not one kindOf() returns
+     */
+    static User newUser(byte kind, int id, String email, String username, String password) throws IOException {
+        if (kind == LISTENER) {
+            return new Listener(email, username, password, id, new ArrayList<Playlist>());
+        } else if (kind == ARTIST) {
+            return new Artist(email, username, password, id);
+        } else if (kind == ADMIN) {
+            return new Admin(email, username, password, id);
+        }
+        throw new IOException("Unknown user kind: " + kind);
+    }
+
+    /**
+     * Deletes every Playlist in a Listener's library without printing anything.
+     *
+     * @param owner the Listener whose library is cleared
+     */
+    private static void releaseAll(Listener owner) {
+        owner.removeAllPlaylists();
+    }
+
+    /**
+     * Finds a registered Listener by id.
+     *
+     * @param users the registry to search
+     * @param id    the Listener's identifier
+     * @return Listener the matching Listener, or null if there is none
+     */
+    private static Listener findListener(UserRegistry users, int id) {
+        User user = users.findById(id);
+        return user instanceof Listener ? (Listener) user : null;
+    }
+
+    @Override
+    public void userAdded(User user) {
+        byte kind = kindOf(user);
+        if (kind == 0) return; // Not a kind of User that can be restored
+        append(USER_ADDED, out -> {
+            out.writeByte(kind);
+            out.writeInt(user.getId());
+            writeString(out, user.getEmail());
+            writeString(out, user.getUsername());
+            writeString(out, user.getPassword());
+        });
+    }
+
+    @Override
+    public void userRemoved(User user) {
+        append(USER_REMOVED, out -> out.writeInt(user.getId()));
+    }
+
+    @Override
+    public void songAdded(Song song) {
+        append(SONG_ADDED_WITH_ID, out -> writeSong(out, song, true));
+    }
+
+    @Override
+    public void songsAdded(List<Song> songs) {
+        append(SONGS_ADDED_WITH_IDS, out -> {
+            out.writeInt(songs.size());
+            for (Song song : songs) {
+                writeSong(out, song, true);
+            }
+        });
+    }
+
+    @Override
+    public void songRemoved(Song song) {
+        append(SONG_REMOVED, out -> writeSong(out, song, false));
+    }
+
+    @Override
+    public void playlistCreated(Listener owner, Playlist playlist) {
+        append(PLAYLIST_CREATED, out -> {
+            out.writeInt(owner.getId());
+            writeString(out, playlist.getName());
+        });
+    }
+
+    @Override
+    public void playlistDeleted(Listener owner, int index) {
+        append(PLAYLIST_DELETED, out -> {
+            out.writeInt(owner.getId());
+            out.writeInt(index);
+        });
+    }
+
+    @Override
+    public void libraryCleared(Listener owner) {
+        append(LIBRARY_CLEARED, out -> out.writeInt(owner.getId()));
+    }
+
+    @Override
+    public void playlistSongAdded(Playlist playlist, Song song) {
+        appendPlaylistChange(PLAYLIST_SONG_ADDED_WITH_ID, playlist, out -> writeSong(out, song, true));
+    }
+
+    @Override
+    public void playlistSongRemoved(Playlist playlist, Song song) {
+        appendPlaylistChange(PLAYLIST_SONG_REMOVED, playlist, out -> writeSong(out, song, false));
+    }
+
+    @Override
+    public void playlistSongRemovedAt(Playlist playlist, int index) {
+        appendPlaylistChange(PLAYLIST_SONG_REMOVED_AT, playlist, out -> out.writeInt(index));
+    }
+
+    /**
+     * Appends a change to a Playlist, which is identified by its owner's id and its position in their library.
+     * Playlists that are not in a Listener's library cannot be restored and are not recorded.
+     *
+     * The owner is asked of the Playlist, which is changed while holding its library's lock, rather than
+     * looked up in the registry, so recording a change never waits for the registry's lock while holding it.
+     *
+     * @param type     the record type
+     * @param playlist the Playlist that changed
+     * @param body     writes the rest of the record
+     */
+    private void appendPlaylistChange(byte type, Playlist playlist, RecordBody body) {
+        Listener owner = playlist.getOwner();
+        if (owner == null) return;
+        int playlistIndex = owner.getLibrary().indexOf(playlist);
+        if (playlistIndex < 0) return;
+        append(type, out -> {
+            out.writeInt(owner.getId());
+            out.writeInt(playlistIndex);
+            body.write(out);
+        });
+    }
+
+    /**
+     * Encodes a record and waits until it has been written to the journal and forced to disk.
+     *
+     * @param type the record type
+     * @param body writes the record's fields
+     * @throws UncheckedIOException if the journal could not be written
+     * @throws IllegalStateException if the engine has been closed
+     */
+    private void append(byte type, RecordBody body) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0); // Length and checksum are filled in below
+            out.writeInt(0);
+            out.writeByte(type);
+            body.write(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // Not thrown by a ByteArrayOutputStream
+        }
+        ByteBuffer frame = ByteBuffer.wrap(bytes.toByteArray());
+        int length = frame.capacity() - HEADER_BYTES;
+        CRC32 crc = new CRC32();
+        crc.update(frame.array(), HEADER_BYTES, length);
+        frame.putInt(0, length);
+        frame.putInt(4, (int) crc.getValue());
+
+        PendingWrite write = new PendingWrite(frame, false);
+        synchronized (this) {
+            if (closed) throw new IllegalStateException("The storage engine has been closed");
+            queue.add(write);
+        }
+        IOException failure = write.await();
+        if (failure != null) {
+            throw new UncheckedIOException("Could not save change to the journal", failure);
+        }
+    }
+
+    /**
+     * Body of the writer thread: repeatedly takes every waiting record, writes them together,
+     * forces the journal to disk once, then releases their callers.
+     */
+    private void writeLoop() {
+        ArrayList<PendingWrite> batch = new ArrayList<PendingWrite>();
+        boolean running = true;
+        while (running) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch, MAX_BATCH - 1);
+
+            ArrayList<ByteBuffer> frames = new ArrayList<ByteBuffer>(batch.size());
+            for (PendingWrite w : batch) {
+                if (w.stop) {
+                    running = false; // close() was called; everything queued before it is in this batch
+                } else if (w.frame != null) {
+                    frames.add(w.frame);
+                }
+            }
+            IOException failure = null;
+            if (!frames.isEmpty()) {
+                long start = -1;
+                try {
+                    start = channel.position();
+                    ByteBuffer[] buffers = frames.toArray(new ByteBuffer[0]);
+                    long remaining = 0;
+                    for (ByteBuffer b : buffers) remaining += b.remaining();
+                    while (remaining > 0) {
+                        remaining -= channel.write(buffers);
+                    }
+                    channel.force(false);
+                    recordsWritten += frames.size();
+                    batchesWritten++;
+                } catch (IOException e) {
+                    failure = e;
+                    discardPartialBatch(start);
+                }
+            }
+            for (PendingWrite w : batch) {
+                w.complete(failure);
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * Cuts a batch that failed part way through back off the journal, so later records do not follow
+     * a partial one and get discarded along with it on the next replay. Failures here are ignored;
+     * replay tolerates the partial record anyway.
+     *
+     * @param start the journal's length before the batch was written, or -1 if it is unknown
+     */
+    private void discardPartialBatch(long start) {
+        if (start < 0) return;
+        try {
+            channel.truncate(start);
+            channel.position(start);
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Stops accepting records, waits for every record already accepted to reach the disk, and closes the journal.
+     *
+     * @throws IOException if the journal cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        PendingWrite marker = new PendingWrite(null, true);
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            queue.add(marker);
+        }
+        marker.await();
+        boolean interrupted = false;
+        while (writer.isAlive()) {
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+        channel.close();
+    }
+
+    /**
+     * Getter for the number of records applied from the journal when the engine was opened.
+     *
+     * @return long count of replayed records
+     */
+    public long getRecordsReplayed() {
+        return recordsReplayed;
+    }
+
+    /**
+     * Getter for the number of bytes of incomplete record discarded from the end of the journal when the engine was opened.
+     *
+     * @return long count of discarded bytes; 0 if the journal ended cleanly
+     */
+    public long getBytesDiscarded() {
+        return bytesDiscarded;
+    }
+
+    /**
+     * Getter for the number of records written since the engine was opened.
+     *
+     * @return long count of written records
+     */
+    public long getRecordsWritten() {
+        return recordsWritten;
+    }
+
+    /**
+     * Getter for the number of group commits since the engine was opened.
+     * Lower than getRecordsWritten() when callers shared a flush to disk.
+     *
+     * @return long count of forces of the journal
+     */
+    public long getBatchesWritten() {
+        return batchesWritten;
+    }
+
+    /**
+     * Writes a Song's title, creator and duration, after its id if asked for.
+     *
+     * @param out    the record being written
+     * @param song   the Song to write
+     * @param withId true to write the Song's id first
+     * @throws IOException never, for a record held in memory
+     */
+    private static void writeSong(DataOutputStream out, Song song, boolean withId) throws IOException {
+        if (withId) out.writeInt(song.getId());
+        writeString(out, song.getTitle());
+        writeString(out, song.getCreator());
+        out.writeInt(song.getDuration());
+    }
+
+    /**
+     * Reads a Song written by writeSong().
+     *
+     * @param in     the record being read
+     * @param withId true if the Song was written with its id; otherwise the Song is given a new one
+     * @return Song the Song read
+     * @throws IOException if the record is too short
+     */
+    private static Song readSong(DataInputStream in, boolean withId) throws IOException {
+        int id = withId ? in.readInt() : 0;
+        String title = readString(in);
+        String creator = readString(in);
+        int duration = in.readInt();
+        return withId ? new Song(id, title, creator, duration) : new Song(title, creator, duration);
+    }
+
+    /**
+     * Writes a String as its UTF-8 length and bytes; a length of -1 stands for null.
+     *
+     * @param out   the record being written
+     * @param value the String to write, or null
+     * @throws IOException never, for a record held in memory
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a String written by writeString().
+     *
+     * @param in the record being read
+     * @return String the String read, or null
+     * @throws IOException if the record is too short
+     */
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes the fields of one record.
+     */
+    private interface RecordBody {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * A record waiting to be written, and the caller waiting for it.
+     * A PendingWrite with no frame is a marker: it completes once every record queued before it is
+     * written, and can also tell the writer thread to stop.
+     */
+    private static class PendingWrite {
+        // The encoded record, or null for a marker
+        private final ByteBuffer frame;
+
+        // Signifies if the writer thread should stop after this batch
+        private final boolean stop;
+
+        // Released once the record is on disk or the write has failed
+        private final CountDownLatch done;
+
+        // The reason the write failed, or null if it succeeded
+        private IOException failure;
+
+        /**
+         * Constructor for a PendingWrite
+         *
+         * @param frame the encoded record, or null for a marker
+         * @param stop  true if the writer thread should stop after this batch
+         */
+        PendingWrite(ByteBuffer frame, boolean stop) {
+            this.frame = frame;
+            this.stop = stop;
+            this.done = new CountDownLatch(1);
+        }
+
+        /**
+         * Records the outcome of the write and releases the waiting caller.
+         *
+         * @param failure the reason the write failed, or null if it succeeded
+         */
+        void complete(IOException failure) {
+            this.failure = failure;
+            done.countDown();
+        }
+
+        /**
+         * Waits for the write to finish. Interrupts are remembered but do not abandon the write,
+         * since the change it records has already been made.
+         *
+         * @return IOException the reason the write failed, or null if it succeeded
+         */
+        IOException await() {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    done.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) Thread.currentThread().interrupt();
+            return failure;
+        }
+    }
+}
@@ -0,0 +1,339 @@
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * <p><b>Unit Test Suite for the HTTP API (JUnit 5)</b></p>
+ *
+ * <p>Each test starts an {@link ApiServer} on a free port, over its own registry
+ * and catalog and without storage, and talks to it with an HttpClient as a
+ * browser or app would. The tests cover logging in, a Listener's playlists,
+ * which roles may do what, and many requests editing one playlist at once.</p>
+ */
+public class TestApiServerJUnit {
+
+    private UserRegistry users;
+    private SearchService catalog;
+    private ApiServer server;
+    private HttpClient client;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        users = new UserRegistry();
+        users.add(new Listener("listener@gmail.com", "apilistener", "Password1!", 1, new ArrayList<>()));
+        users.add(new Artist("artist@gmail.com", "apiartist", "Password1!", 2));
+        users.add(new Admin("admin@gmail.com", "apiadmin", "Password1!", 3));
+        catalog = new SearchService();
+        server = new ApiServer(new InetSocketAddress("localhost", 0), users, catalog, new LoginService(), null);
+        server.start();
+        client = HttpClient.newHttpClient();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        server.close();
+    }
+
+    /**
+     * Verifies that logging in returns a token that authorizes later requests, and that bad logins are refused.
+     * <p>Expected Result: 200 with a token for the right password; 401 for a wrong one, or no token.</p>
+     */
+    @Test
+    public void testLogin() throws Exception {
+        HttpResponse<String> ok = send("POST", "/api/login", null, "{\"username\":\"apilistener\",\"password\":\"Password1!\"}");
+        assertEquals(200, ok.statusCode(), "The right password should log in");
+        assertTrue(ok.body().contains("\"role\":\"listener\""), "The user should be returned: " + ok.body());
+        assertFalse(ok.body().contains("Password1!"), "The password should never be returned");
+
+        HttpResponse<String> wrong = send("POST", "/api/login", null, "{\"username\":\"apilistener\",\"password\":\"nope\"}");
+        assertEquals(401, wrong.statusCode(), "A wrong password should be refused");
+        assertTrue(wrong.body().contains("\"error\""), "Errors should be explained");
+
+        assertEquals(401, send("GET", "/api/playlists", null, null).statusCode(), "A request without a token should be refused");
+        assertEquals(401, send("GET", "/api/playlists", "made-up", null).statusCode(), "An unknown token should be refused");
+
+        String token = field(ok.body(), "token");
+        assertEquals(200, send("GET", "/api/playlists", token, null).statusCode(), "The token should authorize requests");
+        assertEquals(204, send("POST", "/api/logout", token, null).statusCode(), "Logging out should succeed");
+        assertEquals(401, send("GET", "/api/playlists", token, null).statusCode(), "The token should end with the session");
+    }
+
+    /**
+     * Verifies that accounts can be created, and that usernames are checked the way the validator checks them.
+     * <p>Expected Result: 201 for a 6-character username; 400, naming the real limits, for a 5-character one.</p>
+     */
+    @Test
+    public void testCreateAccountChecksUsername() throws Exception {
+        HttpResponse<String> tooShort = send("POST", "/api/accounts", null,
+                                             "{\"email\":\"short@example.com\",\"username\":\"apish\",\"password\":\"Password1#\",\"role\":\"listener\"}");
+        assertEquals(400, tooShort.statusCode(), "A 5-character username should be refused");
+        assertTrue(tooShort.body().contains("6 to 31 characters"), "The error should name the real limits: " + tooShort.body());
+
+        HttpResponse<String> created = send("POST", "/api/accounts", null,
+                                            "{\"email\":\"shortest@example.com\",\"username\":\"apisho\",\"password\":\"Password1#\",\"role\":\"listener\"}");
+        assertEquals(201, created.statusCode(), "A 6-character username should be accepted: " + created.body());
+        assertEquals(200, send("GET", "/api/playlists", field(created.body(), "token"), null).statusCode(),
+                     "The new account should be logged in");
+    }
+
+    /**
+     * Verifies that a Listener can create playlists, fill them from the catalog, and delete them.
+     * <p>Expected Result: Each step is reflected by the next GET, and bad requests get 400, 404 or 409.</p>
+     */
+    @Test
+    public void testListenerPlaylistFlow() throws Exception {
+        Song first = new Song("Api Flow Song A", "Api Flow Artist", 120);
+        Song second = new Song("Api Flow Song B", "Api Flow Artist", 180);
+        catalog.addSongToCatalog(first);
+        catalog.addSongToCatalog(second);
+        String token = login("apilistener");
+
+        assertEquals(201, send("POST", "/api/playlists", token, "{\"name\":\"Road Trip\"}").statusCode());
+        assertEquals(201, send("POST", "/api/playlists/0/songs", token, "{\"songId\":" + first.getId() + "}").statusCode());
+        assertEquals(201, send("POST", "/api/playlists/0/songs", token, "{\"songId\":" + second.getId() + "}").statusCode());
+        assertEquals(409, send("POST", "/api/playlists/0/songs", token, "{\"songId\":" + first.getId() + "}").statusCode(),
+                     "A song already in the playlist should be refused");
+        assertEquals(404, send("POST", "/api/playlists/0/songs", token, "{\"songId\":999999}").statusCode(),
+                     "A song not in the catalog should be refused");
+        assertEquals(400, send("POST", "/api/playlists/0/songs", token, "{\"songId\":\"one\"}").statusCode(),
+                     "A malformed body should be refused");
+
+        HttpResponse<String> playlist = send("GET", "/api/playlists/0", token, null);
+        assertEquals(200, playlist.statusCode());
+        assertEquals("2", field(playlist.body(), "songCount"), "Both songs should be listed: " + playlist.body());
+        assertEquals("300", field(playlist.body(), "totalDuration"), "The durations should be totalled");
+
+        assertEquals(204, send("DELETE", "/api/playlists/0/songs/" + first.getId(), token, null).statusCode());
+        assertEquals("1", field(send("GET", "/api/playlists/0", token, null).body(), "songCount"), "One song should remain");
+
+        assertEquals(204, send("DELETE", "/api/playlists/0", token, null).statusCode());
+        assertEquals(404, send("GET", "/api/playlists/0", token, null).statusCode(), "The playlist should be gone");
+        assertEquals(404, send("DELETE", "/api/playlists/0", token, null).statusCode(), "It cannot be deleted twice");
+    }
+
+    /**
+     * Verifies that each role may only do what its menu allows.
+     * <p>Expected Result: 403 for a Listener uploading or an Artist managing accounts; an Artist's upload is searchable.</p>
+     */
+    @Test
+    public void testRolesAreEnforced() throws Exception {
+        String listener = login("apilistener");
+        String artist = login("apiartist");
+
+        assertEquals(403, send("POST", "/api/songs", listener, "{\"title\":\"Api Role Song\",\"duration\":200}").statusCode(),
+                     "A listener should not upload songs");
+        assertEquals(403, send("GET", "/api/admin/users", artist, null).statusCode(), "An artist should not manage accounts");
+        assertEquals(403, send("GET", "/api/playlists", artist, null).statusCode(), "An artist has no playlists");
+
+        HttpResponse<String> upload = send("POST", "/api/songs", artist, "{\"title\":\"Api Role Song\",\"duration\":200}");
+        assertEquals(201, upload.statusCode(), "An artist should upload their own song");
+        assertEquals("apiartist", field(upload.body(), "artist"), "The song should be credited to the artist");
+        assertEquals(409, send("POST", "/api/songs", artist, "{\"title\":\"Api Role Song\",\"duration\":200}").statusCode(),
+                     "A duplicate song should be refused");
+
+        HttpResponse<String> search = send("GET", "/api/songs?q=api%20role", listener, null);
+        assertEquals(200, search.statusCode());
+        assertEquals("1", field(search.body(), "total"), "The upload should be found: " + search.body());
+    }
+
+    /**
+     * Verifies that an Admin's removal of a Song takes it out of the catalog and every playlist.
+     * <p>Expected Result: The song is gone from the search and from the Listener's playlist.</p>
+     */
+    @Test
+    public void testAdminRemovesSongEverywhere() throws Exception {
+        String admin = login("apiadmin");
+        String listener = login("apilistener");
+        HttpResponse<String> upload = send("POST", "/api/songs", admin,
+                                           "{\"title\":\"Api Removed Song\",\"artist\":\"Someone Else\",\"duration\":150}");
+        assertEquals(201, upload.statusCode());
+        String id = field(upload.body(), "id");
+        send("POST", "/api/playlists", listener, "{\"name\":\"Doomed\"}");
+        assertEquals(201, send("POST", "/api/playlists/0/songs", listener, "{\"songId\":" + id + "}").statusCode());
+
+        assertEquals(403, send("DELETE", "/api/songs/" + id, login("apiartist"), null).statusCode(),
+                     "An artist should not remove another artist's song");
+        assertEquals(204, send("DELETE", "/api/songs/" + id, admin, null).statusCode());
+        assertEquals(404, send("GET", "/api/songs/" + id, listener, null).statusCode(), "The song should leave the catalog");
+        assertEquals("0", field(send("GET", "/api/playlists/0", listener, null).body(), "songCount"),
+                     "The song should leave the playlist");
+    }
+
+    /**
+     * Verifies that many requests adding songs to one playlist at once all take effect.
+     * <p>Expected Result: Every request succeeds, and the playlist holds every song exactly once.</p>
+     */
+    @Test
+    public void testConcurrentAddsToOnePlaylist() throws Exception {
+        int requests = 50;
+        List<Song> songs = new ArrayList<>();
+        for (int i = 0; i < requests; i++) {
+            Song song = new Song("Api Concurrent Song " + i, "Api Concurrent Artist", 100 + i);
+            catalog.addSongToCatalog(song);
+            songs.add(song);
+        }
+        String token = login("apilistener");
+        send("POST", "/api/playlists", token, "{\"name\":\"Busy\"}");
+
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        for (Song song : songs) {
+            HttpRequest request = request("POST", "/api/playlists/0/songs", token, "{\"songId\":" + song.getId() + "}");
+            responses.add(client.sendAsync(request, HttpResponse.BodyHandlers.ofString()));
+        }
+        for (CompletableFuture<HttpResponse<String>> response : responses) {
+            assertEquals(201, response.get(30, TimeUnit.SECONDS).statusCode(), "Every add should succeed");
+        }
+
+        Playlist playlist = ((Listener) users.findById(1)).getLibrary().get(0);
+        assertEquals(requests, playlist.getSongCount(), "Every song should be added once");
+        assertEquals(new HashSet<>(songs), new HashSet<>(playlist.snapshot()), "The playlist should hold every song");
+    }
+
+    /**
+     * Verifies that a Song removed from the catalog while requests are adding it to playlists ends up in none of them.
+     * <p>Expected Result: Adds answered before the removal are undone by it, and adds after it get 404.</p>
+     */
+    @Test
+    public void testRemovalRacesAdds() throws Exception {
+        int playlists = 40;
+        Song song = new Song("Api Raced Song", "Api Raced Artist", 140);
+        catalog.addSongToCatalog(song);
+        String token = login("apilistener");
+        String admin = login("apiadmin");
+        for (int i = 0; i < playlists; i++) {
+            send("POST", "/api/playlists", token, "{\"name\":\"Raced " + i + "\"}");
+        }
+
+        List<CompletableFuture<HttpResponse<String>>> adds = new ArrayList<>();
+        for (int i = 0; i < playlists; i++) {
+            HttpRequest request = request("POST", "/api/playlists/" + i + "/songs", token, "{\"songId\":" + song.getId() + "}");
+            adds.add(client.sendAsync(request, HttpResponse.BodyHandlers.ofString()));
+            if (i == playlists / 2) {
+                adds.add(client.sendAsync(request("DELETE", "/api/songs/" + song.getId(), admin, null),
+                                          HttpResponse.BodyHandlers.ofString()));
+            }
+        }
+        for (CompletableFuture<HttpResponse<String>> add : adds) {
+            int status = add.get(30, TimeUnit.SECONDS).statusCode();
+            assertTrue(status == 201 || status == 204 || status == 404, "Unexpected status " + status);
+        }
+
+        assertNull(catalog.getSongById(song.getId()), "The song should have left the catalog");
+        for (Playlist playlist : ((Listener) users.findById(1)).getLibrary()) {
+            assertEquals(0, playlist.getSongCount(), "No playlist should keep a removed song: " + playlist);
+        }
+    }
+
+    /**
+     * Verifies that sessions end after an idle period or at their maximum age, and that the cap evicts the session
+     * used least recently, both through the store and through the server.
+     * <p>Expected Result: Expired and evicted tokens are refused with 401; tokens still in use keep working.</p>
+     */
+    @Test
+    public void testSessionsExpireAndAreCapped() throws Exception {
+        long[] now = {0};
+        SessionStore store = new SessionStore(2, 1_000, 5_000, () -> now[0]);
+        User listener = users.findById(1);
+        String first = store.start(listener);
+        String second = store.start(listener);
+        now[0] = 900;
+        assertSame(listener, store.get(first), "A session used within the idle period should last");
+        String third = store.start(listener); // The cap is 2, so the session used least recently ends
+        assertNull(store.get(second), "The session used least recently should be evicted at the cap");
+        now[0] = 1_800;
+        assertSame(listener, store.get(first));
+        now[0] = 2_900;
+        assertNull(store.get(third), "A session idle for the idle period should end");
+        for (now[0] = 2_500; now[0] < 5_000; now[0] += 500) {
+            assertSame(listener, store.get(first), "A busy session should last until its maximum age");
+        }
+        assertNull(store.get(first), "A session should end at its maximum age however busy it is");
+        assertEquals(0, store.size(), "Expired sessions should not be kept");
+
+        server.close();
+        server = new ApiServer(new InetSocketAddress("localhost", 0), users, catalog, new LoginService(), null, store);
+        server.start();
+        String token = login("apilistener");
+        assertEquals(200, send("GET", "/api/playlists", token, null).statusCode());
+        now[0] += 1_000;
+        assertEquals(401, send("GET", "/api/playlists", token, null).statusCode(), "The server should refuse an idle token");
+    }
+
+    /**
+     * Verifies that an unexpected failure is answered with a generic 500, and described only in the server's log.
+     * <p>Expected Result: The body is {"error":"Internal error"}, and the exception is printed to System.err.</p>
+     */
+    @Test
+    public void testInternalErrorsAreNotLeaked() throws Exception {
+        Path directory = Files.createTempDirectory("api-server-test");
+        PrintStream originalErr = System.err;
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        try {
+            StorageEngine.open(directory, users, catalog).close(); // Every later change fails to reach the closed journal
+            server.close();
+            server = new ApiServer(new InetSocketAddress("localhost", 0), users, catalog, new LoginService(), null);
+            server.start();
+            String token = login("apilistener");
+            System.setErr(new PrintStream(log, true));
+            HttpResponse<String> failed = send("POST", "/api/playlists", token, "{\"name\":\"Unsaved\"}");
+            assertEquals(500, failed.statusCode());
+            assertEquals("{\"error\":\"Internal error\"}", failed.body(), "The exception should not be sent to the client");
+            assertTrue(log.toString().contains("IllegalStateException"), "The exception should be logged: " + log);
+        } finally {
+            System.setErr(originalErr);
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+    /**
+     * Logs a test account in.
+     *
+     * @param username the account's username
+     * @return String the session's token
+     */
+    private String login(String username) throws Exception {
+        HttpResponse<String> response = send("POST", "/api/login", null,
+                                             "{\"username\":\"" + username + "\",\"password\":\"Password1!\"}");
+        assertEquals(200, response.statusCode(), "Login should succeed");
+        return field(response.body(), "token");
+    }
+
+    private HttpResponse<String> send(String method, String path, String token, String body) throws Exception {
+        return client.send(request(method, path, token, body), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpRequest request(String method, String path, String token, String body) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPort() + path))
+            .method(method, body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(body));
+        if (token != null) builder.header("Authorization", "Bearer " + token);
+        return builder.build();
+    }
+
+    /**
+     * Finds the first member with a name in a JSON response.
+     *
+     * @param json the response body
+     * @param name the member's name
+     * @return String its value: unquoted for a string, as written otherwise
+     */
+    private static String field(String json, String name) {
+        Matcher matcher = Pattern.compile("\"" + name + "\":(\"([^\"]*)\"|[^,}\\]]+)").matcher(json);
+        assertTrue(matcher.find(), "Expected " + name + " in " + json);
+        return matcher.group(2) != null ? matcher.group(2) : matcher.group(1);
+    }
+}
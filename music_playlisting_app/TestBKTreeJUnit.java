@@ -0,0 +1,219 @@
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.*;
+
+/**
+ * <p><b>Unit Test Suite for the BKTree (JUnit 5)</b></p>
+ *
+ * <p>These tests check the edit distance used for fuzzy searches, and that
+ * tree searches find the same keys as checking every key, before and after keys are removed,
+ * whether keys are added one at a time or all at once.</p>
+ */
+public class TestBKTreeJUnit {
+
+    /**
+     * Verifies the Levenshtein distance on insertions, deletions, substitutions and empty strings.
+     * <p>Expected Result: Each pair is the expected number of edits apart, in either order.</p>
+     */
+    @Test
+    public void testDistance() {
+        assertEquals(0, BKTree.distance("imagine", "imagine"));
+        assertEquals(1, BKTree.distance("imagine", "imagin"));
+        assertEquals(1, BKTree.distance("imagine", "imagone"));
+        assertEquals(2, BKTree.distance("imagine", "imagnie"));
+        assertEquals(3, BKTree.distance("kitten", "sitting"));
+        assertEquals(3, BKTree.distance("sitting", "kitten"));
+        assertEquals(4, BKTree.distance("", "blue"));
+    }
+
+    /**
+     * Verifies the bit-parallel distance against the full table of edits, for random strings with repeated,
+     * non-ASCII and missing characters, including strings too long to handle a column at a time.
+     * <p>Expected Result: Every pair is the same distance apart as the table gives.</p>
+     */
+    @Test
+    public void testDistanceMatchesTable() {
+        Random random = new Random(5);
+        String alphabet = "abc\u00e9\u4e2d";
+        for (int n = 0; n < 2_000; n++) {
+            String a = randomString(random, alphabet, random.nextInt(n < 1_500 ? 20 : 90));
+            String b = randomString(random, alphabet, random.nextInt(n < 1_500 ? 20 : 90));
+            assertEquals(tableDistance(a, b), BKTree.distance(a, b), "\"" + a + "\" and \"" + b + "\"");
+        }
+    }
+
+    /**
+     * Verifies that adding many Songs at once builds a tree that searches like one built Song by Song,
+     * with keys shared by several Songs.
+     * <p>Expected Result: Each search finds the same keys, distances and Songs, in the same order, from both trees.</p>
+     */
+    @Test
+    public void testAddAllMatchesAdd() {
+        Random random = new Random(2);
+        BKTree oneByOne = new BKTree();
+        BKTree batch = new BKTree();
+        ArrayList<String> keys = new ArrayList<String>();
+        ArrayList<Song> songs = new ArrayList<Song>();
+        for (int i = 0; i < 1_000; i++) {
+            String key = randomKey(random);
+            Song song = new Song("Batch " + key + " " + i, "artist", 100);
+            oneByOne.add(key, song);
+            keys.add(key);
+            songs.add(song);
+        }
+        batch.addAll(keys, songs);
+        assertEquals(oneByOne.size(), batch.size());
+        for (int q = 0; q < 200; q++) {
+            String query = randomKey(random);
+            assertEquals(matches(oneByOne, query, q % 3), matches(batch, query, q % 3), "Query \"" + query + "\"");
+        }
+    }
+
+    /**
+     * Verifies that searches match a scan of every key, while keys are added and removed,
+     * including enough removals to rebuild the tree.
+     * <p>Expected Result: Each search finds exactly the live keys within the distance, with their distances.</p>
+     */
+    @Test
+    public void testSearchMatchesScan() {
+        Random random = new Random(1);
+        BKTree tree = new BKTree();
+        HashMap<String, Song> live = new HashMap<String, Song>();
+        for (int i = 0; i < 2_000; i++) {
+            String key = randomKey(random);
+            Song song = new Song("BKTree " + key + " " + i, "artist", 100);
+            if (live.putIfAbsent(key, song) == null) {
+                tree.add(key, song);
+            }
+        }
+        assertEquals(live.size(), tree.size());
+        assertScanMatches(tree, live, random);
+
+        // Remove most keys so tombstones outnumber live nodes and trees are rebuilt
+        Iterator<Map.Entry<String, Song>> entries = live.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<String, Song> entry = entries.next();
+            if (random.nextInt(4) != 0) {
+                tree.remove(entry.getKey(), entry.getValue());
+                entries.remove();
+            }
+        }
+        assertEquals(live.size(), tree.size());
+        assertScanMatches(tree, live, random);
+    }
+
+    /**
+     * Verifies that a key keeps each Song added under it until all of them are removed.
+     * <p>Expected Result: The key is found while any of its Songs remain, and found again once re-added.</p>
+     */
+    @Test
+    public void testSharedKeyAndReAdd() {
+        BKTree tree = new BKTree();
+        Song first = new Song("Hello", "one", 100);
+        Song second = new Song("Hello", "two", 100);
+        tree.add("hello", first);
+        tree.add("hello", second);
+        tree.add("yellow", new Song("Yellow", "one", 100));
+
+        assertEquals(List.of(first, second), tree.search("helo", 1).get(0).getSongs());
+        tree.remove("hello", first);
+        assertEquals(List.of(second), tree.search("hello", 0).get(0).getSongs());
+        tree.remove("hello", second);
+        assertTrue(tree.search("hello", 0).isEmpty(), "A key with no Songs left should not be found");
+        assertEquals(1, tree.search("hello", 2).size(), "Only the other key should still match");
+        tree.add("hello", first);
+        assertEquals(1, tree.search("hello", 0).size());
+        assertEquals(2, tree.size());
+    }
+
+    /**
+     * Checks searches for random queries against a scan of every live key.
+     *
+     * @param tree   the tree under test
+     * @param live   the keys that should be in the tree, with their Songs
+     * @param random source of the queries
+     */
+    private static void assertScanMatches(BKTree tree, Map<String, Song> live, Random random) {
+        for (int q = 0; q < 200; q++) {
+            String query = randomKey(random);
+            int maxDistance = q % 3;
+            HashMap<String, Integer> expected = new HashMap<String, Integer>();
+            for (String key : live.keySet()) {
+                int distance = BKTree.distance(query, key);
+                if (distance <= maxDistance) expected.put(key, distance);
+            }
+            HashMap<String, Integer> found = new HashMap<String, Integer>();
+            for (BKTree.Match match : tree.search(query, maxDistance)) {
+                found.put(match.getKey(), match.getDistance());
+                assertEquals(List.of(live.get(match.getKey())), match.getSongs());
+            }
+            assertEquals(expected, found, "Query \"" + query + "\" within " + maxDistance);
+        }
+    }
+
+    /**
+     * Collects a search's results by key.
+     *
+     * @param tree        the tree to search
+     * @param query       query key
+     * @param maxDistance the largest edit distance to accept
+     * @return Map<String, String> each key found, with its distance and Songs
+     */
+    private static Map<String, String> matches(BKTree tree, String query, int maxDistance) {
+        HashMap<String, String> found = new HashMap<String, String>();
+        for (BKTree.Match match : tree.search(query, maxDistance)) {
+            found.put(match.getKey(), match.getDistance() + " " + match.getSongs());
+        }
+        return found;
+    }
+
+    /**
+     * Works out the Levenshtein distance with the full table of edits, one cell at a time.
+     *
+     * @param a the first string
+     * @param b the second string
+     * @return int the edit distance
+     */
+    private static int tableDistance(String a, String b) {
+        int[][] table = new int[a.length() + 1][b.length() + 1];
+        for (int i = 0; i <= a.length(); i++) table[i][0] = i;
+        for (int j = 0; j <= b.length(); j++) table[0][j] = j;
+        for (int i = 1; i <= a.length(); i++) {
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                table[i][j] = Math.min(Math.min(table[i - 1][j], table[i][j - 1]) + 1, table[i - 1][j - 1] + cost);
+            }
+        }
+        return table[a.length()][b.length()];
+    }
+
+    /**
+     * Builds a string from an alphabet.
+     *
+     * @param random   source of the characters
+     * @param alphabet the characters to choose from
+     * @param length   the string's length
+     * @return String the string
+     */
+    private static String randomString(Random random, String alphabet, int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = alphabet.charAt(random.nextInt(alphabet.length()));
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Builds a short key from a small alphabet, so that many keys are close together.
+     *
+     * @param random source of the characters
+     * @return String a key of 3 to 7 characters
+     */
+    private static String randomKey(Random random) {
+        char[] key = new char[3 + random.nextInt(5)];
+        for (int i = 0; i < key.length; i++) {
+            key[i] = (char) ('a' + random.nextInt(5));
+        }
+        return new String(key);
+    }
+}
@@ -0,0 +1,165 @@
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * <p><b>Unit Test Suite for the CatalogImporter (JUnit 5)</b></p>
+ *
+ * <p>Covers reading CSV and TSV rows, including quoted fields, validating them with
+ * the same rules as Artist uploads, rejecting duplicates, and the counts in the
+ * import report.</p>
+ */
+public class TestCatalogImporterJUnit {
+    private SearchService catalog;
+    private ByteArrayOutputStream rejectBytes;
+    private PrintStream rejects;
+
+    @BeforeEach
+    public void setUp() {
+        catalog = new SearchService();
+        rejectBytes = new ByteArrayOutputStream();
+        rejects = new PrintStream(rejectBytes, true);
+    }
+
+    /**
+     * Reads the rejected rows reported so far.
+     *
+     * @return List<String> one entry per rejected row
+     */
+    private List<String> rejectedLines() {
+        String text = new String(rejectBytes.toByteArray(), StandardCharsets.UTF_8);
+        return text.isEmpty() ? List.of() : Arrays.asList(text.split("\\R"));
+    }
+
+    /**
+     * Verifies that valid rows are imported in file order and that a header row is skipped.
+     * <p>Expected Result: Every song is in the catalog and the report counts them.</p>
+     */
+    @Test
+    public void testImportsValidRowsInOrder() throws IOException {
+        String csv = "title,creator,duration\n"
+                   + "Somebody Else,artist,347\n"
+                   + "  RAWFEAR , artist , 202 \n"
+                   + "\n"
+                   + "Hammer,other,193\n";
+        CatalogImporter.ImportReport report = new CatalogImporter(catalog).importFrom(new StringReader(csv), ',', rejects);
+
+        assertEquals(3, report.getRowsRead(), "The header and blank line should not count as rows");
+        assertEquals(3, report.getRowsImported());
+        assertEquals(0, report.getRowsRejected());
+        assertTrue(report.getRowsPerSecond() > 0);
+        assertEquals(List.of(new Song("Somebody Else", "artist", 347), new Song("RAWFEAR", "artist", 202),
+                             new Song("Hammer", "other", 193)), catalog.getGlobalCatalog());
+        assertEquals(2, catalog.searchSongByArtist("artist").size(), "Imported songs should be searchable");
+    }
+
+    /**
+     * Verifies quoted fields: delimiters, escaped quotes and line breaks inside quotes, and Windows line endings.
+     * <p>Expected Result: The quoted values are imported exactly.</p>
+     */
+    @Test
+    public void testQuotedFields() throws IOException {
+        String csv = "\"Hello, Goodbye\",\"The \"\"Band\"\"\",180\r\n"
+                   + "\"Two\nLines\",artist,200\r\n";
+        CatalogImporter.ImportReport report = new CatalogImporter(catalog).importFrom(new StringReader(csv), ',', rejects);
+
+        assertEquals(2, report.getRowsImported());
+        assertEquals(new Song("Hello, Goodbye", "The \"Band\"", 180), catalog.getSongAtIndex(0));
+        assertEquals(new Song("Two\nLines", "artist", 200), catalog.getSongAtIndex(1));
+    }
+
+    /**
+     * Verifies that invalid rows are rejected with their line number and a reason, and valid rows still import.
+     * <p>Expected Result: One reject per bad row, in file order; the good rows are in the catalog.</p>
+     */
+    @Test
+    public void testRejectsInvalidRows() throws IOException {
+        String csv = "Good One,artist,100\n"
+                   + "Too,Many,Fields,100\n"
+                   + "Bad Duration,artist,three\n"
+                   + "Zero,artist,0\n"
+                   + "   ,artist,100\n"
+                   + "No Artist,,100\n"
+                   + "Good Two,artist,100\n"
+                   + "\"Never closed,artist,100\n";
+        CatalogImporter.ImportReport report = new CatalogImporter(catalog).importFrom(new StringReader(csv), ',', rejects);
+
+        assertEquals(8, report.getRowsRead());
+        assertEquals(2, report.getRowsImported());
+        assertEquals(6, report.getRowsRejected());
+        List<String> lines = rejectedLines();
+        assertEquals(6, lines.size());
+        assertTrue(lines.get(0).startsWith("line 2: expected 3 fields"), lines.get(0));
+        assertTrue(lines.get(1).startsWith("line 3: duration is not a whole number"), lines.get(1));
+        assertTrue(lines.get(2).startsWith("line 4: duration must be positive"), lines.get(2));
+        assertTrue(lines.get(3).startsWith("line 5: title is empty"), lines.get(3));
+        assertTrue(lines.get(4).startsWith("line 6: artist name is empty"), lines.get(4));
+        assertTrue(lines.get(5).startsWith("line 8: quoted field is never closed"), lines.get(5));
+    }
+
+    /**
+     * Verifies that songs already in the catalog, or repeated in the file, are rejected,
+     * including repeats that fall in different batches.
+     * <p>Expected Result: Each song is imported once; every later copy is rejected.</p>
+     */
+    @Test
+    public void testRejectsDuplicatesAcrossBatches() throws IOException {
+        catalog.addSongToCatalog(new Song("Existing", "artist", 100));
+        String csv = "Existing,artist,100\n"
+                   + "New,artist,100\n"
+                   + "New,artist,100\n"
+                   + "Other,artist,100\n"
+                   + "New,artist,100\n";
+        CatalogImporter.ImportReport report = new CatalogImporter(catalog, 3).importFrom(new StringReader(csv), ',', rejects);
+
+        assertEquals(2, report.getRowsImported());
+        assertEquals(3, report.getRowsRejected());
+        assertEquals(3, catalog.getGlobalCatalog().size());
+        List<String> lines = rejectedLines();
+        assertTrue(lines.get(0).startsWith("line 1: already in the catalog"), lines.get(0));
+        assertTrue(lines.get(1).startsWith("line 3: duplicate of an earlier row"), lines.get(1));
+        assertTrue(lines.get(2).startsWith("line 5: already in the catalog"), lines.get(2));
+    }
+
+    /**
+     * Verifies that a file ending in ".tsv" is read with tabs between fields.
+     * <p>Expected Result: Titles containing commas are imported whole.</p>
+     */
+    @Test
+    public void testImportsTsvFile() throws IOException {
+        Path file = Files.createTempFile("import", ".tsv");
+        try {
+            Files.write(file, "title\tcreator\tduration\nOne, Two\tartist\t120\n".getBytes(StandardCharsets.UTF_8));
+            CatalogImporter.ImportReport report = new CatalogImporter(catalog).importFile(file, rejects);
+            assertEquals(1, report.getRowsImported());
+            assertEquals(new Song("One, Two", "artist", 120), catalog.getSongAtIndex(0));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Verifies that a large import streams through many batches and keeps every valid row.
+     * <p>Expected Result: All generated rows are imported, and every tenth row's duplicate is rejected.</p>
+     */
+    @Test
+    public void testLargeImport() throws IOException {
+        StringBuilder csv = new StringBuilder();
+        for (int i = 0; i < 50_000; i++) {
+            csv.append("Track ").append(i).append(",artist").append(i % 50).append(',').append(60 + i % 300).append('\n');
+            if (i % 10 == 0) {
+                csv.append("Track ").append(i).append(",artist").append(i % 50).append(',').append(60 + i % 300).append('\n');
+            }
+        }
+        CatalogImporter.ImportReport report = new CatalogImporter(catalog, 1_000).importFrom(new StringReader(csv.toString()), ',', rejects);
+
+        assertEquals(55_000, report.getRowsRead());
+        assertEquals(50_000, report.getRowsImported());
+        assertEquals(5_000, report.getRowsRejected());
+        assertEquals(50_000, catalog.getGlobalCatalog().size());
+        assertEquals(new Song("Track 49999", "artist49", 60 + 49_999 % 300), catalog.getSongAtIndex(49_999));
+    }
+}
@@ -0,0 +1,88 @@
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.*;
+
+/**
+ * <p><b>Unit Test Suite for the CompactSongStore (JUnit 5)</b></p>
+ *
+ * <p>These tests check that records read back exactly as they were added, including titles outside ASCII,
+ * that views behave like the Songs they were made from, and that scans skip removed Songs.</p>
+ */
+public class TestCompactSongStoreJUnit {
+
+    /** Store under test, rebuilt before every test. */
+    private CompactSongStore store;
+
+    /**
+     * Populates a fresh store before each test case executes.
+     */
+    @BeforeEach
+    public void setup() {
+        store = new CompactSongStore();
+        store.add(new Song("Shape of You", "Ed Sheeran", 233));
+        store.add(new Song("Perfect", "Ed Sheeran", 263));
+        store.add(new Song("D\u00e9j\u00e0 Vu", "Beyonc\u00e9", 240));
+        store.add(new Song("", "Ed Sheeran", 1));
+    }
+
+    /**
+     * Verifies that ids are dense and that every field reads back as added, across enough records to grow the arrays.
+     * <p>Expected Result: Each id's title, creator and duration match, and each distinct creator is stored once.</p>
+     */
+    @Test
+    public void testRecordsRoundTrip() {
+        assertEquals(4, store.idCount());
+        assertEquals("D\u00e9j\u00e0 Vu", store.getTitle(2));
+        assertEquals("Beyonc\u00e9", store.getCreator(2));
+        assertEquals("", store.getTitle(3));
+        assertEquals(263, store.getDuration(1));
+
+        for (int i = 0; i < 1_000; i++) {
+            assertEquals(4 + i, store.add("Title \u266b " + i, "artist" + i % 10, i));
+        }
+        for (int i = 0; i < 1_000; i++) {
+            assertEquals("Title \u266b " + i, store.getTitle(4 + i));
+            assertEquals("artist" + i % 10, store.getCreator(4 + i));
+            assertEquals(i, store.getDuration(4 + i));
+        }
+        assertEquals(12, store.creatorCount(), "Each creator name should be stored once");
+        assertSame(store.getCreator(0), store.getCreator(1));
+        assertThrows(IndexOutOfBoundsException.class, () -> store.getTitle(1_004));
+    }
+
+    /**
+     * Verifies that a view is equal to, hashes like and prints like a Song holding the same fields.
+     * <p>Expected Result: Views and plain Songs are interchangeable in collections.</p>
+     */
+    @Test
+    public void testViewsEqualSongs() {
+        Song plain = new Song("D\u00e9j\u00e0 Vu", "Beyonc\u00e9", 240);
+        Song view = store.get(2);
+        assertEquals(plain, view);
+        assertEquals(view, plain);
+        assertEquals(plain.hashCode(), view.hashCode());
+        assertEquals(plain.toString(), view.toString());
+        assertTrue(new HashSet<Song>(List.of(plain)).contains(view));
+        assertNotEquals(plain, store.get(0));
+    }
+
+    /**
+     * Verifies that scans find the matching records and skip removed ones, while views of removed Songs still read.
+     * <p>Expected Result: Scans return ids in order; removal is reported once and shrinks the size.</p>
+     */
+    @Test
+    public void testScansAndRemoval() {
+        assertArrayEquals(new int[] {0, 1, 3}, store.findByCreator("Ed Sheeran"));
+        assertArrayEquals(new int[] {2}, store.findByTitle("D\u00e9j\u00e0 Vu"));
+        assertArrayEquals(new int[0], store.findByCreator("nobody"));
+
+        Song view = store.get(1);
+        assertTrue(store.remove(1));
+        assertFalse(store.remove(1), "A Song can only be removed once");
+        assertFalse(store.contains(1));
+        assertEquals(3, store.size());
+        assertEquals(4, store.idCount(), "Ids are not reused");
+        assertArrayEquals(new int[] {0, 3}, store.findByCreator("Ed Sheeran"));
+        assertEquals(new Song("Perfect", "Ed Sheeran", 263), view, "A view should stay valid after removal");
+    }
+}
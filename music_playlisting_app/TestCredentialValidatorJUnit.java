@@ -0,0 +1,136 @@
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.*;
+import java.util.regex.*;
+
+/**
+ * <p><b>Equivalence Test Suite for the CredentialValidator (JUnit 5)</b></p>
+ *
+ * <p>{@link CredentialValidator} replaced the regular expressions LoginService used to
+ * compile on every call. These tests check that it accepts and rejects exactly the same
+ * strings as those expressions, on hand-picked edge cases and on generated input.</p>
+ */
+public class TestCredentialValidatorJUnit {
+
+    /** The username rule as it was written in LoginService. */
+    private static final Pattern USERNAME = Pattern.compile("^[A-Za-z][A-Za-z0-9_]{5,30}$");
+
+    /** The email rule as it was written in LoginService. */
+    private static final Pattern EMAIL = Pattern.compile("^[a-zA-Z0-9_+&*-]+(?:\\.[a-zA-Z0-9_+&*-]+)*@" +
+                                                          "(?:[a-zA-Z0-9-]+\\.)+[a-zA-Z]{2,7}$");
+
+    /** The password rule as it was written in LoginService. */
+    private static final Pattern PASSWORD = Pattern.compile("^(?=.*[0-9])(?=.*[a-z])(?=.*[A-Z])(?=.*[@#$%^&+=])(?=\\S+$).{8,20}$");
+
+    /** Characters used to generate input: every character class the rules mention, plus awkward extras. */
+    private static final String[] PIECES = {
+        "a", "z", "A", "Z", "0", "9", "_", "-", "+", "&", "*", ".", "@", "#", "$", "%", "^", "=",
+        "!", " ", "\t", "\n", "\r", "\u000B", "\f", "\u0085", "\u2028", "\u2029", "\u00e9", "\u00a0",
+        "\ud83c\udfb5", "\ud83c", "com", "gmail", "user"
+    };
+
+    /** Pieces used to generate strings shaped like email addresses, so that many of them are valid. */
+    private static final String[] EMAIL_PIECES = {"a", "b9", "x-y", "_", "+", "&", "*", "-", "com", "io", "museum", "abcdefgh", ".", ".", "@", "#", " "};
+
+    /** Number of generated strings checked per rule. */
+    private static final int GENERATED = 200_000;
+
+    /**
+     * Verifies hand-picked usernames at the edges of the rule.
+     * <p>Expected Result: The validator agrees with the regular expression on every case.</p>
+     */
+    @Test
+    public void testUsernameEdgeCases() {
+        String[] cases = {null, "", "abcde", "abcdef", "a23456789012345678901234567890", "a234567890123456789012345678901",
+                          "a2345678901234567890123456789012", "1abcdef", "_abcdef", "abc_def", "abc-def", "abcdef\n", "\u00e9bcdef"};
+        for (String c : cases) {
+            assertEquals(c != null && USERNAME.matcher(c).matches(), CredentialValidator.isValidUsername(c), "Username: " + c);
+        }
+    }
+
+    /**
+     * Verifies hand-picked email addresses at the edges of the rule.
+     * <p>Expected Result: The validator agrees with the regular expression on every case.</p>
+     */
+    @Test
+    public void testEmailEdgeCases() {
+        String[] cases = {null, "", "testuser@gmail.com", "a@b.co", "a@b.c", "a@b.abcdefg", "a@b.abcdefgh", "a@b", "a@.com",
+                          "a@b..com", ".a@b.com", "a.@b.com", "a..b@c.com", "a.b@c.com", "a@b.c0m", "a@b-.com", "a@@b.com",
+                          "a@b.com.", "first.last+tag@mail.example.org", "a@b.com\n", "a b@c.com", "@b.com", "a&*-_+@x-y.z9.io"};
+        for (String c : cases) {
+            assertEquals(c != null && EMAIL.matcher(c).matches(), CredentialValidator.isValidEmail(c), "Email: " + c);
+        }
+    }
+
+    /**
+     * Verifies hand-picked passwords at the edges of the rule, including characters the
+     * regular expression's '.' and {@code \S} treat specially.
+     * <p>Expected Result: The validator agrees with the regular expression on every case.</p>
+     */
+    @Test
+    public void testPasswordEdgeCases() {
+        String[] cases = {null, "", "Passw0rd!", "Passw0r@", "Pa0@", "Passw0rd@", "Passw0rd@12345678901", "Passw0rd@123456789012",
+                          "passw0rd@", "PASSW0RD@", "Password@", "Passw0rd @", "Passw0rd@\n", "Passw0rd@\u2028", "Passw0rd@\u0085",
+                          "Pa0@\ud83c\udfb5\ud83c\udfb5\ud83c\udfb5\ud83c\udfb5", "Pa0@\ud83c\udfb5\ud83c\udfb5\ud83c\udfb5",
+                          "Pa0@\ud83caaaaaaaaaaaaaaa", "Pa0@\u00a0\u00a0\u00a0\u00a0"};
+        for (String c : cases) {
+            assertEquals(c != null && PASSWORD.matcher(c).matches(), CredentialValidator.isValidPassword(c), "Password: " + c);
+        }
+    }
+
+    /**
+     * Verifies every rule on a large set of generated strings.
+     * <p>Expected Result: The validator agrees with the regular expression on every string.</p>
+     */
+    @Test
+    public void testGeneratedInputMatchesRegex() {
+        Random random = new Random(2024);
+        for (int i = 0; i < GENERATED; i++) {
+            String s = generate(random);
+            assertEquals(USERNAME.matcher(s).matches(), CredentialValidator.isValidUsername(s), "Username: " + s);
+            assertEquals(EMAIL.matcher(s).matches(), CredentialValidator.isValidEmail(s), "Email: " + s);
+            assertEquals(PASSWORD.matcher(s).matches(), CredentialValidator.isValidPassword(s), "Password: " + s);
+
+            String email = generateEmailShaped(random);
+            assertEquals(EMAIL.matcher(email).matches(), CredentialValidator.isValidEmail(email), "Email: " + email);
+        }
+    }
+
+    /**
+     * Builds a random string out of PIECES.
+     *
+     * @param random source of randomness
+     * @return String a generated candidate credential
+     */
+    private static String generate(Random random) {
+        StringBuilder sb = new StringBuilder();
+        int pieces = random.nextInt(14);
+        for (int i = 0; i < pieces; i++) {
+            sb.append(PIECES[random.nextInt(PIECES.length)]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Builds a random string that is usually close to an email address: a local part,
+     * an '@', and a domain, each assembled from EMAIL_PIECES.
+     *
+     * @param random source of randomness
+     * @return String a generated candidate email address
+     */
+    private static String generateEmailShaped(Random random) {
+        StringBuilder sb = new StringBuilder();
+        int local = 1 + random.nextInt(4);
+        for (int i = 0; i < local; i++) {
+            sb.append(EMAIL_PIECES[random.nextInt(EMAIL_PIECES.length)]);
+        }
+        sb.append('@');
+        int labels = 1 + random.nextInt(3);
+        for (int i = 0; i < labels; i++) {
+            sb.append(EMAIL_PIECES[random.nextInt(EMAIL_PIECES.length)]);
+            sb.append(random.nextInt(4) == 0 ? "" : ".");
+        }
+        sb.append(EMAIL_PIECES[random.nextInt(EMAIL_PIECES.length)]);
+        return sb.toString();
+    }
+}
@@ -0,0 +1,151 @@
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p><b>Unit Test Suite for LoginService lockout under concurrency (JUnit 5)</b></p>
+ *
+ * <p>Many threads log in at once here, to check that the three-strike lockout
+ * stays exact and that different users do not affect each other. The
+ * {@link LoginAttemptTracker} tests use a manual clock to check that lockouts
+ * expire and that the tracker's memory stays bounded.</p>
+ */
+public class TestLoginServiceJUnit {
+
+    /** Number of threads racing to log in. */
+    private static final int THREADS = 32;
+
+    /**
+     * Verifies that concurrent wrong guesses check at most three passwords before the lock.
+     * <p>Expected Result: Exactly three password checks happen, and the correct password is then refused.</p>
+     */
+    @Test
+    public void testConcurrentGuessesCheckAtMostThreePasswords() throws Exception {
+        AtomicInteger passwordChecks = new AtomicInteger();
+        UserRegistry users = new UserRegistry();
+        users.add(new Listener("target@gmail.com", "target", "password", 1, new ArrayList<>()) {
+            @Override
+            public String getPassword() {
+                passwordChecks.incrementAndGet();
+                return super.getPassword();
+            }
+        });
+        LoginService loginService = new LoginService();
+
+        runConcurrently(() -> loginService.authenticate("target", "wrongpassword", users));
+
+        assertEquals(3, passwordChecks.get(), "Only three wrong passwords should ever be checked");
+        assertNull(loginService.authenticate("target", "password", users), "Account should be locked");
+    }
+
+    /**
+     * Verifies that concurrent logins by different users all succeed.
+     * <p>Expected Result: Every user is authenticated, however the threads interleave.</p>
+     */
+    @Test
+    public void testConcurrentLoginsForDifferentUsers() throws Exception {
+        UserRegistry users = new UserRegistry();
+        for (int i = 0; i < THREADS; i++) {
+            users.add(new Listener("user" + i + "@gmail.com", "user" + i, "password", i + 1, new ArrayList<>()));
+        }
+        LoginService loginService = new LoginService();
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger successes = new AtomicInteger();
+
+        runConcurrently(() -> {
+            if (loginService.authenticate("user" + next.getAndIncrement(), "password", users) != null) {
+                successes.incrementAndGet();
+            }
+        });
+
+        assertEquals(THREADS, successes.get(), "Every user should log in");
+    }
+
+    /**
+     * Verifies that a lockout lifts after 10 minutes and gives the user fresh attempts.
+     * <p>Expected Result: Login is refused just before the lockout ends and succeeds right after.</p>
+     */
+    @Test
+    public void testLockoutExpires() {
+        AtomicLong now = new AtomicLong(1_000_000);
+        LoginService loginService = new LoginService(new LoginAttemptTracker(100, 60_000, 1_000, now::get));
+        UserRegistry users = new UserRegistry();
+        users.add(new Listener("testuser@gmail.com", "testuser", "password", 1, new ArrayList<>()));
+        for (int i = 0; i < 3; i++) {
+            loginService.authenticate("testuser", "wrongpassword", users);
+        }
+
+        now.addAndGet(LoginAttemptTracker.LOCKOUT_MILLIS - 1);
+        assertNull(loginService.authenticate("testuser", "password", users), "Account should still be locked");
+        now.addAndGet(1);
+        assertNotNull(loginService.authenticate("testuser", "password", users), "Lockout should have expired");
+        assertEquals(1, loginService.getAttemptTracker().getStats().getExpiredLockouts(), "One lockout should have expired");
+    }
+
+    /**
+     * Verifies that failures are forgotten after the idle period and after a successful login.
+     * <p>Expected Result: The tracker is empty once the sweep has run.</p>
+     */
+    @Test
+    public void testIdleAndSuccessfulUsersAreForgotten() {
+        AtomicLong now = new AtomicLong(1_000_000);
+        LoginAttemptTracker tracker = new LoginAttemptTracker(100, 60_000, 1_000, now::get);
+        LoginService loginService = new LoginService(tracker);
+        UserRegistry users = new UserRegistry();
+        users.add(new Listener("testuser@gmail.com", "testuser", "password", 1, new ArrayList<>()));
+
+        loginService.authenticate("testuser", "wrongpassword", users);
+        loginService.authenticate("nosuchuser", "wrongpassword", users);
+        assertEquals(2, tracker.getStats().getTrackedUsernames(), "Both usernames should be tracked");
+
+        loginService.authenticate("testuser", "password", users);
+        assertEquals(1, tracker.getStats().getTrackedUsernames(), "A successful login should be forgotten");
+
+        now.addAndGet(60_000);
+        tracker.sweepIfDue();
+        assertEquals(0, tracker.getStats().getTrackedUsernames(), "Idle usernames should be swept");
+        assertEquals(1, tracker.getStats().getIdleEvictions(), "One idle eviction should be counted");
+    }
+
+    /**
+     * Verifies that unknown usernames are capped, as in a credential-stuffing run.
+     * <p>Expected Result: The tracker never holds more unknown usernames than its cap.</p>
+     */
+    @Test
+    public void testUnknownUsernamesAreCapped() {
+        LoginAttemptTracker tracker = new LoginAttemptTracker(100, 60_000, 1_000, System::currentTimeMillis);
+        LoginService loginService = new LoginService(tracker);
+        UserRegistry users = new UserRegistry();
+        for (int i = 0; i < 10_000; i++) {
+            loginService.authenticate("stuffed" + i, "wrongpassword", users);
+            assertTrue(tracker.getStats().getUnknownUsernames() <= 100, "Unknown usernames should stay within the cap");
+        }
+        assertTrue(tracker.getStats().getCapacityEvictions() >= 9_900, "Evictions should be counted");
+    }
+
+    /**
+     * Starts THREADS threads that run a task at the same moment, and waits for them all.
+     *
+     * @param task the login attempt each thread makes
+     */
+    private static void runConcurrently(Runnable task) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                task.run();
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> f : futures) {
+            f.get();
+        }
+        pool.shutdown();
+    }
+}
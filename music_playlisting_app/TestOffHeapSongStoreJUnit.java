@@ -0,0 +1,70 @@
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.*;
+
+/**
+ * <p><b>Unit Test Suite for the OffHeapSongStore (JUnit 5)</b></p>
+ *
+ * <p>These tests check that the off-heap records read back exactly as the on-heap {@link CompactSongStore}'s do
+ * while both buffers grow, and that scans by title, creator and creator code agree with it, before and after removals.</p>
+ */
+public class TestOffHeapSongStoreJUnit {
+
+    /**
+     * Verifies that records read back as added, across enough records and title text to grow both buffers.
+     * <p>Expected Result: Each id's fields match the on-heap store's, and the direct memory grows to hold them.</p>
+     */
+    @Test
+    public void testRecordsMatchCompactStore() {
+        OffHeapSongStore offHeap = new OffHeapSongStore();
+        CompactSongStore compact = new CompactSongStore();
+        long initialBytes = offHeap.offHeapBytes();
+        for (int i = 0; i < 5_000; i++) {
+            String title = (i % 7 == 0 ? "D\u00e9j\u00e0 \u266b " : "Song ") + i + (i % 100 == 0 ? " (extended mix)" : "");
+            assertEquals(compact.add(title, "artist" + i % 13, i), offHeap.add(title, "artist" + i % 13, i));
+        }
+        assertTrue(offHeap.offHeapBytes() > initialBytes, "The buffers should have grown");
+        assertEquals(compact.idCount(), offHeap.idCount());
+        assertEquals(13, offHeap.creatorCount());
+        for (int id = 0; id < offHeap.idCount(); id++) {
+            assertEquals(compact.getTitle(id), offHeap.getTitle(id));
+            assertEquals(compact.getCreator(id), offHeap.getCreator(id));
+            assertEquals(compact.getDuration(id), offHeap.getDuration(id));
+            assertEquals(compact.get(id), offHeap.get(id));
+        }
+        assertThrows(IndexOutOfBoundsException.class, () -> offHeap.get(5_000));
+        assertThrows(IllegalArgumentException.class, () -> offHeap.add(null, "artist", 1));
+    }
+
+    /**
+     * Verifies that scans skip removed Songs, and that a Song can be found again by its fields.
+     * <p>Expected Result: Scans return the same ids as the on-heap store, in id order.</p>
+     */
+    @Test
+    public void testScansMatchCompactStore() {
+        OffHeapSongStore offHeap = new OffHeapSongStore();
+        CompactSongStore compact = new CompactSongStore();
+        for (int i = 0; i < 2_000; i++) {
+            offHeap.add("Title " + i % 50, "artist" + i % 9, i % 3);
+            compact.add("Title " + i % 50, "artist" + i % 9, i % 3);
+        }
+        for (int id = 0; id < 2_000; id += 3) {
+            assertTrue(offHeap.remove(id));
+            compact.remove(id);
+        }
+        assertFalse(offHeap.remove(0), "A Song can only be removed once");
+        assertEquals(compact.size(), offHeap.size());
+
+        assertArrayEquals(compact.findByTitle("Title 7"), offHeap.findByTitle("Title 7"));
+        assertArrayEquals(compact.findByCreator("artist4"), offHeap.findByCreator("artist4"));
+        assertArrayEquals(new int[0], offHeap.findByCreator("nobody"));
+        BitSet codes = new BitSet();
+        codes.set(1);
+        codes.set(5);
+        assertArrayEquals(compact.findByCreatorCodes(codes), offHeap.findByCreatorCodes(codes));
+
+        assertEquals(1, offHeap.find(new Song("Title 1", "artist1", 1)));
+        assertEquals(-1, offHeap.find(new Song("Title 0", "artist0", 0)), "A removed Song should not be found");
+        assertEquals(-1, offHeap.find(new Song("Title 1", "artist1", 2)));
+    }
+}
@@ -0,0 +1,346 @@
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.*;
+
+/**
+ * <p><b>Unit Test Suite for Playlist bookkeeping (JUnit 5)</b></p>
+ *
+ * <p>Covers the index from Songs to the Playlists containing them, which
+ * catalog removals rely on to find affected playlists, and the running
+ * duration and membership totals each Playlist keeps.</p>
+ *
+ * <p>Each test that uses the index registers its Listener in a registry
+ * of its own, so no other test's playlists are listed.</p>
+ */
+public class TestPlaylistJUnit {
+
+    /**
+     * Verifies that the index lists every playlist holding a song, and follows removals.
+     * <p>Expected Result: Both playlists are listed until the song is removed from one of them.</p>
+     */
+    @Test
+    public void testPlaylistsContainingFollowsAddAndRemove() {
+        UserRegistry users = new UserRegistry();
+        Listener listener = new Listener("index@example.com", "indexer", "password", 1, new ArrayList<>());
+        users.add(listener);
+        PlaylistIndex index = users.getPlaylistIndex();
+        Playlist first = listener.createNewPlaylist("First");
+        Playlist second = listener.createNewPlaylist("Second");
+        Song song = new Song("Index Song A", "Index Artist", 120);
+
+        first.addSong(song);
+        second.addSong(song);
+        assertEquals(2, index.getPlaylistsContaining(song).size(), "Both playlists should contain the song");
+
+        second.removeSong(song);
+        assertEquals(List.of(first), index.getPlaylistsContaining(song), "Only the first playlist should remain");
+
+        first.removeSongAtIndex(0);
+        assertTrue(index.getPlaylistsContaining(song).isEmpty(), "No playlist should contain the song");
+    }
+
+    /**
+     * Verifies that deleted playlists are no longer found through the index.
+     * <p>Expected Result: Deleting or clearing playlists removes them from the index.</p>
+     */
+    @Test
+    public void testDeletedPlaylistsAreReleased() {
+        UserRegistry users = new UserRegistry();
+        Listener listener = new Listener("release@example.com", "releaser", "password", 1, new ArrayList<>());
+        users.add(listener);
+        PlaylistIndex index = users.getPlaylistIndex();
+        Song song = new Song("Index Song B", "Index Artist", 120);
+        listener.createNewPlaylist("Kept").addSong(song);
+        listener.createNewPlaylist("Deleted").addSong(song);
+
+        listener.deletePlaylistAtIndex(1);
+        assertEquals(1, index.getPlaylistsContaining(song).size(), "Deleted playlist should not be listed");
+
+        listener.clearLibrary();
+        assertTrue(index.getPlaylistsContaining(song).isEmpty(), "Cleared playlists should not be listed");
+    }
+
+    /**
+     * Verifies that each registry indexes only the playlists of its own registered Listeners.
+     * <p>Expected Result: A removal in one registry leaves another's playlists alone, and removed Listeners leave the index.</p>
+     */
+    @Test
+    public void testIndexIsPerRegistry() {
+        UserRegistry firstUsers = new UserRegistry();
+        UserRegistry secondUsers = new UserRegistry();
+        Listener firstListener = new Listener("one@example.com", "indexone", "password", 1, new ArrayList<>());
+        Listener secondListener = new Listener("two@example.com", "indextwo", "password", 1, new ArrayList<>());
+        Song song = new Song("Index Song C", "Index Artist", 120);
+        Playlist early = firstListener.createNewPlaylist("Before registering");
+        early.addSong(song);
+        firstUsers.add(firstListener);
+        secondUsers.add(secondListener);
+        Playlist other = secondListener.createNewPlaylist("Other");
+        other.addSong(song);
+
+        assertEquals(List.of(early), firstUsers.getPlaylistIndex().getPlaylistsContaining(song),
+                     "Playlists made before registering should be indexed once the Listener is added");
+        assertTrue(firstUsers.getPlaylistIndex().removeFromAllPlaylists(song));
+        assertEquals(0, early.getSongCount());
+        assertEquals(List.of(song), other.getTracklist(), "Another registry's playlist should keep the song");
+
+        secondUsers.remove(secondListener);
+        assertTrue(secondUsers.getPlaylistIndex().getPlaylistsContaining(song).isEmpty(),
+                   "A removed Listener's playlists should leave the index");
+    }
+
+    /**
+     * Verifies that the running total duration follows every mutator.
+     * <p>Expected Result: The total and its formatted string match the remaining songs.</p>
+     */
+    @Test
+    public void testRunningTotalDuration() {
+        ArrayList<Song> initial = new ArrayList<>();
+        initial.add(new Song("Total A", "Total Artist", 60));
+        Playlist playlist = new Playlist("Totals", "listener1", initial);
+        playlist.addSong(new Song("Total B", "Total Artist", 90));
+        playlist.addSong(new Song("Total C", "Total Artist", 30));
+        assertEquals(180, playlist.getTotalDuration(), "Total should include the initial and added songs");
+        assertEquals("03:00", playlist.getTotalDurationFormatted(), "Formatted total should be 03:00");
+
+        playlist.removeSong(new Song("Total B", "Total Artist", 90));
+        playlist.removeSongAtIndex(0);
+        assertEquals(30, playlist.getTotalDuration(), "Total should drop as songs are removed");
+        assertEquals("'Totals' created by listener1 - 1 songs - 00:30", playlist.toString(), "Description should use the running total");
+    }
+
+    /**
+     * Verifies that a removed song can be added back once it is no longer in the playlist.
+     * <p>Expected Result: The duplicate is rejected while present and accepted after removal.</p>
+     */
+    @Test
+    public void testMembershipAfterRemoval() {
+        Playlist playlist = new Playlist("Members", "listener1", new ArrayList<>());
+        Song song = new Song("Member Song", "Total Artist", 100);
+        assertTrue(playlist.addSong(song), "First add should succeed");
+        assertFalse(playlist.addSong(new Song("Member Song", "Total Artist", 100)), "Equal song should be rejected");
+        playlist.removeSongAtIndex(0);
+        assertTrue(playlist.addSong(song), "Song should be accepted again after removal");
+    }
+
+    /**
+     * Verifies that the counted tracklist behaves like a list of Songs through a long run of random changes,
+     * including repeated Songs given to the constructor and removals from the middle.
+     * <p>Expected Result: The tracklist, total duration and membership always match a plain ArrayList.</p>
+     */
+    @Test
+    public void testTracklistMatchesList() {
+        Song[] songs = new Song[300];
+        for (int i = 0; i < songs.length; i++) {
+            songs[i] = new Song("Tracklist Song " + i, "Tracklist Artist " + i % 7, 60 + i);
+        }
+        ArrayList<Song> expected = new ArrayList<>(List.of(songs[0], songs[1], songs[0]));
+        Playlist playlist = new Playlist("Model", "listener1", new ArrayList<>(expected));
+        Random random = new Random(3);
+        for (int step = 0; step < 5_000; step++) {
+            Song song = songs[random.nextInt(songs.length)];
+            int action = random.nextInt(3);
+            if (action == 0) {
+                assertEquals(!expected.contains(song), playlist.addSong(song));
+                if (!expected.contains(song)) expected.add(song);
+            } else if (action == 1) {
+                assertEquals(expected.remove(song), playlist.removeSong(song));
+            } else if (!expected.isEmpty()) {
+                int index = random.nextInt(expected.size());
+                expected.remove(index);
+                playlist.removeSongAtIndex(index);
+            }
+        }
+        assertEquals(expected, playlist.getTracklist());
+        assertEquals(expected.size(), playlist.getSongCount());
+        assertEquals(expected.stream().mapToInt(Song::getDuration).sum(), playlist.getTotalDuration());
+        for (Song song : songs) {
+            assertEquals(!expected.contains(song), playlist.addSong(song), "Membership should match for " + song);
+        }
+    }
+
+    /**
+     * Verifies that a Song is removed by its id, even after the entries before it have moved.
+     * <p>Expected Result: The Song with the id is removed wherever it now is; an id not in the tracklist removes nothing.</p>
+     */
+    @Test
+    public void testRemoveSongById() {
+        Song first = new Song("Id Song 1", "Id Artist", 60);
+        Song second = new Song("Id Song 2", "Id Artist", 70);
+        Song third = new Song("Id Song 3", "Id Artist", 80);
+        Playlist playlist = new Playlist("Ids", "idlistener", new ArrayList<>(List.of(first, second, third)));
+
+        playlist.removeSongAtIndex(0); // Another change moves the Song after the playlist was listed
+        assertTrue(playlist.removeSongById(third.getId()));
+        assertEquals(List.of(second), playlist.getTracklist());
+        assertEquals(70, playlist.getTotalDuration());
+        assertFalse(playlist.removeSongById(third.getId()), "A removed Song's id should not remove anything else");
+        assertFalse(playlist.removeSongById(first.getId()));
+    }
+
+    /**
+     * Verifies that the playlists of a library share the library's Songs, and that a tracklist is a live
+     * read-only view that stays readable after its playlist is deleted.
+     * <p>Expected Result: Equal Songs read back as the first instance added; the view follows changes and rejects edits.</p>
+     */
+    @Test
+    public void testTracklistViewAndSharedSongs() {
+        Listener listener = new Listener("shared@example.com", "sharer", "password", 1, new ArrayList<>());
+        Song first = new Song("Shared Song", "Shared Artist", 100);
+        Playlist a = listener.createNewPlaylist("A");
+        Playlist b = listener.createNewPlaylist("B");
+        a.addSong(first);
+        b.addSong(new Song("Shared Song", "Shared Artist", 100));
+        assertSame(first, b.getSongAtIndex(0), "The library should hold one copy of an equal Song");
+
+        List<Song> view = b.getTracklist();
+        b.addSong(new Song("Shared Song 2", "Shared Artist", 50));
+        assertEquals(2, view.size(), "The view should follow later changes");
+        assertThrows(UnsupportedOperationException.class, () -> view.add(first));
+        assertThrows(IndexOutOfBoundsException.class, () -> b.getSongAtIndex(2));
+
+        listener.deletePlaylistAtIndex(1);
+        assertEquals(List.of(first, new Song("Shared Song 2", "Shared Artist", 50)), view, "A deleted playlist should keep its songs");
+        assertTrue(b.removeSong(first));
+        assertEquals(List.of(first), a.getTracklist(), "Changing a deleted playlist should not affect the library");
+    }
+
+    /**
+     * Verifies that snapshots never change once taken, through a long run of random adds and removals that split,
+     * merge and grow chunks, including edits made to an older version after a newer one was made from it.
+     * <p>Expected Result: Every snapshot keeps matching the list it was taken from, and each version is one more than the last.</p>
+     */
+    @Test
+    public void testSnapshotsAreImmutableAndVersioned() {
+        Song[] songs = new Song[50];
+        for (int i = 0; i < songs.length; i++) {
+            songs[i] = new Song("Snapshot Song " + i, "Snapshot Artist", 10 + i);
+        }
+        Random random = new Random(11);
+        ArrayList<List<Song>> expected = new ArrayList<>();
+        ArrayList<PlaylistSnapshot> taken = new ArrayList<>();
+        ArrayList<Song> model = new ArrayList<>();
+        SongRegistry ids = new SongRegistry();
+        PlaylistSnapshot snapshot = PlaylistSnapshot.of("Snapshots", "listener1", new int[0], ids.songs());
+        for (int step = 0; step < 3_000; step++) {
+            if (random.nextInt(100) == 0 && !taken.isEmpty()) {
+                // Branch from an older version, which must copy rather than write over the newer one
+                int older = random.nextInt(taken.size());
+                snapshot = taken.get(older);
+                model = new ArrayList<>(expected.get(older));
+            }
+            if (model.isEmpty() || random.nextInt(3) > 0) {
+                Song song = songs[random.nextInt(songs.length)];
+                model.add(song);
+                snapshot = snapshot.withAdded(ids.acquire(song), ids.songs());
+            } else {
+                int index = random.nextInt(model.size());
+                model.remove(index);
+                snapshot = snapshot.withRemovedAt(index);
+            }
+            if (step % 10 == 0) {
+                expected.add(new ArrayList<>(model));
+                taken.add(snapshot);
+            }
+            assertEquals(model.size(), snapshot.size());
+        }
+        for (int i = 0; i < taken.size(); i++) {
+            PlaylistSnapshot old = taken.get(i);
+            assertEquals(expected.get(i), old, "Snapshot " + i + " should not have changed");
+            assertEquals(expected.get(i), new ArrayList<>(old), "Iterating snapshot " + i + " should match");
+            assertEquals(expected.get(i).stream().mapToInt(Song::getDuration).sum(), old.getTotalDuration());
+        }
+
+        Playlist playlist = new Playlist("Versions", "listener1", new ArrayList<>(List.of(songs[0])));
+        PlaylistSnapshot first = playlist.snapshot();
+        playlist.addSong(new Song("Snapshot Extra", "Snapshot Artist", 30));
+        playlist.removeSongAtIndex(0);
+        assertEquals(List.of(songs[0]), first, "An old snapshot should keep its songs");
+        assertEquals(first.getVersion() + 2, playlist.snapshot().getVersion());
+    }
+
+    /**
+     * Verifies that a library's song ids are compacted once most have been released, by removing Songs and by
+     * deleting playlists, without changing any tracklist or any snapshot taken before.
+     * <p>Expected Result: Every playlist and old snapshot matches its list, and membership still works after compaction.</p>
+     */
+    @Test
+    public void testSongIdsCompactedAcrossLibrary() {
+        Listener listener = new Listener("compact@example.com", "compacter", "password", 1, new ArrayList<>());
+        Playlist kept = listener.createNewPlaylist("Kept");
+        Playlist churned = listener.createNewPlaylist("Churned");
+        Playlist deleted = listener.createNewPlaylist("Deleted");
+        Song keptSong = new Song("Compact Kept", "Compact Artist", 40);
+        kept.addSong(keptSong);
+        ArrayList<Song> model = new ArrayList<>();
+        ArrayList<List<Song>> expected = new ArrayList<>();
+        ArrayList<PlaylistSnapshot> taken = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            Song song = new Song("Compact Song " + i, "Compact Artist", 60 + i % 90);
+            churned.addSong(song);
+            deleted.addSong(new Song("Compact Deleted " + i, "Compact Artist", 30));
+            model.add(song);
+            if (i % 3 == 0) {
+                churned.removeSongAtIndex(0);
+                model.remove(0);
+            }
+            if (i % 50 == 0) {
+                expected.add(new ArrayList<>(model));
+                taken.add(churned.snapshot());
+            }
+        }
+        PlaylistSnapshot beforeDelete = deleted.snapshot();
+        listener.deletePlaylistAtIndex(2);
+        while (model.size() > 10) {
+            assertTrue(churned.removeSong(model.remove(model.size() - 1)));
+        }
+
+        assertEquals(model, churned.getTracklist());
+        assertEquals(model.stream().mapToInt(Song::getDuration).sum(), churned.getTotalDuration());
+        assertEquals(List.of(keptSong), kept.getTracklist());
+        assertEquals(List.of(List.of(keptSong), model), listener.snapshot(), "The library snapshot should hold the renumbered playlists");
+        assertEquals(500, deleted.getSongCount(), "A deleted playlist should keep its songs");
+        assertEquals(beforeDelete, deleted.getTracklist());
+        for (int i = 0; i < taken.size(); i++) {
+            assertEquals(expected.get(i), taken.get(i), "Snapshot " + i + " should not have changed");
+        }
+        assertFalse(kept.addSong(new Song("Compact Kept", "Compact Artist", 40)), "Membership should survive compaction");
+        assertFalse(churned.addSong(model.get(0)));
+        assertTrue(churned.removeSong(model.get(0)));
+        assertTrue(churned.addSong(model.get(0)));
+    }
+
+    /**
+     * Verifies that a library snapshot holds every playlist as it was, and that a library can be read while it changes.
+     * <p>Expected Result: Old library snapshots are unchanged; iterating during edits throws no ConcurrentModificationException.</p>
+     */
+    @Test
+    public void testLibrarySnapshots() {
+        Listener listener = new Listener("snapshots@example.com", "snapshotter", "password", 1, new ArrayList<>());
+        Playlist mix = listener.createNewPlaylist("Mix");
+        Song song = new Song("Library Snapshot Song", "Snapshot Artist", 100);
+        LibrarySnapshot empty = listener.snapshot();
+        mix.addSong(song);
+        listener.createNewPlaylist("Other");
+        LibrarySnapshot both = listener.snapshot();
+
+        assertEquals(1, empty.size());
+        assertTrue(empty.get(0).isEmpty(), "The first snapshot should hold the empty playlist");
+        assertEquals(List.of(song), both.get(0));
+        assertEquals(empty.getVersion() + 2, both.getVersion());
+
+        for (Playlist playlist : listener.getLibrary()) {
+            listener.createNewPlaylist("Added While Reading");
+            playlist.getTracklist().forEach(Song::getDuration);
+        }
+        for (Song read : mix.getTracklist()) {
+            mix.removeSong(read);
+        }
+        assertTrue(mix.getTracklist().isEmpty());
+        listener.deletePlaylistAtIndex(0);
+        assertEquals(List.of(song), both.get(0), "A deleted playlist should stay in older snapshots");
+        assertEquals(3, listener.snapshot().size());
+        listener.clearLibrary();
+        assertTrue(listener.snapshot().isEmpty());
+    }
+}
@@ -0,0 +1,149 @@
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.*;
+
+/**
+ * <p><b>Unit Test Suite for the PrefixTrie (JUnit 5)</b></p>
+ *
+ * <p>These tests check that completions match a ranked scan of every key, that keys shared by
+ * several Songs stay until the last one is removed, and that removed keys are pruned.</p>
+ */
+public class TestPrefixTrieJUnit {
+
+    /**
+     * Verifies completions, limits and prefix counts on a few keys that share prefixes.
+     * <p>Expected Result: Keys shared by one Song each come back in alphabetical order, cut off at the limit.</p>
+     */
+    @Test
+    public void testComplete() {
+        PrefixTrie trie = new PrefixTrie();
+        for (String key : new String[] {"shape of you", "shallow", "shape", "imagine", "shapeshifter"}) {
+            trie.add(key);
+        }
+        assertEquals(List.of("shallow", "shape", "shape of you", "shapeshifter"), trie.complete("sha", 10));
+        assertEquals(List.of("shallow", "shape"), trie.complete("sha", 2));
+        assertEquals(List.of("shape of you"), trie.complete("shape ", 10), "A prefix may end part way along an edge");
+        assertEquals(List.of("imagine"), trie.complete("imagine", 10));
+        assertTrue(trie.complete("shapes of", 10).isEmpty());
+        assertTrue(trie.complete("x", 10).isEmpty());
+        assertTrue(trie.complete("sha", 0).isEmpty());
+        assertEquals(4, trie.countWithPrefix("sh"));
+        assertEquals(5, trie.countWithPrefix(""));
+        assertEquals(0, trie.countWithPrefix("imagines"));
+    }
+
+    /**
+     * Verifies that completions rank keys by how many Songs share them, and follow removals.
+     * <p>Expected Result: The most shared keys come first, ties in alphabetical order.</p>
+     */
+    @Test
+    public void testCompletionsRankedBySongs() {
+        PrefixTrie trie = new PrefixTrie();
+        for (String key : new String[] {"hello", "help", "help", "helm", "helm", "helm", "hex", "help me"}) {
+            trie.add(key);
+        }
+        assertEquals(List.of("helm", "help", "hello", "help me", "hex"), trie.complete("he", 10));
+        assertEquals(List.of("helm", "help"), trie.complete("he", 2), "Only the top keys should be returned");
+        assertEquals(List.of("help", "help me"), trie.complete("help", 5));
+
+        trie.remove("helm");
+        trie.remove("helm");
+        assertEquals(List.of("help", "hello", "helm"), trie.complete("hel", 3), "A key's rank should fall with its count");
+    }
+
+    /**
+     * Verifies that a key added for several Songs is kept until every one of them is removed,
+     * and that removing a key that was never added changes nothing.
+     * <p>Expected Result: The key is completed while any of its Songs remain.</p>
+     */
+    @Test
+    public void testSharedKeys() {
+        PrefixTrie trie = new PrefixTrie();
+        trie.add("hello");
+        trie.add("hello");
+        trie.add("help");
+        trie.remove("hel");
+        trie.remove("hello world");
+        assertEquals(2, trie.size());
+
+        trie.remove("hello");
+        assertEquals(List.of("hello", "help"), trie.complete("he", 10));
+        trie.remove("hello");
+        assertEquals(List.of("help"), trie.complete("he", 10));
+        trie.remove("hello");
+        assertEquals(1, trie.size());
+    }
+
+    /**
+     * Verifies completions against a ranked scan while random keys are added and removed,
+     * and that the trie shrinks back to its root once every key is removed.
+     * <p>Expected Result: Every completion and count matches the scan; at most two nodes are kept per key.</p>
+     */
+    @Test
+    public void testMatchesScanAndPrunes() {
+        Random random = new Random(3);
+        PrefixTrie trie = new PrefixTrie();
+        TreeMap<String, Integer> expected = new TreeMap<String, Integer>();
+        for (int step = 0; step < 20_000; step++) {
+            String key = randomKey(random);
+            if (random.nextInt(3) == 0 && expected.containsKey(key)) {
+                trie.remove(key);
+                expected.merge(key, -1, Integer::sum);
+                expected.remove(key, 0);
+            } else {
+                trie.add(key);
+                expected.merge(key, 1, Integer::sum);
+            }
+            if (step % 500 == 0) {
+                assertScanMatches(trie, expected, random);
+            }
+        }
+        assertScanMatches(trie, expected, random);
+        assertTrue(trie.nodeCount() <= 2 * trie.size() + 1, "At most two nodes per key, plus the root");
+
+        for (Map.Entry<String, Integer> entry : expected.entrySet()) {
+            for (int i = 0; i < entry.getValue(); i++) {
+                trie.remove(entry.getKey());
+            }
+        }
+        assertEquals(0, trie.size());
+        assertEquals(1, trie.nodeCount(), "Only the root should be left");
+    }
+
+    /**
+     * Checks completions and counts for random prefixes against a scan of the keys, ranked by count and then key.
+     *
+     * @param trie     the trie under test
+     * @param expected the keys that should be in the trie
+     * @param random   source of the prefixes
+     */
+    private static void assertScanMatches(PrefixTrie trie, TreeMap<String, Integer> expected, Random random) {
+        assertEquals(expected.size(), trie.size());
+        for (int q = 0; q < 50; q++) {
+            String prefix = randomKey(random).substring(0, random.nextInt(4));
+            ArrayList<String> all = new ArrayList<>();
+            for (String key : expected.tailMap(prefix).keySet()) {
+                if (!key.startsWith(prefix)) break;
+                all.add(key);
+            }
+            all.sort(Comparator.comparing((String key) -> -expected.get(key)).thenComparing(Comparator.naturalOrder()));
+            int limit = 1 + random.nextInt(8);
+            assertEquals(all.subList(0, Math.min(limit, all.size())), trie.complete(prefix, limit), "Prefix \"" + prefix + "\"");
+            assertEquals(all.size(), trie.countWithPrefix(prefix));
+        }
+    }
+
+    /**
+     * Builds a short key from a small alphabet, so that many keys share prefixes.
+     *
+     * @param random source of the characters
+     * @return String a key of 3 to 7 characters
+     */
+    private static String randomKey(Random random) {
+        char[] key = new char[3 + random.nextInt(5)];
+        for (int i = 0; i < key.length; i++) {
+            key[i] = "ab c".charAt(random.nextInt(4));
+        }
+        return new String(key);
+    }
+}
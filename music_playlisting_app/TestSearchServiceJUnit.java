@@ -0,0 +1,473 @@
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * <p><b>Unit Test Suite for the SearchService indexes (JUnit 5)</b></p>
+ *
+ * <p>These tests check that the indexes kept by {@link SearchService} return the same
+ * results as a plain scan of the catalog, and that they stay correct as songs are
+ * added to and removed from the catalog.</p>
+ */
+public class TestSearchServiceJUnit {
+
+    /** Catalog under test, rebuilt before every test. */
+    private SearchService catalog;
+
+    /**
+     * Populates a fresh catalog before each test case executes.
+     */
+    @BeforeEach
+    public void setup() {
+        catalog = new SearchService();
+        catalog.addSongToCatalog(new Song("Shape of You", "Ed Sheeran", 233));
+        catalog.addSongToCatalog(new Song("Shallow", "Lady Gaga", 215));
+        catalog.addSongToCatalog(new Song("Imagine", "John Lennon", 183));
+        catalog.addSongToCatalog(new Song("SHAPESHIFTER", "artist", 200));
+    }
+
+    /**
+     * Verifies that a partial title search is case-insensitive and keeps catalog order.
+     * <p>Expected Result: Both titles containing "shape" are returned, oldest first.</p>
+     */
+    @Test
+    public void testPartialTitleMatchesIgnoringCase() {
+        List<Song> results = catalog.searchByPartialTitle("sHaPe");
+        assertEquals(2, results.size(), "Search should match both 'shape' titles");
+        assertEquals("Shape of You", results.get(0).getTitle(), "Results should keep catalog order");
+        assertEquals("SHAPESHIFTER", results.get(1).getTitle(), "Results should keep catalog order");
+    }
+
+    /**
+     * Verifies that queries shorter than a trigram still match.
+     * <p>Expected Result: "sh" matches every title containing it; the empty string matches everything.</p>
+     */
+    @Test
+    public void testShortQueries() {
+        assertEquals(3, catalog.searchByPartialTitle("sh").size(), "Two-letter query should match 3 titles");
+        assertEquals(4, catalog.searchByPartialTitle("").size(), "Empty query should match the whole catalog");
+    }
+
+    /**
+     * Verifies that a removed song no longer appears in partial title results.
+     * <p>Expected Result: Only the remaining match is returned after removal.</p>
+     */
+    @Test
+    public void testPartialTitleAfterRemoval() {
+        Song removed = catalog.searchByTitle("Shape of You").get(0);
+        catalog.removeSongFromCatalog(removed);
+
+        List<Song> results = catalog.searchByPartialTitle("shape");
+        assertEquals(1, results.size(), "Removed song should not be returned");
+        assertEquals("SHAPESHIFTER", results.get(0).getTitle(), "Remaining song should still be returned");
+    }
+
+    /**
+     * Verifies that a query whose trigrams never occur returns no results.
+     * <p>Expected Result: An empty list is returned.</p>
+     */
+    @Test
+    public void testPartialTitleNoMatch() {
+        assertTrue(catalog.searchByPartialTitle("xyz").isEmpty(), "Unknown term should return nothing");
+    }
+
+    /**
+     * Verifies that every search compares the analyzed keys, so accents, punctuation and spacing are ignored
+     * on both the catalog's side and the query's side, and that the keys are dropped with their Songs.
+     * <p>Expected Result: Accented and punctuated titles and creators are found by plain queries, and vice versa.</p>
+     */
+    @Test
+    public void testSearchesIgnoreAccentsAndPunctuation() {
+        Song dejaVu = new Song("D\u00e9j\u00e0 Vu!", "Beyonc\u00e9", 240);
+        Song dontStop = new Song("Don't Stop Me Now", "Queen", 209);
+        catalog.addSongToCatalog(dejaVu);
+        catalog.addSongToCatalog(dontStop);
+
+        assertEquals(List.of(dejaVu), catalog.searchByTitle("deja vu"));
+        assertEquals(List.of(dejaVu), catalog.searchByTitle("  DEJA-VU  "));
+        assertEquals(List.of(dejaVu), catalog.searchByPartialTitle("j\u00c0 v"));
+        assertEquals(List.of(dontStop), catalog.searchByPartialTitle("dont stop"));
+        assertEquals(List.of(dontStop), catalog.searchRanked("Don't", 0, 10).getSongs());
+        assertEquals(List.of(dejaVu), catalog.searchByPartialCreator("beyonce"));
+        assertEquals(List.of(dejaVu), catalog.searchFuzzy("beyonse"));
+        assertEquals(List.of("deja vu"), catalog.autocompleteTitle("D\u00c9J", 5));
+
+        catalog.removeSongFromCatalog(new Song("D\u00e9j\u00e0 Vu!", "Beyonc\u00e9", 240));
+        assertTrue(catalog.searchByTitle("deja vu").isEmpty(), "A removed song's keys should be dropped");
+        assertTrue(catalog.searchByPartialCreator("beyonce").isEmpty());
+        assertTrue(catalog.autocompleteTitle("deja", 5).isEmpty());
+    }
+
+    /**
+     * Verifies that an identical re-upload is recognised as a duplicate.
+     * <p>Expected Result: A new Song object with the same title, creator and duration is rejected.</p>
+     */
+    @Test
+    public void testIdenticalReuploadRejected() {
+        Song reupload = new Song("Imagine", "John Lennon", 183);
+        assertTrue(catalog.globalCatContains(reupload), "Catalog should recognise an equal Song");
+        assertFalse(catalog.addSongToCatalog(reupload), "Identical re-upload should be rejected");
+        assertEquals(4, catalog.getGlobalCatalog().size(), "Catalog size should be unchanged");
+    }
+
+    /**
+     * Verifies that removing an equal Song object removes the catalog entry.
+     * <p>Expected Result: The song is removed from the catalog and its search results.</p>
+     */
+    @Test
+    public void testRemoveByEqualSong() {
+        assertTrue(catalog.removeSongFromCatalog(new Song("Imagine", "John Lennon", 183)), "Equal Song should be removed");
+        assertFalse(catalog.globalCatContains(new Song("Imagine", "John Lennon", 183)), "Song should no longer be present");
+        assertTrue(catalog.searchByPartialTitle("imag").isEmpty(), "Removed song should not be searchable");
+    }
+
+    /**
+     * Verifies that the catalog keeps its order through many removals and additions, read by position as it goes,
+     * whether its records are held in several shards or in a SongStore.
+     * <p>Expected Result: The catalog, its size, each position and creator scans match a list changed in the same way.</p>
+     */
+    @Test
+    public void testOrderKeptThroughRemovals() {
+        SearchService[] catalogs = {
+            new SearchService(), new SearchService(3, 0, ForkJoinPool.commonPool()), new SearchService(new CompactSongStore())
+        };
+        for (SearchService catalog : catalogs) {
+            Random random = new Random(5);
+            ArrayList<Song> expected = new ArrayList<>();
+            for (int step = 0; step < 2_000; step++) {
+                if (expected.isEmpty() || random.nextInt(3) > 0) {
+                    Song song = new Song("Order Song " + step, "order" + step % 7, 100 + step);
+                    catalog.addSongToCatalog(song);
+                    expected.add(song);
+                } else {
+                    Song removed = expected.remove(random.nextInt(expected.size()));
+                    assertTrue(catalog.removeSongFromCatalog(removed));
+                }
+                if (step % 97 == 0 && !expected.isEmpty()) {
+                    int index = random.nextInt(expected.size());
+                    assertSame(expected.get(index), catalog.getSongAtIndex(index), "Position " + index);
+                }
+                assertEquals(expected.size(), catalog.size());
+            }
+            assertEquals(expected, catalog.getGlobalCatalog());
+            assertEquals(expected, catalog.songs().collect(Collectors.toList()));
+            assertTrue(catalog.globalCatContains(expected.get(0)));
+            List<Song> byCreator = expected.stream().filter(s -> s.getCreator().equals("order3")).collect(Collectors.toList());
+            assertEquals(byCreator, new ArrayList<>(catalog.searchByPartialCreator("order3")), "Removed Songs should not be scanned");
+        }
+    }
+
+    /**
+     * Verifies that a Song's id keeps naming it while other Songs are removed and added, and is never reused.
+     * <p>Expected Result: Lookups by id find the same Song before and after the changes; a removed Song's id finds nothing.</p>
+     */
+    @Test
+    public void testSongIdsAreStable() {
+        Song imagine = catalog.searchByTitle("Imagine").get(0);
+        Song shallow = catalog.searchByTitle("Shallow").get(0);
+        assertSame(imagine, catalog.getSongById(imagine.getId()));
+        assertSame(imagine, catalog.getSongAtIndex(2));
+
+        assertTrue(catalog.removeSongById(shallow.getId()), "The Song with the id should be removed");
+        assertFalse(catalog.removeSongById(shallow.getId()), "A removed Song's id should not be removed twice");
+        assertNull(catalog.getSongById(shallow.getId()));
+        assertSame(imagine, catalog.getSongById(imagine.getId()), "The id should still name the same Song");
+        assertNotSame(imagine, catalog.getSongAtIndex(2), "Positions shift after a removal");
+
+        Song reupload = new Song("Shallow", "Lady Gaga", 215);
+        assertTrue(catalog.addSongToCatalog(reupload));
+        assertTrue(reupload.getId() > shallow.getId(), "A new Song should get a new id");
+        assertNull(catalog.getSongById(shallow.getId()), "The removed Song's id should not be reused");
+        assertFalse(catalog.addSongToCatalog(new Song(imagine.getId(), "Other", "Other", 1)), "Two catalog Songs cannot share an id");
+        assertTrue(Song.nextId() > imagine.getId());
+    }
+
+    /**
+     * Verifies that artist lookups follow catalog additions and removals.
+     * <p>Expected Result: Only the artist's remaining songs are returned, in catalog order.</p>
+     */
+    @Test
+    public void testSearchByArtistAfterChanges() {
+        catalog.addSongToCatalog(new Song("Second", "artist", 100));
+        catalog.addSongToCatalog(new Song("Third", "artist", 100));
+        catalog.removeSongFromCatalog(new Song("SHAPESHIFTER", "artist", 200));
+
+        List<Song> results = catalog.searchSongByArtist("artist");
+        assertEquals(2, results.size(), "Artist should have 2 songs left");
+        assertEquals("Second", results.get(0).getTitle(), "Results should keep catalog order");
+        assertTrue(catalog.searchSongByArtist("Artist").isEmpty(), "Creator lookup should be case-sensitive");
+    }
+
+    /**
+     * Verifies that misspelled titles and artists are found, closest first.
+     * <p>Expected Result: Matches within the allowed distance are returned, ranked by distance then title.</p>
+     */
+    @Test
+    public void testFuzzySearchFindsMisspellings() {
+        assertEquals(List.of(new Song("Imagine", "John Lennon", 183)), catalog.searchFuzzy("imagnie"),
+                     "A swapped pair of letters is two edits");
+        assertEquals(List.of(new Song("Shallow", "Lady Gaga", 215)), catalog.searchFuzzy("  SHALOW "),
+                     "Case and surrounding spaces should be ignored");
+        assertEquals(List.of(new Song("Imagine", "John Lennon", 183)), catalog.searchFuzzy("jon lenon"),
+                     "Creators should be matched as well as titles");
+
+        catalog.addSongToCatalog(new Song("Shallows", "other", 100));
+        List<Song> results = catalog.searchFuzzy("shallow", 1);
+        assertEquals(2, results.size());
+        assertEquals("Shallow", results.get(0).getTitle(), "The exact title should rank first");
+        assertEquals("Shallows", results.get(1).getTitle());
+    }
+
+    /**
+     * Verifies the distance limits of fuzzy searches, and that removed songs are no longer found.
+     * <p>Expected Result: Short queries must match exactly; removed songs are not returned.</p>
+     */
+    @Test
+    public void testFuzzySearchLimitsAndRemoval() {
+        assertTrue(catalog.searchFuzzy("imxgxne", 1).isEmpty(), "Two edits should not match within distance 1");
+        assertEquals(1, catalog.searchFuzzy("imxgxne", 2).size());
+        assertEquals(List.of(new Song("SHAPESHIFTER", "artist", 200)), catalog.searchFuzzy("artis"),
+                     "Five characters allow one edit");
+        assertTrue(catalog.searchFuzzy("ab").isEmpty(), "Very short queries should not match loosely");
+
+        catalog.removeSongFromCatalog(new Song("Imagine", "John Lennon", 183));
+        assertTrue(catalog.searchFuzzy("imagine").isEmpty(), "A removed song should not be found");
+        catalog.addSongToCatalog(new Song("Imagine", "John Lennon", 183));
+        assertEquals(1, catalog.searchFuzzy("imagine").size(), "A song added again should be found again");
+    }
+
+    /**
+     * Verifies that titles and creators are completed from a partly typed prefix, and follow catalog changes.
+     * <p>Expected Result: Normalized completions, most songs first, without removed songs.</p>
+     */
+    @Test
+    public void testAutocomplete() {
+        assertEquals(List.of("shallow", "shape of you", "shapeshifter"), catalog.autocompleteTitle("  SHA", 5));
+        assertEquals(List.of("shape of you"), catalog.autocompleteTitle("shape ", 5), "A trailing space starts the next word");
+        assertEquals(List.of("shallow"), catalog.autocompleteTitle("sha", 1));
+        assertEquals(3, catalog.countTitlesWithPrefix("sh"));
+        assertEquals(List.of("lady gaga"), catalog.autocompleteCreator("La", 5));
+        catalog.addSongToCatalog(new Song("Shapeshifter", "another artist", 190));
+        assertEquals(List.of("shapeshifter", "shallow", "shape of you"), catalog.autocompleteTitle("sha", 5),
+                     "A title shared by more songs should come first");
+        catalog.removeSongFromCatalog(new Song("Shapeshifter", "another artist", 190));
+
+        catalog.removeSongFromCatalog(new Song("Shallow", "Lady Gaga", 215));
+        assertEquals(List.of("shape of you", "shapeshifter"), catalog.autocompleteTitle("sha", 5));
+        assertTrue(catalog.autocompleteCreator("la", 5).isEmpty(), "A creator with no songs left should not be offered");
+    }
+
+    /**
+     * Verifies the ranking of searchRanked(): exact titles, then prefixes, then other substrings, shorter titles first.
+     * <p>Expected Result: Songs come back in rank order, with the total number of matches.</p>
+     */
+    @Test
+    public void testRankedSearchOrder() {
+        catalog.addSongToCatalog(new Song("Shape", "other", 100));
+        catalog.addSongToCatalog(new Song("The Shape", "other", 100));
+        catalog.addSongToCatalog(new Song("shape", "artist", 100));
+
+        SearchPage page = catalog.searchRanked("SHAPE", 0, 10);
+        assertEquals(5, page.getTotalMatches());
+        assertFalse(page.hasNextPage());
+        assertEquals(List.of(new Song("shape", "artist", 100), new Song("Shape", "other", 100),
+                             new Song("Shape of You", "Ed Sheeran", 233), new Song("SHAPESHIFTER", "artist", 200),
+                             new Song("The Shape", "other", 100)), page.getSongs());
+    }
+
+    /**
+     * Verifies that consecutive pages of searchRanked() together give every match once, in rank order.
+     * <p>Expected Result: The pages match a full sort of every match, and the last page is short.</p>
+     */
+    @Test
+    public void testRankedSearchPages() {
+        for (int i = 0; i < 95; i++) {
+            catalog.addSongToCatalog(new Song((i % 3 == 0 ? "love" : "my love ") + i, "artist" + i % 7, 100 + i));
+        }
+        ArrayList<Song> expected = catalog.searchByPartialTitle("love");
+        expected.sort(Comparator.comparing((Song s) -> s.getTitle().toLowerCase().startsWith("love") ? 0 : 1)
+                                .thenComparingInt(s -> s.getTitle().length())
+                                .thenComparing(s -> s.getTitle().toLowerCase()));
+
+        ArrayList<Song> paged = new ArrayList<>();
+        SearchPage page = catalog.searchRanked("love", 0, 10);
+        while (true) {
+            assertEquals(95, page.getTotalMatches());
+            paged.addAll(page.getSongs());
+            if (!page.hasNextPage()) break;
+            assertEquals(10, page.getSongs().size());
+            page = catalog.searchRanked("love", page.getNextOffset(), 10);
+        }
+        assertEquals(5, page.getSongs().size(), "The last page should hold the remainder");
+        assertEquals(expected, paged);
+        assertTrue(catalog.searchRanked("love", 200, 10).getSongs().isEmpty(), "A page past the end is empty");
+        assertThrows(IllegalArgumentException.class, () -> catalog.searchRanked("love", 0, 0));
+    }
+
+    /**
+     * Verifies that the lazy Streams give the same Songs as the list searches, and compose with other operations.
+     * <p>Expected Result: Stream results, counts and tests match the lists.</p>
+     */
+    @Test
+    public void testStreamsMatchLists() {
+        assertEquals(catalog.getGlobalCatalog(), catalog.songs().collect(Collectors.toList()));
+        assertEquals(catalog.searchByPartialTitle("sha"), catalog.streamByPartialTitle("sha").collect(Collectors.toList()));
+        assertEquals(catalog.searchByPartialTitle("a"), catalog.streamByPartialTitle("a").collect(Collectors.toList()));
+        assertEquals(catalog.searchByTitle("imagine"), catalog.streamByTitle("imagine").collect(Collectors.toList()));
+        assertEquals(catalog.searchSongByArtist("artist"), catalog.streamByArtist("artist").collect(Collectors.toList()));
+        assertEquals(0, catalog.streamByArtist("nobody").count());
+
+        assertEquals(2, catalog.streamByPartialTitle("sha").filter(s -> s.getDuration() > 200).count());
+        assertTrue(catalog.songs().anyMatch(s -> s.getCreator().equals("Lady Gaga")));
+        assertEquals(4, catalog.size());
+    }
+
+    /**
+     * Verifies that a Stream reads the catalog as it was when the Stream was created,
+     * and that the global catalog cannot be changed through its getter.
+     * <p>Expected Result: Changing the catalog while a Stream is read does not fail or change the Stream's Songs.</p>
+     */
+    @Test
+    public void testStreamIsConsistentView() {
+        Stream<Song> before = catalog.songs();
+        Iterator<Song> byArtist = catalog.streamByArtist("artist").iterator();
+        catalog.addSongToCatalog(new Song("Later", "artist", 100));
+        catalog.removeSongFromCatalog(new Song("Imagine", "John Lennon", 183));
+
+        assertEquals(4, before.count(), "The Stream should not see later changes");
+        assertEquals(new Song("SHAPESHIFTER", "artist", 200), byArtist.next());
+        assertFalse(byArtist.hasNext());
+        assertEquals(4, catalog.songs().count(), "A new Stream should see the changes");
+        assertTrue(catalog.songs().anyMatch(s -> s.getTitle().equals("Later")));
+
+        assertThrows(UnsupportedOperationException.class, () -> catalog.getGlobalCatalog().add(new Song("X", "y", 1)));
+    }
+
+    /**
+     * Verifies that a sharded catalog searched in parallel finds the same creators, in catalog order,
+     * as a single-threaded catalog, through additions and removals.
+     * <p>Expected Result: Both catalogs return identical lists for every query.</p>
+     */
+    @Test
+    public void testShardedCreatorSearchMatchesSequential() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            SearchService sharded = new SearchService(7, 0, pool);
+            SearchService sequential = new SearchService();
+            assertEquals(7, sharded.getShardCount());
+            assertEquals(1, sequential.getShardCount());
+            Random random = new Random(5);
+            ArrayList<Song> added = new ArrayList<>();
+            for (int i = 0; i < 3_000; i++) {
+                Song song = new Song("Sharded " + i, "Band " + random.nextInt(40), 100 + i);
+                sharded.addSongToCatalog(song);
+                sequential.addSongToCatalog(song);
+                added.add(song);
+                if (i % 5 == 0) {
+                    Song removed = added.remove(random.nextInt(added.size()));
+                    sharded.removeSongFromCatalog(removed);
+                    sequential.removeSongFromCatalog(removed);
+                }
+            }
+            for (String query : new String[] {"band 1", "BAND 3", "d 2", "", "nobody"}) {
+                ArrayList<Song> expected = sequential.searchByPartialCreator(query);
+                assertEquals(expected, sharded.searchByPartialCreator(query), "Query \"" + query + "\"");
+            }
+            assertEquals(sequential.getGlobalCatalog(), sharded.searchByPartialCreator(""), "Results should be in catalog order");
+            assertEquals(List.of(new Song("Imagine", "John Lennon", 183)), catalog.searchByPartialCreator("lenn"));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Verifies that catalogs backed by an on-heap or off-heap SongStore find the same Songs as a catalog
+     * of Song objects, in catalog order, through additions and removals.
+     * <p>Expected Result: Every search returns equal lists whichever way the records are held.</p>
+     */
+    @Test
+    public void testSongStoreBackedCatalogsMatchShards() {
+        SearchService shards = new SearchService();
+        SearchService compact = new SearchService(new CompactSongStore());
+        SearchService offHeap = new SearchService(new OffHeapSongStore());
+        Random random = new Random(11);
+        ArrayList<Song> added = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            Song song = new Song("Stored " + i, (i % 4 == 0 ? "Beyonc\u00e9 " : "Band ") + random.nextInt(30), 100 + i);
+            for (SearchService catalog : List.of(shards, compact, offHeap)) catalog.addSongToCatalog(song);
+            added.add(song);
+            if (i % 3 == 0) {
+                Song removed = added.remove(random.nextInt(added.size()));
+                for (SearchService catalog : List.of(shards, compact, offHeap)) catalog.removeSongFromCatalog(removed);
+            }
+        }
+        assertNull(shards.getSongStore());
+        assertEquals(added.size(), offHeap.getSongStore().size());
+        for (String query : new String[] {"band 1", "BEYONCE", "e 2", "", "nobody"}) {
+            ArrayList<Song> expected = shards.searchByPartialCreator(query);
+            assertEquals(expected, compact.searchByPartialCreator(query), "Query \"" + query + "\"");
+            assertEquals(expected, offHeap.searchByPartialCreator(query), "Query \"" + query + "\"");
+            List<Integer> ids = expected.stream().map(Song::getId).collect(Collectors.toList());
+            assertEquals(ids, offHeap.searchByPartialCreator(query).stream().map(Song::getId).collect(Collectors.toList()),
+                         "Views over the records should have the Songs' ids");
+        }
+        assertEquals(shards.getGlobalCatalog(), offHeap.searchByPartialCreator(""), "Results should be in catalog order");
+        assertFalse(offHeap.addSongToCatalog(new Song(null, "Band 1", 100)), "A Song with no title cannot be stored");
+    }
+
+    /**
+     * Verifies that Songs added to the catalog in one batch, as a snapshot is loaded, are found by every
+     * search just as if they had been added one at a time, before and after many of them are removed.
+     * <p>Expected Result: Both catalogs return identical results for partial, ranked, fuzzy and
+     * autocomplete searches, and for short queries.</p>
+     */
+    @Test
+    public void testBatchAddMatchesSongBySong() {
+        SearchService oneByOne = new SearchService();
+        SearchService batch = new SearchService();
+        Random random = new Random(17);
+        ArrayList<Song> songs = new ArrayList<>();
+        for (int i = 0; i < 1_500; i++) {
+            songs.add(new Song("Batch Song " + random.nextInt(400), "Band " + random.nextInt(50), 100 + random.nextInt(20)));
+        }
+        songs.add(songs.get(3));
+        ArrayList<Song> added = new ArrayList<>();
+        for (Song song : songs) {
+            if (oneByOne.addSongToCatalog(song)) added.add(song);
+        }
+        assertEquals(added, batch.addSongsToCatalog(songs), "The batch should accept the same Songs");
+        assertBatchMatches(oneByOne, batch);
+        for (int i = 0; i < 1_000; i++) {
+            Song removed = added.remove(random.nextInt(added.size()));
+            oneByOne.removeSongFromCatalog(removed);
+            batch.removeSongFromCatalog(removed);
+        }
+        assertBatchMatches(oneByOne, batch);
+    }
+
+    /**
+     * Asserts that two catalogs return the same results for a set of searches.
+     *
+     * @param expected the catalog built Song by Song
+     * @param actual   the catalog built in one batch
+     */
+    private static void assertBatchMatches(SearchService expected, SearchService actual) {
+        assertEquals(expected.getGlobalCatalog(), actual.getGlobalCatalog());
+        for (String query : new String[] {"", "s", "g 1", "song 12", "batch song 3", "nobody"}) {
+            assertEquals(expected.searchByPartialTitle(query), actual.searchByPartialTitle(query), "Query \"" + query + "\"");
+            assertEquals(expected.streamByPartialTitle(query).collect(Collectors.toList()),
+                         actual.streamByPartialTitle(query).collect(Collectors.toList()), "Query \"" + query + "\"");
+            assertEquals(expected.searchRanked(query, 0, 20).getSongs(), actual.searchRanked(query, 0, 20).getSongs());
+            assertEquals(expected.searchByPartialCreator(query), actual.searchByPartialCreator(query));
+            assertEquals(expected.autocompleteTitle(query, 10), actual.autocompleteTitle(query, 10));
+            assertEquals(expected.autocompleteCreator(query, 10), actual.autocompleteCreator(query, 10));
+            assertEquals(expected.countTitlesWithPrefix(query), actual.countTitlesWithPrefix(query));
+        }
+        for (String query : new String[] {"Bach Song 12", "Batch Sogn 7", "Band"}) {
+            assertEquals(new HashSet<>(expected.searchFuzzy(query)), new HashSet<>(actual.searchFuzzy(query)), "Query \"" + query + "\"");
+        }
+    }
+}
@@ -0,0 +1,383 @@
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * <p><b>Unit Test Suite for the StorageEngine (JUnit 5)</b></p>
+ *
+ * <p>Each test opens an engine on an empty directory, makes changes through the
+ * usual UserRegistry, SearchService, Listener and Playlist methods, then opens a
+ * second engine on the same directory and checks that replaying the journal
+ * restores the same data. Songs are unique to each test because the index from
+ * Songs to Playlists is shared by every Playlist.</p>
+ */
+public class TestStorageEngineJUnit {
+    private Path directory;
+    private PrintStream originalOut;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("storage-engine-test");
+        originalOut = System.out;
+        System.setOut(new PrintStream(new java.io.ByteArrayOutputStream())); // Listener methods print messages
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        System.setOut(originalOut);
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    /**
+     * Verifies that every kind of change is restored by replaying the journal.
+     * <p>Expected Result: The reopened registry, catalog and libraries match the ones that were saved.</p>
+     */
+    @Test
+    public void testChangesAreRestoredAfterReopening() throws IOException {
+        UserRegistry users = new UserRegistry();
+        SearchService catalog = new SearchService();
+        Song one = new Song("Journal One", "journalist", 100);
+        Song two = new Song("Journal Two", "journalist", 200);
+        Song three = new Song("Journal Three", "journalist", 300);
+        StorageEngine writer = StorageEngine.open(directory, users, catalog);
+        try {
+            Listener listener = new Listener("journal@example.com", "journaler", "Passw0rd!", 1, new ArrayList<>());
+            users.add(listener);
+            users.add(new Artist("journalist@example.com", "journalist", "Passw0rd!", 2));
+            users.add(new Admin("root@example.com", "journaladmin", "Passw0rd!", 3));
+            Listener leaving = new Listener("leaving@example.com", "leaving", "Passw0rd!", 4, new ArrayList<>());
+            users.add(leaving);
+            leaving.createNewPlaylist("Gone").addSong(one);
+            users.remove(leaving);
+            leaving.clearLibrary();
+
+            catalog.addSongToCatalog(one);
+            catalog.addSongToCatalog(two);
+            catalog.addSongToCatalog(three);
+            catalog.removeSongFromCatalog(two);
+
+            Playlist deleted = listener.createNewPlaylist("Deleted");
+            deleted.addSong(one);
+            Playlist kept = listener.createNewPlaylist("Kept");
+            kept.addSong(one);
+            kept.addSong(two);
+            kept.addSong(three);
+            kept.removeSong(two);
+            kept.removeSongAtIndex(0);
+            kept.addSong(one);
+            listener.deletePlaylistAtIndex(0);
+        } finally {
+            writer.close();
+        }
+
+        UserRegistry restoredUsers = new UserRegistry();
+        SearchService restoredCatalog = new SearchService();
+        try (StorageEngine engine = StorageEngine.open(directory, restoredUsers, restoredCatalog)) {
+            assertEquals(0, engine.getBytesDiscarded(), "A cleanly closed journal should not lose any bytes");
+            assertEquals(3, restoredUsers.size(), "The removed listener should stay removed");
+            assertTrue(restoredUsers.findById(1) instanceof Listener);
+            assertTrue(restoredUsers.findById(2) instanceof Artist);
+            assertTrue(restoredUsers.findById(3) instanceof Admin);
+            assertNull(restoredUsers.findById(4));
+            assertEquals(5, restoredUsers.nextId(), "Ids of removed users should not be reused");
+            assertEquals("Passw0rd!", restoredUsers.findByUsername("journaler").getPassword());
+
+            assertEquals(List.of(one, three), restoredCatalog.getGlobalCatalog());
+            assertEquals(three, restoredCatalog.getSongById(three.getId()), "Songs should keep their ids");
+            assertNull(restoredCatalog.getSongById(two.getId()));
+
+            Listener listener = (Listener) restoredUsers.findById(1);
+            assertEquals(1, listener.getLibrary().size(), "Only the kept playlist should remain");
+            Playlist kept = listener.getPlaylistAtIndex(0);
+            assertEquals("Kept", kept.getName());
+            assertEquals(List.of(three, one), kept.getTracklist());
+            assertSame(restoredCatalog.getSongById(one.getId()), kept.getSongAtIndex(1), "Playlists should share the catalog's Songs");
+            assertEquals(400, kept.getTotalDuration());
+            assertEquals(List.of(kept), restoredUsers.getPlaylistIndex().getPlaylistsContaining(three),
+                         "Restored playlists should be indexed, and only in their own registry");
+        }
+    }
+
+    /**
+     * Verifies that changes made after a restart are appended and restored as well.
+     * <p>Expected Result: Changes from both sessions are present after a third opening.</p>
+     */
+    @Test
+    public void testRestoredObjectsKeepRecording() throws IOException {
+        Song song = new Song("Second Session", "journalist", 150);
+        UserRegistry users = new UserRegistry();
+        StorageEngine engine = StorageEngine.open(directory, users, new SearchService());
+        try {
+            users.add(new Listener("again@example.com", "again", "Passw0rd!", 1, new ArrayList<>()));
+            ((Listener) users.findById(1)).createNewPlaylist("Later");
+        } finally {
+            engine.close();
+        }
+        users = new UserRegistry();
+        engine = StorageEngine.open(directory, users, new SearchService());
+        try {
+            ((Listener) users.findById(1)).getPlaylistAtIndex(0).addSong(song);
+        } finally {
+            engine.close();
+        }
+        users = new UserRegistry();
+        engine = StorageEngine.open(directory, users, new SearchService());
+        try {
+            assertEquals(List.of(song), ((Listener) users.findById(1)).getPlaylistAtIndex(0).getTracklist());
+        } finally {
+            engine.close();
+        }
+    }
+
+    /**
+     * Verifies that a batch of catalog additions is saved as one record and restored in order.
+     * <p>Expected Result: One record is written, and the reopened catalog holds the batch without duplicates.</p>
+     */
+    @Test
+    public void testBatchAdditionIsOneRecord() throws IOException {
+        SearchService catalog = new SearchService();
+        Song first = new Song("Batch One", "journalist", 100);
+        Song second = new Song("Batch Two", "journalist", 100);
+        try (StorageEngine engine = StorageEngine.open(directory, new UserRegistry(), catalog)) {
+            catalog.addSongToCatalog(first);
+            long before = engine.getRecordsWritten();
+            assertEquals(List.of(second), catalog.addSongsToCatalog(List.of(first, second, second)));
+            assertEquals(before + 1, engine.getRecordsWritten());
+        }
+        SearchService restored = new SearchService();
+        StorageEngine engine = StorageEngine.open(directory, new UserRegistry(), restored);
+        try {
+            assertEquals(List.of(first, second), restored.getGlobalCatalog());
+        } finally {
+            engine.close();
+        }
+    }
+
+    /**
+     * Verifies that a record cut short by a crash is discarded and does not block later writes.
+     * <p>Expected Result: Complete records are restored, the partial one is truncated, and new records replay.</p>
+     */
+    @Test
+    public void testTornFinalRecordIsDiscarded() throws IOException {
+        SearchService catalog = new SearchService();
+        Song kept = new Song("Torn Kept", "journalist", 100);
+        Song torn = new Song("Torn Lost", "journalist", 100);
+        StorageEngine writer = StorageEngine.open(directory, new UserRegistry(), catalog);
+        try {
+            catalog.addSongToCatalog(kept);
+            catalog.addSongToCatalog(torn);
+        } finally {
+            writer.close();
+        }
+        Path journal = directory.resolve("journal-0.log");
+        long fullSize = Files.size(journal);
+        try (FileChannel channel = FileChannel.open(journal, StandardOpenOption.WRITE)) {
+            channel.truncate(fullSize - 5); // The last record stops part way through
+        }
+
+        SearchService restored = new SearchService();
+        Song after = new Song("Torn After", "journalist", 100);
+        try (StorageEngine engine = StorageEngine.open(directory, new UserRegistry(), restored)) {
+            assertEquals(1, engine.getRecordsReplayed());
+            assertTrue(engine.getBytesDiscarded() > 0, "The partial record should be reported");
+            assertEquals(List.of(kept), restored.getGlobalCatalog());
+            restored.addSongToCatalog(after);
+        }
+
+        SearchService reopened = new SearchService();
+        try (StorageEngine engine = StorageEngine.open(directory, new UserRegistry(), reopened)) {
+            assertEquals(0, engine.getBytesDiscarded());
+            assertEquals(List.of(kept, after), reopened.getGlobalCatalog());
+        }
+    }
+
+    /**
+     * Verifies that a final record whose bytes were not all written correctly fails its checksum and is discarded.
+     * <p>Expected Result: Only the records before the corrupt one are restored.</p>
+     */
+    @Test
+    public void testCorruptFinalRecordIsDiscarded() throws IOException {
+        SearchService catalog = new SearchService();
+        Song kept = new Song("Corrupt Kept", "journalist", 100);
+        StorageEngine writer = StorageEngine.open(directory, new UserRegistry(), catalog);
+        try {
+            catalog.addSongToCatalog(kept);
+            catalog.addSongToCatalog(new Song("Corrupt Lost", "journalist", 100));
+        } finally {
+            writer.close();
+        }
+        Path journal = directory.resolve("journal-0.log");
+        try (FileChannel channel = FileChannel.open(journal, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer last = ByteBuffer.allocate(1);
+            channel.read(last, channel.size() - 1);
+            last.put(0, (byte) (last.get(0) ^ 0xFF));
+            last.rewind();
+            channel.write(last, channel.size() - 1);
+        }
+
+        SearchService restored = new SearchService();
+        try (StorageEngine engine = StorageEngine.open(directory, new UserRegistry(), restored)) {
+            assertEquals(List.of(kept), restored.getGlobalCatalog());
+            assertTrue(engine.getBytesDiscarded() > 0);
+        }
+    }
+
+    /**
+     * Verifies that concurrent writers share flushes to disk and that none of their records are lost.
+     * <p>Expected Result: Every record is written and replayed, using fewer forces than records.</p>
+     */
+    @Test
+    public void testConcurrentWritersShareGroupCommits() throws Exception {
+        int threads = 16;
+        int perThread = 100;
+        StorageEngine engine = StorageEngine.open(directory, new UserRegistry(), new SearchService());
+        ArrayList<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int id = t;
+            workers.add(new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    engine.songAdded(new Song("Group " + id + " " + i, "journalist", 100));
+                }
+            }));
+        }
+        for (Thread w : workers) w.start();
+        for (Thread w : workers) w.join();
+        engine.close();
+
+        assertEquals(threads * perThread, engine.getRecordsWritten());
+        assertTrue(engine.getBatchesWritten() < engine.getRecordsWritten(), "Waiting writers should share a force");
+
+        SearchService restored = new SearchService();
+        StorageEngine reopened = StorageEngine.open(directory, new UserRegistry(), restored);
+        try {
+            assertEquals(threads * perThread, restored.getGlobalCatalog().size());
+        } finally {
+            reopened.close();
+        }
+    }
+
+    /**
+     * Verifies that a closed engine refuses further changes rather than silently losing them.
+     * <p>Expected Result: Recording a change after close() throws IllegalStateException.</p>
+     */
+    @Test
+    public void testClosedEngineRejectsChanges() throws IOException {
+        SearchService catalog = new SearchService();
+        StorageEngine engine = StorageEngine.open(directory, new UserRegistry(), catalog);
+        engine.close();
+        engine.close(); // Closing twice is harmless
+        assertThrows(IllegalStateException.class, () -> catalog.addSongToCatalog(new Song("Closed", "journalist", 100)));
+    }
+
+    /**
+     * Verifies that a checkpoint saves everything in a snapshot, starts an empty journal, and
+     * removes the previous generation, and that later changes are replayed on top of the snapshot.
+     * <p>Expected Result: The reopened data matches, with only the post-checkpoint records replayed.</p>
+     */
+    @Test
+    public void testCheckpointRestoresSnapshotAndLaterChanges() throws IOException {
+        UserRegistry users = new UserRegistry();
+        SearchService catalog = new SearchService();
+        Song inCatalog = new Song("Snapshot Catalog", "journalist", 180);
+        Song playlistOnly = new Song("Snapshot Playlist Only", "elsewhere", 90);
+        Song later = new Song("Snapshot Later", "journalist", 60);
+        try (StorageEngine engine = StorageEngine.open(directory, users, catalog)) {
+            Listener listener = new Listener("snap@example.com", "snapper", "Passw0rd!", 1, new ArrayList<>());
+            users.add(listener);
+            users.add(new Artist("snapartist@example.com", "snapartist", "Passw0rd!", 2));
+            Listener removed = new Listener("gone@example.com", "snapgone", "Passw0rd!", 7, new ArrayList<>());
+            users.add(removed);
+            users.remove(removed);
+            catalog.addSongToCatalog(inCatalog);
+            Playlist mix = listener.createNewPlaylist("Mix");
+            mix.addSong(playlistOnly);
+            mix.addSong(inCatalog);
+            listener.createNewPlaylist("Empty");
+
+            engine.checkpoint();
+            assertEquals(1, engine.getGeneration());
+            assertEquals(0, engine.getRecordsSinceCheckpoint());
+            assertTrue(Files.exists(directory.resolve("snapshot-1.snap")));
+            assertFalse(Files.exists(directory.resolve("journal-0.log")), "The previous journal should be deleted");
+
+            catalog.addSongToCatalog(later);
+            mix.addSong(later);
+        }
+
+        UserRegistry restoredUsers = new UserRegistry();
+        SearchService restoredCatalog = new SearchService();
+        try (StorageEngine engine = StorageEngine.open(directory, restoredUsers, restoredCatalog)) {
+            assertEquals(1, engine.getGeneration());
+            assertEquals(2, engine.getRecordsReplayed(), "Only the changes after the checkpoint should be replayed");
+            assertEquals(2, restoredUsers.size());
+            assertEquals(8, restoredUsers.nextId(), "The id of the removed user should not be reused");
+            assertTrue(restoredUsers.findById(2) instanceof Artist);
+            assertEquals(List.of(inCatalog, later), restoredCatalog.getGlobalCatalog());
+
+            Listener listener = (Listener) restoredUsers.findByUsername("snapper");
+            assertEquals(2, listener.getLibrary().size());
+            Playlist mix = listener.getPlaylistAtIndex(0);
+            assertEquals("Mix", mix.getName());
+            assertEquals(List.of(playlistOnly, inCatalog, later), mix.getTracklist());
+            assertSame(restoredCatalog.getSongAtIndex(0), mix.getTracklist().get(1), "Playlists should share the catalog's Songs");
+            assertSame(restoredCatalog.getSongById(later.getId()), mix.getTracklist().get(2));
+            assertEquals(playlistOnly.getId(), mix.getSongAtIndex(0).getId(), "Songs only in playlists should keep their ids too");
+            assertEquals(inCatalog.getId(), restoredCatalog.getSongAtIndex(0).getId());
+            assertEquals("Empty", listener.getPlaylistAtIndex(1).getName());
+        }
+    }
+
+    /**
+     * Verifies that checkpointIfDue() only checkpoints once enough records have built up.
+     * <p>Expected Result: No checkpoint below the interval; one checkpoint once it is reached.</p>
+     */
+    @Test
+    public void testCheckpointIfDueFollowsInterval() throws IOException {
+        SearchService catalog = new SearchService();
+        try (StorageEngine engine = StorageEngine.open(directory, new UserRegistry(), catalog)) {
+            engine.setCheckpointInterval(3);
+            catalog.addSongToCatalog(new Song("Due One", "journalist", 60));
+            catalog.addSongToCatalog(new Song("Due Two", "journalist", 60));
+            assertFalse(engine.checkpointIfDue());
+            catalog.addSongToCatalog(new Song("Due Three", "journalist", 60));
+            assertTrue(engine.checkpointIfDue());
+            assertEquals(1, engine.getGeneration());
+            assertFalse(engine.checkpointIfDue(), "Nothing has changed since the checkpoint");
+        }
+    }
+
+    /**
+     * Verifies that files left by a checkpoint that did not finish are ignored and removed,
+     * and that a journal from before checkpoints existed is still loaded.
+     * <p>Expected Result: The data from the old journal is restored and the stray files are deleted.</p>
+     */
+    @Test
+    public void testUnfinishedCheckpointAndLegacyJournal() throws IOException {
+        SearchService catalog = new SearchService();
+        Song song = new Song("Legacy Song", "journalist", 60);
+        StorageEngine writer = StorageEngine.open(directory, new UserRegistry(), catalog);
+        try {
+            catalog.addSongToCatalog(song);
+        } finally {
+            writer.close();
+        }
+        Files.move(directory.resolve("journal-0.log"), directory.resolve("journal.log"));
+        Files.write(directory.resolve("snapshot-1.snap.tmp"), new byte[] {1, 2, 3});
+
+        SearchService restored = new SearchService();
+        try (StorageEngine engine = StorageEngine.open(directory, new UserRegistry(), restored)) {
+            assertEquals(0, engine.getGeneration());
+            assertEquals(List.of(song), restored.getGlobalCatalog());
+        }
+        assertFalse(Files.exists(directory.resolve("snapshot-1.snap.tmp")));
+        assertFalse(Files.exists(directory.resolve("journal.log")));
+    }
+}
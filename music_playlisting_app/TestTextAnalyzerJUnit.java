@@ -0,0 +1,61 @@
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * <p><b>Unit Test Suite for the StandardAnalyzer (JUnit 5)</b></p>
+ *
+ * <p>These tests check that titles and creator names differing only in case, accents, punctuation,
+ * spacing or compatibility forms are given the same search key, and how keys are split into words.</p>
+ */
+public class TestTextAnalyzerJUnit {
+    private final TextAnalyzer analyzer = TextAnalyzer.STANDARD;
+
+    /**
+     * Verifies that keys are lower-cased and trimmed, with inner whitespace collapsed.
+     * <p>Expected Result: Differently spaced and cased text gives the same key.</p>
+     */
+    @Test
+    public void testCaseAndSpacing() {
+        assertEquals("shape of you", analyzer.analyze("  Shape\tof   YOU \n"));
+        assertEquals("", analyzer.analyze(null));
+        assertEquals("", analyzer.analyze("   "));
+    }
+
+    /**
+     * Verifies that accents are stripped and letters are case folded, including letters that fold to two letters.
+     * <p>Expected Result: Accented, German and full-width text gives the plain ASCII key.</p>
+     */
+    @Test
+    public void testUnicodeFolding() {
+        assertEquals("beyonce deja vu", analyzer.analyze("Beyonc\u00e9 - D\u00e9j\u00e0 Vu"));
+        assertEquals("motley crue", analyzer.analyze("M\u00f6tley Cr\u00fce"));
+        assertEquals("strasse", analyzer.analyze("Stra\u00dfe"));
+        assertEquals("abc 123", analyzer.analyze("\uff21\uff42\uff43 \uff11\uff12\uff13"));
+        assertEquals("find", analyzer.analyze("\ufb01nd"));
+    }
+
+    /**
+     * Verifies that apostrophes join words while other punctuation separates them.
+     * <p>Expected Result: Punctuation never appears in a key, and never leaves a double space.</p>
+     */
+    @Test
+    public void testPunctuation() {
+        assertEquals("dont stop me now", analyzer.analyze("Don't Stop Me Now!"));
+        assertEquals("dont stop", analyzer.analyze("Don\u2019t stop"));
+        assertEquals("ac dc", analyzer.analyze("AC/DC"));
+        assertEquals("hello goodbye", analyzer.analyze("Hello, -- Goodbye..."));
+        assertEquals("", analyzer.analyze("?!"));
+    }
+
+    /**
+     * Verifies that tokenize() gives the words of the key.
+     * <p>Expected Result: The tokens joined by spaces equal the key, and empty text has no tokens.</p>
+     */
+    @Test
+    public void testTokenize() {
+        assertArrayEquals(new String[] {"rock", "n", "roll"}, analyzer.tokenize("Rock 'n' Roll"));
+        assertArrayEquals(new String[0], analyzer.tokenize(" - "));
+        String text = "  Caf\u00e9 del Mar (Remix) ";
+        assertEquals(analyzer.analyze(text), String.join(" ", analyzer.tokenize(text)));
+    }
+}
@@ -51,12 +51,12 @@ public class TestUAT {
      * Test Case 1:
      * Verifies that user login succeeds with valid credentials.
      *
-     * <p><b>Expected Result:</b> {@link LoginService#authenticate(String, String, List)} returns
+     * <p><b>Expected Result:</b> {@link LoginService#authenticate(String, String, UserRegistry)} returns
      * a non-null {@link User} object.</p>
      */
     public void testUserLoginSuccess() {
         LoginService loginService = new LoginService();
-        List<User> users = new ArrayList<>();
+        UserRegistry users = new UserRegistry();
         users.add(new Listener("testuser@gmail.com", "testuser", "password", 1, new ArrayList<>()));
 
         User loggedInUser = loginService.authenticate("testuser", "password", users);
@@ -73,7 +73,7 @@ public class TestUAT {
      */
     public void testUserLoginFail() {
         LoginService loginService = new LoginService();
-        List<User> users = new ArrayList<>();
+        UserRegistry users = new UserRegistry();
         users.add(new Listener("testuser@gmail.com", "testuser", "password", 1, new ArrayList<>()));
 
         User loggedInUser = loginService.authenticate("testuser", "wrongpassword", users);
@@ -91,7 +91,7 @@ public class TestUAT {
      */
     public void testUserLoginLockout() {
         LoginService loginService = new LoginService();
-        List<User> users = new ArrayList<>();
+        UserRegistry users = new UserRegistry();
         users.add(new Listener("testuser@gmail.com", "testuser", "password", 1, new ArrayList<>()));
 
         // Simulate 3 failed login attempts
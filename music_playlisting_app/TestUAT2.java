@@ -99,7 +99,7 @@ public class TestUAT2 {
         playlist.addSong(song);
 
         try {
-            ArrayList<Song> PS = playlist.getTracklist();
+            List<Song> PS = playlist.getTracklist();
             int before = PS.size();
             Song songToRemove = PS.get(0);
             playlist.removeSongAtIndex(0);
@@ -25,7 +25,7 @@ public class TestUATJUnit {
     private LoginService loginService;
 
     /** Stores mock users for authentication and test purposes. */
-    private List<User> users;
+    private UserRegistry users;
 
     /**
      * Initializes common dependencies before each test case executes.
@@ -37,14 +37,14 @@ public class TestUATJUnit {
     @BeforeEach
     public void setup() {
         loginService = new LoginService();
-        users = new ArrayList<>();
+        users = new UserRegistry();
         users.add(new Listener("testuser@gmail.com", "testuser", "password", 1, new ArrayList<>()));
     }
 
     /**
      * Test Case 1:
      * Verifies that a user can successfully log in with correct credentials.
-     * <p>Expected Result: {@link LoginService#authenticate(String, String, List)} returns a valid {@link User} object.</p>
+     * <p>Expected Result: {@link LoginService#authenticate(String, String, UserRegistry)} returns a valid {@link User} object.</p>
      */
     @Test
     public void testUserLoginSuccess() {
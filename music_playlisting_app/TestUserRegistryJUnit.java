@@ -0,0 +1,140 @@
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p><b>Unit Test Suite for the UserRegistry (JUnit 5)</b></p>
+ *
+ * <p>Covers the case-insensitive username and email indexes, id lookup and
+ * the duplicate checks used by account creation.</p>
+ */
+public class TestUserRegistryJUnit {
+
+    /** Registry under test, rebuilt before every test. */
+    private UserRegistry users;
+
+    /**
+     * Registers a Listener and an Artist before each test case executes.
+     */
+    @BeforeEach
+    public void setup() {
+        users = new UserRegistry();
+        users.add(new Listener("testuser@gmail.com", "testuser", "password", 1, new ArrayList<>()));
+        users.add(new Artist("artist@gmail.com", "artist", "artistpass", 2));
+    }
+
+    /**
+     * Verifies that usernames and emails are looked up ignoring case.
+     * <p>Expected Result: Differently-cased lookups find the registered accounts.</p>
+     */
+    @Test
+    public void testLookupsIgnoreCase() {
+        assertEquals(1, users.findByUsername("TestUser").getId(), "Username lookup should ignore case");
+        assertEquals(2, users.findByEmail("ARTIST@gmail.com").getId(), "Email lookup should ignore case");
+        assertEquals("artist", users.findById(2).getUsername(), "Id lookup should find the Artist");
+        assertNull(users.findByUsername("nobody"), "Unknown username should not be found");
+    }
+
+    /**
+     * Verifies that accounts clashing on username, email or id are refused.
+     * <p>Expected Result: Each duplicate is rejected and the registry size is unchanged.</p>
+     */
+    @Test
+    public void testDuplicatesRejected() {
+        assertFalse(users.add(new Listener("other@gmail.com", "TESTUSER", "password", 3, new ArrayList<>())), "Duplicate username should be rejected");
+        assertFalse(users.add(new Listener("TestUser@Gmail.com", "another", "password", 3, new ArrayList<>())), "Duplicate email should be rejected");
+        assertFalse(users.add(new Listener("other@gmail.com", "another", "password", 2, new ArrayList<>())), "Duplicate id should be rejected");
+        assertEquals(2, users.size(), "Registry should still contain 2 users");
+    }
+
+    /**
+     * Verifies that removing a user frees its username and email but never its id.
+     * <p>Expected Result: The username can be registered again with a fresh id.</p>
+     */
+    @Test
+    public void testRemoveFreesNamesButNotIds() {
+        User removed = users.remove(0);
+        assertEquals("testuser", removed.getUsername(), "First registered user should be removed");
+        assertFalse(users.isUsernameTaken("testuser"), "Username should be free after removal");
+        assertFalse(users.isEmailTaken("testuser@gmail.com"), "Email should be free after removal");
+        assertEquals(3, users.nextId(), "Ids should not be reused after a removal");
+    }
+
+    /**
+     * Verifies that Users registered at once on many threads through addWithNextId() each get their own id.
+     * <p>Expected Result: Every User is added, with ids following on from the existing ones without gaps or repeats.</p>
+     */
+    @Test
+    public void testAddWithNextIdFromManyThreads() throws Exception {
+        int count = 200;
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            int first = t;
+            threads[t] = new Thread(() -> {
+                for (int i = first; i < count; i += threads.length) {
+                    int n = i;
+                    assertNotNull(users.addWithNextId(id -> new Artist("many" + n + "@gmail.com", "many" + n, "password", id)));
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) thread.join();
+        assertEquals(count + 2, users.size(), "Every User should be added");
+        for (int id = 3; id < count + 3; id++) {
+            assertNotNull(users.findById(id), "Id " + id + " should be used once");
+        }
+        assertNull(users.addWithNextId(id -> new Artist("many0@gmail.com", "fresh", "password", id)),
+                   "A clashing User should not be added");
+        assertEquals(count + 3, users.nextId());
+    }
+
+    /**
+     * Verifies that lookups do not wait while an addition is being written to a slow MutationLog,
+     * and that the User being added is not found until its record is written, though its username is taken.
+     * <p>Expected Result: Lookups answer while the write is blocked; the new User appears once it finishes.</p>
+     */
+    @Test
+    public void testLookupsDoNotWaitForTheLog() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        users.setMutationLog(new MutationLog() {
+            @Override
+            public void userAdded(User user) {
+                writing.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        Thread adder = new Thread(() -> users.add(new Artist("slow@gmail.com", "slowuser", "password", 3)));
+        adder.start();
+        try {
+            assertTrue(writing.await(5, TimeUnit.SECONDS), "The addition should reach the log");
+            assertNotNull(users.findByUsername("testuser"), "Lookups should answer while the log is being written");
+            assertNull(users.findByUsername("slowuser"), "A User should not be found before its addition is recorded");
+            assertNull(users.findById(3));
+            assertTrue(users.isUsernameTaken("slowuser"), "Its username should already be taken");
+            assertFalse(users.add(new Artist("other@gmail.com", "SlowUser", "password", 4)), "No one else may take it meanwhile");
+        } finally {
+            release.countDown();
+            adder.join();
+        }
+        assertNotNull(users.findByUsername("slowuser"), "The User should be found once its addition is recorded");
+        assertEquals(3, users.size());
+    }
+
+    /**
+     * Verifies that logging in still requires the exact username.
+     * <p>Expected Result: A differently-cased username does not authenticate.</p>
+     */
+    @Test
+    public void testLoginIsCaseSensitive() {
+        LoginService loginService = new LoginService();
+        assertNull(loginService.authenticate("TESTUSER", "password", users), "Login should require the exact username");
+        assertNotNull(loginService.authenticate("testuser", "password", users), "Login should succeed with the exact username");
+    }
+}
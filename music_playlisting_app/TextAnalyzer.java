@@ -0,0 +1,33 @@
+/**
+ * Turns a title or creator name into the key that searches compare against.
+ *
+ * SearchService runs its TextAnalyzer once when a Song enters the catalog and keeps the keys in its indexes,
+ * and runs it once on each query, so searches never re-normalize the catalog. Two texts match exactly when
+ * their keys are equal, so an analyzer decides which differences in case, accents, punctuation and spacing
+ * searches ignore.
+ *
+ * An analyzer must always give the same key for the same text, since keys are worked out again when Songs
+ * are removed.
+ */
+public interface TextAnalyzer {
+    // Folds accents, case and punctuation; see StandardAnalyzer
+    TextAnalyzer STANDARD = new StandardAnalyzer();
+
+    /**
+     * Splits a text into normalized words.
+     *
+     * @param text the text to analyze; null is treated as empty
+     * @return String[] the text's words, in order
+     */
+    String[] tokenize(String text);
+
+    /**
+     * Works out the search key for a text: its normalized words, separated by single spaces.
+     *
+     * @param text the text to analyze; null is treated as empty
+     * @return String the search key
+     */
+    default String analyze(String text) {
+        return String.join(" ", tokenize(text));
+    }
+}
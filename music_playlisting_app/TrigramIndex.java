@@ -0,0 +1,475 @@
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Inverted index over the title keys of a collection of Songs, as worked out by a {@link TextAnalyzer}.
+ * Every three-character sequence (trigram) of a key points to the Songs whose key contains it,
+ * so a substring search only has to check the Songs listed under the query's rarest trigram.
+ * Queries are keys too, so a search compares stored keys without normalizing any title again.
+ *
+ * Each Song is given an ordinal in the order it is indexed, and a trigram's posting is a sorted int array of
+ * ordinals rather than a set of Songs, so a title costs a few ints per trigram instead of a hash entry each.
+ * addAll() counts the trigrams of a whole batch first and fills each posting once at its full size, so loading
+ * a catalog does not grow the postings Song by Song. A removed Song leaves an empty ordinal, and the ordinals
+ * are numbered again once more of them are empty than are in use.
+ *
+ * One TrigramIndex is kept by SearchService and updated whenever the catalog changes.
+ */
+public class TrigramIndex {
+    // Length of the character sequences used as index keys
+    private static final int GRAM_LENGTH = 3;
+
+    // Fewest empty ordinals a renumbering waits for, so small indexes are not renumbered after every removal
+    private static final int MIN_REMOVED_TO_RENUMBER = 64;
+
+    // Each indexed Song at its ordinal; null where a Song was removed
+    private Song[] songs;
+
+    // Each indexed Song's title key at its ordinal
+    private String[] titleKeys;
+
+    // Number of ordinals given out, including those of removed Songs
+    private int ordinalCount;
+
+    // Maps every indexed Song to its ordinal
+    private HashMap<Song, Integer> ordinals;
+
+    // Maps every trigram to the ordinals of the Songs whose title key contains it
+    private HashMap<String, Posting> postings;
+
+    // The indexed Songs and their keys, shared by Streams of short queries until the index next changes; null until
+    // one is needed. Volatile, as readers sharing a SearchService's read lock may each make one
+    private volatile Entries entrySnapshot;
+
+    /**
+     * Constructor for an empty TrigramIndex
+     */
+    public TrigramIndex() {
+        this.songs = new Song[16];
+        this.titleKeys = new String[16];
+        this.ordinalCount = 0;
+        this.ordinals = new HashMap<Song, Integer>();
+        this.postings = new HashMap<String, Posting>();
+    }
+
+    /**
+     * Adds a Song's title key to the index provided the Song is not already indexed.
+     *
+     * @param song Song we are indexing
+     * @param key  the Song's title key
+     */
+    public void add(Song song, String key) {
+        if (song == null || ordinals.containsKey(song)) return;
+        int ordinal = nextOrdinal(song, key);
+        entrySnapshot = null;
+        for (int i = 0; i + GRAM_LENGTH <= key.length(); i++) {
+            postings.computeIfAbsent(key.substring(i, i + GRAM_LENGTH), k -> new Posting(4)).add(ordinal);
+        }
+    }
+
+    /**
+     * Adds many Songs' title keys to the index, as when a catalog is loaded, skipping Songs already indexed.
+     * The trigrams are counted before any posting is filled, so each posting grows at most once for the batch,
+     * and each distinct trigram is made into a String once rather than once per title.
+     *
+     * @param added Songs we are indexing
+     * @param keys  the Songs' title keys, at the same positions
+     */
+    public void addAll(List<Song> added, List<String> keys) {
+        GramNumbers numbers = new GramNumbers();
+        ArrayList<String> grams = new ArrayList<String>();
+        int[] counts = new int[16];
+        int[] lastOrdinals = new int[16];
+        int first = ordinalCount;
+        for (int s = 0; s < added.size(); s++) {
+            Song song = added.get(s);
+            if (song == null || ordinals.containsKey(song)) continue;
+            String key = keys.get(s);
+            int ordinal = nextOrdinal(song, key);
+            for (int i = 0; i + GRAM_LENGTH <= key.length(); i++) {
+                int number = numbers.numberOf(pack(key, i));
+                if (number == grams.size()) {
+                    grams.add(key.substring(i, i + GRAM_LENGTH));
+                    if (number == counts.length) {
+                        counts = Arrays.copyOf(counts, number * 2);
+                        lastOrdinals = Arrays.copyOf(lastOrdinals, number * 2);
+                    }
+                } else if (lastOrdinals[number] == ordinal + 1) {
+                    continue; // The title repeats the trigram
+                }
+                lastOrdinals[number] = ordinal + 1;
+                counts[number]++;
+            }
+        }
+        entrySnapshot = null;
+
+        ArrayList<Posting> byNumber = new ArrayList<Posting>(grams.size());
+        for (int g = 0; g < grams.size(); g++) {
+            Posting posting = postings.get(grams.get(g));
+            if (posting == null) {
+                posting = new Posting(counts[g]);
+                postings.put(grams.get(g), posting);
+            } else {
+                posting.ensureCapacity(posting.size + counts[g]);
+            }
+            byNumber.add(posting);
+        }
+        // Ordinals are given out in rising order, so appending them keeps every posting sorted
+        for (int ordinal = first; ordinal < ordinalCount; ordinal++) {
+            String key = titleKeys[ordinal];
+            for (int i = 0; i + GRAM_LENGTH <= key.length(); i++) {
+                byNumber.get(numbers.numberOf(pack(key, i))).add(ordinal);
+            }
+        }
+    }
+
+    /**
+     * Removes a Song from the index wherever it is listed.
+     *
+     * @param song Song we are removing from the index
+     */
+    public void remove(Song song) {
+        Integer ordinal = ordinals.remove(song);
+        if (ordinal == null) return;
+        String key = titleKeys[ordinal];
+        songs[ordinal] = null;
+        titleKeys[ordinal] = null;
+        entrySnapshot = null;
+        for (int i = 0; i + GRAM_LENGTH <= key.length(); i++) {
+            String gram = key.substring(i, i + GRAM_LENGTH);
+            Posting posting = postings.get(gram);
+            // A title can repeat a trigram, so the posting may already be gone
+            if (posting != null && posting.remove(ordinal) && posting.size == 0) {
+                postings.remove(gram);
+            }
+        }
+        int removed = ordinalCount - ordinals.size();
+        if (removed >= MIN_REMOVED_TO_RENUMBER && removed > ordinals.size()) {
+            renumber();
+        }
+    }
+
+    /**
+     * Getter for the title key a Song was indexed under.
+     *
+     * @param song an indexed Song
+     * @return String the Song's title key, or null if the Song is not indexed
+     */
+    public String keyOf(Song song) {
+        Integer ordinal = ordinals.get(song);
+        return ordinal == null ? null : titleKeys[ordinal];
+    }
+
+    /**
+     * Constructs an ArrayList of indexed Songs whose title key contains the query key.
+     * Results are returned in the order the Songs were indexed.
+     *
+     * @param query The key we are checking for the presence of in the indexed title keys.
+     * @return ArrayList<Song> containing search results.
+     */
+    public ArrayList<Song> search(String query) {
+        ArrayList<Song> result = new ArrayList<>();
+        forEachMatch(query, (song, key) -> result.add(song));
+        return result;
+    }
+
+    /**
+     * Passes every indexed Song whose title key contains the query key to an action,
+     * without collecting the matches into a list.
+     * Songs are visited in the order they were indexed.
+     *
+     * @param query  The key we are checking for the presence of in the indexed title keys.
+     * @param action receives each matching Song and its title key
+     */
+    public void forEachMatch(String query, BiConsumer<Song, String> action) {
+        if (query.length() < GRAM_LENGTH) {
+            // Every title is checked, so walk the titles directly rather than looking each one up
+            for (int ordinal = 0; ordinal < ordinalCount; ordinal++) {
+                if (songs[ordinal] != null && titleKeys[ordinal].contains(query)) {
+                    action.accept(songs[ordinal], titleKeys[ordinal]);
+                }
+            }
+            return;
+        }
+        Posting candidates = candidates(query);
+        if (candidates == null) return;
+        for (int i = 0; i < candidates.size; i++) {
+            int ordinal = candidates.ordinals[i];
+            if (titleKeys[ordinal].contains(query)) {
+                action.accept(songs[ordinal], titleKeys[ordinal]);
+            }
+        }
+    }
+
+    /**
+     * Lazily finds the indexed Songs whose title key contains the query key,
+     * in the order the Songs were indexed.
+     * The Songs to check and their keys are copied when the Stream is created, so the index may change
+     * while it is read, and the Stream may be read on another thread without locking the index.
+     *
+     * @param query The key we are checking for the presence of in the indexed title keys.
+     * @return Stream<Song> of the matching Songs.
+     */
+    public Stream<Song> stream(String query) {
+        Entries entries;
+        if (query.length() < GRAM_LENGTH) {
+            // Every title is checked, so the copy of every Song and key is kept for the next short query
+            entries = entrySnapshot;
+            if (entries == null) {
+                entries = copy(null);
+                entrySnapshot = entries;
+            }
+        } else {
+            Posting candidates = candidates(query);
+            if (candidates == null) return Stream.empty();
+            entries = copy(candidates);
+        }
+        Song[] found = entries.songs;
+        String[] foundKeys = entries.keys;
+        return IntStream.range(0, found.length).filter(i -> foundKeys[i].contains(query)).mapToObj(i -> found[i]);
+    }
+
+    /**
+     * Finds the indexed Songs that could contain a query of at least three characters:
+     * those listed under its rarest trigram.
+     *
+     * @param query the query key
+     * @return Posting the ordinals of the Songs to check, in the order they were indexed; null if there are none
+     */
+    private Posting candidates(String query) {
+        // Any match must appear under every trigram of the query, so the smallest posting is enough to check.
+        Posting candidates = null;
+        for (int i = 0; i + GRAM_LENGTH <= query.length(); i++) {
+            Posting posting = postings.get(query.substring(i, i + GRAM_LENGTH));
+            if (posting == null) {
+                return null; // No title contains this trigram, so no title contains the query.
+            }
+            if (candidates == null || posting.size < candidates.size) {
+                candidates = posting;
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Copies indexed Songs and their keys into arrays of their own.
+     *
+     * @param posting the ordinals of the Songs to copy, or null for every indexed Song
+     * @return Entries the Songs and keys, in the order they were indexed
+     */
+    private Entries copy(Posting posting) {
+        int count = posting == null ? ordinals.size() : posting.size;
+        Song[] copiedSongs = new Song[count];
+        String[] copiedKeys = new String[count];
+        int n = 0;
+        for (int i = 0; n < count; i++) {
+            int ordinal = posting == null ? i : posting.ordinals[i];
+            if (songs[ordinal] == null) continue;
+            copiedSongs[n] = songs[ordinal];
+            copiedKeys[n] = titleKeys[ordinal];
+            n++;
+        }
+        return new Entries(copiedSongs, copiedKeys);
+    }
+
+    /**
+     * Gives a Song the next ordinal, growing the arrays if they are full.
+     *
+     * @param song Song we are indexing
+     * @param key  the Song's title key
+     * @return int the Song's ordinal
+     */
+    private int nextOrdinal(Song song, String key) {
+        if (ordinalCount == songs.length) {
+            songs = Arrays.copyOf(songs, ordinalCount * 2);
+            titleKeys = Arrays.copyOf(titleKeys, ordinalCount * 2);
+        }
+        int ordinal = ordinalCount++;
+        songs[ordinal] = song;
+        titleKeys[ordinal] = key;
+        ordinals.put(song, ordinal);
+        return ordinal;
+    }
+
+    /**
+     * Numbers the indexed Songs' ordinals again from 0, in the same order, dropping the empty ones.
+     * Every posting is rewritten in place, and stays sorted as the order does not change.
+     */
+    private void renumber() {
+        int[] renumbered = new int[ordinalCount];
+        int capacity = Math.max(16, Integer.highestOneBit(Math.max(1, ordinals.size())) * 2);
+        Song[] nextSongs = new Song[capacity];
+        String[] nextKeys = new String[capacity];
+        int kept = 0;
+        for (int ordinal = 0; ordinal < ordinalCount; ordinal++) {
+            if (songs[ordinal] == null) continue;
+            renumbered[ordinal] = kept;
+            nextSongs[kept] = songs[ordinal];
+            nextKeys[kept] = titleKeys[ordinal];
+            ordinals.put(songs[ordinal], kept);
+            kept++;
+        }
+        for (Posting posting : postings.values()) {
+            for (int i = 0; i < posting.size; i++) {
+                posting.ordinals[i] = renumbered[posting.ordinals[i]];
+            }
+        }
+        songs = nextSongs;
+        titleKeys = nextKeys;
+        ordinalCount = kept;
+    }
+
+    /**
+     * Packs the trigram at a position of a key into a long, 16 bits a character.
+     *
+     * @param key a title key
+     * @param at  position of the trigram's first character
+     * @return long the packed trigram
+     */
+    private static long pack(String key, int at) {
+        return (long) key.charAt(at) << 32 | (long) key.charAt(at + 1) << 16 | key.charAt(at + 2);
+    }
+
+    /**
+     * The ordinals of the Songs whose title key contains one trigram, in rising order.
+     */
+    private static class Posting {
+        // The ordinals, with room to spare past size
+        private int[] ordinals;
+
+        // Number of ordinals held
+        private int size;
+
+        /**
+         * Constructor for an empty Posting
+         *
+         * @param capacity number of ordinals it has room for (Positive integer >=1)
+         */
+        Posting(int capacity) {
+            this.ordinals = new int[Math.max(1, capacity)];
+            this.size = 0;
+        }
+
+        /**
+         * Appends an ordinal higher than any held, unless it is already the last one held.
+         *
+         * @param ordinal the ordinal
+         */
+        void add(int ordinal) {
+            if (size > 0 && ordinals[size - 1] == ordinal) return; // The title repeats the trigram
+            if (size == ordinals.length) ensureCapacity(size * 2);
+            ordinals[size++] = ordinal;
+        }
+
+        /**
+         * Removes an ordinal, closing the gap it leaves.
+         *
+         * @param ordinal the ordinal
+         * @return boolean true if it was held; false otherwise
+         */
+        boolean remove(int ordinal) {
+            int at = Arrays.binarySearch(ordinals, 0, size, ordinal);
+            if (at < 0) return false;
+            System.arraycopy(ordinals, at + 1, ordinals, at, size - at - 1);
+            size--;
+            return true;
+        }
+
+        /**
+         * Grows the array to hold at least a number of ordinals.
+         *
+         * @param capacity number of ordinals to make room for
+         */
+        void ensureCapacity(int capacity) {
+            if (capacity > ordinals.length) ordinals = Arrays.copyOf(ordinals, capacity);
+        }
+    }
+
+    /**
+     * Indexed Songs and their title keys, copied at the same positions.
+     */
+    private static class Entries {
+        // The Songs
+        private final Song[] songs;
+
+        // Each Song's title key
+        private final String[] keys;
+
+        /**
+         * Constructor for Entries
+         *
+         * @param songs the Songs
+         * @param keys  each Song's title key
+         */
+        Entries(Song[] songs, String[] keys) {
+            this.songs = songs;
+            this.keys = keys;
+        }
+    }
+
+    /**
+     * Numbers the distinct packed trigrams of a batch in the order they are first seen, in an open-addressing
+     * table of longs, so counting a batch's trigrams neither boxes them nor makes a String for each.
+     */
+    private static class GramNumbers {
+        // Each slot's packed trigram plus 1, so that 0 marks an empty slot
+        private long[] grams = new long[1024];
+
+        // Each slot's number
+        private int[] numbers = new int[1024];
+
+        // Number of trigrams numbered
+        private int size;
+
+        /**
+         * Getter for a trigram's number, giving it the next one if it has none.
+         *
+         * @param packed a packed trigram
+         * @return int its number; equal to the count of trigrams numbered before if it is new
+         */
+        int numberOf(long packed) {
+            int slot = find(packed);
+            if (grams[slot] == 0) {
+                grams[slot] = packed + 1;
+                numbers[slot] = size++;
+                if (size * 2 > grams.length) grow();
+                return size - 1;
+            }
+            return numbers[slot];
+        }
+
+        /**
+         * Finds the slot holding a trigram, or the empty slot where it would go.
+         *
+         * @param packed a packed trigram
+         * @return int the slot
+         */
+        private int find(long packed) {
+            int mask = grams.length - 1;
+            long h = (packed + 1) * 0x9E3779B97F4A7C15L;
+            int slot = (int) (h ^ (h >>> 32)) & mask;
+            while (grams[slot] != 0 && grams[slot] != packed + 1) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        /**
+         * Doubles the table, placing every trigram again.
+         */
+        private void grow() {
+            long[] oldGrams = grams;
+            int[] oldNumbers = numbers;
+            grams = new long[oldGrams.length * 2];
+            numbers = new int[oldGrams.length * 2];
+            for (int i = 0; i < oldGrams.length; i++) {
+                if (oldGrams[i] == 0) continue;
+                int slot = find(oldGrams[i] - 1);
+                grams[slot] = oldGrams[i];
+                numbers[slot] = oldNumbers[i];
+            }
+        }
+    }
+}
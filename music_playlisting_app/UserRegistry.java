@@ -0,0 +1,439 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntFunction;
+
+/**
+ * Stores every registered User in creation order, with hash indexes on username, email and id.
+ * One UserRegistry instance should be created in main to hold all accounts; LoginService authenticates against it.
+ *
+ * Usernames and emails are unique ignoring case, and ids are unique, so lookups and duplicate
+ * checks take constant time no matter how many accounts exist.
+ * The indexes are keyed on the values a User had when it was added; to change a registered
+ * User's username or email, remove the User, update it, then add it again.
+ *
+ * The registry may be shared by many threads. Lookups by username, email and id read concurrent maps and
+ * never wait. Changes hold the registry's lock only while they update it in memory, and record themselves in
+ * the MutationLog after releasing it, so a lookup never waits for the journal to reach the disk.
+ * While its record is being written, a User being added or removed is pending: its username, email and id
+ * count as taken, but lookups do not find it. So no one can log in as a User, or change its library, before
+ * the journal holds its addition, and its username cannot be taken again before the journal holds its removal.
+ * Taking nextId() and adding a User with it is done as one step by addWithNextId().
+ */
+public class UserRegistry implements Iterable<User> {
+    // Represents all registered Users in the order they were added
+    private ArrayList<User> users;
+
+    // Maps lower-cased usernames to their User, including pending Users
+    private ConcurrentHashMap<String, User> usersByUsername;
+
+    // Maps lower-cased email addresses to their User, including pending Users
+    private ConcurrentHashMap<String, User> usersByEmail;
+
+    // Maps unique identifiers to their User, including pending Users
+    private ConcurrentHashMap<Integer, User> usersById;
+
+    // The Users being added or removed whose record is still being written to the MutationLog
+    private Set<User> pending;
+
+    // Represents the next unused identifier; never decreases, so ids are not reused after a deletion
+    private int nextId;
+
+    // Records additions and removals so the accounts can be restored on the next start
+    private MutationLog mutationLog;
+
+    // Indexes the Songs in the libraries of registered Listeners
+    private final PlaylistIndex playlistIndex;
+
+    // Held while the registry is changed, or its creation-ordered list is read
+    private final ReentrantLock lock;
+
+    /**
+     * Constructor for an empty UserRegistry
+     */
+    public UserRegistry() {
+        this.users = new ArrayList<User>();
+        this.usersByUsername = new ConcurrentHashMap<String, User>();
+        this.usersByEmail = new ConcurrentHashMap<String, User>();
+        this.usersById = new ConcurrentHashMap<Integer, User>();
+        this.pending = ConcurrentHashMap.newKeySet();
+        this.nextId = 1;
+        this.mutationLog = MutationLog.NONE;
+        this.playlistIndex = new PlaylistIndex();
+        this.lock = new ReentrantLock();
+    }
+
+    /**
+     * Getter for the index of which registered Listeners' Playlists contain each Song.
+     *
+     * @return PlaylistIndex the registry's index
+     */
+    public PlaylistIndex getPlaylistIndex() {
+        return playlistIndex;
+    }
+
+    /**
+     * Setter for the MutationLog told about every User added or removed.
+     * Registered Listeners are given the same log, so changes to their libraries are recorded too.
+     *
+     * @param mutationLog the log to record changes to; null records nothing
+     */
+    public void setMutationLog(MutationLog mutationLog) {
+        lock.lock();
+        try {
+            this.mutationLog = mutationLog == null ? MutationLog.NONE : mutationLog;
+            for (User user : users) {
+                if (user instanceof Listener) {
+                    ((Listener) user).setMutationLog(this.mutationLog);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Registers a User provided its username, email and id are not already taken.
+     *
+     * @param user User we are registering
+     * @return boolean true if the User was added; false if it is null or clashes with an existing account
+     */
+    public boolean add(User user) {
+        MutationLog log;
+        lock.lock();
+        try {
+            log = reserve(user);
+        } finally {
+            lock.unlock();
+        }
+        if (log == null) return false;
+        publish(user, log);
+        return true;
+    }
+
+    /**
+     * Registers a new User made with the next unused identifier. The identifier is taken and the User reserved
+     * in one step, so Users registered at once on several threads never get the same identifier.
+     *
+     * @param newUser makes the User from its identifier; it runs while holding the registry's lock, so it may
+     *                check the registry first, and may throw to add nothing
+     * @return User the User registered, or null if it is null or clashes with an existing account
+     */
+    public User addWithNextId(IntFunction<User> newUser) {
+        User user;
+        MutationLog log;
+        lock.lock();
+        try {
+            user = newUser.apply(nextId);
+            log = reserve(user);
+        } finally {
+            lock.unlock();
+        }
+        if (log == null) return null;
+        publish(user, log);
+        return user;
+    }
+
+    /**
+     * Removes a specific User from the registry.
+     *
+     * @param user User we are removing
+     * @return boolean true if the User was registered and removed; false otherwise
+     */
+    public boolean remove(User user) {
+        MutationLog log;
+        lock.lock();
+        try {
+            if (user == null || usersById.get(user.getId()) != user || pending.contains(user)) return false;
+            users.remove(user);
+            log = withdraw(user);
+        } finally {
+            lock.unlock();
+        }
+        removed(user, log);
+        return true;
+    }
+
+    /**
+     * Removes the User at a specified index of the creation-ordered list.
+     *
+     * @param index the targetting index (Positive integer >=0; must be within range of the registry's size)
+     * @return User the User that was removed
+     */
+    public User remove(int index) {
+        User removed;
+        MutationLog log;
+        lock.lock();
+        try {
+            removed = users.remove(index);
+            log = withdraw(removed);
+        } finally {
+            lock.unlock();
+        }
+        removed(removed, log);
+        return removed;
+    }
+
+    /**
+     * Getter for the User at a specified index of the creation-ordered list.
+     *
+     * @param index the targetting index (Positive integer >=0; must be within range of the registry's size)
+     * @return User the User being targetted
+     */
+    public User get(int index) {
+        lock.lock();
+        try {
+            return users.get(index);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Getter for the number of registered Users.
+     *
+     * @return int count of registered Users
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return users.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Signifies if there are no registered Users.
+     *
+     * @return boolean true if the registry is empty; false otherwise
+     */
+    public boolean isEmpty() {
+        lock.lock();
+        try {
+            return users.isEmpty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Finds a User by username, ignoring case.
+     *
+     * @param username the username to search for
+     * @return the matching User, or null if not found
+     */
+    public User findByUsername(String username) {
+        if (username == null) return null;
+        return registered(usersByUsername.get(key(username)));
+    }
+
+    /**
+     * Finds a User by email address, ignoring case.
+     *
+     * @param email the email address to search for
+     * @return the matching User, or null if not found
+     */
+    public User findByEmail(String email) {
+        if (email == null) return null;
+        return registered(usersByEmail.get(key(email)));
+    }
+
+    /**
+     * Finds a User by unique identifier.
+     *
+     * @param id the identifier to search for
+     * @return the matching User, or null if not found
+     */
+    public User findById(int id) {
+        return registered(usersById.get(id));
+    }
+
+    /**
+     * Signifies if a username is already in use by any account, ignoring case, including one being added or removed.
+     *
+     * @param username the username we are checking
+     * @return boolean true if the username is taken; false otherwise
+     */
+    public boolean isUsernameTaken(String username) {
+        return username != null && usersByUsername.containsKey(key(username));
+    }
+
+    /**
+     * Signifies if an email address is already in use by any account, ignoring case, including one being added or removed.
+     *
+     * @param email the email address we are checking
+     * @return boolean true if the email is taken; false otherwise
+     */
+    public boolean isEmailTaken(String email) {
+        return email != null && usersByEmail.containsKey(key(email));
+    }
+
+    /**
+     * Getter for an identifier that no registered or previously deleted User has used.
+     *
+     * @return int an unused identifier for a new User
+     */
+    public int nextId() {
+        lock.lock();
+        try {
+            return nextId;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Ensures nextId() returns at least a given identifier, so ids used by Users that were
+     * deleted before a snapshot was taken are not handed out again after it is restored.
+     *
+     * @param id the lowest identifier nextId() may return
+     */
+    public void advanceNextId(int id) {
+        lock.lock();
+        try {
+            nextId = Math.max(nextId, id);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Iterates over the registered Users in creation order.
+     * The iterator walks a copy, so Users may be added and removed meanwhile, from any thread.
+     * It does not support removal; use remove() instead so the indexes stay in sync.
+     *
+     * @return Iterator<User> over the Users registered when it was made
+     */
+    @Override
+    public Iterator<User> iterator() {
+        lock.lock();
+        try {
+            return List.copyOf(users).iterator();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes a User from the username, email and id indexes.
+     *
+     * @param user User we are removing from the indexes
+     */
+    private void unindex(User user) {
+        usersByUsername.remove(key(user.getUsername()));
+        usersByEmail.remove(key(user.getEmail()));
+        usersById.remove(user.getId());
+    }
+
+    /**
+     * Reserves a User's username, email and id, so no other account can take them while its addition is recorded.
+     * Must be called while holding the lock.
+     *
+     * @param user User we are adding
+     * @return MutationLog the log to record the addition in, or null if the User is null or clashes with an existing account
+     */
+    private MutationLog reserve(User user) {
+        if (user == null || user.getUsername() == null || user.getEmail() == null) return null;
+        if (isUsernameTaken(user.getUsername()) || isEmailTaken(user.getEmail()) || usersById.containsKey(user.getId())) {
+            return null;
+        }
+        // Marked pending before it enters the indexes, so a lookup never finds it until publish()
+        pending.add(user);
+        usersByUsername.put(key(user.getUsername()), user);
+        usersByEmail.put(key(user.getEmail()), user);
+        usersById.put(user.getId(), user);
+        nextId = Math.max(nextId, user.getId() + 1);
+        return mutationLog;
+    }
+
+    /**
+     * Records a reserved User's addition, then makes it visible to lookups and the creation-ordered list.
+     * If the record cannot be written the reservation is dropped and nothing is added.
+     *
+     * @param user User that was reserved
+     * @param log  the log to record the addition in
+     */
+    private void publish(User user, MutationLog log) {
+        try {
+            log.userAdded(user);
+        } catch (RuntimeException e) {
+            lock.lock();
+            try {
+                unindex(user);
+                pending.remove(user);
+            } finally {
+                lock.unlock();
+            }
+            throw e;
+        }
+        lock.lock();
+        try {
+            users.add(user);
+            if (user instanceof Listener) {
+                ((Listener) user).setMutationLog(mutationLog);
+                ((Listener) user).setPlaylistIndex(playlistIndex);
+            }
+            pending.remove(user);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Hides a User that is leaving the registry from lookups, keeping its username, email and id taken until
+     * its removal is recorded. A removed Listener stops recording changes to its library, since it can no longer
+     * be restored, and its Playlists leave the registry's PlaylistIndex. Must be called while holding the lock.
+     *
+     * @param user User that was taken out of the creation-ordered list
+     * @return MutationLog the log to record the removal in
+     */
+    private MutationLog withdraw(User user) {
+        pending.add(user);
+        if (user instanceof Listener) {
+            ((Listener) user).setMutationLog(MutationLog.NONE);
+            ((Listener) user).setPlaylistIndex(null);
+        }
+        return mutationLog;
+    }
+
+    /**
+     * Records that a withdrawn User has left the registry, then frees its username, email and id.
+     *
+     * @param user User that was withdrawn
+     * @param log  the log to record the removal in
+     */
+    private void removed(User user, MutationLog log) {
+        try {
+            log.userRemoved(user);
+        } finally {
+            lock.lock();
+            try {
+                unindex(user);
+                pending.remove(user);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Hides a User found in an index while it is pending.
+     *
+     * @param user the User found, or null
+     * @return User the User if it is registered, or null
+     */
+    private User registered(User user) {
+        return user == null || pending.contains(user) ? null : user;
+    }
+
+    /**
+     * Normalises a username or email into its case-insensitive index key.
+     *
+     * @param value the username or email
+     * @return String the lower-cased key
+     */
+    private static String key(String value) {
+        return value.toLowerCase(Locale.ROOT);
+    }
+}